@@ -17,6 +17,7 @@ package org.apache.ojb.broker;
 
 import org.apache.ojb.broker.metadata.ClassDescriptor;
 import org.apache.ojb.broker.metadata.ClassNotPersistenceCapableException;
+import org.apache.ojb.broker.core.IdentityCodec;
 import org.apache.ojb.broker.core.ValueContainer;
 import org.apache.ojb.broker.core.proxy.IndirectionHandler;
 import org.apache.ojb.broker.core.proxy.ProxyHelper;
@@ -25,13 +26,10 @@ import org.apache.commons.lang.SystemUtils;
 import org.apache.commons.lang.ArrayUtils;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
  * Represents the identity of an object.
@@ -73,12 +71,15 @@ public class Identity implements Serializable
     /** Unique id for serialization purposes. */ 
     private static final long serialVersionUID = 3182285550574178710L;
 
+    private static final byte GZIP_MAGIC_0 = (byte) 0x1f;
+    private static final byte GZIP_MAGIC_1 = (byte) 0x8b;
+
     private static final int IS_TRANSIENT = 3;
     private static final int IS_PERMANENT = 17;
     /**
      * Used for hashCode calculation.
      */
-    private static final int iConstant = 37;
+    protected static final int iConstant = 37;
 
     /**
      * The top-level Class of the identified object, ie. an interface.
@@ -106,7 +107,10 @@ public class Identity implements Serializable
     differs in different JVM
     */
     private transient String m_stringRepresentation = null;
-    private transient Integer m_hashCode;
+    /**
+     * The cached hash code, <em>0</em> if not calculated.
+     */
+    private transient int m_hashCode;
 
     /**
      * For internal use only!
@@ -116,6 +120,24 @@ public class Identity implements Serializable
         isTransient = IS_TRANSIENT;
     }
 
+    /**
+     * For internal use only! Used by compact Identity implementations which don't
+     * keep the primary key values in an array, these have to override
+     * {@link #getPrimaryKeyValues()}, {@link #equalsPrimaryKeyValues(Identity)} and
+     * {@link #hashCodePrimaryKeyValues(int)}.
+     *
+     * @param realClass the concrete class of the object, or null if not known.
+     * @param topLevel the highest persistence-capable class or
+     * interface (in the inheritance hierarchy) that the identified object is an instance of
+     * @param isTransient If <em>true</em> this is the identity of a transient object
+     */
+    protected Identity(final Class realClass, final Class topLevel, final boolean isTransient)
+    {
+        m_objectsTopLevelClass = topLevel;
+        m_objectsRealClass = realClass;
+        this.isTransient = isTransient ? IS_TRANSIENT : IS_PERMANENT;
+    }
+
     /**
      * For internal use only!. Creates an em from a class and the objects primary key values.
      * used for the definition of proxies.
@@ -197,7 +219,7 @@ public class Identity implements Serializable
                     final Identity sourceOID = handler.getIdentity();
                     m_objectsTopLevelClass = sourceOID.m_objectsTopLevelClass;
                     m_objectsRealClass = sourceOID.m_objectsRealClass;
-                    m_pkValues = sourceOID.m_pkValues;
+                    m_pkValues = sourceOID.getPrimaryKeyValues();
                 }
                 else
                 {
@@ -236,15 +258,22 @@ public class Identity implements Serializable
 
     /**
      * Factory method that returns an Identity object created from a serializated representation.
+     * Supports the compact binary form written by {@link #serialize} and the GZIP compressed
+     * java serialization form written by former versions.
      * 
      * @param anArray The serialized representation
      * @return The identity
      * @see {@link #serialize}.
+     * @see org.apache.ojb.broker.core.IdentityCodec
      * @deprecated
      */
     public static Identity fromByteArray(final byte[] anArray) throws PersistenceBrokerException
     {
-        // reverse of the serialize() algorithm:
+        if(!(anArray.length > 1 && anArray[0] == GZIP_MAGIC_0 && anArray[1] == GZIP_MAGIC_1))
+        {
+            return IdentityCodec.DEFAULT.decode(anArray);
+        }
+        // reverse of the former serialize() algorithm:
         // read from byte[] with a ByteArrayInputStream, decompress with
         // a GZIPInputStream and then deserialize by reading from the ObjectInputStream
         try
@@ -307,7 +336,8 @@ public class Identity implements Serializable
     }
 
     /**
-     * Return the serialized form of this Identity.
+     * Return the serialized form of this Identity, the compact binary
+     * form of {@link org.apache.ojb.broker.core.IdentityCodec#DEFAULT}.
      * 
      * @return The serialized representation
      * @see #fromByteArray
@@ -315,25 +345,7 @@ public class Identity implements Serializable
      */
     public byte[] serialize() throws PersistenceBrokerException
     {
-        // Identity is serialized and written to an ObjectOutputStream
-        // This ObjectOutputstream is compressed by a GZIPOutputStream
-        // and finally written to a ByteArrayOutputStream.
-        // the resulting byte[] is returned
-        try
-        {
-            final ByteArrayOutputStream bao = new ByteArrayOutputStream();
-            final GZIPOutputStream gos = new GZIPOutputStream(bao);
-            final ObjectOutputStream oos = new ObjectOutputStream(gos);
-            oos.writeObject(this);
-            oos.close();
-            gos.close();
-            bao.close();
-            return bao.toByteArray();
-        }
-        catch (Exception ignored)
-        {
-            throw new PersistenceBrokerException(ignored);
-        }
+        return IdentityCodec.DEFAULT.encode(this);
     }
 
     /**
@@ -345,11 +357,12 @@ public class Identity implements Serializable
         if (m_stringRepresentation == null)
         {
             final StringBuffer buf = new StringBuffer();
+            final Object[] pkValues = getPrimaryKeyValues();
             buf.append(m_objectsTopLevelClass.getName());
-            for (int i = 0; i < m_pkValues.length; i++)
+            for (int i = 0; i < pkValues.length; i++)
             {
                 buf.append((i == 0) ? "{" : ",");
-                buf.append(m_pkValues[i]);
+                buf.append(pkValues[i]);
             }
             buf.append("}");
             if(isTransient == IS_TRANSIENT) buf.append("-transient");
@@ -399,25 +412,37 @@ public class Identity implements Serializable
         if (obj instanceof Identity)
         {
             final Identity id = (Identity) obj;
-            result = m_objectsTopLevelClass.equals(id.m_objectsTopLevelClass) && isTransient == id.isTransient;
-            if(result)
+            result = m_objectsTopLevelClass.equals(id.m_objectsTopLevelClass) && isTransient == id.isTransient
+                    && equalsPrimaryKeyValues(id);
+        }
+        return result;
+    }
+
+    /**
+     * Compares the primary key values of this identity with the values of the
+     * given identity (of the same top-level class).
+     *
+     * @param id The other identity
+     * @return <em>true</em> if the primary key values are equal
+     */
+    protected boolean equalsPrimaryKeyValues(final Identity id)
+    {
+        final Object[] otherPkValues = id.m_pkValues;
+        if(otherPkValues == null)
+        {
+            // compact identity, let it compare the values
+            return id.equalsPrimaryKeyValues(this);
+        }
+        boolean result = m_pkValues.length == otherPkValues.length;
+        for (int i = 0; result && i < m_pkValues.length; i++)
+        {
+            result = (m_pkValues[i] == null) ? (otherPkValues[i] == null)
+                    : m_pkValues[i].equals(otherPkValues[i]);
+
+            // special treatment for byte[]
+            if (!result && m_pkValues[i] instanceof byte[] && otherPkValues[i] instanceof byte[])
             {
-                final Object[] otherPkValues = id.m_pkValues;
-                result = m_pkValues.length == otherPkValues.length;
-                if(result)
-                {
-                    for (int i = 0; result && i < m_pkValues.length; i++)
-                    {
-                        result = (m_pkValues[i] == null) ? (otherPkValues[i] == null)
-                                : m_pkValues[i].equals(otherPkValues[i]);
-
-                        // special treatment for byte[]
-                        if (!result && m_pkValues[i] instanceof byte[] && otherPkValues[i] instanceof byte[])
-                        {
-                            result = Arrays.equals((byte[]) m_pkValues[i], (byte[]) otherPkValues[i]);
-                        }
-                    }
-                }
+                result = Arrays.equals((byte[]) m_pkValues[i], (byte[]) otherPkValues[i]);
             }
         }
         return result;
@@ -433,26 +458,39 @@ public class Identity implements Serializable
         identity is quasi immutable (toplevel class and PK fields
         never change), thus we can note hashCode
         */
-        if(m_hashCode == null)
+        if(m_hashCode == 0)
+        {
+            int iTotal = hashCodePrimaryKeyValues(isTransient);
+            iTotal = iTotal * iConstant + m_objectsTopLevelClass.hashCode();
+            m_hashCode = iTotal;
+        }
+        return m_hashCode;
+    }
+
+    /**
+     * Adds the hash codes of the primary key values to the given start value, compact
+     * identity implementations have to return the same result as this method would
+     * return for the corresponding primary key value array.
+     *
+     * @param iTotal The start value
+     * @return The accumulated hash code
+     */
+    protected int hashCodePrimaryKeyValues(int iTotal)
+    {
+        Object obj;
+        for (int i = 0; i < m_pkValues.length; i++)
         {
-            int iTotal = isTransient;
-            Object obj;
-            for (int i = 0; i < m_pkValues.length; i++)
+            obj = m_pkValues[i];
+            if(obj instanceof byte[])
             {
-                obj = m_pkValues[i];
-                if(obj instanceof byte[])
-                {
-                    iTotal = iTotal * iConstant + ((byte[]) obj).length;
+                iTotal = iTotal * iConstant + ((byte[]) obj).length;
             }
-                else
-                {
-                    iTotal = iTotal * iConstant + (obj != null ? obj.hashCode() : 0);
-        }
+            else
+            {
+                iTotal = iTotal * iConstant + (obj != null ? obj.hashCode() : 0);
             }
-            iTotal = iTotal * iConstant + m_objectsTopLevelClass.hashCode();
-            m_hashCode = new Integer(iTotal);
         }
-        return m_hashCode.intValue();
+        return iTotal;
     }
 
     private ClassNotPersistenceCapableException createException(String msg, final Object objectToIdentify, final Exception e)
@@ -90,6 +90,24 @@ public interface PersistenceBrokerInternal extends PersistenceBroker
      */
     public void checkRefreshRelationships(Object obj, Identity oid, ClassDescriptor cld);
 
+    /**
+     * Adds the concrete class of the given materialized object to the index
+     * used to lookup objects of extent classes, see {@link org.apache.ojb.broker.core.ExtentClassIndex}.
+     *
+     * @param oid The identity of the object
+     * @param obj The materialized object
+     */
+    public void registerExtentClass(Identity oid, Object obj);
+
+    /**
+     * Returns <em>true</em> if a {@link PBLifeCycleEvent} for the given target object
+     * has to be fired, that is if the target is {@link PersistenceBrokerAware} or
+     * a {@link PBLifeCycleListener} is registered.
+     *
+     * @param target The object which causes the event
+     */
+    public boolean isLifeCycleEventRequired(Object target);
+
     /**
      * Return the factory for creating relationship prefetcher objects.
      * 
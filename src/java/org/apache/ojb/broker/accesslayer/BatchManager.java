@@ -0,0 +1,608 @@
+package org.apache.ojb.broker.accesslayer;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.ojb.broker.OptimisticLockException;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.CollectionDescriptor;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
+import org.apache.ojb.broker.metadata.ObjectReferenceDescriptor;
+import org.apache.ojb.broker.platforms.Platform;
+import org.apache.ojb.broker.platforms.PlatformException;
+import org.apache.ojb.broker.util.logging.Logger;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+
+/**
+ * Gathers the INSERT, UPDATE and DELETE operations performed on a connection
+ * into JDBC batches.
+ * <p>
+ * The operations are grouped by statement. Each statement belongs to a table
+ * and an operation type (e.g. the insert statement of a {@link ClassDescriptor}),
+ * it is prepared only once and the values of each operation are bound directly
+ * to the statement. The callers pass the operation type, no SQL has to be parsed.
+ * </p>
+ * <p>
+ * On execution the pending statements are ordered by the foreign key dependencies
+ * of their tables: inserts and updates of referenced tables are executed first,
+ * deletes of referencing tables are executed first. The table order is computed
+ * once per {@link DescriptorRepository} from the reference and collection descriptors.
+ * Different statements against the same table are never reordered, the pending
+ * batch is executed before the second statement is used.
+ * </p>
+ * <p>
+ * Update and delete operations of classes using optimistic locking are checked against
+ * the update counts returned by the driver, a count of 0 causes an {@link OptimisticLockException}.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class BatchManager
+{
+    public static final int INSERT = 0;
+    public static final int UPDATE = 1;
+    public static final int DELETE = 2;
+
+    private static Logger log = LoggerFactory.getLogger(BatchManager.class);
+
+    /**
+     * Maps {@link DescriptorRepository} to a map of table name to the
+     * rank of the table in foreign key order.
+     */
+    private static final Map tableRanksCache = Collections.synchronizedMap(new WeakHashMap());
+
+    private final Connection con;
+    private final Platform platform;
+    private final int batchSize;
+    private final Map tableRanks;
+    /**
+     * Maps the SQL string to the {@link Entry} of each statement prepared by this instance.
+     */
+    private final Map entries = new HashMap();
+    /**
+     * Maps the prepared statements to their {@link Entry}.
+     */
+    private final Map statements = new IdentityHashMap();
+    /**
+     * The entries with pending operations, in order of first use.
+     */
+    private final List pending = new ArrayList();
+    private int count;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param con The connection used to prepare the statements.
+     * @param platform The platform of the connection.
+     * @param batchSize The number of pending operations, used by {@link #executeBatchIfNecessary()}.
+     * @param repository The metadata used to order the statements.
+     */
+    public BatchManager(Connection con, Platform platform, int batchSize, DescriptorRepository repository)
+    {
+        this.con = con;
+        this.platform = platform;
+        this.batchSize = batchSize;
+        this.tableRanks = getTableRanks(repository);
+    }
+
+    /**
+     * Returns <em>true</em> if the given operation can be batched. Operations using
+     * stored procedures and inserts using database identity columns are never batched.
+     */
+    public boolean isBatchable(ClassDescriptor cld, int operation)
+    {
+        switch(operation)
+        {
+            case INSERT:
+                return cld.getInsertProcedure() == null && !cld.useIdentityColumnField();
+            case UPDATE:
+                return cld.getUpdateProcedure() == null;
+            case DELETE:
+                return cld.getDeleteProcedure() == null;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the statement for the given operation of a class. Bind the values
+     * of the operation to the statement and call {@link #addBatch(PreparedStatement, Object)}.
+     *
+     * @param cld The class of the object to insert, update or delete.
+     * @param operation One of {@link #INSERT}, {@link #UPDATE} or {@link #DELETE}.
+     * @param sql The statement string.
+     */
+    public PreparedStatement getStatement(ClassDescriptor cld, int operation, String sql) throws SQLException
+    {
+        return getStatement(cld.getFullTableName(), operation, sql, operation != INSERT && cld.isLocking());
+    }
+
+    /**
+     * Returns the statement for the given operation on a table without class
+     * descriptor (e.g. the indirection table of a m:n relation). Bind the values
+     * of the operation to the statement and call {@link #addBatch(PreparedStatement, Object)}.
+     *
+     * @param table The name of the table.
+     * @param operation One of {@link #INSERT}, {@link #UPDATE} or {@link #DELETE}.
+     * @param sql The statement string.
+     */
+    public PreparedStatement getStatement(String table, int operation, String sql) throws SQLException
+    {
+        return getStatement(table, operation, sql, false);
+    }
+
+    private PreparedStatement getStatement(String table, int operation, String sql, boolean checkUpdateCount)
+            throws SQLException
+    {
+        Entry entry = (Entry) entries.get(sql);
+        if(entry == null || entry.count == 0)
+        {
+            // we should not change the order of different statements for the same table
+            for(int i = 0; i < pending.size(); i++)
+            {
+                Entry other = (Entry) pending.get(i);
+                if(other != entry && other.table.equals(table))
+                {
+                    executeBatch();
+                    break;
+                }
+            }
+        }
+        if(entry == null)
+        {
+            entry = new Entry(sql, table, operation, getRank(table), checkUpdateCount, prepare(sql));
+            entries.put(sql, entry);
+            statements.put(entry.stmt, entry);
+        }
+        return entry.stmt;
+    }
+
+    /**
+     * Adds the bound values of the given statement to the batch.
+     *
+     * @param stmt A statement returned by this instance.
+     * @param obj The object to insert, update or delete, used to report
+     * optimistic locking failures, could be <em>null</em>.
+     */
+    public void addBatch(PreparedStatement stmt, Object obj) throws SQLException
+    {
+        Entry entry = (Entry) statements.get(stmt);
+        if(entry == null)
+        {
+            throw new SQLException("Statement was not prepared by this batch: " + stmt);
+        }
+        addBatch(entry, obj);
+    }
+
+    private void addBatch(Entry entry, Object obj) throws SQLException
+    {
+        try
+        {
+            platform.addBatch(entry.stmt);
+        }
+        catch(PlatformException e)
+        {
+            throw toSQLException(e);
+        }
+        if(entry.count == 0)
+        {
+            pending.add(entry);
+        }
+        if(entry.objects != null)
+        {
+            entry.objects.add(obj);
+        }
+        ++entry.count;
+        ++count;
+    }
+
+    /**
+     * Returns the number of pending operations.
+     */
+    public int size()
+    {
+        return count;
+    }
+
+    /**
+     * Executes all pending operations.
+     */
+    public void executeBatch() throws SQLException
+    {
+        if(count == 0)
+        {
+            return;
+        }
+        Entry[] toExecute = (Entry[]) pending.toArray(new Entry[pending.size()]);
+        pending.clear();
+        count = 0;
+        // the sort is stable, statements of same rank keep the order of first use
+        Arrays.sort(toExecute, EXECUTION_ORDER);
+        int i = 0;
+        try
+        {
+            for(; i < toExecute.length; i++)
+            {
+                execute(toExecute[i]);
+            }
+        }
+        finally
+        {
+            // discard the remaining operations on failure
+            for(; i < toExecute.length; i++)
+            {
+                toExecute[i].reset();
+                try
+                {
+                    toExecute[i].stmt.clearBatch();
+                }
+                catch(SQLException ignore)
+                {
+                    if(log.isDebugEnabled()) log.debug("Clear batch failed", ignore);
+                }
+            }
+        }
+    }
+
+    private void execute(Entry entry) throws SQLException
+    {
+        final List objects = entry.objects != null ? new ArrayList(entry.objects) : null;
+        entry.reset();
+        if(log.isDebugEnabled()) log.debug("Execute batch: " + entry.sql);
+        int[] result;
+        try
+        {
+            result = platform.executeBatch(entry.stmt);
+        }
+        catch(PlatformException e)
+        {
+            log.error("Execution of batch failed: " + entry.sql);
+            throw toSQLException(e);
+        }
+        if(objects != null && result != null)
+        {
+            for(int i = 0; i < result.length && i < objects.size(); i++)
+            {
+                // Statement.SUCCESS_NO_INFO and Statement.EXECUTE_FAILED are negative
+                if(result[i] == 0)
+                {
+                    Object obj = objects.get(i);
+                    throw new OptimisticLockException("Object has been modified "
+                            + (entry.operation == DELETE ? "or deleted " : "") + "by someone else: "
+                            + objectToString(obj), obj);
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as in JdbcAccessImpl, the toString method of a business object
+     * can fail, e.g. when it materializes references.
+     */
+    private static String objectToString(Object obj)
+    {
+        try
+        {
+            return obj.toString();
+        }
+        catch(Exception e)
+        {
+            return "";
+        }
+    }
+
+    /**
+     * Executes all pending operations if the number of
+     * pending operations reached the batch size.
+     */
+    public void executeBatchIfNecessary() throws SQLException
+    {
+        if(count >= batchSize)
+        {
+            executeBatch();
+        }
+    }
+
+    /**
+     * Discards all pending operations.
+     */
+    public void clearBatch()
+    {
+        for(int i = 0; i < pending.size(); i++)
+        {
+            Entry entry = (Entry) pending.get(i);
+            entry.reset();
+            try
+            {
+                entry.stmt.clearBatch();
+            }
+            catch(SQLException e)
+            {
+                if(log.isDebugEnabled()) log.debug("Clear batch failed", e);
+            }
+        }
+        pending.clear();
+        count = 0;
+    }
+
+    /**
+     * Discards all pending operations and closes all statements.
+     */
+    public void close()
+    {
+        clearBatch();
+        for(Iterator it = entries.values().iterator(); it.hasNext();)
+        {
+            Entry entry = (Entry) it.next();
+            try
+            {
+                entry.stmt.close();
+            }
+            catch(SQLException e)
+            {
+                if(log.isDebugEnabled()) log.debug("Statement closing failed", e);
+            }
+        }
+        entries.clear();
+        statements.clear();
+    }
+
+    private PreparedStatement prepare(String sql) throws SQLException
+    {
+        PreparedStatement stmt = con.prepareStatement(sql);
+        try
+        {
+            platform.afterStatementCreate(stmt);
+            platform.beforeBatch(stmt);
+        }
+        catch(PlatformException e)
+        {
+            stmt.close();
+            throw toSQLException(e);
+        }
+        return stmt;
+    }
+
+    private SQLException toSQLException(PlatformException e)
+    {
+        if(e.getCause() instanceof SQLException)
+        {
+            return (SQLException) e.getCause();
+        }
+        SQLException result = new SQLException(e.getMessage());
+        result.initCause(e);
+        return result;
+    }
+
+    private int getRank(String table)
+    {
+        Integer rank = (Integer) tableRanks.get(table);
+        return rank != null ? rank.intValue() : 0;
+    }
+
+    //===================================================================
+    // foreign key order of the tables
+    //===================================================================
+
+    /**
+     * Returns a map of table name to rank, a table has a higher rank
+     * than all tables it references (except for cyclic references).
+     */
+    static Map getTableRanks(DescriptorRepository repository)
+    {
+        Map result = (Map) tableRanksCache.get(repository);
+        if(result == null)
+        {
+            result = computeTableRanks(buildForeignKeyGraph(repository));
+            tableRanksCache.put(repository, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a map of table name to the set of names of the referenced tables.
+     */
+    private static Map buildForeignKeyGraph(DescriptorRepository repository)
+    {
+        Map graph = new HashMap();
+        for(Iterator it = repository.iterator(); it.hasNext();)
+        {
+            ClassDescriptor cld = (ClassDescriptor) it.next();
+            List references = cld.getObjectReferenceDescriptors();
+            if(!references.isEmpty() && cld.getFullTableName() != null)
+            {
+                Set referenced = getReferencedTables(graph, cld.getFullTableName());
+                for(int i = 0; i < references.size(); i++)
+                {
+                    ObjectReferenceDescriptor ord = (ObjectReferenceDescriptor) references.get(i);
+                    referenced.addAll(getTableNames(repository, ord.getItemClass()));
+                }
+            }
+
+            List collections = cld.getCollectionDescriptors();
+            for(int i = 0; i < collections.size(); i++)
+            {
+                CollectionDescriptor cod = (CollectionDescriptor) collections.get(i);
+                if(cod.isMtoNRelation())
+                {
+                    Set referenced = getReferencedTables(graph, cod.getIndirectionTable());
+                    referenced.addAll(getTableNames(repository, cld.getClassOfObject()));
+                    referenced.addAll(getTableNames(repository, cod.getItemClass()));
+                }
+                else
+                {
+                    Set ownerTables = getTableNames(repository, cld.getClassOfObject());
+                    for(Iterator itemTables = getTableNames(repository, cod.getItemClass()).iterator(); itemTables.hasNext();)
+                    {
+                        getReferencedTables(graph, (String) itemTables.next()).addAll(ownerTables);
+                    }
+                }
+            }
+        }
+        return graph;
+    }
+
+    private static Set getReferencedTables(Map graph, String table)
+    {
+        Set result = (Set) graph.get(table);
+        if(result == null)
+        {
+            result = new HashSet();
+            graph.put(table, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the table names of the given class and all its extents.
+     */
+    private static Set getTableNames(DescriptorRepository repository, Class clazz)
+    {
+        Set result = new HashSet();
+        if(!repository.hasDescriptorFor(clazz))
+        {
+            return result;
+        }
+        ClassDescriptor cld = repository.getDescriptorFor(clazz);
+        if(cld.getFullTableName() != null)
+        {
+            result.add(cld.getFullTableName());
+        }
+        Collection extents = repository.getAllConcreteSubclassDescriptors(cld);
+        for(Iterator it = extents.iterator(); it.hasNext();)
+        {
+            ClassDescriptor extent = (ClassDescriptor) it.next();
+            if(extent.getFullTableName() != null)
+            {
+                result.add(extent.getFullTableName());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Computes the length of the longest reference path of each table by
+     * a depth first search, references closing a cycle are ignored.
+     */
+    private static Map computeTableRanks(Map graph)
+    {
+        Map ranks = new HashMap();
+        Set inProgress = new HashSet();
+        for(Iterator it = graph.keySet().iterator(); it.hasNext();)
+        {
+            computeRank((String) it.next(), graph, ranks, inProgress);
+        }
+        return ranks;
+    }
+
+    private static int computeRank(String table, Map graph, Map ranks, Set inProgress)
+    {
+        Integer rank = (Integer) ranks.get(table);
+        if(rank != null)
+        {
+            return rank.intValue();
+        }
+        int result = 0;
+        Set referenced = (Set) graph.get(table);
+        if(referenced != null)
+        {
+            inProgress.add(table);
+            for(Iterator it = referenced.iterator(); it.hasNext();)
+            {
+                String other = (String) it.next();
+                if(!inProgress.contains(other))
+                {
+                    result = Math.max(result, computeRank(other, graph, ranks, inProgress) + 1);
+                }
+            }
+            inProgress.remove(table);
+        }
+        ranks.put(table, new Integer(result));
+        return result;
+    }
+
+    /**
+     * Inserts first, then updates, then deletes. Inserts and updates
+     * of referenced tables first, deletes of referencing tables first.
+     */
+    private static final Comparator EXECUTION_ORDER = new Comparator()
+    {
+        public int compare(Object o1, Object o2)
+        {
+            Entry e1 = (Entry) o1;
+            Entry e2 = (Entry) o2;
+            if(e1.operation != e2.operation)
+            {
+                return e1.operation - e2.operation;
+            }
+            return e1.operation == DELETE ? e2.rank - e1.rank : e1.rank - e2.rank;
+        }
+    };
+
+    //===================================================================
+    // inner class
+    //===================================================================
+
+    /**
+     * A prepared statement and its pending operations.
+     */
+    private static final class Entry
+    {
+        final String sql;
+        final String table;
+        final int operation;
+        final int rank;
+        final PreparedStatement stmt;
+        /**
+         * The objects of the pending operations if the update counts have
+         * to be checked, else <em>null</em>.
+         */
+        final List objects;
+        int count;
+
+        Entry(String sql, String table, int operation, int rank, boolean checkUpdateCount, PreparedStatement stmt)
+        {
+            this.sql = sql;
+            this.table = table;
+            this.operation = operation;
+            this.rank = rank;
+            this.stmt = stmt;
+            this.objects = checkUpdateCount ? new ArrayList() : null;
+        }
+
+        void reset()
+        {
+            count = 0;
+            if(objects != null) objects.clear();
+        }
+    }
+}
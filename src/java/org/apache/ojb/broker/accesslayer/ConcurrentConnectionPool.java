@@ -0,0 +1,742 @@
+package org.apache.ojb.broker.accesslayer;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.pool.impl.GenericObjectPool;
+import org.apache.ojb.broker.metadata.ConnectionPoolDescriptor;
+import org.apache.ojb.broker.metadata.JdbcConnectionDescriptor;
+import org.apache.ojb.broker.util.logging.Logger;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+import org.apache.ojb.broker.util.pooling.WaitTimeHistogram;
+
+/**
+ * The connection pool of a single {@link JdbcConnectionDescriptor} used by
+ * {@link ConnectionFactoryConcurrentImpl}.
+ * <p>
+ * All pooled connections are kept in a shared copy-on-write list, each entry
+ * carries an atomic state. A connection is borrowed by switching the state of an
+ * idle entry to in use, there is no lock on the borrow and return path. Every thread
+ * remembers the connections it returned and tries them first, thus a thread mostly
+ * gets back its own connection without contention. Threads waiting for a connection
+ * of an exhausted pool get returned connections handed off directly.
+ * </p>
+ * <p>
+ * A background task validates and evicts idle connections and reports connections
+ * held longer than the abandoned timeout, together with the stack trace of the code
+ * which borrowed the connection. The pool is configured by the
+ * {@link ConnectionPoolDescriptor} of the connection descriptor:
+ * </p>
+ * <table cellspacing="2" cellpadding="2" border="3" frame="box">
+ * <tr><td><strong>Attribute</strong></td><td><strong>Used for</strong></td></tr>
+ * <tr><td>maxActive</td><td>Maximum number of connections, unlimited if not greater than 0</td></tr>
+ * <tr><td>maxIdle, minIdle</td><td>Number of idle connections kept by the background task</td></tr>
+ * <tr><td>maxWait, whenExhaustedAction</td><td>Behaviour of an exhausted pool, same as commons-pool</td></tr>
+ * <tr><td>validationQuery</td><td>Query to validate connections, if not set only
+ * <code>Connection.isClosed()</code> is checked</td></tr>
+ * <tr><td>testOnBorrow</td><td>Validate a borrowed connection, if it was not used
+ * or validated within the last 500 ms</td></tr>
+ * <tr><td>testOnReturn</td><td>Validate returned connections</td></tr>
+ * <tr><td>testWhileIdle</td><td>Not used, idle connections are always validated in the
+ * background</td></tr>
+ * <tr><td>timeBetweenEvictionRunsMillis</td><td>Period of the background task, 30 seconds if not
+ * greater than 0</td></tr>
+ * <tr><td>minEvictableIdleTimeMillis</td><td>Idle time before a connection is closed</td></tr>
+ * <tr><td>logAbandoned, removeAbandonedTimeout</td><td>Enables the leak detection, connections
+ * held longer than the timeout (in seconds) are logged with the stack trace of the borrower</td></tr>
+ * <tr><td>removeAbandoned</td><td>Close and remove leaked connections from the pool</td></tr>
+ * </table>
+ *
+ * @version $Id$
+ */
+public class ConcurrentConnectionPool
+{
+    private static final int STATE_REMOVED = -1;
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_IN_USE = 1;
+    private static final int STATE_RESERVED = 2;
+
+    /** Connections used or validated within this period are not validated on borrow. */
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final long DEFAULT_HOUSEKEEPING_PERIOD_MILLIS = 30000;
+    /** Maximal time a waiting thread sleeps before it rescans the pool. */
+    private static final long MAX_WAIT_SLICE_MILLIS = 100;
+    private static final int MAX_THREAD_ENTRIES = 8;
+
+    /**
+     * The daemon timer driving the background tasks of all pools.
+     */
+    private static Timer timer;
+
+    private Logger log = LoggerFactory.getLogger(ConcurrentConnectionPool.class);
+
+    private final ConnectionFactoryConcurrentImpl factory;
+    private final JdbcConnectionDescriptor jcd;
+
+    private final int maxActive;
+    private final int maxIdle;
+    private final int minIdle;
+    private final long maxWait;
+    private final byte whenExhaustedAction;
+    private final String validationQuery;
+    private final boolean testOnBorrow;
+    private final boolean testOnReturn;
+    private final long minEvictableIdleTimeMillis;
+    private final long housekeepingPeriod;
+    private final long leakThresholdMillis;
+    private final boolean removeAbandoned;
+
+    /** All connections of the pool. */
+    private final List entries = new CopyOnWriteArrayList();
+    /** The connections last returned by the current thread. */
+    private final ThreadLocal threadEntries = new ThreadLocal();
+    /** Hands off returned connections to waiting threads. */
+    private final SynchronousQueue handoffQueue = new SynchronousQueue(true);
+
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong exhaustedCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private final AtomicLong validationFailedCount = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
+    private final WaitTimeHistogram waitTimes = new WaitTimeHistogram();
+
+    private volatile boolean closed;
+    private TimerTask houseKeeper;
+
+    public ConcurrentConnectionPool(ConnectionFactoryConcurrentImpl factory, JdbcConnectionDescriptor jcd)
+    {
+        this.factory = factory;
+        this.jcd = jcd;
+        ConnectionPoolDescriptor cpd = jcd.getConnectionPoolDescriptor();
+        maxActive = cpd.getMaxActive() > 0 ? cpd.getMaxActive() : Integer.MAX_VALUE;
+        maxIdle = cpd.getMaxIdle();
+        minIdle = Math.min(cpd.getMinIdle(), maxActive);
+        maxWait = cpd.getMaxWait();
+        whenExhaustedAction = cpd.getWhenExhaustedAction();
+        validationQuery = cpd.getValidationQuery();
+        testOnBorrow = cpd.isTestOnBorrow();
+        testOnReturn = cpd.isTestOnReturn();
+        minEvictableIdleTimeMillis = cpd.getMinEvictableIdleTimeMillis();
+        housekeepingPeriod = cpd.getTimeBetweenEvictionRunsMillis() > 0
+                ? cpd.getTimeBetweenEvictionRunsMillis() : DEFAULT_HOUSEKEEPING_PERIOD_MILLIS;
+        leakThresholdMillis = cpd.isLogAbandoned() || cpd.isRemoveAbandoned()
+                ? cpd.getRemoveAbandonedTimeout() * 1000L : 0;
+        removeAbandoned = cpd.isRemoveAbandoned();
+    }
+
+    /**
+     * Starts the background task of this pool.
+     */
+    public synchronized void start()
+    {
+        if(houseKeeper == null && !closed)
+        {
+            houseKeeper = new HouseKeeper();
+            getTimer().schedule(houseKeeper, housekeepingPeriod, housekeepingPeriod);
+        }
+    }
+
+    /**
+     * Returns a valid connection of this pool.
+     */
+    public Connection borrowConnection() throws LookupException
+    {
+        final long start = System.nanoTime();
+        while(true)
+        {
+            if(closed)
+            {
+                throw new LookupException("Connection pool is closed: " + jcd);
+            }
+            PoolEntry entry = reserveIdleEntry();
+            if(entry == null)
+            {
+                entry = createEntry(false);
+            }
+            if(entry == null)
+            {
+                entry = awaitEntry(start);
+            }
+            if(entry != null)
+            {
+                if(isValidOnBorrow(entry))
+                {
+                    entry.borrowed(leakThresholdMillis > 0);
+                    activeCount.incrementAndGet();
+                    borrowCount.incrementAndGet();
+                    waitTimes.record(System.nanoTime() - start);
+                    return entry.connection;
+                }
+                removeEntry(entry);
+            }
+        }
+    }
+
+    /**
+     * Returns a connection borrowed from this pool.
+     */
+    public void returnConnection(Connection con)
+    {
+        PoolEntry entry = findEntry(con);
+        // claim the entry, the housekeeping could remove it as abandoned connection concurrently
+        if(entry == null || !entry.state.compareAndSet(STATE_IN_USE, STATE_RESERVED))
+        {
+            // removed as abandoned connection or not from this pool
+            log.warn("Returned connection is not in use by pool, close it: " + con);
+            closeConnection(con);
+            return;
+        }
+        activeCount.decrementAndGet();
+        entry.returned();
+        if(closed || (testOnReturn && !validate(entry)))
+        {
+            removeEntry(entry);
+            return;
+        }
+        entry.state.set(STATE_IDLE);
+        rememberEntry(entry);
+        if(waitingCount.get() > 0)
+        {
+            // succeeds only if a thread is waiting right now
+            handoffQueue.offer(entry);
+        }
+    }
+
+    /**
+     * Closes all idle connections, connections in use are closed when returned.
+     */
+    public void close()
+    {
+        synchronized(this)
+        {
+            closed = true;
+            if(houseKeeper != null)
+            {
+                houseKeeper.cancel();
+                houseKeeper = null;
+            }
+        }
+        for(Iterator it = entries.iterator(); it.hasNext();)
+        {
+            PoolEntry entry = (PoolEntry) it.next();
+            if(entry.state.compareAndSet(STATE_IDLE, STATE_RESERVED))
+            {
+                removeEntry(entry);
+            }
+        }
+    }
+
+    public JdbcConnectionDescriptor getConnectionDescriptor()
+    {
+        return jcd;
+    }
+
+    /**
+     * Returns the number of connections of this pool.
+     */
+    public int getTotalCount()
+    {
+        return totalCount.get();
+    }
+
+    /**
+     * Returns the number of borrowed connections.
+     */
+    public int getActiveCount()
+    {
+        return activeCount.get();
+    }
+
+    /**
+     * Returns the number of idle connections.
+     */
+    public int getIdleCount()
+    {
+        return Math.max(0, totalCount.get() - activeCount.get());
+    }
+
+    /**
+     * Returns the number of threads waiting for a connection.
+     */
+    public int getWaitingCount()
+    {
+        return waitingCount.get();
+    }
+
+    /**
+     * Returns the number of successful borrow requests.
+     */
+    public long getBorrowCount()
+    {
+        return borrowCount.get();
+    }
+
+    /**
+     * Returns the number of borrow requests failed because the pool was exhausted.
+     */
+    public long getExhaustedCount()
+    {
+        return exhaustedCount.get();
+    }
+
+    public long getCreatedCount()
+    {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount()
+    {
+        return destroyedCount.get();
+    }
+
+    /**
+     * Returns the number of connections discarded because the validation failed.
+     */
+    public long getValidationFailedCount()
+    {
+        return validationFailedCount.get();
+    }
+
+    /**
+     * Returns the number of detected connection leaks.
+     */
+    public long getLeakCount()
+    {
+        return leakCount.get();
+    }
+
+    /**
+     * Returns the histogram of the time needed to borrow a connection.
+     */
+    public WaitTimeHistogram getWaitTimes()
+    {
+        return waitTimes;
+    }
+
+    public String toString()
+    {
+        return "ConcurrentConnectionPool[total=" + getTotalCount() + ", active=" + getActiveCount()
+                + ", idle=" + getIdleCount() + ", waiting=" + getWaitingCount()
+                + ", borrowed=" + getBorrowCount() + ", exhausted=" + getExhaustedCount()
+                + ", created=" + getCreatedCount() + ", destroyed=" + getDestroyedCount()
+                + ", validationFailed=" + getValidationFailedCount() + ", leaks=" + getLeakCount()
+                + ", waitTime: " + waitTimes + "]";
+    }
+
+    /**
+     * Validates and evicts idle connections and reports leaked connections.
+     * Called periodically by the background task of the pool.
+     */
+    public void runHouseKeeping()
+    {
+        long now = System.currentTimeMillis();
+        for(Iterator it = entries.iterator(); it.hasNext();)
+        {
+            PoolEntry entry = (PoolEntry) it.next();
+            int state = entry.state.get();
+            if(state == STATE_IN_USE)
+            {
+                checkLeak(entry, now);
+            }
+            else if(state == STATE_IDLE && entry.state.compareAndSet(STATE_IDLE, STATE_RESERVED))
+            {
+                int idle = getIdleCount();
+                boolean evict = (maxIdle >= 0 && idle > maxIdle)
+                        || (idle > minIdle && minEvictableIdleTimeMillis > 0
+                            && now - entry.lastUsed > minEvictableIdleTimeMillis);
+                if(evict || !validate(entry))
+                {
+                    removeEntry(entry);
+                }
+                else
+                {
+                    entry.state.set(STATE_IDLE);
+                }
+            }
+        }
+        fillMinIdle();
+        if(log.isDebugEnabled()) log.debug("Housekeeping of " + jcd.getJcdAlias() + ": " + this);
+    }
+
+    //====================================================
+    // internal methods
+    //====================================================
+
+    private PoolEntry reserveIdleEntry()
+    {
+        List list = (List) threadEntries.get();
+        if(list != null)
+        {
+            for(int i = list.size() - 1; i >= 0; i--)
+            {
+                PoolEntry entry = (PoolEntry) list.get(i);
+                if(entry.state.compareAndSet(STATE_IDLE, STATE_IN_USE))
+                {
+                    return entry;
+                }
+                if(entry.state.get() == STATE_REMOVED)
+                {
+                    list.remove(i);
+                }
+            }
+        }
+        for(Iterator it = entries.iterator(); it.hasNext();)
+        {
+            PoolEntry entry = (PoolEntry) it.next();
+            if(entry.state.compareAndSet(STATE_IDLE, STATE_IN_USE))
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private void rememberEntry(PoolEntry entry)
+    {
+        List list = (List) threadEntries.get();
+        if(list == null)
+        {
+            list = new ArrayList(MAX_THREAD_ENTRIES);
+            threadEntries.set(list);
+        }
+        if(!list.contains(entry))
+        {
+            if(list.size() == MAX_THREAD_ENTRIES)
+            {
+                list.remove(0);
+            }
+            list.add(entry);
+        }
+    }
+
+    private PoolEntry findEntry(Connection con)
+    {
+        for(Iterator it = entries.iterator(); it.hasNext();)
+        {
+            PoolEntry entry = (PoolEntry) it.next();
+            if(entry.connection == con)
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a new connection if the pool is not exhausted.
+     *
+     * @param idle if <em>true</em> the new connection is added as idle connection
+     * @return the new entry or <em>null</em> if the pool is exhausted
+     */
+    private PoolEntry createEntry(boolean idle) throws LookupException
+    {
+        boolean grow = !idle && whenExhaustedAction == GenericObjectPool.WHEN_EXHAUSTED_GROW;
+        while(true)
+        {
+            int total = totalCount.get();
+            if(total >= maxActive && !grow)
+            {
+                return null;
+            }
+            if(totalCount.compareAndSet(total, total + 1))
+            {
+                break;
+            }
+        }
+        Connection con;
+        try
+        {
+            con = factory.newConnectionFromDriverManager(jcd);
+        }
+        catch(LookupException e)
+        {
+            totalCount.decrementAndGet();
+            throw e;
+        }
+        catch(RuntimeException e)
+        {
+            totalCount.decrementAndGet();
+            throw e;
+        }
+        createdCount.incrementAndGet();
+        PoolEntry entry = new PoolEntry(con, idle ? STATE_IDLE : STATE_IN_USE);
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Waits for a returned connection, if the pool is exhausted.
+     *
+     * @return a reserved entry or <em>null</em> if the caller should retry
+     */
+    private PoolEntry awaitEntry(long start) throws LookupException
+    {
+        if(whenExhaustedAction != GenericObjectPool.WHEN_EXHAUSTED_BLOCK)
+        {
+            throw exhausted("Could not borrow connection from pool, pool is exhausted.");
+        }
+        waitingCount.incrementAndGet();
+        try
+        {
+            // a connection could be returned before this thread was registered as waiting
+            PoolEntry entry = reserveIdleEntry();
+            if(entry != null)
+            {
+                return entry;
+            }
+            long timeout = MAX_WAIT_SLICE_MILLIS;
+            if(maxWait > 0)
+            {
+                long remaining = maxWait - (System.nanoTime() - start) / 1000000;
+                if(remaining <= 0)
+                {
+                    throw exhausted("Could not borrow connection from pool, timeout after " + maxWait + " ms.");
+                }
+                timeout = Math.min(remaining, MAX_WAIT_SLICE_MILLIS);
+            }
+            entry = (PoolEntry) handoffQueue.poll(timeout, TimeUnit.MILLISECONDS);
+            if(entry != null && entry.state.compareAndSet(STATE_IDLE, STATE_IN_USE))
+            {
+                return entry;
+            }
+            return null;
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new LookupException("Interrupted while waiting for a connection of " + jcd, e);
+        }
+        finally
+        {
+            waitingCount.decrementAndGet();
+        }
+    }
+
+    private LookupException exhausted(String msg)
+    {
+        exhaustedCount.incrementAndGet();
+        return new LookupException(msg + " " + this + ". "
+                + JdbcConnectionDescriptor.class.getName() + ":  " + jcd);
+    }
+
+    private boolean isValidOnBorrow(PoolEntry entry)
+    {
+        if(testOnBorrow && System.currentTimeMillis() - entry.lastValidated > VALIDATION_BYPASS_MILLIS)
+        {
+            return validate(entry);
+        }
+        return true;
+    }
+
+    private boolean validate(PoolEntry entry)
+    {
+        boolean isValid;
+        Connection con = entry.connection;
+        try
+        {
+            isValid = !con.isClosed() && (validationQuery == null || validateConnection(con));
+        }
+        catch(SQLException e)
+        {
+            log.warn("Connection validation failed: " + e.getMessage());
+            if(log.isDebugEnabled()) log.debug(e);
+            isValid = false;
+        }
+        if(isValid)
+        {
+            entry.lastValidated = System.currentTimeMillis();
+        }
+        else
+        {
+            validationFailedCount.incrementAndGet();
+        }
+        return isValid;
+    }
+
+    private boolean validateConnection(Connection con) throws SQLException
+    {
+        PreparedStatement stmt = con.prepareStatement(validationQuery);
+        try
+        {
+            stmt.setMaxRows(1);
+            stmt.setFetchSize(1);
+            ResultSet rs = stmt.executeQuery();
+            try
+            {
+                if(rs.next())
+                {
+                    return true;
+                }
+                log.warn("Validation query '" + validationQuery + "' result set does not match, discard connection");
+                return false;
+            }
+            finally
+            {
+                rs.close();
+            }
+        }
+        finally
+        {
+            stmt.close();
+        }
+    }
+
+    private void checkLeak(PoolEntry entry, long now)
+    {
+        if(leakThresholdMillis > 0 && !entry.leakReported && now - entry.borrowTime > leakThresholdMillis)
+        {
+            entry.leakReported = true;
+            leakCount.incrementAndGet();
+            log.warn("Connection leak detected, connection of " + jcd.getJcdAlias() + " is in use since "
+                    + (now - entry.borrowTime) + " ms by thread " + entry.borrowThread
+                    + (removeAbandoned ? ", remove the connection from pool" : ""), entry.borrowStack);
+            if(removeAbandoned && entry.state.compareAndSet(STATE_IN_USE, STATE_RESERVED))
+            {
+                activeCount.decrementAndGet();
+                removeEntry(entry);
+            }
+        }
+    }
+
+    private void fillMinIdle()
+    {
+        try
+        {
+            while(!closed && getIdleCount() < minIdle)
+            {
+                PoolEntry entry = createEntry(true);
+                if(entry == null)
+                {
+                    break;
+                }
+            }
+        }
+        catch(LookupException e)
+        {
+            log.warn("Can't create idle connection for " + jcd.getJcdAlias() + ": " + e.getMessage());
+        }
+    }
+
+    private void removeEntry(PoolEntry entry)
+    {
+        entry.state.set(STATE_REMOVED);
+        if(entries.remove(entry))
+        {
+            totalCount.decrementAndGet();
+            destroyedCount.incrementAndGet();
+        }
+        closeConnection(entry.connection);
+    }
+
+    private void closeConnection(Connection con)
+    {
+        try
+        {
+            if(!con.isClosed()) con.close();
+        }
+        catch(SQLException e)
+        {
+            if(log.isDebugEnabled()) log.debug("Closing connection failed", e);
+        }
+    }
+
+    private static synchronized Timer getTimer()
+    {
+        if(timer == null)
+        {
+            timer = new Timer("OJB connection pool housekeeper", true);
+        }
+        return timer;
+    }
+
+    //====================================================
+    // inner classes
+    //====================================================
+
+    static final class PoolEntry
+    {
+        final Connection connection;
+        final AtomicInteger state;
+        /** Time the connection was created or returned, the idle time is measured from. */
+        volatile long lastUsed;
+        /** Time the connection was used or validated, see {@link #VALIDATION_BYPASS_MILLIS}. */
+        volatile long lastValidated;
+        volatile long borrowTime;
+        volatile String borrowThread;
+        volatile Throwable borrowStack;
+        volatile boolean leakReported;
+
+        PoolEntry(Connection connection, int state)
+        {
+            this.connection = connection;
+            this.state = new AtomicInteger(state);
+            this.lastUsed = System.currentTimeMillis();
+            this.lastValidated = lastUsed;
+        }
+
+        void borrowed(boolean captureStack)
+        {
+            borrowTime = System.currentTimeMillis();
+            leakReported = false;
+            if(captureStack)
+            {
+                borrowThread = Thread.currentThread().getName();
+                borrowStack = new Throwable("Connection borrowed here");
+            }
+        }
+
+        void returned()
+        {
+            lastUsed = System.currentTimeMillis();
+            lastValidated = lastUsed;
+            borrowThread = null;
+            borrowStack = null;
+        }
+    }
+
+    final class HouseKeeper extends TimerTask
+    {
+        public void run()
+        {
+            try
+            {
+                runHouseKeeping();
+            }
+            catch(Throwable e)
+            {
+                log.error("Housekeeping of connection pool failed: " + jcd, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.apache.ojb.broker.accesslayer;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.ojb.broker.metadata.JdbcConnectionDescriptor;
+import org.apache.ojb.broker.util.logging.Logger;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+
+/**
+ * Connection factory which pools the requested connections for different
+ * JdbcConnectionDescriptors in a {@link ConcurrentConnectionPool}. In contrast to
+ * {@link ConnectionFactoryPooledImpl} the borrow and return of connections is lock free,
+ * idle connections are validated in the background, leaked connections are detected
+ * and each pool keeps statistics about the time needed to borrow a connection.
+ * <p>
+ * The pools are configured by the <code>connection-pool</code> element of the
+ * <code>jdbc-connection-descriptor</code>, see {@link ConcurrentConnectionPool}.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class ConnectionFactoryConcurrentImpl extends ConnectionFactoryAbstractImpl
+{
+    private Logger log = LoggerFactory.getLogger(ConnectionFactoryConcurrentImpl.class);
+    /** Key=PBKey, value=ConcurrentConnectionPool. */
+    private final ConcurrentMap poolMap = new ConcurrentHashMap();
+
+    public Connection checkOutJdbcConnection(JdbcConnectionDescriptor jcd) throws LookupException
+    {
+        return getConnectionPool(jcd).borrowConnection();
+    }
+
+    public void releaseJdbcConnection(JdbcConnectionDescriptor jcd, Connection con)
+            throws LookupException
+    {
+        final ConcurrentConnectionPool pool = (ConcurrentConnectionPool) poolMap.get(jcd.getPBKey());
+        if (pool != null)
+        {
+            pool.returnConnection(con);
+        }
+        else
+        {
+            try
+            {
+                con.close();
+            }
+            catch (SQLException e)
+            {
+                throw new LookupException("Closing connection of released pool failed", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the pool of the given connection descriptor, the pool is created
+     * on first use.
+     */
+    public ConcurrentConnectionPool getConnectionPool(JdbcConnectionDescriptor jcd)
+    {
+        ConcurrentConnectionPool pool = (ConcurrentConnectionPool) poolMap.get(jcd.getPBKey());
+        if (pool == null)
+        {
+            ConcurrentConnectionPool newPool = createConnectionPool(jcd);
+            pool = (ConcurrentConnectionPool) poolMap.putIfAbsent(jcd.getPBKey(), newPool);
+            if (pool == null)
+            {
+                log.info("Create new connection pool:" + jcd);
+                pool = newPool;
+                pool.start();
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * Create the pool for pooling the connections of the given connection descriptor.
+     * Override this method to use a customized pool.
+     */
+    protected ConcurrentConnectionPool createConnectionPool(JdbcConnectionDescriptor jcd)
+    {
+        return new ConcurrentConnectionPool(this, jcd);
+    }
+
+    /**
+     * Closes all managed pools.
+     */
+    public void releaseAllResources()
+    {
+        for (Iterator iterator = poolMap.values().iterator(); iterator.hasNext();)
+        {
+            ConcurrentConnectionPool pool = (ConcurrentConnectionPool) iterator.next();
+            iterator.remove();
+            try
+            {
+                pool.close();
+            }
+            catch (Exception e)
+            {
+                log.error("Exception occured while closing pool " + pool, e);
+            }
+        }
+        super.releaseAllResources();
+    }
+}
@@ -30,6 +30,7 @@ import java.sql.SQLException;
 import java.sql.PreparedStatement;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -38,6 +39,12 @@ import java.util.NoSuchElementException;
  * Connection factory which pools the requested
  * connections for different JdbcConnectionDescriptors
  * using Commons Pool API.
+ * <p>
+ * If a statement cache size is set in the
+ * {@link org.apache.ojb.broker.metadata.ConnectionPoolDescriptor}, each pooled
+ * connection keeps a {@link StatementCache} of prepared statements, which lives
+ * as long as the connection itself.
+ * </p>
  *
  * @version $Id: ConnectionFactoryPooledImpl.java,v 1.1 2007-08-24 22:17:30 ewestfal Exp $
  * @see <a href="http://jakarta.apache.org/commons/pool/">Commons Pool Website</a>
@@ -50,6 +57,8 @@ public class ConnectionFactoryPooledImpl extends ConnectionFactoryAbstractImpl
     private Map poolMap = new HashMap();
     /** Synchronize object for operations not synchronized on Map only. */
     private final Object poolSynch = new Object();
+    /** Key=pooled Connection, value=StatementCache. */
+    private final Map statementCaches = new IdentityHashMap();
 
     public void releaseJdbcConnection(JdbcConnectionDescriptor jcd, Connection con)
             throws LookupException
@@ -67,6 +76,12 @@ public class ConnectionFactoryPooledImpl extends ConnectionFactoryAbstractImpl
              * ObjectPool implementation when the object factory's validateObject method
              * returns false. See ConPoolFactory#validateObject.
              */
+            StatementCache cache = getStatementCache(con);
+            if (cache != null)
+            {
+                // statements not returned by the user of the connection are discarded
+                cache.releaseCheckedOut();
+            }
             op.returnObject(con);
         }
         catch (Exception e)
@@ -123,6 +138,21 @@ public class ConnectionFactoryPooledImpl extends ConnectionFactoryAbstractImpl
         return conn;
     }
 
+    /**
+     * Returns the {@link StatementCache} of the given pooled connection.
+     *
+     * @param con a connection obtained from this factory
+     * @return the statement cache or <em>null</em> if statement caching is not enabled
+     * or the connection is not pooled by this factory
+     */
+    public StatementCache getStatementCache(Connection con)
+    {
+        synchronized (statementCaches)
+        {
+            return (StatementCache) statementCaches.get(con);
+        }
+    }
+
     /**
      * Create the pool for pooling the connections of the given connection descriptor.
      * Override this method to implement your on {@link org.apache.commons.pool.ObjectPool}.
@@ -272,13 +302,32 @@ public class ConnectionFactoryPooledImpl extends ConnectionFactoryAbstractImpl
         public Object makeObject() throws Exception
         {
             if (log.isDebugEnabled()) log.debug("makeObject called");
-            return cf.newConnectionFromDriverManager(jcd);
+            final Connection con = cf.newConnectionFromDriverManager(jcd);
+            final int cacheSize = jcd.getConnectionPoolDescriptor().getStatementCacheSize();
+            if (cacheSize > 0)
+            {
+                synchronized (statementCaches)
+                {
+                    statementCaches.put(con, new StatementCache(cacheSize));
+                }
+            }
+            return con;
         }
 
         public void destroyObject(Object obj)
                 throws Exception
         {
             log.info("Destroy object was called, try to close connection: " + obj);
+            final StatementCache cache;
+            synchronized (statementCaches)
+            {
+                cache = (StatementCache) statementCaches.remove(obj);
+            }
+            if (cache != null)
+            {
+                if (log.isDebugEnabled()) log.debug("Close statements of destroyed connection: " + cache);
+                cache.clear();
+            }
             try
             {
                 ((Connection) obj).close();
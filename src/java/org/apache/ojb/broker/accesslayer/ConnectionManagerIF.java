@@ -99,6 +99,12 @@ public interface ConnectionManagerIF
      */
     void executeBatchIfNecessary();
 
+    /**
+     * Returns the {@link BatchManager} of the current connection
+     * if batch mode is enabled, else <em>null</em>.
+     */
+    BatchManager getBatchManager();
+
     /**
      * Clear batch (if the batch mode where used).
      */
@@ -19,6 +19,7 @@ import java.sql.Connection;
 import java.sql.SQLException;
 
 import org.apache.ojb.broker.OJBRuntimeException;
+import org.apache.ojb.broker.OptimisticLockException;
 import org.apache.ojb.broker.PBKey;
 import org.apache.ojb.broker.PersistenceBroker;
 import org.apache.ojb.broker.PersistenceBrokerException;
@@ -30,7 +31,6 @@ import org.apache.ojb.broker.metadata.JdbcConnectionDescriptor;
 import org.apache.ojb.broker.metadata.MetadataManager;
 import org.apache.ojb.broker.platforms.Platform;
 import org.apache.ojb.broker.platforms.PlatformFactory;
-import org.apache.ojb.broker.util.batch.BatchConnection;
 import org.apache.ojb.broker.util.logging.Logger;
 import org.apache.ojb.broker.util.logging.LoggerFactory;
 
@@ -54,7 +54,7 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
     private boolean originalAutoCommitState;
     private boolean isInLocalTransaction;
     private boolean batchMode;
-    private BatchConnection batchCon = null;
+    private BatchManager batchManager = null;
 
     public ConnectionManagerImpl(PersistenceBroker broker)
     {
@@ -134,18 +134,33 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
             if (log.isDebugEnabled()) log.debug("Request new connection from ConnectionFactory: " + con);
         }
 
-        if (isBatchMode())
+        return con;
+    }
+
+    /**
+     * Returns the {@link BatchManager} of the current connection
+     * if batch mode is enabled, else <em>null</em>.
+     */
+    public BatchManager getBatchManager()
+    {
+        if (!isBatchMode())
         {
-            if (batchCon == null)
-            {
-                batchCon = new BatchConnection(con, broker);
-            }
-            return batchCon;
+            return null;
         }
-        else
+        Connection connection;
+        try
+        {
+            connection = getConnection();
+        }
+        catch (LookupException e)
         {
-            return con;
+            throw new PersistenceBrokerException("Can't lookup a connection", e);
+        }
+        if (batchManager == null)
+        {
+            batchManager = new BatchManager(connection, platform, jcd.getBatchSize(), broker.getDescriptorRepository());
         }
+        return batchManager;
     }
 
     /**
@@ -202,11 +217,11 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
         {
             if(!broker.isManaged())
             {
-                if (batchCon != null)
+                if (batchManager != null)
                 {
-                    batchCon.commit();
+                    batchManager.executeBatch();
                 }
-                else if (con != null)
+                if (con != null)
                 {
                     con.commit();
                 }
@@ -217,6 +232,12 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
                         "Found managed environment setting in PB, will skip Connection.commit() call");
             }
         }
+        catch (OptimisticLockException e)
+        {
+            if (log.isDebugEnabled()) log.debug("Execution of batch failed, try to rollback connection", e);
+            this.localRollback();
+            throw e;
+        }
         catch (SQLException e)
         {
             log.error("Commit on underlying connection failed, try to rollback connection", e);
@@ -247,11 +268,11 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
             this.isInLocalTransaction = false;
             if(!broker.isManaged())
             {
-                if (batchCon != null)
+                if (batchManager != null)
                 {
-                    batchCon.rollback();
+                    batchManager.clearBatch();
                 }
-                else if (con != null && !con.isClosed())
+                if (con != null && !con.isClosed())
                 {
                     con.rollback();
                 }
@@ -347,9 +368,13 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
         }
         else
         {
+            if (this.batchManager != null)
+            {
+                this.batchManager.close();
+                this.batchManager = null;
+            }
             this.connectionFactory.releaseConnection(this.jcd, this.con);
             this.con = null;
-            this.batchCon = null;
         }
     }
 
@@ -395,11 +420,15 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
      */
     public void executeBatch() throws OJBBatchUpdateException
     {
-        if (batchCon != null)
+        if (batchManager != null)
         {
             try
             {
-                batchCon.executeBatch();
+                batchManager.executeBatch();
+            }
+            catch (OptimisticLockException e)
+            {
+                throw e;
             }
             catch (Throwable th)
             {
@@ -414,11 +443,15 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
      */
     public void executeBatchIfNecessary() throws OJBBatchUpdateException
     {
-        if (batchCon != null)
+        if (batchManager != null)
         {
             try
             {
-                batchCon.executeBatchIfNecessary();
+                batchManager.executeBatchIfNecessary();
+            }
+            catch (OptimisticLockException e)
+            {
+                throw e;
             }
             catch (Throwable th)
             {
@@ -432,9 +465,9 @@ public class ConnectionManagerImpl implements ConnectionManagerIF
      */
     public void clearBatch()
     {
-        if (batchCon != null)
+        if (batchManager != null)
         {
-            batchCon.clearBatch();
+            batchManager.clearBatch();
         }
     }
 }
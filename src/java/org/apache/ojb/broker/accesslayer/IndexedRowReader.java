@@ -0,0 +1,35 @@
+package org.apache.ojb.broker.accesslayer;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * A {@link RowReader} working with array based {@link RowBuffer} rows.
+ * <p/>
+ * If the {@link RowReader} of a class implements this interface, OJB passes
+ * a reusable {@link RowBuffer} using the layout returned by {@link #getRowLayout()}
+ * as row argument to the {@link RowReader} methods. Implementations should access the
+ * values by slot when the passed row is a <code>RowBuffer</code>, but have to accept
+ * any other {@link java.util.Map} too.
+ *
+ * @version $Id$
+ */
+public interface IndexedRowReader extends RowReader
+{
+    /**
+     * Returns the layout of the row buffers used with this reader.
+     */
+    public RowLayout getRowLayout();
+}
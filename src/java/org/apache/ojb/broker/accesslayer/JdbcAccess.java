@@ -90,6 +90,22 @@ public interface JdbcAccess
      */
     public int executeUpdateSQL(String sqlStatement, ClassDescriptor cld, ValueContainer[] values1, ValueContainer[] values2)
             throws PersistenceBrokerException;
+
+    /**
+     * performs a SQL UPDTE, INSERT or DELETE statement against a table without
+     * class descriptor, e.g. the indirection table of a m:n relation.
+     * The statement is batched if batch mode is enabled.
+     * @param sqlStatement the query string.
+     * @param table the name of the table.
+     * @param operation one of {@link BatchManager#INSERT}, {@link BatchManager#UPDATE}
+     * or {@link BatchManager#DELETE}.
+     * @param cld ClassDescriptor providing meta-information.
+     * @param values1 The first set of values to bind to the statement (may be null)
+     * @param values2 The second set of values to bind to the statement (may be null)
+     */
+    public void executeUpdateSQL(String sqlStatement, String table, int operation, ClassDescriptor cld,
+                                 ValueContainer[] values1, ValueContainer[] values2)
+            throws PersistenceBrokerException;
     /**
      * performs an UPDATE operation against RDBMS.
      * @param obj The Object to be updated in the underlying table.
@@ -16,10 +16,11 @@ package org.apache.ojb.broker.accesslayer;
  */
 
 import java.sql.CallableStatement;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.sql.Statement;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -37,8 +38,10 @@ import org.apache.ojb.broker.metadata.JdbcType;
 import org.apache.ojb.broker.metadata.ProcedureDescriptor;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentField;
 import org.apache.ojb.broker.platforms.Platform;
+import org.apache.ojb.broker.platforms.PlatformException;
 import org.apache.ojb.broker.query.Query;
 import org.apache.ojb.broker.util.ExceptionHelper;
+import org.apache.ojb.broker.util.SqlHelper;
 import org.apache.ojb.broker.util.logging.Logger;
 import org.apache.ojb.broker.util.logging.LoggerFactory;
 import org.apache.ojb.broker.util.sequence.SequenceManagerException;
@@ -83,6 +86,23 @@ public class JdbcAccessImpl implements JdbcAccess
         return this.broker.serviceConnectionManager().getSupportedPlatform();
     }
 
+    /**
+     * Returns the {@link BatchManager} if batch mode is enabled and the given
+     * operation can be batched. Else all pending batch operations are executed,
+     * to keep the order of the operations, and <em>null</em> is returned.
+     */
+    private BatchManager getBatchManager(ClassDescriptor cld, int operation)
+    {
+        final ConnectionManagerIF cm = broker.serviceConnectionManager();
+        final BatchManager batch = cm.getBatchManager();
+        if (batch != null && (cld == null || batch.isBatchable(cld, operation)))
+        {
+            return batch;
+        }
+        cm.executeBatch();
+        return null;
+    }
+
     /**
      * performs a DELETE operation against RDBMS.
      * @param cld ClassDescriptor providing mapping information.
@@ -96,10 +116,14 @@ public class JdbcAccessImpl implements JdbcAccess
         }
 
         final StatementManagerIF sm = broker.serviceStatementManager();
+        final BatchManager batch = getBatchManager(cld, BatchManager.DELETE);
         PreparedStatement stmt = null;
         try
         {
-            stmt = sm.getDeleteStatement(cld);
+            stmt = batch != null
+                    ? batch.getStatement(cld, BatchManager.DELETE,
+                            broker.serviceSqlGenerator().getPreparedDeleteStatement(cld).getStatement())
+                    : sm.getDeleteStatement(cld);
             if (stmt == null)
             {
                 logger.error("getDeleteStatement returned a null statement");
@@ -114,7 +138,12 @@ public class JdbcAccessImpl implements JdbcAccess
             // thma: the following check is not secure. The object could be deleted *or* changed.
             // if it was deleted it makes no sense to throw an OL exception.
             // does is make sense to throw an OL exception if the object was changed?
-            if (stmt.executeUpdate() == 0 && cld.isLocking()) //BRJ
+            if (batch != null)
+            {
+                // the update count is checked when the batch is executed
+                batch.addBatch(stmt, obj);
+            }
+            else if (stmt.executeUpdate() == 0 && cld.isLocking()) //BRJ
             {
                 /**
                  * Kuali Foundation modification -- 6/19/2009
@@ -153,7 +182,7 @@ public class JdbcAccessImpl implements JdbcAccess
         }
         finally
         {
-            sm.closeResources(stmt, null);
+            if (batch == null) sm.closeResources(stmt, null);
         }
     }
 
@@ -171,6 +200,8 @@ public class JdbcAccessImpl implements JdbcAccess
         final StatementManagerIF sm = broker.serviceStatementManager();
         PreparedStatement stmt = null;
         final String sql = this.broker.serviceSqlGenerator().getPreparedDeleteStatement(query, cld).getStatement();
+        // execute pending batch operations first
+        broker.serviceConnectionManager().executeBatch();
         try
         {
             stmt = sm.getPreparedStatement(cld, sql,
@@ -204,10 +235,14 @@ public class JdbcAccessImpl implements JdbcAccess
             logger.debug("executeInsert: " + obj);
         }
         final StatementManagerIF sm = broker.serviceStatementManager();
+        final BatchManager batch = getBatchManager(cld, BatchManager.INSERT);
         PreparedStatement stmt = null;
         try
         {
-            stmt = sm.getInsertStatement(cld);
+            stmt = batch != null
+                    ? batch.getStatement(cld, BatchManager.INSERT,
+                            broker.serviceSqlGenerator().getPreparedInsertStatement(cld).getStatement())
+                    : sm.getInsertStatement(cld);
             if (stmt == null)
             {
                 logger.error("getInsertStatement returned a null statement");
@@ -218,7 +253,14 @@ public class JdbcAccessImpl implements JdbcAccess
             sm.bindInsert(stmt, cld, obj);
             if (logger.isDebugEnabled())
                 logger.debug("executeInsert: " + stmt);
-            stmt.executeUpdate();
+            if (batch != null)
+            {
+                batch.addBatch(stmt, obj);
+            }
+            else
+            {
+                stmt.executeUpdate();
+            }
             // after insert read and assign identity columns
             assignAutoincrementIdentityColumns(cld, obj);
 
@@ -241,7 +283,7 @@ public class JdbcAccessImpl implements JdbcAccess
         }
         finally
         {
-            sm.closeResources(stmt, null);
+            if (batch == null) sm.closeResources(stmt, null);
         }
     }
 
@@ -257,16 +299,19 @@ public class JdbcAccessImpl implements JdbcAccess
             logger.debug("executeQuery: " + query);
         }
         /*
-		 * MBAIRD: we should create a scrollable resultset if the start at
-		 * index or end at index is set
-		 */
-        boolean scrollable = ((query.getStartAtIndex() > Query.NO_START_AT_INDEX) || (query.getEndAtIndex() > Query.NO_END_AT_INDEX));
+         * the rows of the page are selected by the database if the platform
+         * supports paging
+         */
+        final boolean nativePaging = SqlHelper.isNativePaging(getPlatform(), query, cld.getRepository());
+        boolean scrollable = isScrollable(query, nativePaging);
         /*
-		 * OR if the prefetching of relationships is being used.
-		 */
-        if (query != null && query.getPrefetchedRelationships() != null && !query.getPrefetchedRelationships().isEmpty())
+         * a streaming query always uses a forward-only result set, the fetch size
+         * is set by the platform
+         */
+        final boolean streaming = query.isStreaming();
+        if (streaming)
         {
-            scrollable = true;
+            scrollable = false;
         }
         final StatementManagerIF sm = broker.serviceStatementManager();
         final SelectStatement sql = broker.serviceSqlGenerator().getPreparedSelectStatement(query, cld);
@@ -277,13 +322,18 @@ public class JdbcAccessImpl implements JdbcAccess
             final int queryFetchSize = query.getFetchSize();
             final boolean isStoredProcedure = isStoredProcedure(sql.getStatement());
             stmt = sm.getPreparedStatement(cld, sql.getStatement() ,
-                    scrollable, queryFetchSize, isStoredProcedure);
+                    scrollable, streaming ? StatementManagerIF.FETCH_SIZE_NOT_APPLICABLE : queryFetchSize,
+                    isStoredProcedure);
+            if (streaming)
+            {
+                prepareStreamingStatement(stmt, queryFetchSize);
+            }
             if (isStoredProcedure)
             {
                 // Query implemented as a stored procedure, which must return a result set.
                 // Query sytax is: { ?= call PROCEDURE_NAME(?,...,?)}
                 getPlatform().registerOutResultSet((CallableStatement) stmt, 1);
-                sm.bindStatement(stmt, query, cld, 2);
+                bindQueryStatement(stmt, query, cld, 2, nativePaging);
 
                 if (logger.isDebugEnabled())
                     logger.debug("executeQuery: " + stmt);
@@ -293,7 +343,7 @@ public class JdbcAccessImpl implements JdbcAccess
             }
             else
             {
-                sm.bindStatement(stmt, query, cld, 1);
+                bindQueryStatement(stmt, query, cld, 1, nativePaging);
 
                 if (logger.isDebugEnabled())
                     logger.debug("executeQuery: " + stmt);
@@ -318,6 +368,94 @@ public class JdbcAccessImpl implements JdbcAccess
         }
     }
 
+    /**
+     * Creates the statement of the given select on the given connection and binds
+     * the query values, the statement is executed by the caller. Used by
+     * {@link ParallelExtentQueryExecutor} to execute the queries of the extent
+     * classes on separate connections. Stored procedures and streaming queries
+     * are not supported.
+     */
+    PreparedStatement prepareQuery(Query query, ClassDescriptor cld, SelectStatement sql, Connection con)
+            throws SQLException
+    {
+        final boolean nativePaging = SqlHelper.isNativePaging(getPlatform(), query, cld.getRepository());
+        PreparedStatement stmt = cld.getStatementsForClass(broker.serviceConnectionManager()).getPreparedStmt(
+                con, sql.getStatement(), isScrollable(query, nativePaging), query.getFetchSize(), false);
+        try
+        {
+            bindQueryStatement(stmt, query, cld, 1, nativePaging);
+        }
+        catch (SQLException e)
+        {
+            stmt.close();
+            throw e;
+        }
+        return stmt;
+    }
+
+    /**
+     * Returns <em>true</em> if the query needs a scrollable result set.
+     */
+    private boolean isScrollable(Query query, boolean nativePaging)
+    {
+        /*
+		 * MBAIRD: we should create a scrollable resultset if the start at
+		 * index or end at index is set and the rows have to be skipped
+		 */
+        boolean scrollable = !nativePaging && query.usePaging();
+        /*
+		 * OR if the prefetching of relationships is being used.
+		 */
+        if (query != null && query.getPrefetchedRelationships() != null && !query.getPrefetchedRelationships().isEmpty())
+        {
+            scrollable = true;
+        }
+        return scrollable;
+    }
+
+    /**
+     * Binds the query values and, if the paging is done by the database, the paging parameters.
+     */
+    private int bindQueryStatement(PreparedStatement stmt, Query query, ClassDescriptor cld,
+                                   int index, boolean nativePaging) throws SQLException
+    {
+        final Platform platform = getPlatform();
+        if (nativePaging && platform.bindPagingParametersFirst())
+        {
+            index = platform.bindPagingParameters(stmt, index,
+                    SqlHelper.getPagingStartIndex(query), SqlHelper.getPagingEndIndex(query));
+        }
+        index = broker.serviceStatementManager().bindStatement(stmt, query, cld, index);
+        if (nativePaging && !platform.bindPagingParametersFirst())
+        {
+            index = platform.bindPagingParameters(stmt, index,
+                    SqlHelper.getPagingStartIndex(query), SqlHelper.getPagingEndIndex(query));
+        }
+        return index;
+    }
+
+    /**
+     * Prepares the statement of a streaming query, the fetch size hint passed to the
+     * platform is the fetch size of the query or, if not set, of the connection pool.
+     */
+    private void prepareStreamingStatement(Statement stmt, int queryFetchSize)
+    {
+        int fetchSizeHint = queryFetchSize;
+        if (fetchSizeHint <= 0)
+        {
+            fetchSizeHint = broker.serviceConnectionManager().getConnectionDescriptor()
+                    .getConnectionPoolDescriptor().getFetchSize();
+        }
+        try
+        {
+            getPlatform().prepareStreamingStatement(stmt, fetchSizeHint);
+        }
+        catch (PlatformException e)
+        {
+            throw new PersistenceBrokerException("Can't prepare statement for streaming query", e);
+        }
+    }
+
     public ResultSetAndStatement executeSQL(
         String sqlStatement,
         ClassDescriptor cld,
@@ -424,6 +562,8 @@ public class JdbcAccessImpl implements JdbcAccess
         int index;
         PreparedStatement stmt = null;
         final StatementManagerIF sm = broker.serviceStatementManager();
+        // execute pending batch operations first
+        broker.serviceConnectionManager().executeBatch();
         try
         {
             stmt = sm.getPreparedStatement(cld, sqlStatement,
@@ -449,6 +589,49 @@ public class JdbcAccessImpl implements JdbcAccess
         return result;
     }
 
+    /**
+     * Performs an INSERT, UPDATE or DELETE statement against a table without
+     * class descriptor, e.g. the indirection table of a m:n relation.
+     * The statement is batched if batch mode is enabled.
+     * @param sqlStatement the statement string.
+     * @param table the name of the table.
+     * @param operation one of {@link BatchManager#INSERT}, {@link BatchManager#UPDATE}
+     * or {@link BatchManager#DELETE}.
+     * @param cld ClassDescriptor providing meta-information.
+     */
+    public void executeUpdateSQL(
+        String sqlStatement,
+        String table,
+        int operation,
+        ClassDescriptor cld,
+        ValueContainer[] values1,
+        ValueContainer[] values2)
+        throws PersistenceBrokerException
+    {
+        final BatchManager batch = getBatchManager(null, operation);
+        if (batch == null)
+        {
+            executeUpdateSQL(sqlStatement, cld, values1, values2);
+            return;
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("executeUpdateSQL (batched): " + sqlStatement);
+
+        final StatementManagerIF sm = broker.serviceStatementManager();
+        try
+        {
+            PreparedStatement stmt = batch.getStatement(table, operation, sqlStatement);
+            int index = sm.bindValues(stmt, values1, 1);
+            sm.bindValues(stmt, values2, index);
+            batch.addBatch(stmt, null);
+        }
+        catch (SQLException e)
+        {
+            ValueContainer[] tmp = addValues(values1, values2);
+            throw ExceptionHelper.generateException(e, sqlStatement, cld, tmp, logger, null);
+        }
+    }
+
     /** Helper method, returns the addition of both arrays (add source to target array) */
     private ValueContainer[] addValues(ValueContainer[] target, ValueContainer[] source)
     {
@@ -497,9 +680,13 @@ public class JdbcAccessImpl implements JdbcAccess
         // locking values will be restored in case of exception
         ValueContainer[] oldLockingValues;
         oldLockingValues = cld.getCurrentLockingValues(obj);
+        final BatchManager batch = getBatchManager(cld, BatchManager.UPDATE);
         try
         {
-            stmt = sm.getUpdateStatement(cld);
+            stmt = batch != null
+                    ? batch.getStatement(cld, BatchManager.UPDATE,
+                            broker.serviceSqlGenerator().getPreparedUpdateStatement(cld).getStatement())
+                    : sm.getUpdateStatement(cld);
             if (stmt == null)
             {
                 logger.error("getUpdateStatement returned a null statement");
@@ -510,7 +697,12 @@ public class JdbcAccessImpl implements JdbcAccess
             if (logger.isDebugEnabled())
                 logger.debug("executeUpdate: " + stmt);
 
-            if ((stmt.executeUpdate() == 0) && cld.isLocking()) //BRJ
+            if (batch != null)
+            {
+                // the update count is checked when the batch is executed
+                batch.addBatch(stmt, obj);
+            }
+            else if ((stmt.executeUpdate() == 0) && cld.isLocking()) //BRJ
             {
                 /**
                  * Kuali Foundation modification -- 6/19/2009
@@ -554,7 +746,7 @@ public class JdbcAccessImpl implements JdbcAccess
         }
         finally
         {
-            sm.closeResources(stmt, null);
+            if (batch == null) sm.closeResources(stmt, null);
         }
     }
 
@@ -593,7 +785,7 @@ public class JdbcAccessImpl implements JdbcAccess
             ResultSetAndStatement rs_stmt = new ResultSetAndStatement(broker.serviceStatementManager(), stmt, rs, sql);
             if (rs.next())
             {
-                Map row = new HashMap();
+                Map row = RowBuffer.newRow(cld.getRowReader());
                 cld.getRowReader().readObjectArrayFrom(rs_stmt, row);
                 result = cld.getRowReader().readObjectFrom(row);
             }
@@ -25,6 +25,12 @@ import org.apache.ojb.broker.query.Query;
  * 
  * startAt = 1, endAt = 11 returns rows 1 to 11 if available
  * if endAt == Query.NO_END_AT_INDEX endAt is set to the last available row
+ * <p>
+ * If the paging is done by the database (see
+ * {@link org.apache.ojb.broker.platforms.Platform#supportsPaging()}) the wrapped
+ * iterator only contains the rows of the page, otherwise the rows before startAt
+ * are skipped by moving the cursor of the wrapped iterator.
+ * </p>
  * 
  * @author <a href="mailto:jbraeuchi@gmx.ch">Jakob Braeuchi</a>
  * @version $Id: PagingIterator.java,v 1.1 2007-08-24 22:17:30 ewestfal Exp $
@@ -37,6 +43,7 @@ public class PagingIterator implements OJBIterator
     private int m_rowLimit;
     private int m_fullSize;
     private int m_currentCursorPosition; // position of the wrapped iterator
+    private final boolean m_nativePaging;
 
     /**
      * Constructor 
@@ -45,6 +52,18 @@ public class PagingIterator implements OJBIterator
      * @param endAt (Query.NO_END_AT_INDEX stands for all available rows) 
      */
     public PagingIterator(OJBIterator anIterator, int startAt, int endAt)
+    {
+        this(anIterator, startAt, endAt, false);
+    }
+
+    /**
+     * Constructor 
+     * @param anIterator wrapped Iterator
+     * @param startAt (first row is 1)
+     * @param endAt (Query.NO_END_AT_INDEX stands for all available rows) 
+     * @param nativePaging true if the wrapped Iterator only contains the rows of the page
+     */
+    public PagingIterator(OJBIterator anIterator, int startAt, int endAt, boolean nativePaging)
     {
         super();
 
@@ -54,7 +73,7 @@ public class PagingIterator implements OJBIterator
         }
 
         m_iterator = anIterator;
-        m_fullSize = m_iterator.size();
+        m_nativePaging = nativePaging;
 
         if (startAt == Query.NO_START_AT_INDEX)
         {
@@ -65,6 +84,18 @@ public class PagingIterator implements OJBIterator
             m_startAt = startAt;
         }
 
+        if (m_nativePaging)
+        {
+            // the full size is only counted on demand
+            m_fullSize = -1;
+            m_endAt = endAt == Query.NO_END_AT_INDEX ? Integer.MAX_VALUE : endAt;
+            m_rowLimit = m_endAt - m_startAt + 1;
+            m_currentCursorPosition = m_startAt - 1;
+            return;
+        }
+
+        m_fullSize = m_iterator.size();
+
         if (endAt == Query.NO_END_AT_INDEX)
         {
             m_endAt = m_fullSize;
@@ -85,6 +116,10 @@ public class PagingIterator implements OJBIterator
 	 */
     public int size() throws PersistenceBrokerException
     {
+        if (m_nativePaging)
+        {
+            return Math.max(0, Math.min(m_endAt, fullSize()) - m_startAt + 1);
+        }
         if (m_fullSize < m_rowLimit)
         {
             return m_fullSize;
@@ -100,6 +135,10 @@ public class PagingIterator implements OJBIterator
      */
     public int fullSize() throws PersistenceBrokerException
     {
+        if (m_fullSize < 0)
+        {
+            m_fullSize = m_iterator.fullSize();
+        }
         return m_fullSize;
     }
     
@@ -112,7 +151,8 @@ public class PagingIterator implements OJBIterator
         
         if (newPosition < m_startAt)
         {
-            newPosition = Math.max(m_endAt + row, m_startAt - 1);
+            int endAt = m_nativePaging ? Math.min(m_endAt, fullSize()) : m_endAt;
+            newPosition = Math.max(endAt + row, m_startAt - 1);
         }
         
         if (newPosition > m_endAt)
@@ -121,6 +161,11 @@ public class PagingIterator implements OJBIterator
         }
         
         m_currentCursorPosition = newPosition;
+        if (m_nativePaging)
+        {
+            // the wrapped iterator starts with the first row of the page
+            return m_iterator.absolute(newPosition - (m_startAt - 1));
+        }
         return m_iterator.absolute(newPosition);
     }
 
@@ -153,7 +198,7 @@ public class PagingIterator implements OJBIterator
 	 */
     public boolean hasNext()
     {
-        if (m_currentCursorPosition < m_endAt)
+        if (m_currentCursorPosition < m_endAt && (!m_nativePaging || m_iterator.hasNext()))
         {
             return true;
         }
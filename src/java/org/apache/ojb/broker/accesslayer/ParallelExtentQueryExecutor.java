@@ -0,0 +1,371 @@
+package org.apache.ojb.broker.accesslayer;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.ojb.broker.PersistenceBrokerException;
+import org.apache.ojb.broker.PersistenceBrokerFactory;
+import org.apache.ojb.broker.accesslayer.sql.SelectStatement;
+import org.apache.ojb.broker.core.PersistenceBrokerConfiguration;
+import org.apache.ojb.broker.core.PersistenceBrokerImpl;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.JdbcConnectionDescriptor;
+import org.apache.ojb.broker.platforms.Platform;
+import org.apache.ojb.broker.platforms.PlatformException;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryBySQL;
+import org.apache.ojb.broker.util.ExceptionHelper;
+import org.apache.ojb.broker.util.configuration.ConfigurationException;
+import org.apache.ojb.broker.util.logging.Logger;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+
+/**
+ * Executes the select statements of the extent classes of a query concurrently,
+ * each on its own connection looked up from the {@link ConnectionFactory}. The
+ * statements are generated, prepared and bound by the calling thread, only the
+ * execution is done by the threads of a pool shared by all brokers. The result
+ * sets are read by the broker as usual, closing a {@link ResultSetAndStatement}
+ * releases its connection.
+ * <br/>
+ * The number of threads is set by the <em>ExtentQueryThreads</em> property
+ * in OJB.properties, 0 disables the concurrent execution. Queries of a broker in
+ * transaction have to see the changes of the transaction and are never executed
+ * concurrently, neither are streaming, SQL based and stored procedure queries
+ * nor queries in managed environments. If the connection pool is exhausted the
+ * remaining queries are executed by the broker.
+ *
+ * @version $Id$
+ */
+public class ParallelExtentQueryExecutor
+{
+    private static Logger log = LoggerFactory.getLogger(ParallelExtentQueryExecutor.class);
+
+    private static ExecutorService executor;
+    private static boolean initialized;
+
+    private final PersistenceBrokerImpl broker;
+    /** The results not yet closed, released when the broker is closed */
+    private final List openResults = new ArrayList();
+
+    public ParallelExtentQueryExecutor(PersistenceBrokerImpl broker)
+    {
+        this.broker = broker;
+    }
+
+    /**
+     * Returns the shared thread pool or <em>null</em> if the
+     * concurrent execution is disabled.
+     */
+    private static synchronized ExecutorService getExecutor()
+    {
+        if(!initialized)
+        {
+            int threads = getExtentQueryThreads();
+            if(threads > 0)
+            {
+                executor = Executors.newFixedThreadPool(threads, new ThreadFactory()
+                {
+                    private int count;
+
+                    public synchronized Thread newThread(Runnable r)
+                    {
+                        Thread thread = new Thread(r, "OJB extent query " + (++count));
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            initialized = true;
+        }
+        return executor;
+    }
+
+    /**
+     * read the ExtentQueryThreads from Config based on OJB.properties
+     */
+    private static int getExtentQueryThreads()
+    {
+        try
+        {
+            PersistenceBrokerConfiguration config = (PersistenceBrokerConfiguration) PersistenceBrokerFactory
+                    .getConfigurator().getConfigurationFor(null);
+            return config.getExtentQueryThreads();
+        }
+        catch(ConfigurationException e)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns <em>true</em> if the queries of the given extent classes
+     * can be executed concurrently.
+     */
+    public boolean isExecutable(Query query, List extentClasses)
+    {
+        if(extentClasses.size() < 2 || getExecutor() == null || query instanceof QueryBySQL
+                || query.isStreaming() || broker.isInTransaction() || broker.isManaged())
+        {
+            return false;
+        }
+        if(!(broker.serviceJdbcAccess() instanceof JdbcAccessImpl)
+                || !(broker.serviceConnectionManager() instanceof ConnectionManagerImpl))
+        {
+            return false;
+        }
+        ConnectionManagerImpl conMan = (ConnectionManagerImpl) broker.serviceConnectionManager();
+        return !conMan.getConnectionDescriptor().getEagerRelease();
+    }
+
+    /**
+     * Executes the query for each of the given extent classes concurrently.
+     *
+     * @param query the query
+     * @param extentClasses the {@link ClassDescriptor} of the extent classes
+     * @return the executed query of each class, <em>null</em> for the classes the query
+     * has to be executed by the broker
+     */
+    public ResultSetAndStatement[] execute(Query query, List extentClasses) throws PersistenceBrokerException
+    {
+        ConnectionManagerImpl conMan = (ConnectionManagerImpl) broker.serviceConnectionManager();
+        ConnectionFactory factory = conMan.getUnderlyingConnectionFactory();
+        JdbcConnectionDescriptor jcd = conMan.getConnectionDescriptor();
+        JdbcAccessImpl jdbcAccess = (JdbcAccessImpl) broker.serviceJdbcAccess();
+
+        ExtentResult[] results = new ExtentResult[extentClasses.size()];
+        Future[] executions = new Future[results.length];
+        int current = 0;
+        try
+        {
+            for(int i = 0; i < results.length; i++)
+            {
+                ClassDescriptor cld = (ClassDescriptor) extentClasses.get(i);
+                SelectStatement sql = broker.serviceSqlGenerator().getPreparedSelectStatement(query, cld);
+                if(jdbcAccess.isStoredProcedure(sql.getStatement()))
+                {
+                    continue;
+                }
+                Connection con;
+                try
+                {
+                    con = factory.lookupConnection(jcd);
+                }
+                catch(LookupException e)
+                {
+                    log.info("Can't lookup connection for query of extent, the remaining queries are executed by the broker: "
+                            + e.getMessage());
+                    break;
+                }
+                results[i] = new ExtentResult(factory, jcd, con, sql);
+                try
+                {
+                    results[i].stmt = jdbcAccess.prepareQuery(query, cld, sql, con);
+                }
+                catch(SQLException e)
+                {
+                    throw ExceptionHelper.generateException(e, sql.getStatement(), cld, log, null);
+                }
+                executions[i] = getExecutor().submit(results[i]);
+            }
+
+            ResultSetAndStatement[] result = new ResultSetAndStatement[results.length];
+            for(current = 0; current < results.length; current++)
+            {
+                if(executions[current] != null)
+                {
+                    result[current] = new ExtentResultSetAndStatement(results[current],
+                            (ResultSet) executions[current].get());
+                }
+            }
+            synchronized(openResults)
+            {
+                removeClosedResults();
+                for(int i = 0; i < result.length; i++)
+                {
+                    if(result[i] != null) openResults.add(result[i]);
+                }
+            }
+            return result;
+        }
+        catch(InterruptedException e)
+        {
+            release(results, executions);
+            Thread.currentThread().interrupt();
+            throw new PersistenceBrokerException("Interrupted while executing the queries of the extents", e);
+        }
+        catch(ExecutionException e)
+        {
+            release(results, executions);
+            Throwable cause = e.getCause();
+            if(cause instanceof SQLException)
+            {
+                throw ExceptionHelper.generateException((SQLException) cause,
+                        results[current].sql.getStatement(), (ClassDescriptor) extentClasses.get(current), log, null);
+            }
+            throw new PersistenceBrokerException("Can't execute the queries of the extents", cause);
+        }
+        catch(RuntimeException e)
+        {
+            release(results, executions);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the results not yet closed, called when the broker is closed.
+     */
+    public void releaseResources()
+    {
+        synchronized(openResults)
+        {
+            for(Iterator it = openResults.iterator(); it.hasNext();)
+            {
+                ((ResultSetAndStatement) it.next()).close();
+            }
+            openResults.clear();
+        }
+    }
+
+    private void removeClosedResults()
+    {
+        for(Iterator it = openResults.iterator(); it.hasNext();)
+        {
+            if(((ExtentResultSetAndStatement) it.next()).isClosed())
+            {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Waits for the running executions and closes all statements
+     * and connections of a failed execution.
+     */
+    private void release(ExtentResult[] results, Future[] executions)
+    {
+        for(int i = 0; i < results.length; i++)
+        {
+            if(results[i] == null) continue;
+            ResultSet rs = null;
+            if(executions[i] != null)
+            {
+                try
+                {
+                    rs = (ResultSet) executions[i].get();
+                }
+                catch(Exception ignore)
+                {
+                    // the result is closed anyway
+                }
+            }
+            new ExtentResultSetAndStatement(results[i], rs).close();
+        }
+    }
+
+    //**********************************************************************
+    // inner classes
+    //**********************************************************************
+
+    /**
+     * The statement of an extent class executed on its own connection.
+     */
+    class ExtentResult implements Callable
+    {
+        final ConnectionFactory factory;
+        final JdbcConnectionDescriptor jcd;
+        final Connection con;
+        final SelectStatement sql;
+        PreparedStatement stmt;
+
+        ExtentResult(ConnectionFactory factory, JdbcConnectionDescriptor jcd, Connection con, SelectStatement sql)
+        {
+            this.factory = factory;
+            this.jcd = jcd;
+            this.con = con;
+            this.sql = sql;
+        }
+
+        public Object call() throws Exception
+        {
+            if(log.isDebugEnabled()) log.debug("executeQuery: " + stmt);
+            return stmt.executeQuery();
+        }
+    }
+
+    /**
+     * Releases the connection of the executed statement when closed.
+     */
+    class ExtentResultSetAndStatement extends ResultSetAndStatement
+    {
+        private final ExtentResult result;
+        private boolean closed;
+
+        ExtentResultSetAndStatement(ExtentResult result, ResultSet rs)
+        {
+            super(null, result.stmt, rs, result.sql);
+            this.result = result;
+        }
+
+        boolean isClosed()
+        {
+            return closed;
+        }
+
+        public void close()
+        {
+            synchronized(openResults)
+            {
+                if(closed) return;
+                closed = true;
+            }
+            Platform platform = broker.serviceConnectionManager().getSupportedPlatform();
+            try
+            {
+                platform.beforeStatementClose(m_stmt, m_rs);
+                if(m_stmt != null)
+                {
+                    m_stmt.close();
+                }
+                platform.afterStatementClose(m_stmt, m_rs);
+            }
+            catch(PlatformException e)
+            {
+                log.error("Platform dependent operation failed", e);
+            }
+            catch(SQLException ignored)
+            {
+                if(log.isDebugEnabled()) log.debug("Statement closing failed", ignored);
+            }
+            finally
+            {
+                result.factory.releaseConnection(result.jcd, result.con);
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package org.apache.ojb.broker.accesslayer;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A reusable container for the values of a result set row, the values are stored
+ * in an array indexed by the slots of a {@link RowLayout}. Calling {@link #clear()}
+ * doesn't touch the stored values, so a buffer can be reused for every row of a result
+ * set without any allocation.
+ * <p/>
+ * For compatibility with {@link RowReader} implementations expecting a column name
+ * based row, this class implements {@link Map} too. Keys not part of the layout
+ * are kept in an additional map.
+ *
+ * @version $Id$
+ */
+public class RowBuffer extends AbstractMap
+{
+    private final RowLayout layout;
+    private final Object[] values;
+    /**
+     * A slot is assigned in the current row if its stamp equals the current generation.
+     */
+    private final int[] stamps;
+    private int generation = 1;
+    private Map overflow;
+
+    public RowBuffer(RowLayout layout)
+    {
+        this.layout = layout;
+        this.values = new Object[layout.size()];
+        this.stamps = new int[layout.size()];
+    }
+
+    /**
+     * Returns a new row container for the given {@link RowReader}, a {@link RowBuffer}
+     * if the reader supports it, else a {@link HashMap}.
+     */
+    public static Map newRow(RowReader reader)
+    {
+        if(reader instanceof IndexedRowReader)
+        {
+            return new RowBuffer(((IndexedRowReader) reader).getRowLayout());
+        }
+        return new HashMap();
+    }
+
+    public RowLayout getLayout()
+    {
+        return layout;
+    }
+
+    /**
+     * Returns <em>true</em> if a value was set for the given slot in the current row.
+     */
+    public boolean isAssigned(int slot)
+    {
+        return stamps[slot] == generation;
+    }
+
+    /**
+     * Returns the value of the given slot or <em>null</em> if not assigned.
+     */
+    public Object getValue(int slot)
+    {
+        return stamps[slot] == generation ? values[slot] : null;
+    }
+
+    /**
+     * Sets the value of the given slot.
+     */
+    public void setValue(int slot, Object value)
+    {
+        values[slot] = value;
+        stamps[slot] = generation;
+    }
+
+    /**
+     * Unassign all values.
+     */
+    public void clear()
+    {
+        if(++generation == Integer.MAX_VALUE)
+        {
+            // wrap around, reset all stamps
+            generation = 1;
+            for(int i = 0; i < stamps.length; i++)
+            {
+                stamps[i] = 0;
+            }
+        }
+        if(overflow != null)
+        {
+            overflow.clear();
+        }
+    }
+
+    //=============================================================
+    // Map implementation
+    //=============================================================
+    public Object get(Object key)
+    {
+        int slot = layout.indexOf(key);
+        if(slot >= 0)
+        {
+            return getValue(slot);
+        }
+        return overflow != null ? overflow.get(key) : null;
+    }
+
+    public boolean containsKey(Object key)
+    {
+        int slot = layout.indexOf(key);
+        if(slot >= 0)
+        {
+            return isAssigned(slot);
+        }
+        return overflow != null && overflow.containsKey(key);
+    }
+
+    public Object put(Object key, Object value)
+    {
+        int slot = layout.indexOf(key);
+        if(slot >= 0)
+        {
+            Object old = getValue(slot);
+            setValue(slot, value);
+            return old;
+        }
+        if(overflow == null)
+        {
+            overflow = new HashMap();
+        }
+        return overflow.put(key, value);
+    }
+
+    public Object remove(Object key)
+    {
+        int slot = layout.indexOf(key);
+        if(slot >= 0)
+        {
+            Object old = getValue(slot);
+            stamps[slot] = 0;
+            values[slot] = null;
+            return old;
+        }
+        return overflow != null ? overflow.remove(key) : null;
+    }
+
+    public int size()
+    {
+        int result = overflow != null ? overflow.size() : 0;
+        for(int i = 0; i < stamps.length; i++)
+        {
+            if(stamps[i] == generation) ++result;
+        }
+        return result;
+    }
+
+    /**
+     * Returns a snapshot of the current row, changes of the returned
+     * set are not written back to the buffer.
+     */
+    public Set entrySet()
+    {
+        Map result = new HashMap();
+        for(int i = 0; i < stamps.length; i++)
+        {
+            if(stamps[i] == generation)
+            {
+                result.put(layout.getColumnName(i), values[i]);
+            }
+        }
+        if(overflow != null)
+        {
+            result.putAll(overflow);
+        }
+        return result.entrySet();
+    }
+}
@@ -0,0 +1,162 @@
+package org.apache.ojb.broker.accesslayer;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.FieldDescriptor;
+
+/**
+ * The column layout of a {@link RowBuffer}. Each column name read by a {@link RowReader}
+ * is assigned a fixed <em>slot</em>, the index of the value in the row buffer. The layout
+ * is computed once per {@link ClassDescriptor} and shared by all row buffers (and threads)
+ * using the descriptor.
+ *
+ * @version $Id$
+ */
+public final class RowLayout
+{
+    private final String[] columnNames;
+    private final Map slotMap;
+    /**
+     * Caches the slots of the field arrays used to read rows, the key is the
+     * array instance (field arrays of {@link ClassDescriptor} are cached too).
+     * Replaced (never modified) when a new array is added.
+     */
+    private volatile Map fieldSlots = new IdentityHashMap();
+
+    /**
+     * Creates a layout for the given column names.
+     *
+     * @param columnNames The column names, duplicates are ignored.
+     */
+    public RowLayout(String[] columnNames)
+    {
+        List names = new ArrayList(columnNames.length);
+        slotMap = new HashMap();
+        for(int i = 0; i < columnNames.length; i++)
+        {
+            String name = columnNames[i];
+            if(name != null && !slotMap.containsKey(name))
+            {
+                slotMap.put(name, new Integer(names.size()));
+                names.add(name);
+            }
+        }
+        this.columnNames = (String[]) names.toArray(new String[names.size()]);
+    }
+
+    /**
+     * Builds the layout for all columns which could be read for the given class
+     * (including the fields of all concrete subclasses, to support multiple classes mapped
+     * to the same table) and the given additional keys.
+     */
+    public static RowLayout build(ClassDescriptor cld, String[] additionalKeys)
+    {
+        List names = new ArrayList();
+        addColumns(names, cld);
+        if(cld.getSuperClass() != null)
+        {
+            addColumns(names, cld.getFieldDescriptorsInHeirarchy());
+        }
+        if(cld.getRepository() != null)
+        {
+            for(Iterator it = cld.getRepository().getAllConcreteSubclassDescriptors(cld).iterator(); it.hasNext();)
+            {
+                addColumns(names, (ClassDescriptor) it.next());
+            }
+        }
+        for(int i = 0; i < additionalKeys.length; i++)
+        {
+            names.add(additionalKeys[i]);
+        }
+        return new RowLayout((String[]) names.toArray(new String[names.size()]));
+    }
+
+    private static void addColumns(List names, ClassDescriptor cld)
+    {
+        addColumns(names, cld.getFieldDescriptor(true));
+        if(cld.getOjbConcreteClassField() != null)
+        {
+            names.add(cld.getOjbConcreteClassField().getColumnName());
+        }
+    }
+
+    private static void addColumns(List names, FieldDescriptor[] fields)
+    {
+        if(fields == null) return;
+        for(int i = 0; i < fields.length; i++)
+        {
+            names.add(fields[i].getColumnName());
+        }
+    }
+
+    /**
+     * Returns the number of slots.
+     */
+    public int size()
+    {
+        return columnNames.length;
+    }
+
+    /**
+     * Returns the column name of the given slot.
+     */
+    public String getColumnName(int slot)
+    {
+        return columnNames[slot];
+    }
+
+    /**
+     * Returns the slot of the given column name or <em>-1</em> if the column
+     * is not part of this layout.
+     */
+    public int indexOf(Object columnName)
+    {
+        Integer slot = (Integer) slotMap.get(columnName);
+        return slot != null ? slot.intValue() : -1;
+    }
+
+    /**
+     * Returns the slots of the columns of the given fields, an entry is <em>-1</em> if the
+     * column is not part of this layout. The result is cached per array instance.
+     */
+    public int[] getSlots(FieldDescriptor[] fields)
+    {
+        int[] result = (int[]) fieldSlots.get(fields);
+        if(result == null)
+        {
+            result = new int[fields.length];
+            for(int i = 0; i < fields.length; i++)
+            {
+                result[i] = indexOf(fields[i].getColumnName());
+            }
+            synchronized(this)
+            {
+                Map temp = new IdentityHashMap(fieldSlots);
+                temp.put(fields, result);
+                fieldSlots = temp;
+            }
+        }
+        return result;
+    }
+}
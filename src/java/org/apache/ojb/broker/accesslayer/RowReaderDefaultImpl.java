@@ -27,12 +27,13 @@ import org.apache.ojb.broker.util.ClassHelper;
 import org.apache.ojb.broker.util.SqlHelper;
 
 /**
- * Default implementation of the {@link RowReader} interface.
+ * Default implementation of the {@link RowReader} interface. Supports
+ * array based {@link RowBuffer} rows, see {@link IndexedRowReader}.
  *
  * @version $Id: RowReaderDefaultImpl.java,v 1.1 2007-08-24 22:17:30 ewestfal Exp $
  */
 
-public class RowReaderDefaultImpl implements RowReader
+public class RowReaderDefaultImpl implements IndexedRowReader
 {
     /**
      * Used as key in result set row map.
@@ -44,12 +45,27 @@ public class RowReaderDefaultImpl implements RowReader
     private static final Object[] NO_ARGS = {};
 
     private ClassDescriptor m_cld;
+    private transient RowLayout m_layout;
 
     public RowReaderDefaultImpl(ClassDescriptor cld)
     {
         this.m_cld = cld;
     }
 
+    /**
+     * @see IndexedRowReader#getRowLayout()
+     */
+    public RowLayout getRowLayout()
+    {
+        RowLayout result = m_layout;
+        if(result == null)
+        {
+            result = RowLayout.build(m_cld, new String[]{OJB_CONCRETE_CLASS_KEY});
+            m_layout = result;
+        }
+        return result;
+    }
+
     /**
      * materialize a single object, described by cld,
      * from the first row of the ResultSet rs.
@@ -118,10 +134,25 @@ public class RowReaderDefaultImpl implements RowReader
         }
 
         // 2. fill all scalar attributes of the new object
-        for (int i = 0; i < fields.length; i++)
+        if(row instanceof RowBuffer)
         {
-            fmd = fields[i];
-            fmd.getPersistentField().set(result, row.get(fmd.getColumnName()));
+            RowBuffer buffer = (RowBuffer) row;
+            int[] slots = buffer.getLayout().getSlots(fields);
+            for (int i = 0; i < fields.length; i++)
+            {
+                fmd = fields[i];
+                int slot = slots[i];
+                fmd.getPersistentField().set(result,
+                        slot >= 0 ? buffer.getValue(slot) : row.get(fmd.getColumnName()));
+            }
+        }
+        else
+        {
+            for (int i = 0; i < fields.length; i++)
+            {
+                fmd = fields[i];
+                fmd.getPersistentField().set(result, row.get(fmd.getColumnName()));
+            }
         }
 
         if(targetObject == null)
@@ -235,16 +266,27 @@ TODO: this feature doesn't work, so remove this in future
         int size = fields.length;
         Object val;
         FieldDescriptor fld = null;
+        RowBuffer buffer = row instanceof RowBuffer ? (RowBuffer) row : null;
+        int[] slots = buffer != null ? buffer.getLayout().getSlots(fields) : null;
         try
         {
             for (int j = 0; j < size; j++)
             {
                 fld = fields[j];
-                if(!row.containsKey(fld.getColumnName()))
+                int slot = slots != null ? slots[j] : -1;
+                if(slot >= 0 ? !buffer.isAssigned(slot) : !row.containsKey(fld.getColumnName()))
                 {
                     int idx = rs_stmt.m_sql.getColumnIndex(fld);
                     val = fld.getJdbcType().getObjectFromColumn(rs_stmt.m_rs, null, fld.getColumnName(), idx);
-                    row.put(fld.getColumnName(), fld.getFieldConversion().sqlToJava(val));
+                    val = fld.getFieldConversion().sqlToJava(val);
+                    if(slot >= 0)
+                    {
+                        buffer.setValue(slot, val);
+                    }
+                    else
+                    {
+                        row.put(fld.getColumnName(), val);
+                    }
                 }
             }
         }
@@ -316,6 +358,7 @@ TODO: this feature doesn't work, so remove this in future
     public void setClassDescriptor(ClassDescriptor cld)
     {
         this.m_cld = cld;
+        this.m_layout = null;
     }
 
     public ClassDescriptor getClassDescriptor()
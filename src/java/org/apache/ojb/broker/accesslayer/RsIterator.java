@@ -19,7 +19,6 @@ import java.lang.ref.WeakReference;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -42,6 +41,7 @@ import org.apache.ojb.broker.metadata.FieldDescriptor;
 import org.apache.ojb.broker.metadata.JdbcConnectionDescriptor;
 import org.apache.ojb.broker.query.Query;
 import org.apache.ojb.broker.query.QueryBySQL;
+import org.apache.ojb.broker.util.SqlHelper;
 import org.apache.ojb.broker.util.logging.Logger;
 import org.apache.ojb.broker.util.logging.LoggerFactory;
 
@@ -152,6 +152,9 @@ public class RsIterator implements OJBIterator
     /** if true do not fire PBLifeCycleEvent. */
     private boolean disableLifeCycleEvents = false;
 
+    /** if true the result set contains only the rows of the requested page. */
+    private boolean nativePaging = false;
+
     /**
      * RsIterator constructor.
      *
@@ -161,9 +164,12 @@ public class RsIterator implements OJBIterator
     public RsIterator(RsQueryObject queryObject, final PersistenceBrokerImpl broker)
     {
         setCache(broker.getInternalCache());
-        setRow(new HashMap());
+        setRow(RowBuffer.newRow(queryObject.getClassDescriptor().getRowReader()));
         setBroker(broker);
         setQueryObject(queryObject);
+        nativePaging = !queryObject.isSQLBased() && SqlHelper.isNativePaging(
+                broker.serviceConnectionManager().getSupportedPlatform(), queryObject.getQuery(),
+                queryObject.getClassDescriptor().getRepository());
 
         Class classToPrefetch = broker.getReferenceBroker().getClassToPrefetch();
         if ((classToPrefetch != null) && classToPrefetch.isAssignableFrom(queryObject.getClassDescriptor().getClassOfObject()))
@@ -175,13 +181,6 @@ public class RsIterator implements OJBIterator
             setItemProxyClass(queryObject.getClassDescriptor().getProxyClass());
         }
 
-        /*
-		 * arminw: to improve performance we only use this instance to fire
-		 * events and set the target object on every use TODO: Find a better
-		 * solution
-		 */
-        setAfterLookupEvent(new PBLifeCycleEvent(getBroker(), PBLifeCycleEvent.Type.AFTER_LOOKUP));
-
         try
         {
             setRsAndStmt(queryObject.performQuery(broker.serviceJdbcAccess()));
@@ -280,7 +279,7 @@ public class RsIterator implements OJBIterator
 
                 // Invoke events on PersistenceBrokerAware instances and listeners
                 // set target object
-                if (!disableLifeCycleEvents)
+                if (!disableLifeCycleEvents && getBroker().isLifeCycleEventRequired(obj))
                 {
                     getAfterLookupEvent().setTarget(obj);
                     getBroker().fireBrokerEvent(getAfterLookupEvent());
@@ -343,6 +342,12 @@ public class RsIterator implements OJBIterator
             return;
         }
 
+        if (getQueryObject().isStreaming())
+        {
+            logger.info("prefetching relationships is not supported by streaming queries");
+            return;
+        }
+
         if (!supportsAdvancedJDBCCursorControl())
         {
             logger.info("prefetching relationships requires JDBC level 2.0");
@@ -471,7 +476,16 @@ public class RsIterator implements OJBIterator
                         getCache().enableMaterializationCache();
                         try
                         {
-                            getCache().doInternalCache(oid, result, ObjectCacheInternal.TYPE_NEW_MATERIALIZED);
+                            /*
+                             * objects of streaming queries are only kept in the
+                             * materialization cache, to avoid flooding the object cache
+                             */
+                            getCache().doInternalCache(oid, result, getQueryObject().isStreaming()
+                                    ? ObjectCacheInternal.TYPE_TEMP : ObjectCacheInternal.TYPE_NEW_MATERIALIZED);
+                            if (!getQueryObject().isStreaming())
+                            {
+                                getBroker().registerExtentClass(oid, result);
+                            }
                             /**
                              * MBAIRD if you have multiple classes mapped to a
                              * table, and you query on the base class you could get
@@ -536,9 +550,14 @@ public class RsIterator implements OJBIterator
      * with a new batch of JDBC 3.0 drivers coming out we can't just check for
      * begins with 2, we need to check the actual version and see if it's
      * greater than or equal to 2.
+     * Streaming queries always use forward-only result sets.
      */
     private boolean supportsAdvancedJDBCCursorControl()
     {
+        if (getQueryObject().isStreaming())
+        {
+            return false;
+        }
         if (!JDBCSupportAssessed)
         {
             if (getConnectionDescriptor().getJdbcLevel() >= 2.0)
@@ -619,6 +638,13 @@ public class RsIterator implements OJBIterator
             if (logger.isDebugEnabled())
                 logger.debug("Executing count(*) to get size()");
             retval = countedSize();
+            if (nativePaging)
+            {
+                // the count query isn't paged
+                Query query = getQueryObject().getQuery();
+                retval = Math.max(0, Math.min(SqlHelper.getPagingEndIndex(query), retval)
+                        - SqlHelper.getPagingStartIndex(query) + 1);
+            }
         }
         else
         {
@@ -666,7 +692,8 @@ public class RsIterator implements OJBIterator
      */
     public int fullSize() throws PersistenceBrokerException
     {
-        return size();
+        // if paged by the database the result set only contains the rows of the page
+        return nativePaging ? countedSize() : size();
     }
 
     /**
@@ -990,6 +1017,15 @@ public class RsIterator implements OJBIterator
 
     protected PBLifeCycleEvent getAfterLookupEvent()
     {
+        /*
+		 * arminw: to improve performance we only use this instance to fire
+		 * events and set the target object on every use TODO: Find a better
+		 * solution
+		 */
+        if (afterLookupEvent == null)
+        {
+            afterLookupEvent = new PBLifeCycleEvent(getBroker(), PBLifeCycleEvent.Type.AFTER_LOOKUP);
+        }
         return afterLookupEvent;
     }
 
@@ -30,6 +30,7 @@ public class RsQueryObject
     private Query query;
     private ClassDescriptor cld;
     private boolean isSQLBased;
+    private ResultSetAndStatement executed;
 
     //*******************************************
     // static access methods
@@ -43,6 +44,17 @@ public class RsQueryObject
         return new RsQueryObject(cld, query);
     }
 
+    /**
+     * Returns a new instance of this class for an already executed query,
+     * see {@link ParallelExtentQueryExecutor}.
+     */
+    public static RsQueryObject get(ClassDescriptor cld, Query query, ResultSetAndStatement executed)
+    {
+        RsQueryObject result = new RsQueryObject(cld, query);
+        result.executed = executed;
+        return result;
+    }
+
 
     //*******************************************
     // private constructors
@@ -62,10 +74,17 @@ public class RsQueryObject
     //*******************************************
     public ResultSetAndStatement performQuery(JdbcAccess jdbcAccess)
     {
+        if (executed != null)
+        {
+            ResultSetAndStatement result = executed;
+            executed = null;
+            return result;
+        }
         if (isSQLBased())
         {
 
-            return jdbcAccess.executeSQL(((QueryBySQL) query).getSql(), cld, Query.SCROLLABLE);
+            return jdbcAccess.executeSQL(((QueryBySQL) query).getSql(), cld,
+                    isStreaming() ? Query.NOT_SCROLLABLE : Query.SCROLLABLE);
         }
         else
         {
@@ -103,6 +122,15 @@ public class RsQueryObject
         return isSQLBased;
     }
 
+    /**
+     * Returns <em>true</em> if the query should be executed in streaming mode.
+     * @see Query#isStreaming()
+     */
+    public boolean isStreaming()
+    {
+        return query != null && query.isStreaming();
+    }
+
     public String getSQLBasedQuery()
     {
         if(isSQLBased())
@@ -0,0 +1,276 @@
+package org.apache.ojb.broker.accesslayer;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ojb.broker.util.logging.Logger;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+
+/**
+ * A LRU cache of {@link java.sql.PreparedStatement} instances bound to a single
+ * pooled connection. Statements are keyed by SQL text, result set type and
+ * result set concurrency.
+ * <p>
+ * A cached statement is handed out to only one user at a time: {@link #checkOut}
+ * removes it from the cache, {@link #checkIn} puts it back after use. Statements
+ * evicted from the cache, or returned while an equal statement is already cached,
+ * are closed.
+ * </p>
+ * <p>
+ * The cache is maintained by {@link ConnectionFactoryPooledImpl}, see
+ * {@link org.apache.ojb.broker.metadata.ConnectionPoolDescriptor#getStatementCacheSize()}.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class StatementCache
+{
+    private Logger log = LoggerFactory.getLogger(StatementCache.class);
+
+    private final int maxSize;
+    /** Key=Key, value=idle PreparedStatement, in LRU order. */
+    private final LinkedHashMap idleStatements;
+    /** Key=PreparedStatement in use, value=Key. */
+    private final Map checkedOutStatements = new IdentityHashMap();
+    private long hitCount;
+    private long missCount;
+
+    public StatementCache(int maxSize)
+    {
+        if(maxSize < 1)
+        {
+            throw new IllegalArgumentException("Size of statement cache has to be greater than 0, was " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.idleStatements = new LinkedHashMap(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 8958579736062790622L;
+
+            protected boolean removeEldestEntry(Map.Entry eldest)
+            {
+                if(size() > StatementCache.this.maxSize)
+                {
+                    closeStatement((Statement) eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a cached statement for the given arguments and marks it as
+     * in use, or <em>null</em> if no idle statement is cached.
+     */
+    public synchronized PreparedStatement checkOut(String sql, int resultSetType, int resultSetConcurrency)
+    {
+        Key key = new Key(sql, resultSetType, resultSetConcurrency);
+        PreparedStatement stmt = (PreparedStatement) idleStatements.remove(key);
+        if(stmt != null)
+        {
+            ++hitCount;
+            checkedOutStatements.put(stmt, key);
+        }
+        else
+        {
+            ++missCount;
+        }
+        return stmt;
+    }
+
+    /**
+     * Registers a new created statement as in use, when checked in
+     * the statement will be cached.
+     */
+    public synchronized void register(PreparedStatement stmt, String sql, int resultSetType, int resultSetConcurrency)
+    {
+        checkedOutStatements.put(stmt, new Key(sql, resultSetType, resultSetConcurrency));
+    }
+
+    /**
+     * Returns a statement after use.
+     *
+     * @return <em>true</em> if the statement was handed out by this cache, in this case
+     * the cache is responsible to close the statement. <em>False</em> if the statement is
+     * not managed by this cache.
+     */
+    public synchronized boolean checkIn(Statement stmt)
+    {
+        Key key = (Key) checkedOutStatements.remove(stmt);
+        if(key == null)
+        {
+            return false;
+        }
+        if(idleStatements.containsKey(key))
+        {
+            closeStatement(stmt);
+        }
+        else
+        {
+            try
+            {
+                ((PreparedStatement) stmt).clearParameters();
+                idleStatements.put(key, stmt);
+            }
+            catch(SQLException e)
+            {
+                if(log.isDebugEnabled()) log.debug("Can't reset statement, discard it: " + key, e);
+                closeStatement(stmt);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes all statements still in use, called when the connection
+     * is returned to the pool.
+     */
+    public synchronized void releaseCheckedOut()
+    {
+        if(checkedOutStatements.size() > 0)
+        {
+            if(log.isDebugEnabled()) log.debug("Close " + checkedOutStatements.size()
+                    + " statements not returned to the statement cache");
+            closeAll(checkedOutStatements.keySet());
+            checkedOutStatements.clear();
+        }
+    }
+
+    /**
+     * Closes all cached and in use statements, called when the
+     * connection is destroyed.
+     */
+    public synchronized void clear()
+    {
+        releaseCheckedOut();
+        closeAll(idleStatements.values());
+        idleStatements.clear();
+    }
+
+    /**
+     * Returns the number of requests served by a cached statement.
+     */
+    public synchronized long getHitCount()
+    {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of requests not served by a cached statement.
+     */
+    public synchronized long getMissCount()
+    {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of idle statements in the cache.
+     */
+    public synchronized int size()
+    {
+        return idleStatements.size();
+    }
+
+    public int getMaxSize()
+    {
+        return maxSize;
+    }
+
+    public synchronized String toString()
+    {
+        return "StatementCache[size=" + idleStatements.size() + ", maxSize=" + maxSize
+                + ", inUse=" + checkedOutStatements.size() + ", hits=" + hitCount
+                + ", misses=" + missCount + "]";
+    }
+
+    private void closeAll(Collection statements)
+    {
+        // copy, closing must not modify the given collection
+        List list = new ArrayList(statements);
+        for(Iterator iterator = list.iterator(); iterator.hasNext();)
+        {
+            closeStatement((Statement) iterator.next());
+        }
+    }
+
+    private void closeStatement(Statement stmt)
+    {
+        try
+        {
+            stmt.close();
+        }
+        catch(SQLException e)
+        {
+            if(log.isDebugEnabled()) log.debug("Statement closing failed", e);
+        }
+    }
+
+    //====================================================
+    // inner class
+    //====================================================
+
+    private static final class Key
+    {
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int hashCode;
+
+        Key(String sql, int resultSetType, int resultSetConcurrency)
+        {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.hashCode = (sql.hashCode() * 31 + resultSetType) * 31 + resultSetConcurrency;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if(this == obj)
+            {
+                return true;
+            }
+            if(!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return resultSetType == other.resultSetType
+                    && resultSetConcurrency == other.resultSetConcurrency
+                    && sql.equals(other.sql);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        public String toString()
+        {
+            return sql + " [type=" + resultSetType + ", concurrency=" + resultSetConcurrency + "]";
+        }
+    }
+}
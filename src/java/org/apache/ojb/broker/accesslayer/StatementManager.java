@@ -74,6 +74,8 @@ public class StatementManager implements StatementManagerIF
      */
     private boolean m_eagerRelease;
     private ConnectionManagerIF m_conMan;
+    /** The pooled connection factory managing the statement caches, null if caching is disabled. */
+    private ConnectionFactoryPooledImpl m_statementCacheFactory;
 
     public StatementManager(final PersistenceBroker pBroker)
     {
@@ -81,6 +83,14 @@ public class StatementManager implements StatementManagerIF
         this.m_conMan = m_broker.serviceConnectionManager();
         m_eagerRelease = m_conMan.getConnectionDescriptor().getEagerRelease();
         m_platform = PlatformFactory.getPlatformFor(m_conMan.getConnectionDescriptor());
+        if (m_conMan.getConnectionDescriptor().getConnectionPoolDescriptor().getStatementCacheSize() > 0)
+        {
+            ConnectionFactory cf = ConnectionFactoryFactory.getInstance().createConnectionFactory();
+            if (cf instanceof ConnectionFactoryPooledImpl)
+            {
+                m_statementCacheFactory = (ConnectionFactoryPooledImpl) cf;
+            }
+        }
     }
 
     public void closeResources(Statement stmt, ResultSet rs)
@@ -94,7 +104,10 @@ public class StatementManager implements StatementManagerIF
             if (stmt != null)
             {
                 //log.info("## close: "+stmt);
-                stmt.close();
+                if (!checkInCachedStatement(stmt, rs))
+                {
+                    stmt.close();
+                }
 
                 /*
                 *********************************************
@@ -120,6 +133,31 @@ public class StatementManager implements StatementManagerIF
         }
     }
 
+    /**
+     * Returns the given statement to the {@link StatementCache} of its connection
+     * instead of closing it.
+     *
+     * @return <em>true</em> if the statement was cached, <em>false</em> if it has to be closed
+     */
+    private boolean checkInCachedStatement(Statement stmt, ResultSet rs) throws SQLException
+    {
+        if (m_statementCacheFactory == null)
+        {
+            return false;
+        }
+        StatementCache cache = m_statementCacheFactory.getStatementCache(stmt.getConnection());
+        if (cache == null)
+        {
+            return false;
+        }
+        // the result set is no longer closed implicit by the statement
+        if (rs != null)
+        {
+            rs.close();
+        }
+        return cache.checkIn(stmt);
+    }
+
     /**
      * binds the Identities Primary key values to the statement
      */
@@ -56,6 +56,8 @@ public class StatementsForClassImpl implements StatementsForClassIF
     protected final Platform platform;
     protected final Class clazz;
     protected final int fetchSize;
+    /** The pooled connection factory managing the statement caches, null if caching is disabled. */
+    private final ConnectionFactoryPooledImpl statementCacheFactory;
     private String deleteSql;
     private String insertSql;
     private String updateSql;
@@ -77,6 +79,9 @@ public class StatementsForClassImpl implements StatementsForClassIF
 
         final ConnectionPoolDescriptor cpd = jcd.getConnectionPoolDescriptor();
         fetchSize = cpd.getFetchSize();
+        ConnectionFactory cf = ConnectionFactoryFactory.getInstance().createConnectionFactory();
+        statementCacheFactory = cpd.getStatementCacheSize() > 0 && cf instanceof ConnectionFactoryPooledImpl
+                ? (ConnectionFactoryPooledImpl) cf : null;
 
         // detect JDBC level
         double level = jcd.getJdbcLevel();
@@ -250,9 +255,23 @@ public class StatementsForClassImpl implements StatementsForClassIF
     {
         PreparedStatement result;
 
+        final int resultSetType = scrollable ? ResultSet.TYPE_SCROLL_INSENSITIVE : ResultSet.TYPE_FORWARD_ONLY;
+        final StatementCache cache = createPreparedStatement ? getStatementCache(con) : null;
+        if (cache != null)
+        {
+            result = cache.checkOut(sql, resultSetType, ResultSet.CONCUR_READ_ONLY);
+            if (result != null)
+            {
+                afterCachedStatementReuse(result, explicitFetchSizeHint);
+                return result;
+            }
+        }
+
         // if a JDBC1.0 driver is used the signature
         // prepareStatement(String, int, int) is  not defined.
         // we then call the JDBC1.0 variant prepareStatement(String)
+        // which creates forward only statements
+        int createdType = resultSetType;
         try
         {
             // if necessary use JDB1.0 methods
@@ -290,6 +309,7 @@ public class StatementsForClassImpl implements StatementsForClassIF
                 {
                     result = con.prepareCall(sql);
                 }
+                createdType = ResultSet.TYPE_FORWARD_ONLY;
             }
         }
         catch (AbstractMethodError err)
@@ -304,6 +324,7 @@ public class StatementsForClassImpl implements StatementsForClassIF
             {
                 result = con.prepareCall(sql);
             }
+            createdType = ResultSet.TYPE_FORWARD_ONLY;
             FORCEJDBC1_0 = true;
         }
         catch (SQLException eSql)
@@ -325,6 +346,7 @@ public class StatementsForClassImpl implements StatementsForClassIF
                 {
                     result = con.prepareCall(sql);
                 }
+                createdType = ResultSet.TYPE_FORWARD_ONLY;
                 FORCEJDBC1_0 = true;
             }
             else
@@ -343,9 +365,22 @@ public class StatementsForClassImpl implements StatementsForClassIF
         {
             log.error("Platform dependend failure", e);
         }
+        if (cache != null)
+        {
+            cache.register(result, sql, createdType, ResultSet.CONCUR_READ_ONLY);
+        }
         return result;
     }
 
+    /**
+     * Returns the {@link StatementCache} of the given connection or <em>null</em>
+     * if prepared statements are not cached.
+     */
+    protected StatementCache getStatementCache(Connection con)
+    {
+        return statementCacheFactory != null ? statementCacheFactory.getStatementCache(con) : null;
+    }
+
     /**
      * Creates a statement with parameters that should work with most RDBMS.
      */
@@ -408,6 +443,17 @@ public class StatementsForClassImpl implements StatementsForClassIF
         return result;
     }
 
+    private void afterCachedStatementReuse(Statement stmt, int explicitFetchSizeHint)
+            throws SQLException
+    {
+        if (!FORCEJDBC1_0)
+        {
+            // the previous user may have changed the fetch size, e.g. for streaming
+            stmt.setFetchSize(0);
+            afterJdbc2CapableStatementCreate(stmt, explicitFetchSizeHint);
+        }
+    }
+
     private void afterJdbc2CapableStatementCreate(Statement stmt, int explicitFetchSizeHint)
             throws SQLException
     {
@@ -428,7 +474,7 @@ public class StatementsForClassImpl implements StatementsForClassIF
             }
             if (fetchSizeHint > 0)
             {
-                stmt.setFetchSize(fetchSize);
+                stmt.setFetchSize(fetchSizeHint);
             }
         }
     }
@@ -0,0 +1,563 @@
+package org.apache.ojb.broker.accesslayer.sql;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.commons.collections.map.ReferenceIdentityMap;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.FieldDescriptor;
+import org.apache.ojb.broker.metadata.FieldHelper;
+import org.apache.ojb.broker.metadata.JdbcType;
+import org.apache.ojb.broker.platforms.Platform;
+import org.apache.ojb.broker.query.BetweenCriteria;
+import org.apache.ojb.broker.query.Criteria;
+import org.apache.ojb.broker.query.ExistsCriteria;
+import org.apache.ojb.broker.query.FieldCriteria;
+import org.apache.ojb.broker.query.InCriteria;
+import org.apache.ojb.broker.query.LikeCriteria;
+import org.apache.ojb.broker.query.MtoNQuery;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryByCriteria;
+import org.apache.ojb.broker.query.ReportQueryByCriteria;
+import org.apache.ojb.broker.query.SelectionCriteria;
+import org.apache.ojb.broker.util.SqlHelper;
+
+/**
+ * A bounded cache for the select statements of criteria queries. The statements
+ * are cached per class descriptor and keyed by the <em>shape</em> of the query: the
+ * structure of the where and having criteria including operators, attribute paths and the number
+ * of IN-values, the order by, group by, path class hints, outer join paths and prefetched
+ * relationships. Queries differing only in the bind values share the generated sql and
+ * column index mapping, so building the join tree and the sql string is done once per shape.
+ * <p/>
+ * Queries using sub queries or user aliases are not cached.
+ * <p/>
+ * The class descriptors are referenced weakly, like the cache for {@link SqlGeneratorDefaultImpl.SqlForClass}
+ * instances, so outdated metadata (e.g. the per thread copies of a repository) can be garbage collected.
+ *
+ * @version $Id$
+ */
+public class SelectStatementCache
+{
+    private final Platform m_platform;
+    private final int m_maxSize;
+    /** Maps the class descriptor to the {@link LRUMap} of its statements. */
+    private final Map m_statements = new ReferenceIdentityMap(ReferenceIdentityMap.WEAK, ReferenceIdentityMap.HARD);
+    private long m_hits;
+    private long m_misses;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param platform the platform the statements are generated for
+     * @param maxSize the maximal number of cached statements per class descriptor
+     */
+    public SelectStatementCache(Platform platform, int maxSize)
+    {
+        m_platform = platform;
+        m_maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cached select statement for the given query or <em>null</em>
+     * if the statement for the shape of the query was not generated yet.
+     *
+     * @param cld the class descriptor of the searched class
+     * @param key the key returned by {@link #buildKey}
+     * @param query the query to execute
+     */
+    public SelectStatement lookup(ClassDescriptor cld, Object key, Query query)
+    {
+        Entry entry = null;
+        synchronized(this)
+        {
+            LRUMap statements = (LRUMap) m_statements.get(cld);
+            if(statements != null)
+            {
+                entry = (Entry) statements.get(key);
+            }
+            if(entry == null)
+            {
+                ++m_misses;
+                return null;
+            }
+        }
+        SelectStatement result = entry.newStatement((QueryByCriteria) query);
+        synchronized(this)
+        {
+            if(result != null)
+            {
+                ++m_hits;
+            }
+            else
+            {
+                // the metadata of the statement was garbage collected
+                ++m_misses;
+                LRUMap statements = (LRUMap) m_statements.get(cld);
+                if(statements != null)
+                {
+                    statements.remove(key);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Caches the given select statement.
+     *
+     * @param cld the class descriptor of the searched class
+     * @param key the key returned by {@link #buildKey}
+     * @param statement the statement generated for the query
+     */
+    public void cache(ClassDescriptor cld, Object key, SqlSelectStatement statement)
+    {
+        Entry entry = new Entry(statement);
+        synchronized(this)
+        {
+            LRUMap statements = (LRUMap) m_statements.get(cld);
+            if(statements == null)
+            {
+                statements = new LRUMap(m_maxSize);
+                m_statements.put(cld, statements);
+            }
+            statements.put(key, entry);
+        }
+    }
+
+    /**
+     * Removes all cached statements and resets the statistics.
+     */
+    public synchronized void clear()
+    {
+        m_statements.clear();
+        m_hits = 0;
+        m_misses = 0;
+    }
+
+    /**
+     * Returns the number of cached statements.
+     */
+    public synchronized int size()
+    {
+        int result = 0;
+        for(Iterator it = m_statements.values().iterator(); it.hasNext();)
+        {
+            result += ((LRUMap) it.next()).size();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the maximal number of cached statements per class descriptor.
+     */
+    public int maxSize()
+    {
+        return m_maxSize;
+    }
+
+    /**
+     * Returns the number of lookups answered by the cache.
+     */
+    public synchronized long getHits()
+    {
+        return m_hits;
+    }
+
+    /**
+     * Returns the number of lookups of cacheable queries not answered by the cache.
+     */
+    public synchronized long getMisses()
+    {
+        return m_misses;
+    }
+
+    /**
+     * Returns the ratio of the lookups answered by the cache, <em>0</em> if
+     * no lookup was done.
+     */
+    public synchronized double getHitRatio()
+    {
+        long lookups = m_hits + m_misses;
+        return lookups > 0 ? (double) m_hits / lookups : 0;
+    }
+
+    public synchronized String toString()
+    {
+        return "SelectStatementCache[size=" + size() + ", maxSize=" + m_maxSize
+                + ", hits=" + m_hits + ", misses=" + m_misses + ", hitRatio=" + getHitRatio() + "]";
+    }
+
+    //===================================================================
+    // query shape
+    //===================================================================
+
+    /**
+     * Builds the key describing the shape of the given query. The key doesn't
+     * reference the class descriptor, the statements are cached per class descriptor.
+     *
+     * @param query the query
+     * @param cld the class descriptor of the searched class
+     * @return the key or <em>null</em> if the statement of the query can't be cached
+     */
+    public Object buildKey(Query query, ClassDescriptor cld)
+    {
+        if(!(query instanceof QueryByCriteria))
+        {
+            return null;
+        }
+        QueryByCriteria q = (QueryByCriteria) query;
+        List key = new ArrayList();
+        key.add(q.getClass());
+        key.add(q.getSearchClass());
+        key.add(q.getBaseClass());
+        key.add(q.isDistinct() ? Boolean.TRUE : Boolean.FALSE);
+        key.add(q.getWithExtents() ? Boolean.TRUE : Boolean.FALSE);
+        key.add(q.getObjectProjectionAttribute());
+        key.add(copyPathClasses(q.getPathClasses()));
+        key.add(q.getOuterJoinPaths() != null ? new ArrayList(q.getOuterJoinPaths()) : null);
+        key.add(fieldNames(q.getOrderBy()));
+        key.add(fieldNames(q.getGroupBy()));
+        key.add(q.getPrefetchedRelationships());
+        key.add(SqlHelper.isNativePaging(m_platform, q, cld.getRepository()) ? Boolean.TRUE : Boolean.FALSE);
+        if(q instanceof MtoNQuery)
+        {
+            key.add(((MtoNQuery) q).getIndirectionTable());
+        }
+        if(q instanceof ReportQueryByCriteria)
+        {
+            ReportQueryByCriteria rq = (ReportQueryByCriteria) q;
+            key.add(rq.getAttributes() != null ? new ArrayList(Arrays.asList(rq.getAttributes())) : null);
+            key.add(rq.getJoinAttributes() != null ? new ArrayList(Arrays.asList(rq.getJoinAttributes())) : null);
+        }
+        if(!addCriteria(key, q.getCriteria()) || !addCriteria(key, q.getHavingCriteria()))
+        {
+            return null;
+        }
+        return key;
+    }
+
+    /**
+     * Adds the structure of the criteria to the key.
+     *
+     * @return <em>false</em> if the criteria can't be cached
+     */
+    private boolean addCriteria(List key, Criteria crit)
+    {
+        if(crit == null)
+        {
+            key.add(null);
+            return true;
+        }
+        key.add("(");
+        key.add(new Integer(crit.getType()));
+        key.add(crit.isEmbraced() ? Boolean.TRUE : Boolean.FALSE);
+        key.add(crit.isNegative() ? Boolean.TRUE : Boolean.FALSE);
+        key.add(copyPathClasses(crit.getPathClasses()));
+        Enumeration e = crit.getElements();
+        while(e.hasMoreElements())
+        {
+            Object o = e.nextElement();
+            if(o instanceof Criteria)
+            {
+                if(!addCriteria(key, (Criteria) o))
+                {
+                    return false;
+                }
+            }
+            else if(!addSelectionCriteria(key, (SelectionCriteria) o))
+            {
+                return false;
+            }
+        }
+        key.add(")");
+        return true;
+    }
+
+    /**
+     * Adds the operator and the attribute of the selection criteria to the key.
+     *
+     * @return <em>false</em> if the criteria can't be cached
+     */
+    private boolean addSelectionCriteria(List key, SelectionCriteria c)
+    {
+        if(c instanceof ExistsCriteria || c.getUserAlias() != null
+                || c.getAttribute() instanceof Query || c.getValue() instanceof Query)
+        {
+            return false;
+        }
+        key.add(c.getClass());
+        key.add(c.getAttribute());
+        key.add(c.getClause());
+        key.add(c.isTranslateAttribute() ? Boolean.TRUE : Boolean.FALSE);
+        if(c instanceof FieldCriteria)
+        {
+            FieldCriteria fc = (FieldCriteria) c;
+            key.add(fc.getValue());
+            key.add(fc.isTranslateField() ? Boolean.TRUE : Boolean.FALSE);
+        }
+        else if(c instanceof BetweenCriteria)
+        {
+            if(((BetweenCriteria) c).getValue2() instanceof Query)
+            {
+                return false;
+            }
+        }
+        else if(c instanceof InCriteria)
+        {
+            if(c.getValue() instanceof Collection)
+            {
+                Collection values = (Collection) c.getValue();
+                for(Iterator it = values.iterator(); it.hasNext();)
+                {
+                    if(it.next() instanceof Query)
+                    {
+                        return false;
+                    }
+                }
+                key.add(new Integer(values.size()));
+            }
+        }
+        else if(c instanceof LikeCriteria)
+        {
+            key.add(m_platform.getEscapeClause((LikeCriteria) c));
+        }
+        return true;
+    }
+
+    private static List fieldNames(List fieldHelpers)
+    {
+        List result = new ArrayList(fieldHelpers.size());
+        for(int i = 0; i < fieldHelpers.size(); i++)
+        {
+            FieldHelper fh = (FieldHelper) fieldHelpers.get(i);
+            result.add(fh.isAscending ? fh.name : fh.name + " DESC");
+        }
+        return result;
+    }
+
+    private static Map copyPathClasses(Map pathClasses)
+    {
+        if(pathClasses == null || pathClasses.isEmpty())
+        {
+            return null;
+        }
+        Map result = new HashMap(pathClasses.size());
+        for(Iterator it = pathClasses.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry entry = (Map.Entry) it.next();
+            Object classes = entry.getValue();
+            result.put(entry.getKey(), classes instanceof List ? new ArrayList((List) classes) : classes);
+        }
+        return result;
+    }
+
+    /**
+     * Collects the number of extents to bind of all selection criteria.
+     */
+    private static void collectExtentsToBind(Criteria crit, List result)
+    {
+        if(crit == null)
+        {
+            return;
+        }
+        Enumeration e = crit.getElements();
+        while(e.hasMoreElements())
+        {
+            Object o = e.nextElement();
+            if(o instanceof Criteria)
+            {
+                collectExtentsToBind((Criteria) o, result);
+            }
+            else
+            {
+                result.add(new Integer(((SelectionCriteria) o).getNumberOfExtentsToBind()));
+            }
+        }
+    }
+
+    /**
+     * Sets the number of extents to bind of all selection criteria, the criteria
+     * have the same structure as the criteria the values were collected from.
+     */
+    private static int applyExtentsToBind(Criteria crit, int[] extents, int index)
+    {
+        if(crit == null)
+        {
+            return index;
+        }
+        Enumeration e = crit.getElements();
+        while(e.hasMoreElements())
+        {
+            Object o = e.nextElement();
+            if(o instanceof Criteria)
+            {
+                index = applyExtentsToBind((Criteria) o, extents, index);
+            }
+            else
+            {
+                ((SelectionCriteria) o).setNumberOfExtentsToBind(extents[index++]);
+            }
+        }
+        return index;
+    }
+
+    //===================================================================
+    // inner classes
+    //===================================================================
+
+    /**
+     * The generated sql and the state the query is decorated with while
+     * generating the sql. The field descriptors are referenced weakly, they
+     * are reachable as long as the class descriptor the entry is cached for.
+     */
+    static class Entry
+    {
+        final String sql;
+        final WeakReference[] fieldsForSelect;
+        final String[] attributes;
+        final WeakReference[] attributeFields;
+        final int[] extentsToBind;
+
+        Entry(SqlSelectStatement statement)
+        {
+            sql = statement.getStatement();
+            FieldDescriptor[] fields = statement.getFieldsForSelect();
+            if(fields != null)
+            {
+                fieldsForSelect = new WeakReference[fields.length];
+                for(int i = 0; i < fields.length; i++)
+                {
+                    fieldsForSelect[i] = new WeakReference(fields[i]);
+                }
+            }
+            else
+            {
+                fieldsForSelect = null;
+            }
+            Map attrToFld = statement.m_attrToFld;
+            attributes = new String[attrToFld.size()];
+            attributeFields = new WeakReference[attrToFld.size()];
+            int index = 0;
+            for(Iterator it = attrToFld.entrySet().iterator(); it.hasNext(); index++)
+            {
+                Map.Entry attr = (Map.Entry) it.next();
+                attributes[index] = (String) attr.getKey();
+                attributeFields[index] = new WeakReference(attr.getValue());
+            }
+            QueryByCriteria query = statement.getQuery();
+            List extents = new ArrayList();
+            collectExtentsToBind(query.getCriteria(), extents);
+            collectExtentsToBind(query.getHavingCriteria(), extents);
+            extentsToBind = new int[extents.size()];
+            for(int i = 0; i < extentsToBind.length; i++)
+            {
+                extentsToBind[i] = ((Integer) extents.get(i)).intValue();
+            }
+        }
+
+        /**
+         * Returns the statement for the given query or <em>null</em> if
+         * a field descriptor was garbage collected.
+         */
+        SelectStatement newStatement(QueryByCriteria query)
+        {
+            FieldDescriptor[] fields = null;
+            if(fieldsForSelect != null)
+            {
+                fields = new FieldDescriptor[fieldsForSelect.length];
+                for(int i = 0; i < fields.length; i++)
+                {
+                    fields[i] = (FieldDescriptor) fieldsForSelect[i].get();
+                    if(fields[i] == null)
+                    {
+                        return null;
+                    }
+                }
+            }
+            Map attrToFld = new HashMap(attributes.length);
+            for(int i = 0; i < attributes.length; i++)
+            {
+                Object fld = attributeFields[i].get();
+                if(fld == null)
+                {
+                    return null;
+                }
+                attrToFld.put(attributes[i], fld);
+            }
+            int index = applyExtentsToBind(query.getCriteria(), extentsToBind, 0);
+            applyExtentsToBind(query.getHavingCriteria(), extentsToBind, index);
+            if(query instanceof ReportQueryByCriteria)
+            {
+                ((ReportQueryByCriteria) query).setAttributeFieldDescriptors(attrToFld);
+            }
+            return new CachedSelectStatement(sql, fields, query);
+        }
+    }
+
+    /**
+     * A select statement using the cached sql.
+     */
+    static class CachedSelectStatement implements SelectStatement
+    {
+        private final String sql;
+        private final FieldDescriptor[] fieldsForSelect;
+        private final Query query;
+
+        CachedSelectStatement(String sql, FieldDescriptor[] fieldsForSelect, Query query)
+        {
+            this.sql = sql;
+            this.fieldsForSelect = fieldsForSelect;
+            this.query = query;
+        }
+
+        public String getStatement()
+        {
+            return sql;
+        }
+
+        public Query getQueryInstance()
+        {
+            return query;
+        }
+
+        public int getColumnIndex(FieldDescriptor fld)
+        {
+            FieldDescriptor[] fields = fieldsForSelect;
+            if(fields != null)
+            {
+                for(int i = 0; i < fields.length; i++)
+                {
+                    if(fields[i].equals(fld))
+                    {
+                        return i + 1;  // starts at 1
+                    }
+                }
+            }
+            return JdbcType.MIN_INT;
+        }
+    }
+}
@@ -20,6 +20,8 @@ import java.util.Enumeration;
 import java.util.Map;
 
 import org.apache.commons.collections.map.ReferenceIdentityMap;
+import org.apache.ojb.broker.PersistenceBrokerFactory;
+import org.apache.ojb.broker.core.PersistenceBrokerConfiguration;
 import org.apache.ojb.broker.metadata.ClassDescriptor;
 import org.apache.ojb.broker.metadata.ProcedureDescriptor;
 import org.apache.ojb.broker.platforms.Platform;
@@ -32,6 +34,7 @@ import org.apache.ojb.broker.query.NullCriteria;
 import org.apache.ojb.broker.query.Query;
 import org.apache.ojb.broker.query.SelectionCriteria;
 import org.apache.ojb.broker.query.SqlCriteria;
+import org.apache.ojb.broker.util.configuration.ConfigurationException;
 import org.apache.ojb.broker.util.logging.Logger;
 import org.apache.ojb.broker.util.logging.LoggerFactory;
 
@@ -61,10 +64,34 @@ public class SqlGeneratorDefaultImpl implements SqlGenerator
     */
     /** Cache for {@link SqlForClass} instances, keyed per class descriptor. */
     private Map sqlForClass = new ReferenceIdentityMap(ReferenceIdentityMap.WEAK, ReferenceIdentityMap.HARD);
+    /** Cache for select statements of criteria queries, keyed per class descriptor and the shape of the query. */
+    private SelectStatementCache selectStatementCache;
 
     public SqlGeneratorDefaultImpl(Platform platform)
     {
         this.m_platform = platform;
+        int cacheSize = getSqlStatementCacheSize();
+        if(cacheSize > 0)
+        {
+            selectStatementCache = new SelectStatementCache(platform, cacheSize);
+        }
+    }
+
+    /**
+     * read the SqlStatementCacheSize from Config based on OJB.properties
+     */
+    private static int getSqlStatementCacheSize()
+    {
+        try
+        {
+            PersistenceBrokerConfiguration config = (PersistenceBrokerConfiguration) PersistenceBrokerFactory
+                    .getConfigurator().getConfigurationFor(null);
+            return config.getSqlStatementCacheSize();
+        }
+        catch(ConfigurationException e)
+        {
+            return 500;
+        }
     }
 
     /**
@@ -178,21 +205,50 @@ public class SqlGeneratorDefaultImpl implements SqlGenerator
     }
 
     /**
-     * generate a select-Statement according to query
+     * generate a select-Statement according to query. The statements of
+     * queries with the same shape are taken from the {@link SelectStatementCache}.
      *
      * @param query the Query
      * @param cld the ClassDescriptor
      */
     public SelectStatement getPreparedSelectStatement(Query query, ClassDescriptor cld)
     {
-        SelectStatement sql = new SqlSelectStatement(m_platform, cld, query, logger);
-        if (logger.isDebugEnabled())
+        Object key = null;
+        SelectStatement sql = null;
+        if(selectStatementCache != null)
         {
-            logger.debug("SQL:" + sql.getStatement());
+            key = selectStatementCache.buildKey(query, cld);
+            if(key != null)
+            {
+                sql = selectStatementCache.lookup(cld, key, query);
+            }
+        }
+        if(sql == null)
+        {
+            sql = new SqlSelectStatement(m_platform, cld, query, logger);
+            if(key != null)
+            {
+                selectStatementCache.cache(cld, key, (SqlSelectStatement) sql);
+            }
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("SQL:" + sql.getStatement());
+            }
         }
         return sql;
     }
 
+    /**
+     * Returns the cache of the select statements of criteria queries,
+     * e.g. to monitor the hit ratio.
+     *
+     * @return the cache or <em>null</em> if the cache is disabled
+     */
+    public SelectStatementCache getSelectStatementCache()
+    {
+        return selectStatementCache;
+    }
+
     /**
      * generate a prepared UPDATE-Statement for the Class
      * described by cld
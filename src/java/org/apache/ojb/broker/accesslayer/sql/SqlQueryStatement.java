@@ -1861,6 +1861,24 @@ public abstract class SqlQueryStatement implements SqlStatement, JoinSyntaxTypes
         return m_platform.getJoinSyntaxType();
     }
 
+    /**
+     * Returns the platform.
+     * @return Platform
+     */
+    protected Platform getPlatform()
+    {
+        return m_platform;
+    }
+
+    /**
+     * Returns the parent statement of a sub query.
+     * @return the parent statement or null
+     */
+    protected SqlQueryStatement getParentStatement()
+    {
+        return m_parentStatement;
+    }
+
     /**
      * Returns the logger.
      * @return Logger
@@ -383,6 +383,13 @@ TODO: this feature doesn't work, so remove this in future
 
         appendOrderByClause(orderByFields, columnList, stmt);
 
+        // only the top level statement is paged
+        if (getParentStatement() == null
+                && SqlHelper.isNativePaging(getPlatform(), query, getSearchClassDescriptor().getRepository()))
+        {
+            getPlatform().addPagingSql(stmt);
+        }
+
         if (query instanceof ReportQueryByCriteria)
         {
              ((ReportQueryByCriteria) query).setAttributeFieldDescriptors(m_attrToFld);
@@ -31,6 +31,7 @@ import org.apache.ojb.broker.OJBRuntimeException;
 import org.apache.ojb.broker.PBStateEvent;
 import org.apache.ojb.broker.PBStateListener;
 import org.apache.ojb.broker.PersistenceBroker;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
 import org.apache.ojb.broker.util.logging.Logger;
 import org.apache.ojb.broker.util.logging.LoggerFactory;
 
@@ -110,6 +111,11 @@ import org.apache.ojb.broker.util.logging.LoggerFactory;
  * was no synchronization between cached objects with same Identity but different metadata model.
  * <br/>
  * 3 - all together (1+2)
+ * <br/>
+ * For the settings 1 - 3 the cache is split into separate partitions, one per jcdAlias
+ * and/or model. The partition is resolved once when the broker context change, thus
+ * the {@link Identity} can be used directly as key within the partition and the lookup of
+ * an object doesn't need to build a composite key object.
  * </td>
  * </tr>
  * <p/>
@@ -138,6 +144,12 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
      * static Map held all cached objects
      */
     protected static final Map objectTable = new Hashtable();
+    /**
+     * static Map held the partitions of the cache used for
+     * <code>cachingKeyType</code> 1 - 3, each partition is a Map like
+     * {@link #objectTable}.
+     */
+    private static final Map partitionTable = new Hashtable();
     private static final ReferenceQueue queue = new ReferenceQueue();
 
     private static long hitCount = 0;
@@ -161,6 +173,10 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
      */
     private int cachingKeyType;
     private boolean useSoftReferences = true;
+    /**
+     * The last resolved partition of the cache, see {@link #getTable()}.
+     */
+    private Partition partition;
 
     public ObjectCacheDefaultImpl(PersistenceBroker broker, Properties prop)
     {
@@ -200,6 +216,15 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
     {
         //processQueue();
         objectTable.clear();
+        synchronized(partitionTable)
+        {
+            // clear the partitions instead of removing them, they are
+            // still referenced by other cache instances
+            for(Iterator iterator = partitionTable.values().iterator(); iterator.hasNext();)
+            {
+                ((Map) iterator.next()).clear();
+            }
+        }
         identitiesInWork.clear();
     }
 
@@ -209,10 +234,11 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
         if((obj != null))
         {
             traceIdentity(oid);
-            synchronized(objectTable)
+            Map table = getTable();
+            synchronized(table)
             {
                 if(log.isDebugEnabled()) log.debug("Cache object " + oid);
-                objectTable.put(buildKey(oid), buildEntry(obj, oid));
+                table.put(oid, buildEntry(obj, oid, table));
             }
         }
     }
@@ -231,14 +257,14 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
     {
         //processQueue();
         boolean result = false;
-        Object key = buildKey(oid);
         if((obj != null))
         {
-            synchronized(objectTable)
+            Map table = getTable();
+            synchronized(table)
             {
-                if(!objectTable.containsKey(key))
+                if(!table.containsKey(oid))
                 {
-                    objectTable.put(key, buildEntry(obj, oid));
+                    table.put(oid, buildEntry(obj, oid, table));
                     result = true;
                 }
             }
@@ -257,7 +283,7 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
         hitCount++;
         Object result = null;
 
-        CacheEntry entry = (CacheEntry) objectTable.get(buildKey(oid));
+        CacheEntry entry = (CacheEntry) getTable().get(oid);
         if(entry != null)
         {
             result = entry.get();
@@ -298,7 +324,7 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
         if(oid != null)
         {
             removeTracedIdentity(oid);
-            objectTable.remove(buildKey(oid));
+            getTable().remove(oid);
             if(log.isDebugEnabled()) log.debug("Remove object " + oid);
         }
     }
@@ -306,7 +332,15 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
     public String toString()
     {
         ToStringBuilder buf = new ToStringBuilder(this, ToStringStyle.DEFAULT_STYLE);
-        buf.append("Count of cached objects", objectTable.keySet().size());
+        int count = objectTable.size();
+        synchronized(partitionTable)
+        {
+            for(Iterator iterator = partitionTable.values().iterator(); iterator.hasNext();)
+            {
+                count += ((Map) iterator.next()).size();
+            }
+        }
+        buf.append("Count of cached objects", count);
         buf.append("Lookup hits", hitCount);
         buf.append("Failures", failCount);
         buf.append("Reclaimed", gcCount);
@@ -331,10 +365,11 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
         Identity oid;
         log.info("tx was aborted," +
                 " remove " + identitiesInWork.size() + " traced (potentially modified) objects from cache");
+        Map table = getTable();
         for(Iterator iterator = identitiesInWork.iterator(); iterator.hasNext();)
         {
             oid = (Identity) iterator.next();
-            objectTable.remove(buildKey(oid));
+            table.remove(oid);
         }
     }
 
@@ -383,15 +418,15 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
     {
     }
 
-    private CacheEntry buildEntry(Object obj, Identity oid)
+    private CacheEntry buildEntry(Object obj, Identity oid, Map table)
     {
         if(useSoftReferences)
         {
-            return new CacheEntrySoft(obj, oid, queue, timeout);
+            return new CacheEntrySoft(obj, oid, table, queue, timeout);
         }
         else
         {
-            return new CacheEntryHard(obj, oid, timeout);
+            return new CacheEntryHard(obj, oid, table, timeout);
         }
     }
 
@@ -401,38 +436,99 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
         while((sv = (CacheEntry) queue.poll()) != null)
         {
             removeTracedIdentity(sv.getOid());
-            objectTable.remove(buildKey(sv.getOid()));
+            sv.getTable().remove(sv.getOid());
         }
     }
 
-    private Object buildKey(Identity oid)
+    /**
+     * Returns the Map used to cache the objects of the current broker context, this
+     * is {@link #objectTable} for <code>cachingKeyType</code> 0 or the partition of the current
+     * jcdAlias and/or model. The partition is only looked up again when the alias
+     * or model of the broker has changed.
+     */
+    private Map getTable()
     {
-        Object key;
+        if(cachingKeyType == 0)
+        {
+            return objectTable;
+        }
+        String alias = null;
+        DescriptorRepository repository = null;
         switch(cachingKeyType)
         {
-            case 0:
-                key = oid;
-                break;
             case 1:
-                key = new OrderedTuple(oid, broker.getPBKey().getAlias());
+                alias = broker.getPBKey().getAlias();
                 break;
             case 2:
-                /*
-                this ObjectCache implementation only works in single JVM, so the hashCode
-                of the DescriptorRepository class is unique
-                TODO: problem when different versions of same DR are used
-                */
-                key = new OrderedTuple(oid,
-                        new Integer(broker.getDescriptorRepository().hashCode()));
+                repository = broker.getDescriptorRepository();
                 break;
             case 3:
-                key = new OrderedTuple(oid, broker.getPBKey().getAlias(),
-                        new Integer(broker.getDescriptorRepository().hashCode()));
+                alias = broker.getPBKey().getAlias();
+                repository = broker.getDescriptorRepository();
                 break;
             default:
                 throw new OJBRuntimeException("Unexpected error, 'cacheType =" + cachingKeyType + "' was not supported");
         }
-        return key;
+        Partition current = partition;
+        if(current == null || !current.matches(alias, repository))
+        {
+            current = new Partition(alias, repository, lookupPartition(alias, repository));
+            partition = current;
+        }
+        return current.table;
+    }
+
+    private Map lookupPartition(String alias, DescriptorRepository repository)
+    {
+        Object key;
+        if(repository == null)
+        {
+            key = new OrderedTuple(alias);
+        }
+        else
+        {
+            /*
+            this ObjectCache implementation only works in single JVM, so the hashCode
+            of the DescriptorRepository class is unique
+            TODO: problem when different versions of same DR are used
+            */
+            Integer repositoryKey = new Integer(repository.hashCode());
+            key = alias == null ? new OrderedTuple(repositoryKey) : new OrderedTuple(alias, repositoryKey);
+        }
+        synchronized(partitionTable)
+        {
+            Map result = (Map) partitionTable.get(key);
+            if(result == null)
+            {
+                result = new Hashtable();
+                partitionTable.put(key, result);
+                if(log.isDebugEnabled()) log.debug("Create new cache partition " + key);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A resolved cache partition, see {@link ObjectCacheDefaultImpl#getTable()}.
+     */
+    static final class Partition
+    {
+        final String alias;
+        final DescriptorRepository repository;
+        final Map table;
+
+        Partition(String alias, DescriptorRepository repository, Map table)
+        {
+            this.alias = alias;
+            this.repository = repository;
+            this.table = table;
+        }
+
+        boolean matches(String alias, DescriptorRepository repository)
+        {
+            return this.repository == repository
+                    && (this.alias == alias || (this.alias != null && this.alias.equals(alias)));
+        }
     }
 
 
@@ -552,6 +648,7 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
     {
         Object get();
         Identity getOid();
+        Map getTable();
         long getLifetime();
     }
 
@@ -559,11 +656,13 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
     {
         private final long lifetime;
         private final Identity oid;
+        private final Map table;
 
-        CacheEntrySoft(Object object, final Identity k, final ReferenceQueue q, long timeout)
+        CacheEntrySoft(Object object, final Identity k, final Map table, final ReferenceQueue q, long timeout)
         {
             super(object, q);
             oid = k;
+            this.table = table;
             // if timeout is negative, lifetime of object never expire
             if(timeout < 0)
             {
@@ -580,6 +679,11 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
             return oid;
         }
 
+        public Map getTable()
+        {
+            return table;
+        }
+
         public long getLifetime()
         {
             return lifetime;
@@ -590,12 +694,14 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
     {
         private final long lifetime;
         private final Identity oid;
+        private final Map table;
         private Object obj;
 
-        CacheEntryHard(Object object, final Identity k, long timeout)
+        CacheEntryHard(Object object, final Identity k, final Map table, long timeout)
         {
             obj = object;
             oid = k;
+            this.table = table;
             // if timeout is negative, lifetime of object never expire
             if(timeout < 0)
             {
@@ -617,6 +723,11 @@ public class ObjectCacheDefaultImpl implements ObjectCacheInternal, PBStateListe
             return oid;
         }
 
+        public Map getTable()
+        {
+            return table;
+        }
+
         public long getLifetime()
         {
             return lifetime;
@@ -0,0 +1,923 @@
+package org.apache.ojb.broker.cache;
+
+/* Copyright 2004-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+import org.apache.ojb.broker.Identity;
+import org.apache.ojb.broker.OJBRuntimeException;
+import org.apache.ojb.broker.PersistenceBroker;
+import org.apache.ojb.broker.metadata.MetadataException;
+import org.apache.ojb.broker.util.ClassHelper;
+import org.apache.ojb.broker.util.logging.Logger;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+
+/**
+ * A global, bounded {@link ObjectCache} implementation. Like {@link ObjectCacheDefaultImpl}
+ * all instances share the cached objects, but the storage is split into a fixed number of
+ * independently locked <em>segments</em> (selected by the hash of the cache key), so concurrent
+ * threads only contend when they access the same segment.
+ * <br/>
+ * The number of cached objects is limited by property <code>maxEntry</code>. When a segment
+ * exceeds its share of the capacity, an {@link EvictionPolicy} decides which entry has to
+ * be removed.
+ * <p/>
+ * Implementation configuration properties:
+ * </p>
+ * <p/>
+ * <table cellspacing="2" cellpadding="2" border="3" frame="box">
+ * <tr>
+ * <td><strong>Property Key</strong></td>
+ * <td><strong>Property Values</strong></td>
+ * </tr>
+ * <p/>
+ * <tr>
+ * <td>timeout</td>
+ * <td>
+ * Lifetime of the cached objects in seconds. If expired the cached object was not returned
+ * on lookup call (and removed from cache). Default timeout value is 900 seconds. When set
+ * to <tt>-1</tt> the cached objects never get timed out.
+ * </td>
+ * </tr>
+ * <p/>
+ * <tr>
+ * <td>maxEntry</td>
+ * <td>
+ * The maximum number of cached objects. Default is <tt>10000</tt>.
+ * </td>
+ * </tr>
+ * <p/>
+ * <tr>
+ * <td>concurrencyLevel</td>
+ * <td>
+ * The number of segments used to store the objects, rounded up to the next power of two.
+ * Default is <tt>16</tt>.
+ * </td>
+ * </tr>
+ * <p/>
+ * <tr>
+ * <td>evictionPolicy</td>
+ * <td>
+ * The policy used to select the entries to evict: <tt>LRU</tt> (least recently used, the
+ * <em>default</em>), <tt>LFU</tt> (least frequently used), <tt>TinyLFU</tt> (window LRU combined
+ * with a frequency based admission filter) or the full qualified class name of an
+ * {@link EvictionPolicy} implementation.
+ * </td>
+ * </tr>
+ * <p/>
+ * <tr>
+ * <td>cachingKeyType</td>
+ * <td>
+ * Determines how the key was build for the cached objects, the same as in
+ * {@link ObjectCacheDefaultImpl}.
+ * </td>
+ * </tr>
+ * </table>
+ * <p/>
+ * All cache instances using the same <code>maxEntry</code>, <code>concurrencyLevel</code> and
+ * <code>evictionPolicy</code> settings share the same storage.
+ *
+ * @version $Id$
+ */
+public class ObjectCacheStripedImpl implements ObjectCacheInternal
+{
+    private static Logger log = LoggerFactory.getLogger(ObjectCacheStripedImpl.class);
+
+    public static final String TIMEOUT_PROP = "timeout";
+    public static final String MAX_ENTRY_PROP = "maxEntry";
+    public static final String CONCURRENCY_LEVEL_PROP = "concurrencyLevel";
+    public static final String EVICTION_POLICY_PROP = "evictionPolicy";
+    public static final String CACHING_KEY_TYPE_PROP = ObjectCacheDefaultImpl.CACHING_KEY_TYPE_PROP;
+
+    public static final String POLICY_LRU = "LRU";
+    public static final String POLICY_LFU = "LFU";
+    public static final String POLICY_TINY_LFU = "TinyLFU";
+
+    /**
+     * All storages in use, the key is the configuration string of the storage.
+     */
+    private static final Map storages = new HashMap();
+
+    protected PersistenceBroker broker;
+    private Storage storage;
+    /**
+     * Timeout of the cached objects. Default was 900 seconds.
+     */
+    private long timeout = 1000 * 60 * 15;
+    private int cachingKeyType;
+
+    public ObjectCacheStripedImpl(PersistenceBroker broker, Properties prop)
+    {
+        this.broker = broker;
+        if(prop == null)
+        {
+            prop = new Properties();
+        }
+        timeout = Long.parseLong(prop.getProperty(TIMEOUT_PROP, "" + (60 * 15)).trim()) * 1000;
+        cachingKeyType = Integer.parseInt(prop.getProperty(CACHING_KEY_TYPE_PROP, "0").trim());
+        int maxEntry = Integer.parseInt(prop.getProperty(MAX_ENTRY_PROP, "10000").trim());
+        int concurrencyLevel = Integer.parseInt(prop.getProperty(CONCURRENCY_LEVEL_PROP, "16").trim());
+        String policy = prop.getProperty(EVICTION_POLICY_PROP, POLICY_LRU).trim();
+        if(policy.length() == 0)
+        {
+            policy = POLICY_LRU;
+        }
+        storage = lookupStorage(maxEntry, concurrencyLevel, policy);
+        if(log.isEnabledFor(Logger.INFO))
+        {
+            ToStringBuilder buf = new ToStringBuilder(this);
+            buf.append("timeout", timeout)
+                    .append("maxEntry", maxEntry)
+                    .append("concurrencyLevel", storage.segments.length)
+                    .append("evictionPolicy", policy)
+                    .append("cachingKeyType", cachingKeyType);
+            log.info("Setup cache: " + buf.toString());
+        }
+    }
+
+    private static Storage lookupStorage(int maxEntry, int concurrencyLevel, String policy)
+    {
+        String key = maxEntry + "#" + concurrencyLevel + "#" + policy;
+        synchronized(storages)
+        {
+            Storage result = (Storage) storages.get(key);
+            if(result == null)
+            {
+                result = new Storage(maxEntry, concurrencyLevel, policy);
+                storages.put(key, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Clear ObjectCache. I.e. remove all entries for classes and objects.
+     */
+    public void clear()
+    {
+        storage.clear();
+    }
+
+    public void cache(Identity oid, Object obj)
+    {
+        doInternalCache(oid, obj, ObjectCacheInternal.TYPE_UNKNOWN);
+    }
+
+    public void doInternalCache(Identity oid, Object obj, int type)
+    {
+        if(obj != null)
+        {
+            if(log.isDebugEnabled()) log.debug("Cache object " + oid);
+            Object key = buildKey(oid);
+            storage.segmentFor(key).put(key, oid, obj, calculateLifetime(), true);
+        }
+    }
+
+    public boolean cacheIfNew(Identity oid, Object obj)
+    {
+        boolean result = false;
+        if(obj != null)
+        {
+            Object key = buildKey(oid);
+            result = storage.segmentFor(key).put(key, oid, obj, calculateLifetime(), false);
+        }
+        return result;
+    }
+
+    /**
+     * Lookup object with Identity oid in the cache.
+     * Returns null if no matching id is found
+     */
+    public Object lookup(Identity oid)
+    {
+        Object key = buildKey(oid);
+        Object result = storage.segmentFor(key).get(key, System.currentTimeMillis());
+        if(result != null && log.isDebugEnabled()) log.debug("Object match " + oid);
+        return result;
+    }
+
+    /**
+     * Removes an Object from the cache.
+     */
+    public void remove(Identity oid)
+    {
+        if(oid != null)
+        {
+            Object key = buildKey(oid);
+            storage.segmentFor(key).remove(key);
+            if(log.isDebugEnabled()) log.debug("Remove object " + oid);
+        }
+    }
+
+    /**
+     * Returns the number of successful lookups summed over all segments.
+     */
+    public long getHitCount()
+    {
+        return storage.sum(Segment.HITS);
+    }
+
+    /**
+     * Returns the number of lookups without match summed over all segments.
+     */
+    public long getMissCount()
+    {
+        return storage.sum(Segment.MISSES);
+    }
+
+    /**
+     * Returns the number of entries removed by the {@link EvictionPolicy} summed over
+     * all segments.
+     */
+    public long getEvictionCount()
+    {
+        return storage.sum(Segment.EVICTIONS);
+    }
+
+    /**
+     * Returns the number of currently cached objects.
+     */
+    public int size()
+    {
+        return (int) storage.sum(Segment.SIZE);
+    }
+
+    public String toString()
+    {
+        ToStringBuilder buf = new ToStringBuilder(this, ToStringStyle.DEFAULT_STYLE);
+        buf.append("Count of cached objects", size());
+        buf.append("Lookup hits", getHitCount());
+        buf.append("Failures", getMissCount());
+        buf.append("Evicted", getEvictionCount());
+        buf.append("Expired", storage.sum(Segment.EXPIRED));
+        return buf.toString();
+    }
+
+    private long calculateLifetime()
+    {
+        // if timeout is negative, lifetime of object never expire
+        return timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+    }
+
+    private Object buildKey(Identity oid)
+    {
+        Object key;
+        switch(cachingKeyType)
+        {
+            case 0:
+                key = oid;
+                break;
+            case 1:
+                key = new ObjectCacheDefaultImpl.OrderedTuple(oid, broker.getPBKey().getAlias());
+                break;
+            case 2:
+                key = new ObjectCacheDefaultImpl.OrderedTuple(oid,
+                        new Integer(broker.getDescriptorRepository().hashCode()));
+                break;
+            case 3:
+                key = new ObjectCacheDefaultImpl.OrderedTuple(oid, broker.getPBKey().getAlias(),
+                        new Integer(broker.getDescriptorRepository().hashCode()));
+                break;
+            default:
+                throw new OJBRuntimeException("Unexpected error, 'cacheType =" + cachingKeyType + "' was not supported");
+        }
+        return key;
+    }
+
+    static EvictionPolicy createPolicy(String policy)
+    {
+        if(POLICY_LRU.equalsIgnoreCase(policy))
+        {
+            return new EvictionPolicyLRUImpl();
+        }
+        else if(POLICY_LFU.equalsIgnoreCase(policy))
+        {
+            return new EvictionPolicyLFUImpl();
+        }
+        else if(POLICY_TINY_LFU.equalsIgnoreCase(policy))
+        {
+            return new EvictionPolicyTinyLFUImpl();
+        }
+        try
+        {
+            return (EvictionPolicy) ClassHelper.newInstance(policy);
+        }
+        catch(Exception e)
+        {
+            throw new MetadataException("Can't create eviction policy '" + policy + "'", e);
+        }
+    }
+
+    //-----------------------------------------------------------
+    // inner classes to store the cached objects
+    //-----------------------------------------------------------
+    /**
+     * The segments of a cache, each segment holds a fixed part of the capacity.
+     */
+    static final class Storage
+    {
+        final Segment[] segments;
+        final int mask;
+
+        Storage(int maxEntry, int concurrencyLevel, String policy)
+        {
+            int count = 1;
+            while(count < concurrencyLevel)
+            {
+                count <<= 1;
+            }
+            int capacity = Math.max(1, (maxEntry + count - 1) / count);
+            segments = new Segment[count];
+            for(int i = 0; i < count; i++)
+            {
+                segments[i] = new Segment(capacity, createPolicy(policy));
+            }
+            mask = count - 1;
+        }
+
+        Segment segmentFor(Object key)
+        {
+            int h = key.hashCode();
+            // spread the bits, Identity hash codes often differ only in the low bits
+            h ^= (h >>> 20) ^ (h >>> 12);
+            h ^= (h >>> 7) ^ (h >>> 4);
+            return segments[h & mask];
+        }
+
+        void clear()
+        {
+            for(int i = 0; i < segments.length; i++)
+            {
+                segments[i].clear();
+            }
+        }
+
+        long sum(int counter)
+        {
+            long result = 0;
+            for(int i = 0; i < segments.length; i++)
+            {
+                result += segments[i].getCounter(counter);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A part of the cache storage, all operations are synchronized on the segment.
+     */
+    static final class Segment
+    {
+        static final int HITS = 0;
+        static final int MISSES = 1;
+        static final int EVICTIONS = 2;
+        static final int EXPIRED = 3;
+        static final int SIZE = 4;
+
+        private final HashMap table = new HashMap();
+        private final EvictionPolicy policy;
+        private long hits;
+        private long misses;
+        private long evictions;
+        private long expired;
+
+        Segment(int capacity, EvictionPolicy policy)
+        {
+            this.policy = policy;
+            policy.init(capacity);
+        }
+
+        synchronized Object get(Object key, long now)
+        {
+            Entry entry = (Entry) table.get(key);
+            if(entry == null)
+            {
+                ++misses;
+                return null;
+            }
+            if(entry.lifetime < now)
+            {
+                ++expired;
+                ++misses;
+                removeEntry(entry);
+                return null;
+            }
+            ++hits;
+            policy.recordAccess(entry);
+            return entry.value;
+        }
+
+        synchronized boolean put(Object key, Identity oid, Object value, long lifetime, boolean replace)
+        {
+            Entry entry = (Entry) table.get(key);
+            if(entry != null)
+            {
+                if(!replace && entry.lifetime >= System.currentTimeMillis())
+                {
+                    return false;
+                }
+                entry.oid = oid;
+                entry.value = value;
+                entry.lifetime = lifetime;
+                policy.recordAccess(entry);
+                return true;
+            }
+            entry = new Entry(key, oid, value, lifetime);
+            table.put(key, entry);
+            Entry victim = policy.recordInsert(entry, table.size());
+            if(victim != null)
+            {
+                ++evictions;
+                removeEntry(victim);
+                return victim != entry;
+            }
+            return true;
+        }
+
+        synchronized void remove(Object key)
+        {
+            Entry entry = (Entry) table.get(key);
+            if(entry != null)
+            {
+                removeEntry(entry);
+            }
+        }
+
+        synchronized void clear()
+        {
+            table.clear();
+            policy.clear();
+        }
+
+        synchronized long getCounter(int counter)
+        {
+            switch(counter)
+            {
+                case HITS:
+                    return hits;
+                case MISSES:
+                    return misses;
+                case EVICTIONS:
+                    return evictions;
+                case EXPIRED:
+                    return expired;
+                default:
+                    return table.size();
+            }
+        }
+
+        private void removeEntry(Entry entry)
+        {
+            table.remove(entry.key);
+            policy.recordRemove(entry);
+        }
+    }
+
+    /**
+     * A cached object. The fields <code>previous</code>, <code>next</code>, <code>frequency</code>
+     * and <code>policyData</code> are reserved for use by the {@link EvictionPolicy}.
+     */
+    public static final class Entry
+    {
+        private final Object key;
+        private Identity oid;
+        private Object value;
+        private long lifetime;
+
+        private Entry previous;
+        private Entry next;
+        private int frequency;
+        private Object policyData;
+
+        Entry(Object key, Identity oid, Object value, long lifetime)
+        {
+            this.key = key;
+            this.oid = oid;
+            this.value = value;
+            this.lifetime = lifetime;
+        }
+
+        public Object getKey()
+        {
+            return key;
+        }
+
+        public Identity getOid()
+        {
+            return oid;
+        }
+
+        public Entry getPrevious()
+        {
+            return previous;
+        }
+
+        public void setPrevious(Entry previous)
+        {
+            this.previous = previous;
+        }
+
+        public Entry getNext()
+        {
+            return next;
+        }
+
+        public void setNext(Entry next)
+        {
+            this.next = next;
+        }
+
+        public int getFrequency()
+        {
+            return frequency;
+        }
+
+        public void setFrequency(int frequency)
+        {
+            this.frequency = frequency;
+        }
+
+        public Object getPolicyData()
+        {
+            return policyData;
+        }
+
+        public void setPolicyData(Object policyData)
+        {
+            this.policyData = policyData;
+        }
+
+        /**
+         * Appends this entry to the end of the double linked list with the given head.
+         */
+        void linkBefore(Entry head)
+        {
+            previous = head.previous;
+            next = head;
+            head.previous.next = this;
+            head.previous = this;
+        }
+
+        /**
+         * Removes this entry from its double linked list.
+         */
+        void unlink()
+        {
+            if(previous != null)
+            {
+                previous.next = next;
+                next.previous = previous;
+                previous = null;
+                next = null;
+            }
+        }
+
+        static Entry newHead()
+        {
+            Entry head = new Entry(null, null, null, 0);
+            head.previous = head;
+            head.next = head;
+            return head;
+        }
+    }
+
+    //-----------------------------------------------------------
+    // eviction policies
+    //-----------------------------------------------------------
+    /**
+     * Decides which entries of a segment have to be evicted. Each segment uses its own policy
+     * instance and all methods are called while the segment lock is held, so implementations
+     * don't need to be thread-safe.
+     */
+    public interface EvictionPolicy
+    {
+        /**
+         * Called once before the policy is used.
+         *
+         * @param capacity The maximum number of entries of the segment.
+         */
+        public void init(int capacity);
+
+        /**
+         * Called after a new entry was added to the segment.
+         *
+         * @param entry The new entry.
+         * @param size The number of entries in the segment including the new one.
+         * @return The entry to evict (could be the new entry itself) or <em>null</em>.
+         */
+        public Entry recordInsert(Entry entry, int size);
+
+        /**
+         * Called when an entry was looked up or replaced.
+         */
+        public void recordAccess(Entry entry);
+
+        /**
+         * Called after an entry was removed from the segment.
+         */
+        public void recordRemove(Entry entry);
+
+        /**
+         * Called when the segment was cleared.
+         */
+        public void clear();
+    }
+
+    /**
+     * Evicts the least recently used entry.
+     */
+    public static class EvictionPolicyLRUImpl implements EvictionPolicy
+    {
+        private int capacity;
+        private Entry head = Entry.newHead();
+
+        public void init(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        public Entry recordInsert(Entry entry, int size)
+        {
+            entry.linkBefore(head);
+            return size > capacity ? head.next : null;
+        }
+
+        public void recordAccess(Entry entry)
+        {
+            entry.unlink();
+            entry.linkBefore(head);
+        }
+
+        public void recordRemove(Entry entry)
+        {
+            entry.unlink();
+        }
+
+        public void clear()
+        {
+            head = Entry.newHead();
+        }
+    }
+
+    /**
+     * Evicts the least frequently used entry, entries with the same frequency are
+     * evicted in insertion order. The entries are kept in buckets of equal frequency,
+     * so all operations run in constant time.
+     */
+    public static class EvictionPolicyLFUImpl implements EvictionPolicy
+    {
+        private int capacity;
+        private Bucket buckets = new Bucket(0);
+
+        public void init(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        public Entry recordInsert(Entry entry, int size)
+        {
+            Entry victim = null;
+            if(size > capacity)
+            {
+                // evict before the new entry is linked, else it would always be the victim
+                Bucket lowest = buckets.next;
+                victim = lowest != buckets ? lowest.entries.next : entry;
+            }
+            if(victim != entry)
+            {
+                Bucket first = buckets.next;
+                if(first == buckets || first.frequency != 1)
+                {
+                    first = buckets.insertAfter(1);
+                }
+                entry.setFrequency(1);
+                entry.setPolicyData(first);
+                entry.linkBefore(first.entries);
+            }
+            return victim;
+        }
+
+        public void recordAccess(Entry entry)
+        {
+            Bucket current = (Bucket) entry.getPolicyData();
+            if(current == null) return;
+            int frequency = entry.getFrequency() + 1;
+            Bucket target = current.next;
+            if(target == buckets || target.frequency != frequency)
+            {
+                target = current.insertAfter(frequency);
+            }
+            entry.unlink();
+            current.removeIfEmpty();
+            entry.setFrequency(frequency);
+            entry.setPolicyData(target);
+            entry.linkBefore(target.entries);
+        }
+
+        public void recordRemove(Entry entry)
+        {
+            Bucket current = (Bucket) entry.getPolicyData();
+            if(current != null)
+            {
+                entry.unlink();
+                entry.setPolicyData(null);
+                current.removeIfEmpty();
+            }
+        }
+
+        public void clear()
+        {
+            buckets = new Bucket(0);
+        }
+
+        static final class Bucket
+        {
+            final int frequency;
+            final Entry entries = Entry.newHead();
+            Bucket previous = this;
+            Bucket next = this;
+
+            Bucket(int frequency)
+            {
+                this.frequency = frequency;
+            }
+
+            Bucket insertAfter(int frequency)
+            {
+                Bucket result = new Bucket(frequency);
+                result.previous = this;
+                result.next = next;
+                next.previous = result;
+                next = result;
+                return result;
+            }
+
+            void removeIfEmpty()
+            {
+                if(entries.next == entries)
+                {
+                    previous.next = next;
+                    next.previous = previous;
+                }
+            }
+        }
+    }
+
+    /**
+     * A W-TinyLFU policy: new entries are admitted to a small LRU <em>window</em> (1% of the
+     * capacity). Entries leaving the window compete with the least recently used entry of the
+     * <em>main</em> LRU area, the one with the higher estimated access frequency is kept.
+     * Frequencies are estimated by a count-min sketch which is periodically aged, so
+     * one-hit-wonders can't flush frequently used objects out of the cache.
+     */
+    public static class EvictionPolicyTinyLFUImpl implements EvictionPolicy
+    {
+        private static final Object WINDOW = "window";
+        private static final Object MAIN = "main";
+        private static final int DEPTH = 4;
+        private static final int[] SEEDS = new int[]{0x97cb3127, 0xb9fa4b7f, 0xcf8a4fb3, 0xe5a29f8d};
+
+        private int windowCapacity;
+        private int mainCapacity;
+        private int windowSize;
+        private int mainSize;
+        private Entry window = Entry.newHead();
+        private Entry main = Entry.newHead();
+
+        private int[] sketch;
+        private int sketchMask;
+        private int additions;
+        private int sampleSize;
+
+        public void init(int capacity)
+        {
+            windowCapacity = Math.max(1, capacity / 100);
+            mainCapacity = Math.max(1, capacity - windowCapacity);
+            // a wide sketch keeps the collisions of one-hit-wonders low
+            int width = 16;
+            while(width < capacity * 8)
+            {
+                width <<= 1;
+            }
+            sketch = new int[width];
+            sketchMask = width - 1;
+            sampleSize = 10 * Math.max(capacity, 16);
+        }
+
+        public Entry recordInsert(Entry entry, int size)
+        {
+            increment(entry.getKey());
+            entry.setPolicyData(WINDOW);
+            entry.linkBefore(window);
+            ++windowSize;
+            if(windowSize <= windowCapacity)
+            {
+                return null;
+            }
+            // move the oldest window entry to main area
+            Entry candidate = window.next;
+            candidate.unlink();
+            --windowSize;
+            candidate.setPolicyData(MAIN);
+            candidate.linkBefore(main);
+            ++mainSize;
+            if(mainSize <= mainCapacity)
+            {
+                return null;
+            }
+            Entry victim = main.next;
+            return frequency(candidate.getKey()) > frequency(victim.getKey()) ? victim : candidate;
+        }
+
+        public void recordAccess(Entry entry)
+        {
+            increment(entry.getKey());
+            Object area = entry.getPolicyData();
+            if(area != null)
+            {
+                entry.unlink();
+                entry.linkBefore(area == WINDOW ? window : main);
+            }
+        }
+
+        public void recordRemove(Entry entry)
+        {
+            Object area = entry.getPolicyData();
+            if(area == WINDOW)
+            {
+                --windowSize;
+            }
+            else if(area == MAIN)
+            {
+                --mainSize;
+            }
+            entry.unlink();
+            entry.setPolicyData(null);
+        }
+
+        public void clear()
+        {
+            window = Entry.newHead();
+            main = Entry.newHead();
+            windowSize = 0;
+            mainSize = 0;
+            additions = 0;
+            for(int i = 0; i < sketch.length; i++)
+            {
+                sketch[i] = 0;
+            }
+        }
+
+        private int indexOf(int hash, int row)
+        {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & sketchMask;
+        }
+
+        private void increment(Object key)
+        {
+            int hash = key.hashCode();
+            for(int i = 0; i < DEPTH; i++)
+            {
+                ++sketch[indexOf(hash, i)];
+            }
+            if(++additions >= sampleSize)
+            {
+                // aging, halve all counters
+                for(int i = 0; i < sketch.length; i++)
+                {
+                    sketch[i] >>>= 1;
+                }
+                additions = additions >>> 1;
+            }
+        }
+
+        private int frequency(Object key)
+        {
+            int hash = key.hashCode();
+            int result = Integer.MAX_VALUE;
+            for(int i = 0; i < DEPTH; i++)
+            {
+                result = Math.min(result, sketch[indexOf(hash, i)]);
+            }
+            return result;
+        }
+    }
+}
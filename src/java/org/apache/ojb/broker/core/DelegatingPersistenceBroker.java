@@ -148,6 +148,16 @@ public class DelegatingPersistenceBroker implements PersistenceBrokerInternal, P
         m_broker.checkRefreshRelationships(obj, oid, cld);
     }
 
+    public void registerExtentClass(Identity oid, Object obj)
+    {
+        m_broker.registerExtentClass(oid, obj);
+    }
+
+    public boolean isLifeCycleEventRequired(Object target)
+    {
+        return m_broker.isLifeCycleEventRequired(target);
+    }
+
     public RelationshipPrefetcherFactory getRelationshipPrefetcherFactory()
     {
         return m_broker.getRelationshipPrefetcherFactory();
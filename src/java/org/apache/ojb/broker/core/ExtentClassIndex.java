@@ -0,0 +1,68 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.ojb.broker.Identity;
+
+/**
+ * Maps the {@link Identity} of objects of extent classes to their concrete class.
+ * If the real class of an identity is unknown, the broker has to lookup the object
+ * in the tables of all concrete classes of the extent. The index allows the broker to
+ * go straight to the table of the concrete class. The index is only a hint, if the object
+ * isn't found in the table of the indexed class the broker probes all tables as usual.
+ * <br/>
+ * The index is populated by the broker whenever an object of an extent class
+ * is materialized or inserted. The implementation is set by the <em>ExtentClassIndexClass</em>
+ * property in OJB.properties, it needs a public constructor taking the jcd-alias of the
+ * database and the maximal number of entries of the index (<em>ExtentClassIndexSize</em>).
+ * The index can be kept in-process (see {@link ExtentClassIndexDefaultImpl}) or shared
+ * by several processes.
+ *
+ * @version $Id$
+ */
+public interface ExtentClassIndex
+{
+    /**
+     * Returns the concrete class of the object with the given identity
+     * or <em>null</em> if not indexed.
+     */
+    public Class lookup(Identity oid);
+
+    /**
+     * Adds the concrete class of the object with the given identity.
+     */
+    public void register(Identity oid, Class concreteClass);
+
+    /**
+     * Removes the given identity, e.g. if the object was deleted.
+     */
+    public void remove(Identity oid);
+
+    /**
+     * Removes all entries.
+     */
+    public void clear();
+
+    /**
+     * Called by the broker when a lookup saved the given number of table probes.
+     */
+    public void probesSaved(int probes);
+
+    /**
+     * Returns the number of table probes saved by the index.
+     */
+    public long getSavedProbes();
+}
@@ -0,0 +1,126 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.commons.lang.builder.ToStringBuilder;
+import org.apache.commons.lang.builder.ToStringStyle;
+import org.apache.ojb.broker.Identity;
+
+/**
+ * The default in-process {@link ExtentClassIndex}, a bounded map
+ * evicting the least recently used identities.
+ *
+ * @version $Id$
+ */
+public class ExtentClassIndexDefaultImpl implements ExtentClassIndex
+{
+    private final String jcdAlias;
+    private final LRUMap classes;
+    private long hits;
+    private long misses;
+    private long savedProbes;
+
+    /**
+     * Creates a new index.
+     *
+     * @param jcdAlias the jcd-alias of the database
+     * @param maxSize the maximal number of indexed identities
+     */
+    public ExtentClassIndexDefaultImpl(String jcdAlias, int maxSize)
+    {
+        this.jcdAlias = jcdAlias;
+        this.classes = new LRUMap(maxSize);
+    }
+
+    public synchronized Class lookup(Identity oid)
+    {
+        Class result = (Class) classes.get(oid);
+        if(result != null)
+        {
+            ++hits;
+        }
+        else
+        {
+            ++misses;
+        }
+        return result;
+    }
+
+    public synchronized void register(Identity oid, Class concreteClass)
+    {
+        classes.put(oid, concreteClass);
+    }
+
+    public synchronized void remove(Identity oid)
+    {
+        classes.remove(oid);
+    }
+
+    public synchronized void clear()
+    {
+        classes.clear();
+        hits = 0;
+        misses = 0;
+        savedProbes = 0;
+    }
+
+    public synchronized void probesSaved(int probes)
+    {
+        savedProbes += probes;
+    }
+
+    public synchronized long getSavedProbes()
+    {
+        return savedProbes;
+    }
+
+    /**
+     * Returns the number of lookups finding the class of the identity.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups not finding the class of the identity.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     * Returns the number of indexed identities.
+     */
+    public synchronized int size()
+    {
+        return classes.size();
+    }
+
+    public synchronized String toString()
+    {
+        return new ToStringBuilder(this, ToStringStyle.DEFAULT_STYLE)
+                .append("jcdAlias", jcdAlias)
+                .append("size", classes.size())
+                .append("maxSize", classes.maxSize())
+                .append("hits", hits)
+                .append("misses", misses)
+                .append("savedProbes", savedProbes)
+                .toString();
+    }
+}
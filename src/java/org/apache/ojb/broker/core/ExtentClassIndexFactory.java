@@ -0,0 +1,86 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ojb.broker.PersistenceBrokerException;
+import org.apache.ojb.broker.PersistenceBrokerFactory;
+import org.apache.ojb.broker.util.ClassHelper;
+import org.apache.ojb.broker.util.configuration.ConfigurationException;
+
+/**
+ * Creates the {@link ExtentClassIndex} of a database, all brokers
+ * of a database share the same index. The implementation and the size of the
+ * index are set by the <em>ExtentClassIndexClass</em> and <em>ExtentClassIndexSize</em>
+ * properties in OJB.properties, a size of 0 disables the index.
+ *
+ * @version $Id$
+ */
+public class ExtentClassIndexFactory
+{
+    /** Maps the jcd-alias to the index of the database */
+    private static final Map indexes = new HashMap();
+
+    private ExtentClassIndexFactory()
+    {
+    }
+
+    /**
+     * Returns the index of the given database or <em>null</em> if disabled.
+     *
+     * @param jcdAlias the jcd-alias of the database
+     */
+    public static synchronized ExtentClassIndex getIndex(String jcdAlias)
+    {
+        if(indexes.containsKey(jcdAlias))
+        {
+            return (ExtentClassIndex) indexes.get(jcdAlias);
+        }
+        ExtentClassIndex result = null;
+        PersistenceBrokerConfiguration config = getConfiguration();
+        if(config != null && config.getExtentClassIndexSize() > 0)
+        {
+            try
+            {
+                result = (ExtentClassIndex) ClassHelper.newInstance(config.getExtentClassIndexClass(),
+                        new Class[]{String.class, Integer.TYPE},
+                        new Object[]{jcdAlias, new Integer(config.getExtentClassIndexSize())});
+            }
+            catch(Exception e)
+            {
+                throw new PersistenceBrokerException("Can't create ExtentClassIndex "
+                        + config.getExtentClassIndexClass() + " for " + jcdAlias, e);
+            }
+        }
+        indexes.put(jcdAlias, result);
+        return result;
+    }
+
+    private static PersistenceBrokerConfiguration getConfiguration()
+    {
+        try
+        {
+            return (PersistenceBrokerConfiguration) PersistenceBrokerFactory
+                    .getConfigurator().getConfigurationFor(null);
+        }
+        catch(ConfigurationException e)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.ojb.broker.Identity;
+import org.apache.ojb.broker.PersistenceBrokerException;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
+import org.apache.ojb.broker.util.ClassHelper;
+
+/**
+ * A compact, versioned binary format for {@link Identity} objects, an alternative
+ * to (compressed) java serialization when identities are shipped between JVMs.
+ * <p>
+ * The classes of the identity are written as id of a class registry built from
+ * a {@link DescriptorRepository} (the id is the position of the class name in the
+ * sorted list of all persistent class names) or, if no repository is used or the class is
+ * unknown, as class name. A fingerprint of the registry is part of the encoded form, thus
+ * both sides have to use the same metadata when class ids are used.
+ * The primary key values are written with a type tag, integral values
+ * as variable-length integers. No compression is used.
+ * </p>
+ * <p>
+ * Layout: <code>version | flags | [registry fingerprint] | top-level class | [real class] |
+ * number of values | (tag value)*</code>
+ * </p>
+ * Instances are immutable and thread-safe. The registry is a snapshot of the
+ * repository at creation time.
+ *
+ * @version $Id$
+ */
+public class IdentityCodec
+{
+    /**
+     * The version of the encoded form.
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * A codec writing class names, usable without a shared repository.
+     */
+    public static final IdentityCodec DEFAULT = new IdentityCodec();
+
+    private static final int FLAG_TRANSIENT = 1;
+    private static final int FLAG_REAL_CLASS = 2;
+    private static final int FLAG_REGISTRY = 4;
+    private static final int FLAG_UNKNOWN_REAL_CLASS = 8;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_INTEGER = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_SHORT = 3;
+    private static final byte TAG_BYTE = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_BIG_DECIMAL = 6;
+    private static final byte TAG_BIG_INTEGER = 7;
+    private static final byte TAG_TRUE = 8;
+    private static final byte TAG_FALSE = 9;
+    private static final byte TAG_DOUBLE = 10;
+    private static final byte TAG_FLOAT = 11;
+    private static final byte TAG_CHARACTER = 12;
+    private static final byte TAG_BYTES = 13;
+    private static final byte TAG_SQL_DATE = 14;
+    private static final byte TAG_SQL_TIME = 15;
+    private static final byte TAG_TIMESTAMP = 16;
+    private static final byte TAG_DATE = 17;
+    private static final byte TAG_SERIALIZED = 18;
+
+    private final Class[] registeredClasses;
+    private final Map classIds;
+    private final int fingerprint;
+
+    /**
+     * Creates a codec writing class names.
+     */
+    public IdentityCodec()
+    {
+        registeredClasses = new Class[0];
+        classIds = Collections.EMPTY_MAP;
+        fingerprint = 0;
+    }
+
+    /**
+     * Creates a codec using a class registry built from all
+     * persistent classes of the given repository.
+     */
+    public IdentityCodec(DescriptorRepository repository)
+    {
+        List names = new ArrayList(repository.getDescriptorTable().keySet());
+        Collections.sort(names);
+        registeredClasses = new Class[names.size()];
+        classIds = new HashMap();
+        int hash = 17;
+        for(int i = 0; i < names.size(); i++)
+        {
+            String name = (String) names.get(i);
+            ClassDescriptor cld = repository.getDescriptorFor(name);
+            registeredClasses[i] = cld.getClassOfObject();
+            classIds.put(registeredClasses[i], new Integer(i));
+            hash = hash * 31 + name.hashCode();
+        }
+        // 0 is reserved for "no registry"
+        fingerprint = hash != 0 ? hash : 1;
+    }
+
+    /**
+     * Returns the fingerprint of the class registry, <em>0</em> if no registry is used.
+     */
+    public int getFingerprint()
+    {
+        return fingerprint;
+    }
+
+    /**
+     * Returns the encoded form of the given {@link Identity}.
+     */
+    public byte[] encode(Identity oid) throws PersistenceBrokerException
+    {
+        try
+        {
+            ByteArrayOutputStream bao = new ByteArrayOutputStream(32);
+            DataOutputStream out = new DataOutputStream(bao);
+            write(oid, out);
+            out.close();
+            return bao.toByteArray();
+        }
+        catch(IOException e)
+        {
+            throw new PersistenceBrokerException("Can't encode identity " + oid, e);
+        }
+    }
+
+    /**
+     * Returns the {@link Identity} of the given encoded form.
+     */
+    public Identity decode(byte[] bytes) throws PersistenceBrokerException
+    {
+        try
+        {
+            return read(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        catch(IOException e)
+        {
+            throw new PersistenceBrokerException("Can't decode identity", e);
+        }
+    }
+
+    /**
+     * Writes the given {@link Identity} to the given output.
+     */
+    public void write(Identity oid, DataOutput out) throws IOException
+    {
+        Class topLevel = oid.getObjectsTopLevelClass();
+        Class realClass = oid.getObjectsRealClass();
+        boolean writeRealClass = realClass != null && realClass != topLevel;
+        int flags = 0;
+        if(oid.isTransient()) flags |= FLAG_TRANSIENT;
+        if(writeRealClass) flags |= FLAG_REAL_CLASS;
+        if(fingerprint != 0) flags |= FLAG_REGISTRY;
+        if(realClass == null) flags |= FLAG_UNKNOWN_REAL_CLASS;
+
+        out.writeByte(VERSION);
+        out.writeByte(flags);
+        if(fingerprint != 0)
+        {
+            out.writeInt(fingerprint);
+        }
+        writeClass(topLevel, out);
+        if(writeRealClass)
+        {
+            writeClass(realClass, out);
+        }
+        if(oid instanceof NumericIdentity)
+        {
+            writeVarLong(1, out);
+            writeValue(((NumericIdentity) oid).getPrimaryKeyValue(), out);
+        }
+        else
+        {
+            Object[] pkValues = oid.getPrimaryKeyValues();
+            writeVarLong(pkValues.length, out);
+            for(int i = 0; i < pkValues.length; i++)
+            {
+                writeValue(pkValues[i], out);
+            }
+        }
+    }
+
+    /**
+     * Reads an {@link Identity} from the given input.
+     */
+    public Identity read(DataInput in) throws IOException
+    {
+        byte version = in.readByte();
+        if(version != VERSION)
+        {
+            throw new IOException("Unsupported identity format version " + version + ", expected " + VERSION);
+        }
+        int flags = in.readByte();
+        if((flags & FLAG_REGISTRY) != 0)
+        {
+            int remoteFingerprint = in.readInt();
+            if(remoteFingerprint != fingerprint)
+            {
+                throw new IOException("Identity was encoded with a different class registry, fingerprint "
+                        + remoteFingerprint + " does not match " + fingerprint);
+            }
+        }
+        Class topLevel = readClass(in);
+        Class realClass;
+        if((flags & FLAG_REAL_CLASS) != 0)
+        {
+            realClass = readClass(in);
+        }
+        else
+        {
+            realClass = (flags & FLAG_UNKNOWN_REAL_CLASS) != 0 ? null : topLevel;
+        }
+        Object[] pkValues = new Object[(int) readVarLong(in)];
+        for(int i = 0; i < pkValues.length; i++)
+        {
+            pkValues[i] = readValue(in);
+        }
+        return NumericIdentity.newIdentity(realClass, topLevel, pkValues, (flags & FLAG_TRANSIENT) != 0);
+    }
+
+    //=======================================================
+    // classes
+    //=======================================================
+    private void writeClass(Class clazz, DataOutput out) throws IOException
+    {
+        Integer id = (Integer) classIds.get(clazz);
+        if(id != null)
+        {
+            writeVarLong(id.intValue() + 1, out);
+        }
+        else
+        {
+            // 0 indicates a class name
+            out.writeByte(0);
+            writeString(clazz.getName(), out);
+        }
+    }
+
+    private Class readClass(DataInput in) throws IOException
+    {
+        int id = (int) readVarLong(in);
+        if(id == 0)
+        {
+            String name = readString(in);
+            try
+            {
+                return ClassHelper.getClass(name);
+            }
+            catch(ClassNotFoundException e)
+            {
+                throw new IOException("Can't load class " + name + " of identity: " + e.getMessage());
+            }
+        }
+        if(id > registeredClasses.length)
+        {
+            throw new IOException("Unknown class id " + (id - 1));
+        }
+        return registeredClasses[id - 1];
+    }
+
+    //=======================================================
+    // values
+    //=======================================================
+    private void writeValue(Object value, DataOutput out) throws IOException
+    {
+        if(value == null)
+        {
+            out.writeByte(TAG_NULL);
+        }
+        else if(value instanceof Integer)
+        {
+            out.writeByte(TAG_INTEGER);
+            writeSignedVarLong(((Integer) value).intValue(), out);
+        }
+        else if(value instanceof Long)
+        {
+            out.writeByte(TAG_LONG);
+            writeSignedVarLong(((Long) value).longValue(), out);
+        }
+        else if(value instanceof String)
+        {
+            out.writeByte(TAG_STRING);
+            writeString((String) value, out);
+        }
+        else if(value instanceof Short)
+        {
+            out.writeByte(TAG_SHORT);
+            writeSignedVarLong(((Short) value).shortValue(), out);
+        }
+        else if(value instanceof Byte)
+        {
+            out.writeByte(TAG_BYTE);
+            out.writeByte(((Byte) value).byteValue());
+        }
+        else if(value instanceof BigDecimal)
+        {
+            BigDecimal decimal = (BigDecimal) value;
+            out.writeByte(TAG_BIG_DECIMAL);
+            writeSignedVarLong(decimal.scale(), out);
+            writeBytes(decimal.unscaledValue().toByteArray(), out);
+        }
+        else if(value instanceof BigInteger)
+        {
+            out.writeByte(TAG_BIG_INTEGER);
+            writeBytes(((BigInteger) value).toByteArray(), out);
+        }
+        else if(value instanceof Boolean)
+        {
+            out.writeByte(((Boolean) value).booleanValue() ? TAG_TRUE : TAG_FALSE);
+        }
+        else if(value instanceof Double)
+        {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Double) value).doubleValue());
+        }
+        else if(value instanceof Float)
+        {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat(((Float) value).floatValue());
+        }
+        else if(value instanceof Character)
+        {
+            out.writeByte(TAG_CHARACTER);
+            out.writeChar(((Character) value).charValue());
+        }
+        else if(value instanceof byte[])
+        {
+            out.writeByte(TAG_BYTES);
+            writeBytes((byte[]) value, out);
+        }
+        else if(value.getClass() == java.sql.Date.class)
+        {
+            out.writeByte(TAG_SQL_DATE);
+            writeSignedVarLong(((java.util.Date) value).getTime(), out);
+        }
+        else if(value.getClass() == java.sql.Time.class)
+        {
+            out.writeByte(TAG_SQL_TIME);
+            writeSignedVarLong(((java.util.Date) value).getTime(), out);
+        }
+        else if(value.getClass() == java.sql.Timestamp.class)
+        {
+            java.sql.Timestamp timestamp = (java.sql.Timestamp) value;
+            out.writeByte(TAG_TIMESTAMP);
+            writeSignedVarLong(timestamp.getTime(), out);
+            writeVarLong(timestamp.getNanos(), out);
+        }
+        else if(value.getClass() == java.util.Date.class)
+        {
+            out.writeByte(TAG_DATE);
+            writeSignedVarLong(((java.util.Date) value).getTime(), out);
+        }
+        else
+        {
+            // any other type, use java serialization
+            ByteArrayOutputStream bao = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bao);
+            oos.writeObject(value);
+            oos.close();
+            out.writeByte(TAG_SERIALIZED);
+            writeBytes(bao.toByteArray(), out);
+        }
+    }
+
+    private Object readValue(DataInput in) throws IOException
+    {
+        byte tag = in.readByte();
+        switch(tag)
+        {
+            case TAG_NULL:
+                return null;
+            case TAG_INTEGER:
+                return new Integer((int) readSignedVarLong(in));
+            case TAG_LONG:
+                return new Long(readSignedVarLong(in));
+            case TAG_STRING:
+                return readString(in);
+            case TAG_SHORT:
+                return new Short((short) readSignedVarLong(in));
+            case TAG_BYTE:
+                return new Byte(in.readByte());
+            case TAG_BIG_DECIMAL:
+                int scale = (int) readSignedVarLong(in);
+                return new BigDecimal(new BigInteger(readBytes(in)), scale);
+            case TAG_BIG_INTEGER:
+                return new BigInteger(readBytes(in));
+            case TAG_TRUE:
+                return Boolean.TRUE;
+            case TAG_FALSE:
+                return Boolean.FALSE;
+            case TAG_DOUBLE:
+                return new Double(in.readDouble());
+            case TAG_FLOAT:
+                return new Float(in.readFloat());
+            case TAG_CHARACTER:
+                return new Character(in.readChar());
+            case TAG_BYTES:
+                return readBytes(in);
+            case TAG_SQL_DATE:
+                return new java.sql.Date(readSignedVarLong(in));
+            case TAG_SQL_TIME:
+                return new java.sql.Time(readSignedVarLong(in));
+            case TAG_TIMESTAMP:
+                java.sql.Timestamp timestamp = new java.sql.Timestamp(readSignedVarLong(in));
+                timestamp.setNanos((int) readVarLong(in));
+                return timestamp;
+            case TAG_DATE:
+                return new java.util.Date(readSignedVarLong(in));
+            case TAG_SERIALIZED:
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+                try
+                {
+                    return ois.readObject();
+                }
+                catch(ClassNotFoundException e)
+                {
+                    throw new IOException("Can't read primary key value: " + e.getMessage());
+                }
+                finally
+                {
+                    ois.close();
+                }
+            default:
+                throw new IOException("Unknown primary key value type tag " + tag);
+        }
+    }
+
+    //=======================================================
+    // primitives
+    //=======================================================
+    private static void writeString(String value, DataOutput out) throws IOException
+    {
+        writeBytes(value.getBytes("UTF-8"), out);
+    }
+
+    private static String readString(DataInput in) throws IOException
+    {
+        return new String(readBytes(in), "UTF-8");
+    }
+
+    private static void writeBytes(byte[] value, DataOutput out) throws IOException
+    {
+        writeVarLong(value.length, out);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException
+    {
+        byte[] result = new byte[(int) readVarLong(in)];
+        in.readFully(result);
+        return result;
+    }
+
+    /**
+     * Writes a signed value using zig-zag encoding, small negative values need few bytes too.
+     */
+    private static void writeSignedVarLong(long value, DataOutput out) throws IOException
+    {
+        writeVarLong((value << 1) ^ (value >> 63), out);
+    }
+
+    private static long readSignedVarLong(DataInput in) throws IOException
+    {
+        long value = readVarLong(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes an unsigned value with seven bits per byte, the high bit is set if more bytes follow.
+     */
+    private static void writeVarLong(long value, DataOutput out) throws IOException
+    {
+        while((value & ~0x7FL) != 0)
+        {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException
+    {
+        long result = 0;
+        for(int shift = 0; shift < 64; shift += 7)
+        {
+            byte b = in.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+            {
+                return result;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+}
@@ -38,6 +38,9 @@ import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.commons.collections.map.ReferenceIdentityMap;
 
 /**
+ * Identities of objects with a single integral primary key field are
+ * created as compact {@link NumericIdentity}.
+ *
  * @author <a href="mailto:armin@codeAuLait.de">Armin Waibel</a>
  * @version $Id: IdentityFactoryImpl.java,v 1.1 2007-08-24 22:17:35 ewestfal Exp $
  * @see org.apache.ojb.broker.IdentityFactory
@@ -107,7 +110,7 @@ public class IdentityFactoryImpl implements IdentityFactory, PBStateListener
                             if(result == null)
                             {
                                 pks[i] = transientSequenceManager.getUniqueValue(fld);
-                                result = new Identity(realClass, topLevelClass, pks, true);
+                                result = NumericIdentity.newIdentity(realClass, topLevelClass, pks, true);
                                 //if(activeTx) objectToIdentityMap.put(objOrProxy, result);
                                 objectToIdentityMap.put(objOrProxy, result);
                             }
@@ -120,7 +123,7 @@ public class IdentityFactoryImpl implements IdentityFactory, PBStateListener
                     }
                     if(result == null)
                     {
-                        result = new Identity(realClass, topLevelClass, pks, false);
+                        result = NumericIdentity.newIdentity(realClass, topLevelClass, pks, false);
                     }
                 }
             }
@@ -172,7 +175,7 @@ public class IdentityFactoryImpl implements IdentityFactory, PBStateListener
                 orderedPKValues = reorderFieldValues(flds, pkFieldNames, pkValues);
             }
         }
-        return new Identity(realClass, topLevelClass, orderedPKValues);
+        return NumericIdentity.newIdentity(realClass, topLevelClass, orderedPKValues, false);
     }
 
     /**
@@ -240,7 +243,7 @@ public class IdentityFactoryImpl implements IdentityFactory, PBStateListener
     /** @see org.apache.ojb.broker.IdentityFactory#buildIdentity(Class, String[], Object[]) */
     public Identity buildIdentity(Class realClass, Class topLevelClass, Object[] pkValues)
     {
-        return new Identity(realClass, topLevelClass, pkValues);
+        return NumericIdentity.newIdentity(realClass, topLevelClass, pkValues, false);
     }
 
     /** @see org.apache.ojb.broker.IdentityFactory#buildIdentity(Class, Object) */
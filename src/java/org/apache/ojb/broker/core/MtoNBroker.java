@@ -29,6 +29,7 @@ import org.apache.ojb.broker.MtoNImplementor;
 import org.apache.ojb.broker.OJBRuntimeException;
 import org.apache.ojb.broker.PersistenceBrokerException;
 import org.apache.ojb.broker.PersistenceBrokerSQLException;
+import org.apache.ojb.broker.accesslayer.BatchManager;
 import org.apache.ojb.broker.accesslayer.ResultSetAndStatement;
 import org.apache.ojb.broker.core.proxy.ProxyHelper;
 import org.apache.ojb.broker.metadata.ClassDescriptor;
@@ -120,7 +121,8 @@ public class MtoNBroker
         GenericObject gObj = new GenericObject(table, cols, values);
         if(! tempObjects.contains(gObj))
         {
-            pb.serviceJdbcAccess().executeUpdateSQL(insertStmt, cld, pkValues, otherPkValues);
+            pb.serviceJdbcAccess().executeUpdateSQL(insertStmt, table, BatchManager.INSERT, cld, pkValues, otherPkValues);
+            pb.tableModified(table);
             tempObjects.add(gObj);
         }
     }
@@ -200,7 +202,8 @@ public class MtoNBroker
         String[] pkColumns = cod.getFksToThisClass();
         String table = cod.getIndirectionTable();
         String deleteStmt = pb.serviceSqlGenerator().getDeleteMNStatement(table, pkColumns, null);
-        pb.serviceJdbcAccess().executeUpdateSQL(deleteStmt, cld, pkValues, null);
+        pb.serviceJdbcAccess().executeUpdateSQL(deleteStmt, table, BatchManager.DELETE, cld, pkValues, null);
+        pb.tableModified(table);
     }
 
     /**
@@ -245,7 +248,8 @@ public class MtoNBroker
         {
             fkValues = ((MtoNBroker.Key) iter.next()).m_containers;
             deleteStmt = pb.serviceSqlGenerator().getDeleteMNStatement(table, pkColumns, fkColumns);
-            pb.serviceJdbcAccess().executeUpdateSQL(deleteStmt, cld, pkValues, fkValues);
+            pb.serviceJdbcAccess().executeUpdateSQL(deleteStmt, table, BatchManager.DELETE, cld, pkValues, fkValues);
+            pb.tableModified(table);
         }
     }
 
@@ -316,6 +320,7 @@ public class MtoNBroker
                 if(!tempObjects.contains(gObj))
                 {
                     pb.serviceJdbcAccess().executeUpdateSQL(stmt, leftCld, leftPkValues, rightPkValues);
+                    pb.tableModified(table);
                     tempObjects.add(gObj);
                 }
             }
@@ -323,6 +328,7 @@ public class MtoNBroker
             {
                 stmt = pb.serviceSqlGenerator().getDeleteMNStatement(table, pkLeftColumns, pkRightColumns);
                 pb.serviceJdbcAccess().executeUpdateSQL(stmt, leftCld, leftPkValues, rightPkValues);
+                pb.tableModified(table);
             }
         }
     }
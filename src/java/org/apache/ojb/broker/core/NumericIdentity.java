@@ -0,0 +1,160 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.ObjectStreamException;
+
+import org.apache.ojb.broker.Identity;
+
+/**
+ * A compact {@link Identity} for objects with a single integral primary key
+ * field (<code>Integer</code>, <code>Long</code>, <code>Short</code> or <code>Byte</code>).
+ * The value is kept as primitive <code>long</code> instead of a primary key value array
+ * holding the boxed value.
+ * <br/>
+ * Instances are fully interchangeable with {@link Identity} objects created
+ * with the same primary key value: <code>equals</code> and <code>hashCode</code>
+ * return the same results and on serialization a plain {@link Identity} is written.
+ * <p>
+ * Use {@link org.apache.ojb.broker.IdentityFactory} to create object identities,
+ * instances are created by {@link #newIdentity(Class, Class, Object[], boolean)}.
+ * </p>
+ *
+ * @version $Id$
+ */
+public final class NumericIdentity extends Identity
+{
+    private static final long serialVersionUID = -4206582217236532434L;
+
+    private static final byte TYPE_INTEGER = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_SHORT = 3;
+    private static final byte TYPE_BYTE = 4;
+
+    private final long value;
+    /**
+     * The type of the primary key value, needed to be compatible
+     * with the <code>equals</code> method of the boxed values.
+     */
+    private final byte type;
+
+    private NumericIdentity(final Class realClass, final Class topLevel, final long value,
+                            final byte type, final boolean isTransient)
+    {
+        super(realClass, topLevel, isTransient);
+        this.value = value;
+        this.type = type;
+    }
+
+    /**
+     * Returns a new {@link NumericIdentity} if the given primary key values
+     * are supported, else a common {@link Identity}.
+     *
+     * @param realClass the concrete class of the object, or null if not known.
+     * @param topLevel the highest persistence-capable class or
+     * interface (in the inheritance hierarchy) that the identified object is an instance of
+     * @param pkValues The primary key values
+     * @param isTransient If <em>true</em> this is the identity of a transient object
+     * @return The new identity
+     */
+    public static Identity newIdentity(final Class realClass, final Class topLevel,
+                                       final Object[] pkValues, final boolean isTransient)
+    {
+        if(pkValues != null && pkValues.length == 1 && topLevel != null)
+        {
+            final Object pk = pkValues[0];
+            final byte type = typeOf(pk);
+            if(type != 0)
+            {
+                return new NumericIdentity(realClass, topLevel, ((Number) pk).longValue(), type, isTransient);
+            }
+        }
+        return new Identity(realClass, topLevel, pkValues, isTransient);
+    }
+
+    private static byte typeOf(final Object value)
+    {
+        if(value instanceof Integer) return TYPE_INTEGER;
+        if(value instanceof Long) return TYPE_LONG;
+        if(value instanceof Short) return TYPE_SHORT;
+        if(value instanceof Byte) return TYPE_BYTE;
+        return 0;
+    }
+
+    /**
+     * Returns the primary key value as primitive.
+     */
+    public long longValue()
+    {
+        return value;
+    }
+
+    /**
+     * Returns the primary key value as boxed object of the original type.
+     */
+    public Object getPrimaryKeyValue()
+    {
+        switch(type)
+        {
+            case TYPE_INTEGER:
+                return new Integer((int) value);
+            case TYPE_SHORT:
+                return new Short((short) value);
+            case TYPE_BYTE:
+                return new Byte((byte) value);
+            default:
+                return new Long(value);
+        }
+    }
+
+    /**
+     * Returns a new array containing the boxed primary key value.
+     */
+    public Object[] getPrimaryKeyValues()
+    {
+        return new Object[]{getPrimaryKeyValue()};
+    }
+
+    protected boolean equalsPrimaryKeyValues(final Identity id)
+    {
+        if(id instanceof NumericIdentity)
+        {
+            final NumericIdentity other = (NumericIdentity) id;
+            return value == other.value && type == other.type;
+        }
+        final Object[] otherPkValues = id.getPrimaryKeyValues();
+        return otherPkValues.length == 1
+                && typeOf(otherPkValues[0]) == type
+                && ((Number) otherPkValues[0]).longValue() == value;
+    }
+
+    protected int hashCodePrimaryKeyValues(final int iTotal)
+    {
+        // same as the hashCode method of the boxed types
+        final int hash = type == TYPE_LONG ? (int) (value ^ (value >>> 32)) : (int) value;
+        return iTotal * iConstant + hash;
+    }
+
+    /**
+     * Serialize as common {@link Identity}, this keeps the serialized form
+     * independent of the internal representation.
+     */
+    private Object writeReplace() throws ObjectStreamException
+    {
+        return new Identity(getObjectsRealClass(), getObjectsTopLevelClass(),
+                getPrimaryKeyValues(), isTransient());
+    }
+}
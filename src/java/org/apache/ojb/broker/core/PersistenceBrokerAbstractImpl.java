@@ -15,8 +15,7 @@ package org.apache.ojb.broker.core;
  * limitations under the License.
  */
 
-import java.util.Collections;
-import java.util.List;
+import java.lang.reflect.Array;
 
 import org.apache.ojb.broker.PBLifeCycleEvent;
 import org.apache.ojb.broker.PBLifeCycleListener;
@@ -25,8 +24,8 @@ import org.apache.ojb.broker.PBStateEvent;
 import org.apache.ojb.broker.PBStateListener;
 import org.apache.ojb.broker.PersistenceBrokerEvent;
 import org.apache.ojb.broker.PersistenceBrokerException;
+import org.apache.ojb.broker.PersistenceBrokerAware;
 import org.apache.ojb.broker.PersistenceBrokerInternal;
-import org.apache.ojb.broker.util.IdentityArrayList;
 import org.apache.ojb.broker.util.configuration.Configuration;
 import org.apache.ojb.broker.util.configuration.ConfigurationException;
 import org.apache.ojb.broker.util.logging.LoggerFactory;
@@ -44,34 +43,40 @@ import org.apache.ojb.broker.util.logging.LoggerFactory;
  */
 public abstract class PersistenceBrokerAbstractImpl implements PersistenceBrokerInternal
 {
+    private static final PBStateListener[] NO_STATE_LISTENERS = new PBStateListener[0];
+    private static final PBLifeCycleListener[] NO_LIFECYCLE_LISTENERS = new PBLifeCycleListener[0];
+
     /**
      * Returns <em>true</em> if PB-transaction check is enabled.
      */
     private boolean txCheck;
 
     /**
-     * List containing all permanent {@link org.apache.ojb.broker.PBStateListener}
-     * instances.
+     * Used to synchronize the modification of the listener arrays.
+     */
+    private final Object listenerLock = new Object();
+
+    /**
+     * All permanent {@link org.apache.ojb.broker.PBStateListener} instances.
+     * The array is never modified, a new array is assigned whenever a listener
+     * is added or removed, thus events are fired without locking.
      */
-    private List permanentStateListeners = Collections.synchronizedList(new IdentityArrayList());
+    private volatile PBStateListener[] permanentStateListeners = NO_STATE_LISTENERS;
 
     /**
-     * List containing all temporary {@link org.apache.ojb.broker.PBStateListener}
-     * instances.
+     * All temporary {@link org.apache.ojb.broker.PBStateListener} instances.
      */
-    private List temporaryStateListeners = Collections.synchronizedList(new IdentityArrayList());
+    private volatile PBStateListener[] temporaryStateListeners = NO_STATE_LISTENERS;
 
     /**
-     * List containing all permanent {@link org.apache.ojb.broker.PBLifeCycleListener}
-     * instances.
+     * All permanent {@link org.apache.ojb.broker.PBLifeCycleListener} instances.
      */
-    private List permanentLifeCycleListeners = Collections.synchronizedList(new IdentityArrayList(100));
+    private volatile PBLifeCycleListener[] permanentLifeCycleListeners = NO_LIFECYCLE_LISTENERS;
 
     /**
-     * List containing all temporary {@link org.apache.ojb.broker.PBLifeCycleListener}
-     * instances.
+     * All temporary {@link org.apache.ojb.broker.PBLifeCycleListener} instances.
      */
-    private List temporaryLifeCycleListeners = Collections.synchronizedList(new IdentityArrayList(100));
+    private volatile PBLifeCycleListener[] temporaryLifeCycleListeners = NO_LIFECYCLE_LISTENERS;
 
     /**
      * Override if needed.
@@ -124,38 +129,29 @@ public abstract class PersistenceBrokerAbstractImpl implements PersistenceBroker
      */
     public void addListener(PBListener listener, boolean permanent) throws PersistenceBrokerException
     {
-        if (listener instanceof PBStateListener)
+        synchronized (listenerLock)
         {
-            if (permanent)
+            if (listener instanceof PBStateListener)
             {
-                if (!permanentStateListeners.contains(listener))
+                if (permanent)
                 {
-                    permanentStateListeners.add(listener);
+                    permanentStateListeners = (PBStateListener[]) addListener(permanentStateListeners, listener);
                 }
-            }
-            else
-            {
-                if (!temporaryStateListeners.contains(listener))
+                else
                 {
-                    temporaryStateListeners.add(listener);
+                    temporaryStateListeners = (PBStateListener[]) addListener(temporaryStateListeners, listener);
                 }
             }
-        }
 
-        if (listener instanceof PBLifeCycleListener)
-        {
-            if (permanent)
+            if (listener instanceof PBLifeCycleListener)
             {
-                if (!permanentLifeCycleListeners.contains(listener))
+                if (permanent)
                 {
-                    permanentLifeCycleListeners.add(listener);
+                    permanentLifeCycleListeners = (PBLifeCycleListener[]) addListener(permanentLifeCycleListeners, listener);
                 }
-            }
-            else
-            {
-                if (!temporaryLifeCycleListeners.contains(listener))
+                else
                 {
-                    temporaryLifeCycleListeners.add(listener);
+                    temporaryLifeCycleListeners = (PBLifeCycleListener[]) addListener(temporaryLifeCycleListeners, listener);
                 }
             }
         }
@@ -166,16 +162,19 @@ public abstract class PersistenceBrokerAbstractImpl implements PersistenceBroker
      */
     public void removeListener(PBListener listener) throws PersistenceBrokerException
     {
-        if (listener instanceof PBStateListener)
+        synchronized (listenerLock)
         {
-            permanentStateListeners.remove(listener);
-            temporaryStateListeners.remove(listener);
-        }
+            if (listener instanceof PBStateListener)
+            {
+                permanentStateListeners = (PBStateListener[]) removeListener(permanentStateListeners, listener);
+                temporaryStateListeners = (PBStateListener[]) removeListener(temporaryStateListeners, listener);
+            }
 
-        if (listener instanceof PBLifeCycleListener)
-        {
-            permanentLifeCycleListeners.remove(listener);
-            temporaryLifeCycleListeners.remove(listener);
+            if (listener instanceof PBLifeCycleListener)
+            {
+                permanentLifeCycleListeners = (PBLifeCycleListener[]) removeListener(permanentLifeCycleListeners, listener);
+                temporaryLifeCycleListeners = (PBLifeCycleListener[]) removeListener(temporaryLifeCycleListeners, listener);
+            }
         }
     }
 
@@ -184,31 +183,79 @@ public abstract class PersistenceBrokerAbstractImpl implements PersistenceBroker
      */
     public void removeAllListeners(boolean permanent) throws PersistenceBrokerException
     {
-        if (permanent)
+        synchronized (listenerLock)
         {
-            // remove permanent listeners as well
-            permanentStateListeners.clear();
-            // this could be huge, thus simply replace instance
-            if(permanentLifeCycleListeners.size() > 10000)
-            {
-                permanentLifeCycleListeners = Collections.synchronizedList(new IdentityArrayList(100));
-            }
-            else
+            if (permanent)
             {
-                permanentLifeCycleListeners.clear();
+                // remove permanent listeners as well
+                permanentStateListeners = NO_STATE_LISTENERS;
+                permanentLifeCycleListeners = NO_LIFECYCLE_LISTENERS;
             }
+            temporaryStateListeners = NO_STATE_LISTENERS;
+            temporaryLifeCycleListeners = NO_LIFECYCLE_LISTENERS;
         }
+    }
 
-        temporaryStateListeners.clear();
-        // this could be huge, thus simply replace instance
-        if(temporaryLifeCycleListeners.size() > 10000)
+    /**
+     * Returns a copy of the given array with the listener appended or the
+     * array itself if it already contains the listener (compared by identity).
+     */
+    private static Object[] addListener(Object[] listeners, Object listener)
+    {
+        for (int i = 0; i < listeners.length; i++)
         {
-            temporaryLifeCycleListeners = Collections.synchronizedList(new IdentityArrayList(100));
+            if (listeners[i] == listener)
+            {
+                return listeners;
+            }
         }
-        else
+        Object[] result = (Object[]) Array.newInstance(listeners.getClass().getComponentType(), listeners.length + 1);
+        System.arraycopy(listeners, 0, result, 0, listeners.length);
+        result[listeners.length] = listener;
+        return result;
+    }
+
+    /**
+     * Returns a copy of the given array without the listener or the array
+     * itself if it doesn't contain the listener (compared by identity).
+     */
+    private static Object[] removeListener(Object[] listeners, Object listener)
+    {
+        for (int i = 0; i < listeners.length; i++)
         {
-            temporaryLifeCycleListeners.clear();
+            if (listeners[i] == listener)
+            {
+                Object[] result = (Object[]) Array.newInstance(
+                        listeners.getClass().getComponentType(), listeners.length - 1);
+                System.arraycopy(listeners, 0, result, 0, i);
+                System.arraycopy(listeners, i + 1, result, i, listeners.length - i - 1);
+                return result;
+            }
         }
+        return listeners;
+    }
+
+    /**
+     * Returns <em>true</em> if a {@link org.apache.ojb.broker.PBLifeCycleListener}
+     * is registered. If not, a {@link org.apache.ojb.broker.PBLifeCycleEvent} only needs
+     * to be fired for {@link org.apache.ojb.broker.PersistenceBrokerAware} objects.
+     *
+     * @see #isLifeCycleEventRequired(Object)
+     */
+    public boolean hasLifeCycleListeners()
+    {
+        return permanentLifeCycleListeners.length > 0 || temporaryLifeCycleListeners.length > 0;
+    }
+
+    /**
+     * Returns <em>true</em> if a {@link org.apache.ojb.broker.PBLifeCycleEvent} for the
+     * given target object has to be fired, that is if the target is
+     * {@link org.apache.ojb.broker.PersistenceBrokerAware} or a listener is registered.
+     * Callers use this to avoid the preparation of events nobody receives.
+     */
+    public boolean isLifeCycleEventRequired(Object target)
+    {
+        return target instanceof PersistenceBrokerAware || hasLifeCycleListeners();
     }
 
     /**
@@ -244,37 +291,34 @@ public abstract class PersistenceBrokerAbstractImpl implements PersistenceBroker
             performCallBack(event);
         }
 
-        // now we notify the listeners
-        synchronized (permanentLifeCycleListeners) {
-	        for (int i = permanentLifeCycleListeners.size() - 1; i >= 0; i--)
-	        {
-	            notifiyObjectLifeCycleListener((PBLifeCycleListener) permanentLifeCycleListeners.get(i), event);
-	        }
-		}
-
-		synchronized (temporaryLifeCycleListeners) {
-	        for(int i = temporaryLifeCycleListeners.size() - 1; i >= 0; i--)
-	        {
-	            notifiyObjectLifeCycleListener((PBLifeCycleListener) temporaryLifeCycleListeners.get(i), event);
-			}
+        // now we notify the listeners, the arrays are snapshots thus
+        // listeners can be added or removed while the event is dispatched
+        PBLifeCycleListener[] listeners = permanentLifeCycleListeners;
+        for (int i = listeners.length - 1; i >= 0; i--)
+        {
+            notifiyObjectLifeCycleListener(listeners[i], event);
+        }
+
+        listeners = temporaryLifeCycleListeners;
+        for (int i = listeners.length - 1; i >= 0; i--)
+        {
+            notifiyObjectLifeCycleListener(listeners[i], event);
         }
     }
 
     public void fireBrokerEvent(PBStateEvent event)
     {
-		synchronized (permanentStateListeners) {
-        	for(int i = permanentStateListeners.size() - 1; i >= 0; i--)
-        	{
-        	    notifiyStateListener((PBStateListener) permanentStateListeners.get(i), event);
-        	}
-		}
-
-		synchronized (temporaryStateListeners) {
-        	for(int i = temporaryStateListeners.size() - 1; i >= 0; i--)
-        	{
-        	    notifiyStateListener((PBStateListener) temporaryStateListeners.get(i), event);
-        	}
-		}
+        PBStateListener[] listeners = permanentStateListeners;
+        for (int i = listeners.length - 1; i >= 0; i--)
+        {
+            notifiyStateListener(listeners[i], event);
+        }
+
+        listeners = temporaryStateListeners;
+        for (int i = listeners.length - 1; i >= 0; i--)
+        {
+            notifiyStateListener(listeners[i], event);
+        }
     }
 
     private void performCallBack(PBLifeCycleEvent event)
@@ -30,4 +30,14 @@ public interface PersistenceBrokerConfiguration
     public Class getPersistenceBrokerClass();
 
     public int getSqlInLimit();
+
+    public int getSqlStatementCacheSize();
+
+    public int getExtentQueryThreads();
+
+    public Class getExtentClassIndexClass();
+
+    public int getExtentClassIndexSize();
+
+    public int getQueryResultCacheSize();
 }
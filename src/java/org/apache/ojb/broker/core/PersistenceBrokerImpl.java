@@ -16,6 +16,7 @@ package org.apache.ojb.broker.core;
  */
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -43,8 +44,11 @@ import org.apache.ojb.broker.accesslayer.JdbcAccess;
 import org.apache.ojb.broker.accesslayer.JdbcAccessFactory;
 import org.apache.ojb.broker.accesslayer.OJBIterator;
 import org.apache.ojb.broker.accesslayer.PagingIterator;
+import org.apache.ojb.broker.accesslayer.ParallelExtentQueryExecutor;
 import org.apache.ojb.broker.accesslayer.PkEnumeration;
 import org.apache.ojb.broker.accesslayer.RelationshipPrefetcherFactory;
+import org.apache.ojb.broker.accesslayer.ResultSetAndStatement;
+import org.apache.ojb.broker.accesslayer.RsQueryObject;
 import org.apache.ojb.broker.accesslayer.StatementManagerFactory;
 import org.apache.ojb.broker.accesslayer.StatementManagerIF;
 import org.apache.ojb.broker.accesslayer.sql.SqlGenerator;
@@ -73,6 +77,8 @@ import org.apache.ojb.broker.query.QueryBySQL;
 import org.apache.ojb.broker.util.BrokerHelper;
 import org.apache.ojb.broker.util.IdentityArrayList;
 import org.apache.ojb.broker.util.ObjectModification;
+import org.apache.ojb.broker.util.SqlHelper;
+import org.apache.ojb.broker.util.collections.RemovalAwareCollection;
 import org.apache.ojb.broker.util.logging.Logger;
 import org.apache.ojb.broker.util.logging.LoggerFactory;
 import org.apache.ojb.broker.util.sequence.SequenceManager;
@@ -100,6 +106,19 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
     protected BrokerHelper brokerHelper;
     protected MtoNBroker mtoNBroker;
     protected QueryReferenceBroker referencesBroker;
+    protected ProxyBatchMaterializer proxyBatchMaterializer;
+    /**
+     * Executes the queries of extent classes concurrently.
+     */
+    private ParallelExtentQueryExecutor extentQueryExecutor;
+    /**
+     * Index of the concrete classes of objects of extent classes, <em>null</em> if disabled.
+     */
+    private ExtentClassIndex extentClassIndex;
+    /**
+     * Connects this broker to the query result cache, <em>null</em> if disabled.
+     */
+    private QueryResultCacheListener queryResultCacheListener;
 
     /**
      * signs if this broker was closed
@@ -201,6 +220,14 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
                         connectionManager.getSupportedPlatform());
         mtoNBroker = new MtoNBroker(this);
         referencesBroker = new QueryReferenceBroker(this);
+        proxyBatchMaterializer = new ProxyBatchMaterializer(this);
+        extentQueryExecutor = new ParallelExtentQueryExecutor(this);
+        extentClassIndex = ExtentClassIndexFactory.getIndex(key.getAlias());
+        QueryResultCache queryResultCache = QueryResultCacheFactory.getCache(key.getAlias());
+        if (queryResultCache != null)
+        {
+            queryResultCacheListener = new QueryResultCacheListener(this, queryResultCache);
+        }
         identityFactory = new IdentityFactoryImpl(this);
         relationshipPrefetcherFactory = new RelationshipPrefetcherFactory(this);
         proxyFactory = AbstractProxyFactory.getProxyFactory();
@@ -371,6 +398,8 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
             fireBrokerEvent(BEFORE_CLOSE_EVENT);
             clearRegistrationLists();
             referencesBroker.removePrefetchingListeners();
+            proxyBatchMaterializer.clear();
+            extentQueryExecutor.releaseResources();
             if (connectionManager != null)
             {
                 connectionManager.releaseConnection();
@@ -574,17 +603,23 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
             Identity oid = serviceIdentity().buildIdentity(cld, obj);
 
             // Invoke events on PersistenceBrokerAware instances and listeners
-            BEFORE_DELETE_EVENT.setTarget(obj);
-            fireBrokerEvent(BEFORE_DELETE_EVENT);
-            BEFORE_DELETE_EVENT.setTarget(null);
+            if (isLifeCycleEventRequired(obj))
+            {
+                BEFORE_DELETE_EVENT.setTarget(obj);
+                fireBrokerEvent(BEFORE_DELETE_EVENT);
+                BEFORE_DELETE_EVENT.setTarget(null);
+            }
 
             // now perform deletion
             performDeletion(cld, obj, oid, ignoreReferences);
  	  	 
             // Invoke events on PersistenceBrokerAware instances and listeners
-            AFTER_DELETE_EVENT.setTarget(obj);
-            fireBrokerEvent(AFTER_DELETE_EVENT);
-            AFTER_DELETE_EVENT.setTarget(null);
+            if (isLifeCycleEventRequired(obj))
+            {
+                AFTER_DELETE_EVENT.setTarget(obj);
+                fireBrokerEvent(AFTER_DELETE_EVENT);
+                AFTER_DELETE_EVENT.setTarget(null);
+            }
  	  	 	
             // let the connection manager to execute batch
             connectionManager.executeBatchIfNecessary();
@@ -606,6 +641,7 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
             try
             {
                 dbAccess.executeDelete(cld, obj); // use obj not oid to delete, BRJ
+                tablesModified(cld);
             }
             catch(OptimisticLockException e)
             {
@@ -624,6 +660,10 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
             }
             // remove obj from the object cache:
             objectCache.remove(oid);
+            if (extentClassIndex != null)
+            {
+                extentClassIndex.remove(oid);
+            }
     }
 
     /**
@@ -643,6 +683,7 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
         {
             String sql = ((QueryBySQL) query).getSql();
             this.dbAccess.executeUpdateSQL(sql, cld);
+            tablesModified(cld);
         }
         else
         {
@@ -662,6 +703,7 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
             if (!cld.isInterface())
             {
                 this.dbAccess.executeDelete(query, cld);
+                tablesModified(cld);
             }
 
             // if class is an extent, we have to delete all extent classes too
@@ -679,6 +721,7 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
                     {
                         lastUsedTable = extCld.getFullTableName();
                         this.dbAccess.executeDelete(query, extCld);
+                        tablesModified(extCld);
                     }
                 }
             }
@@ -894,15 +937,21 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
         // Invoke events on PersistenceBrokerAware instances and listeners
         if (insert)
         {
-            BEFORE_STORE_EVENT.setTarget(obj);
-            fireBrokerEvent(BEFORE_STORE_EVENT);
-            BEFORE_STORE_EVENT.setTarget(null);
+            if (isLifeCycleEventRequired(obj))
+            {
+                BEFORE_STORE_EVENT.setTarget(obj);
+                fireBrokerEvent(BEFORE_STORE_EVENT);
+                BEFORE_STORE_EVENT.setTarget(null);
+            }
         }
         else
         {
-            BEFORE_UPDATE_EVENT.setTarget(obj);
-            fireBrokerEvent(BEFORE_UPDATE_EVENT);
-            BEFORE_UPDATE_EVENT.setTarget(null);
+            if (isLifeCycleEventRequired(obj))
+            {
+                BEFORE_UPDATE_EVENT.setTarget(obj);
+                fireBrokerEvent(BEFORE_UPDATE_EVENT);
+                BEFORE_UPDATE_EVENT.setTarget(null);
+            }
         }
 
         try
@@ -920,15 +969,21 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
         // Invoke events on PersistenceBrokerAware instances and listeners
         if (insert)
         {
-            AFTER_STORE_EVENT.setTarget(obj);
-            fireBrokerEvent(AFTER_STORE_EVENT);
-            AFTER_STORE_EVENT.setTarget(null);
+            if (isLifeCycleEventRequired(obj))
+            {
+                AFTER_STORE_EVENT.setTarget(obj);
+                fireBrokerEvent(AFTER_STORE_EVENT);
+                AFTER_STORE_EVENT.setTarget(null);
+            }
         }
         else
         {
-            AFTER_UPDATE_EVENT.setTarget(obj);
-            fireBrokerEvent(AFTER_UPDATE_EVENT);
-            AFTER_UPDATE_EVENT.setTarget(null);
+            if (isLifeCycleEventRequired(obj))
+            {
+                AFTER_UPDATE_EVENT.setTarget(obj);
+                fireBrokerEvent(AFTER_UPDATE_EVENT);
+                AFTER_UPDATE_EVENT.setTarget(null);
+            }
         }
         // end of store operation
         //************************************************
@@ -1513,7 +1568,12 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
     public ManageableCollection getCollectionByQuery(Class collectionClass, Query query)
             throws PersistenceBrokerException
     {
-        return referencesBroker.getCollectionByQuery(collectionClass, query, false);
+        QueryResultCache.Key key = buildQueryResultCacheKey(QueryResultCache.TYPE_OBJECTS, query);
+        if (key == null)
+        {
+            return referencesBroker.getCollectionByQuery(collectionClass, query, false);
+        }
+        return getCachedCollectionByQuery(collectionClass, query, key);
     }
 
     /**
@@ -1521,7 +1581,113 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
      */
     public Collection getCollectionByQuery(Query query) throws PersistenceBrokerException
     {
-        return referencesBroker.getCollectionByQuery(query, false);
+        QueryResultCache.Key key = buildQueryResultCacheKey(QueryResultCache.TYPE_OBJECTS, query);
+        if (key == null)
+        {
+            return referencesBroker.getCollectionByQuery(query, false);
+        }
+        return (Collection) getCachedCollectionByQuery(RemovalAwareCollection.class, query, key);
+    }
+
+    /**
+     * Returns the key of the result of the query in the query result cache,
+     * <em>null</em> if the result isn't cached.
+     */
+    private QueryResultCache.Key buildQueryResultCacheKey(String type, Query query)
+    {
+        if (queryResultCacheListener == null || query == null)
+        {
+            return null;
+        }
+        return queryResultCacheListener.buildKey(type, query, getClassDescriptor(query.getSearchClass()));
+    }
+
+    /**
+     * Retrieve the collection using the identities of the objects cached in the
+     * query result cache. On a cache miss the query is executed and the identities
+     * of the result are cached.
+     */
+    private ManageableCollection getCachedCollectionByQuery(Class collectionClass, Query query,
+                                                            QueryResultCache.Key key)
+    {
+        QueryResultCache cache = queryResultCacheListener.getCache();
+        List oids = (List) cache.lookup(key);
+        if (oids != null)
+        {
+            ManageableCollection result = materializeCachedCollection(collectionClass, query, oids);
+            if (result != null)
+            {
+                return result;
+            }
+            // an object of the cached result doesn't exist any longer
+            cache.remove(key);
+        }
+        long stamp = cache.getStamp();
+        ManageableCollection result = referencesBroker.getCollectionByQuery(collectionClass, query, false);
+        List identities = new ArrayList();
+        for (Iterator it = result.ojbIterator(); it.hasNext();)
+        {
+            identities.add(serviceIdentity().buildIdentity(it.next()));
+        }
+        cache.cache(key, stamp, Collections.unmodifiableList(identities));
+        return result;
+    }
+
+    /**
+     * Builds the collection of the objects of the given identities, returns
+     * <em>null</em> if an object can't be found.
+     */
+    private ManageableCollection materializeCachedCollection(Class collectionClass, Query query, List oids)
+    {
+        ManageableCollection result;
+        try
+        {
+            result = (ManageableCollection) collectionClass.newInstance();
+        }
+        catch (Exception e)
+        {
+            throw new PersistenceBrokerException("Can't create collection " + collectionClass.getName(), e);
+        }
+        ClassDescriptor cld = getClassDescriptor(query.getSearchClass());
+        for (int i = 0; i < oids.size(); i++)
+        {
+            Identity oid = (Identity) oids.get(i);
+            ClassDescriptor itemCld = oid.getObjectsRealClass() != null
+                    ? getClassDescriptor(oid.getObjectsRealClass()) : cld;
+            // same as RsIterator, use a proxy if declared for the class
+            Object obj = itemCld.getProxyClass() != null
+                    ? createProxy(itemCld.getProxyClass(), oid) : getObjectByIdentity(oid);
+            if (obj == null)
+            {
+                return null;
+            }
+            result.ojbAdd(obj);
+        }
+        query.fullSize(oids.size());
+        return result;
+    }
+
+    /**
+     * Notifies the query result cache that the tables of the given class were modified.
+     */
+    private void tablesModified(ClassDescriptor cld)
+    {
+        if (queryResultCacheListener != null)
+        {
+            queryResultCacheListener.tablesModified(QueryResultCache.getModifiedTables(cld));
+        }
+    }
+
+    /**
+     * Notifies the query result cache that the given table was modified,
+     * e.g. an indirection table.
+     */
+    void tableModified(String table)
+    {
+        if (queryResultCacheListener != null)
+        {
+            queryResultCacheListener.tablesModified(Collections.singleton(table));
+        }
     }
 
     /**
@@ -1537,6 +1703,16 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
     {
         Object newObj = null;
 
+        // if the cld represents an Extent, we lookup the table of the indexed concrete class first:
+        if (extentClassIndex != null && cld.isExtent())
+        {
+            newObj = getIndexedDBObject(cld, oid);
+            if (newObj != null)
+            {
+                return newObj;
+            }
+        }
+
         // Class is NOT an Interface: it has a directly mapped table and we lookup this table first:
         if (!cld.isInterface())
         {
@@ -1560,9 +1736,71 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
                     break;
                 }
             }
+            if (newObj != null && extentClassIndex != null)
+            {
+                extentClassIndex.register(oid, newObj.getClass());
+            }
         }
         return newObj;
     }
+
+    /**
+     * Lookup the object in the table of the concrete class found in the {@link ExtentClassIndex}.
+     * Returns <em>null</em> if the class isn't indexed or the object wasn't found in the table
+     * of the indexed class.
+     */
+    private Object getIndexedDBObject(ClassDescriptor cld, Identity oid)
+    {
+        Class indexedClass = extentClassIndex.lookup(oid);
+        if (indexedClass == null || !cld.getClassOfObject().isAssignableFrom(indexedClass))
+        {
+            return null;
+        }
+        // count the tables probed before the table of the indexed class
+        int probes = 0;
+        if (indexedClass != cld.getClassOfObject())
+        {
+            if (!cld.isInterface())
+            {
+                ++probes;
+            }
+            Iterator extents = getDescriptorRepository().getAllConcreteSubclassDescriptors(cld).iterator();
+            while (extents.hasNext()
+                    && ((ClassDescriptor) extents.next()).getClassOfObject() != indexedClass)
+            {
+                ++probes;
+            }
+        }
+        Object newObj = dbAccess.materializeObject(getClassDescriptor(indexedClass), oid);
+        if (newObj != null)
+        {
+            extentClassIndex.probesSaved(probes);
+            if (logger.isDebugEnabled()) logger.debug("Found " + oid + " using the extent class index, "
+                    + probes + " probes saved, " + extentClassIndex);
+        }
+        else
+        {
+            // outdated entry, probe all tables
+            extentClassIndex.remove(oid);
+        }
+        return newObj;
+    }
+
+    /**
+     * Adds the concrete class of the given object of an extent class to the
+     * {@link ExtentClassIndex}, called when the object is materialized or inserted.
+     *
+     * @param oid the identity of the object
+     * @param obj the object
+     */
+    public void registerExtentClass(Identity oid, Object obj)
+    {
+        if (extentClassIndex != null && !oid.isTransient()
+                && getClassDescriptor(oid.getObjectsTopLevelClass()).isExtent())
+        {
+            extentClassIndex.register(oid, obj.getClass());
+        }
+    }
     
     
     /**
@@ -1669,11 +1907,21 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
 
         if (query.usePaging())
         {
-            result = new PagingIterator(result, query.getStartAtIndex(), query.getEndAtIndex());
+            result = newPagingIterator(result, query);
         }
         return result;
     }
 
+    /**
+     * Wraps the iterator of a query using start and end index.
+     */
+    private OJBIterator newPagingIterator(OJBIterator iterator, Query query)
+    {
+        boolean nativePaging = SqlHelper.isNativePaging(serviceConnectionManager().getSupportedPlatform(),
+                query, getDescriptorRepository());
+        return new PagingIterator(iterator, query.getStartAtIndex(), query.getEndAtIndex(), nativePaging);
+    }
+
     public Object getObjectByIdentity(Identity id) throws PersistenceBrokerException
     {
         objectCache.enableMaterializationCache();
@@ -1723,9 +1971,12 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
         }
 
         // Invoke events on PersistenceBrokerAware instances and listeners
-        AFTER_LOOKUP_EVENT.setTarget(obj);
-        fireBrokerEvent(AFTER_LOOKUP_EVENT);
-        AFTER_LOOKUP_EVENT.setTarget(null);
+        if (isLifeCycleEventRequired(obj))
+        {
+            AFTER_LOOKUP_EVENT.setTarget(obj);
+            fireBrokerEvent(AFTER_LOOKUP_EVENT);
+            AFTER_LOOKUP_EVENT.setTarget(null);
+        }
 
         //logger.info("RETRIEVING object " + obj);
         return obj;
@@ -1929,11 +2180,13 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
         if (insert)
         {
             dbAccess.executeInsert(cld, obj);
+            tablesModified(cld);
             if(oid.isTransient())
             {
                 // Create a new Identity based on the current set of primary key values.
                 oid = serviceIdentity().buildIdentity(cld, obj);
             }
+            registerExtentClass(oid, obj);
         }
         // else use UPDATE
         else
@@ -1941,6 +2194,7 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
             try
             {
                 dbAccess.executeUpdate(cld, obj);
+                tablesModified(cld);
             }
             catch(OptimisticLockException e)
             {
@@ -2027,6 +2281,10 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
     public void clearCache() throws PersistenceBrokerException
     {
         objectCache.clear();
+        if (queryResultCacheListener != null)
+        {
+            queryResultCacheListener.getCache().clear();
+        }
     }
 
     /**
@@ -2048,6 +2306,27 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
      * @see org.apache.ojb.broker.PersistenceBroker#getCount(Query)
      */
     public int getCount(Query query) throws PersistenceBrokerException
+    {
+        QueryResultCache.Key key = buildQueryResultCacheKey(QueryResultCache.TYPE_COUNT, query);
+        if (key == null)
+        {
+            return doGetCount(query);
+        }
+        QueryResultCache cache = queryResultCacheListener.getCache();
+        Integer result = (Integer) cache.lookup(key);
+        if (result == null)
+        {
+            long stamp = cache.getStamp();
+            result = new Integer(doGetCount(query));
+            cache.cache(key, stamp, result);
+        }
+        return result.intValue();
+    }
+
+    /**
+     * Executes the count query of the given query.
+     */
+    private int doGetCount(Query query) throws PersistenceBrokerException
     {
         Query countQuery = serviceBrokerHelper().getCountQuery(query);
         Iterator iter;
@@ -2055,7 +2334,7 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
 
         if (logger.isDebugEnabled()) logger.debug("getCount " + countQuery.getSearchClass() + ", " + countQuery);
 
-        iter = getReportQueryIteratorByQuery(countQuery);
+        iter = getReportQueryIteratorFromQuery(countQuery, getClassDescriptor(countQuery.getSearchClass()));
         try
         {
             while (iter.hasNext())
@@ -2084,7 +2363,40 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
     public Iterator getReportQueryIteratorByQuery(Query query) throws PersistenceBrokerException
     {
         ClassDescriptor cld = getClassDescriptor(query.getSearchClass());
-        return getReportQueryIteratorFromQuery(query, cld);
+        QueryResultCache.Key key = buildQueryResultCacheKey(QueryResultCache.TYPE_REPORT, query);
+        if (key == null)
+        {
+            return getReportQueryIteratorFromQuery(query, cld);
+        }
+        QueryResultCache cache = queryResultCacheListener.getCache();
+        List rows = (List) cache.lookup(key);
+        if (rows == null)
+        {
+            long stamp = cache.getStamp();
+            rows = new ArrayList();
+            OJBIterator iter = getReportQueryIteratorFromQuery(query, cld);
+            try
+            {
+                while (iter.hasNext())
+                {
+                    rows.add(iter.next());
+                }
+            }
+            finally
+            {
+                iter.releaseDbResources();
+            }
+            rows = Collections.unmodifiableList(rows);
+            cache.cache(key, stamp, rows);
+        }
+        // the caller may modify the rows
+        List result = new ArrayList(rows.size());
+        for (int i = 0; i < rows.size(); i++)
+        {
+            Object row = rows.get(i);
+            result.add(row instanceof Object[] ? ((Object[]) row).clone() : row);
+        }
+        return result.iterator();
     }
 
     /**
@@ -2116,13 +2428,14 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
         if(logger.isDebugEnabled()) logger.debug("Creating ChainingIterator for class ["+cld.getClassNameOfObject()+"]");
 
         ChainingIterator chainingIter = new ChainingIterator();
+        List extentClds = new ArrayList();
+        Set tables = new HashSet();
 
         // BRJ: add base class iterator
         if (!cld.isInterface())
         {
-            if(logger.isDebugEnabled()) logger.debug("Adding RsIterator for class ["+cld.getClassNameOfObject()+"] to ChainingIterator");
-
-            chainingIter.addIterator(factory.createRsIterator(query, cld, this));
+            extentClds.add(cld);
+            tables.add(cld.getFullTableName());
         }
 
         Iterator extents = getDescriptorRepository().getAllConcreteSubclassDescriptors(cld).iterator();
@@ -2131,16 +2444,49 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
             ClassDescriptor extCld = (ClassDescriptor) extents.next();
 
             // read same table only once
-            if (chainingIter.containsIteratorForTable(extCld.getFullTableName()))
+            if (!tables.add(extCld.getFullTableName()))
             {
                 if(logger.isDebugEnabled()) logger.debug("Skipping class ["+extCld.getClassNameOfObject()+"]");
             }
             else
             {
-                if(logger.isDebugEnabled()) logger.debug("Adding RsIterator of class ["+extCld.getClassNameOfObject()+"] to ChainingIterator");
+                extentClds.add(extCld);
+            }
+        }
+
+        // execute the queries of the extents concurrently if possible
+        ResultSetAndStatement[] executed = null;
+        if (extentQueryExecutor.isExecutable(query, extentClds))
+        {
+            executed = extentQueryExecutor.execute(query, extentClds);
+        }
+
+        for (int i = 0; i < extentClds.size(); i++)
+        {
+            ClassDescriptor extCld = (ClassDescriptor) extentClds.get(i);
+            if(logger.isDebugEnabled()) logger.debug("Adding RsIterator of class ["+extCld.getClassNameOfObject()+"] to ChainingIterator");
 
+            try
+            {
                 // add the iterator to the chaining iterator.
-                chainingIter.addIterator(factory.createRsIterator(query, extCld, this));
+                if (executed != null && executed[i] != null)
+                {
+                    chainingIter.addIterator(factory.createRsIterator(RsQueryObject.get(extCld, query, executed[i]), this));
+                }
+                else
+                {
+                    chainingIter.addIterator(factory.createRsIterator(query, extCld, this));
+                }
+            }
+            catch (RuntimeException e)
+            {
+                // release the results of the extents not yet added
+                for (int k = i; executed != null && k < executed.length; k++)
+                {
+                    if (executed[k] != null) executed[k].close();
+                }
+                chainingIter.releaseDbResources();
+                throw e;
             }
         }
 
@@ -2161,7 +2507,7 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
 
         if (query.usePaging())
         {
-            result = new PagingIterator(result, query.getStartAtIndex(), query.getEndAtIndex());
+            result = newPagingIterator(result, query);
         }
 
         return result;
@@ -2245,18 +2591,20 @@ public class PersistenceBrokerImpl extends PersistenceBrokerAbstractImpl impleme
             // the invocation handler manages all delegation stuff
             IndirectionHandler handler     = getProxyFactory().createIndirectionHandler(pbKey, realSubjectsIdentity);
 
+            Object proxy;
             // the proxy simply provides the interface of the real subject
             if (VirtualProxy.class.isAssignableFrom(baseClassForProxy))
             {
                 Constructor constructor = baseClassForProxy.getDeclaredConstructor(new Class[]{ IndirectionHandler.class });
-                return constructor.newInstance(new Object[]{ handler });
+                proxy = constructor.newInstance(new Object[]{ handler });
             }
             else
             {                
-                return getProxyFactory().createProxy(baseClassForProxy,handler);
+                proxy = getProxyFactory().createProxy(baseClassForProxy,handler);
             }
-
-            
+            // materialize the proxies of a class created by this broker in batches
+            proxyBatchMaterializer.register(proxy, handler);
+            return proxy;
         }
         catch (Exception ex)
         {
@@ -0,0 +1,267 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.collections.map.ReferenceIdentityMap;
+import org.apache.ojb.broker.Identity;
+import org.apache.ojb.broker.PersistenceBroker;
+import org.apache.ojb.broker.PersistenceBrokerInternal;
+import org.apache.ojb.broker.accesslayer.PlainPrefetcher;
+import org.apache.ojb.broker.core.proxy.IndirectionHandler;
+import org.apache.ojb.broker.core.proxy.MaterializationListener;
+import org.apache.ojb.broker.core.proxy.ProxyHelper;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.util.logging.Logger;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+
+/**
+ * Materializes the proxies created by a broker in batches. When the first
+ * proxy of a class is materialized, the other not yet materialized proxies of this
+ * class created by the same broker since it was obtained are loaded too, up to the
+ * <em>proxy-prefetching-limit</em> of the top-level class, using one query with an IN-clause
+ * (see {@link org.apache.ojb.broker.accesslayer.PlainPrefetcher}).
+ * <p/>
+ * The loaded objects are handed to the indirection handlers of their proxies when
+ * the proxies are materialized, so all {@link MaterializationListener} of the proxies
+ * are notified (e.g. the ODMG transaction locking materialized objects). The handlers
+ * are referenced weakly, the objects of garbage collected proxies are released.
+ * Batch loading is only done while the broker is the current broker of the
+ * materializing thread.
+ *
+ * @version $Id$
+ */
+public class ProxyBatchMaterializer implements MaterializationListener
+{
+    private Logger log = LoggerFactory.getLogger(ProxyBatchMaterializer.class);
+
+    private PersistenceBrokerImpl pb;
+    /** Maps the top-level class to the list of weak references to the not yet materialized proxies */
+    private Map pendingProxies = new HashMap();
+    /** Maps the indirection handler to the object loaded by a batch, kept until the proxy is materialized */
+    private Map loadedSubjects = new ReferenceIdentityMap(ReferenceIdentityMap.WEAK, ReferenceIdentityMap.HARD);
+
+    public ProxyBatchMaterializer(final PersistenceBrokerImpl broker)
+    {
+        this.pb = broker;
+    }
+
+    /**
+     * Registers a newly created proxy to be materialized in a batch
+     * with the other proxies of the same class.
+     *
+     * @param proxy the proxy
+     * @param handler the indirection handler of the proxy
+     */
+    public synchronized void register(Object proxy, IndirectionHandler handler)
+    {
+        Class topLevelClass = handler.getIdentity().getObjectsTopLevelClass();
+        if(getProxyPrefetchingLimit(topLevelClass) <= 0)
+        {
+            return;
+        }
+        List proxies = (List) pendingProxies.get(topLevelClass);
+        if(proxies == null)
+        {
+            proxies = new ArrayList();
+            pendingProxies.put(topLevelClass, proxies);
+        }
+        else if(proxies.size() >= 64 && Integer.bitCount(proxies.size()) == 1)
+        {
+            // remove the materialized and garbage collected proxies from time to time
+            removeMaterialized(proxies);
+        }
+        proxies.add(new WeakReference(proxy));
+        handler.addListener(this);
+    }
+
+    /**
+     * Removes all registered proxies and loaded objects,
+     * called when the broker is closed.
+     */
+    public synchronized void clear()
+    {
+        for(Iterator it = pendingProxies.values().iterator(); it.hasNext();)
+        {
+            List proxies = (List) it.next();
+            for(int i = 0; i < proxies.size(); i++)
+            {
+                IndirectionHandler handler = getHandler((WeakReference) proxies.get(i));
+                if(handler != null)
+                {
+                    handler.removeListener(this);
+                }
+            }
+        }
+        pendingProxies.clear();
+        loadedSubjects.clear();
+    }
+
+    public synchronized void beforeMaterialization(IndirectionHandler handler, Identity oid)
+    {
+        handler.removeListener(this);
+        Object loaded = loadedSubjects.remove(handler);
+        if(loaded != null)
+        {
+            handler.setRealSubject(loaded);
+            return;
+        }
+        if(!isCurrentBroker())
+        {
+            return;
+        }
+        Class topLevelClass = oid.getObjectsTopLevelClass();
+        List proxies = (List) pendingProxies.get(topLevelClass);
+        if(proxies == null)
+        {
+            return;
+        }
+        // the materialized proxy and next limit proxies are loaded
+        int limit = getProxyPrefetchingLimit(topLevelClass) + 1;
+        List batch = new ArrayList();
+        boolean found = false;
+        for(Iterator it = proxies.iterator(); it.hasNext() && batch.size() < limit;)
+        {
+            WeakReference ref = (WeakReference) it.next();
+            Object proxy = ref.get();
+            IndirectionHandler h = getHandler(ref);
+            if(h == null || h.alreadyMaterialized())
+            {
+                it.remove();
+            }
+            else if(h == handler)
+            {
+                it.remove();
+                batch.add(proxy);
+                found = true;
+            }
+            else if(!loadedSubjects.containsKey(h))
+            {
+                it.remove();
+                batch.add(proxy);
+            }
+        }
+        if(proxies.isEmpty())
+        {
+            pendingProxies.remove(topLevelClass);
+        }
+        if(batch.size() > (found ? 1 : 0))
+        {
+            if(log.isDebugEnabled()) log.debug("Materialize " + batch.size() + " proxies of " + topLevelClass);
+            pb.getReferenceBroker().prefetchRelationship(new BatchPrefetcher(topLevelClass, handler), batch);
+        }
+    }
+
+    public void afterMaterialization(IndirectionHandler handler, Object materializedObject)
+    {
+        // do nothing
+    }
+
+    /**
+     * Returns true if the broker is in use by the current thread. Proxies are
+     * materialized using the current broker, other brokers must not be touched.
+     */
+    private boolean isCurrentBroker()
+    {
+        if(pb.isClosed() || pb.getPBKey() == null)
+        {
+            return false;
+        }
+        PersistenceBroker current = PersistenceBrokerThreadMapping.currentPersistenceBroker(pb.getPBKey());
+        if(current instanceof DelegatingPersistenceBroker && !current.isClosed())
+        {
+            current = ((DelegatingPersistenceBroker) current).getInnermostDelegate();
+        }
+        return current == pb;
+    }
+
+    private int getProxyPrefetchingLimit(Class topLevelClass)
+    {
+        ClassDescriptor cld = pb.getDescriptorRepository().getDescriptorFor(topLevelClass);
+        return cld.getProxyPrefetchingLimit();
+    }
+
+    private static IndirectionHandler getHandler(WeakReference ref)
+    {
+        Object proxy = ref.get();
+        return proxy != null ? ProxyHelper.getIndirectionHandler(proxy) : null;
+    }
+
+    private static void removeMaterialized(List proxies)
+    {
+        for(Iterator it = proxies.iterator(); it.hasNext();)
+        {
+            IndirectionHandler handler = getHandler((WeakReference) it.next());
+            if(handler == null || handler.alreadyMaterialized())
+            {
+                it.remove();
+            }
+        }
+    }
+
+    //**********************************************************************
+    // inner classes
+    //**********************************************************************
+
+    /**
+     * Loads the subjects of the proxies. The subject of the materializing proxy is
+     * set, the subjects of the other proxies are kept until they are materialized.
+     */
+    class BatchPrefetcher extends PlainPrefetcher
+    {
+        private IndirectionHandler materializing;
+
+        BatchPrefetcher(Class topLevelClass, IndirectionHandler materializing)
+        {
+            super(pb, topLevelClass);
+            this.materializing = materializing;
+        }
+
+        protected void associateBatched(Collection proxies, Collection realSubjects)
+        {
+            Map subjects = new HashMap(realSubjects.size());
+            for(Iterator it = realSubjects.iterator(); it.hasNext();)
+            {
+                Object realSubject = it.next();
+                subjects.put(pb.serviceIdentity().buildIdentity(realSubject), realSubject);
+            }
+            for(Iterator it = proxies.iterator(); it.hasNext();)
+            {
+                IndirectionHandler handler = ProxyHelper.getIndirectionHandler(it.next());
+                Object realSubject = handler != null ? subjects.get(handler.getIdentity()) : null;
+                if(realSubject == null)
+                {
+                    continue;
+                }
+                if(handler == materializing)
+                {
+                    handler.setRealSubject(realSubject);
+                }
+                else
+                {
+                    loadedSubjects.put(handler, realSubject);
+                }
+            }
+        }
+    }
+}
@@ -187,9 +187,12 @@ public class QueryReferenceBroker
             while (resultIter.hasNext())
             {
                 Object obj = resultIter.next();
-                afterLookupEvent.setTarget(obj);
-                pb.fireBrokerEvent(afterLookupEvent);
-                afterLookupEvent.setTarget(null);
+                if (pb.isLifeCycleEventRequired(obj))
+                {
+                    afterLookupEvent.setTarget(obj);
+                    pb.fireBrokerEvent(afterLookupEvent);
+                    afterLookupEvent.setTarget(null);
+                }
             }
 
             // ==> disable materialization cache
@@ -1008,6 +1011,24 @@ public class QueryReferenceBroker
         return classToPrefetch;
     }
 
+    /**
+     * Prefetches the relationship of the given owners, the queries of the
+     * prefetcher load the objects of its item class instead of proxies.
+     */
+    void prefetchRelationship(RelationshipPrefetcher prefetcher, Collection owners)
+    {
+        final Class saveClassToPrefetch = classToPrefetch;
+        classToPrefetch = prefetcher.getItemClassDescriptor().getClassOfObject();
+        try
+        {
+            prefetcher.prefetchRelationship(owners);
+        }
+        finally
+        {
+            classToPrefetch = saveClassToPrefetch;
+        }
+    }
+
     //**********************************************************************
     // inner classes
     //**********************************************************************
@@ -1120,16 +1141,7 @@ public class QueryReferenceBroker
                 prefetchingAll = false;
             }
 
-            final Class saveClassToPrefetch = classToPrefetch;
-            classToPrefetch = prefetcher.getItemClassDescriptor().getClassOfObject();
-            try
-            {
-                prefetcher.prefetchRelationship(toPrefetch);
-            }
-            finally
-            {
-                classToPrefetch = saveClassToPrefetch;
-            }
+            prefetchRelationship(prefetcher, toPrefetch);
 
             if (prefetchingAll)
             {
@@ -0,0 +1,711 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.CollectionDescriptor;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
+import org.apache.ojb.broker.metadata.FieldHelper;
+import org.apache.ojb.broker.metadata.ObjectReferenceDescriptor;
+import org.apache.ojb.broker.query.BetweenCriteria;
+import org.apache.ojb.broker.query.Criteria;
+import org.apache.ojb.broker.query.FieldCriteria;
+import org.apache.ojb.broker.query.InCriteria;
+import org.apache.ojb.broker.query.MtoNQuery;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryByCriteria;
+import org.apache.ojb.broker.query.ReportQueryByCriteria;
+import org.apache.ojb.broker.query.SelectionCriteria;
+import org.apache.ojb.broker.query.SqlCriteria;
+import org.apache.ojb.broker.util.SqlHelper;
+
+/**
+ * A bounded cache for the results of queries, all brokers of a database share
+ * the same cache. The results are keyed by the query including the bind values,
+ * each entry knows the tables involved in the query: the tables of the searched
+ * class, its super classes and extents and the tables joined by the attribute paths.
+ * An entry is removed as soon as one of these tables is modified.
+ * <p/>
+ * To avoid caching outdated results, a result read before a modification
+ * of one of its tables was committed is not cached: the caller takes a
+ * {@link #getStamp() stamp} before executing the query and passes it to
+ * {@link #cache}.
+ * <p/>
+ * Only criteria queries are cached, queries using sql, sub queries, sql criteria,
+ * user aliases or paging are not cached.
+ *
+ * @version $Id$
+ */
+public class QueryResultCache
+{
+    /** The cached identities of the objects of a collection query. */
+    public static final String TYPE_OBJECTS = "objects";
+    /** The cached number of objects matching a query. */
+    public static final String TYPE_COUNT = "count";
+    /** The cached rows of a report query. */
+    public static final String TYPE_REPORT = "report";
+
+    private final String m_jcdAlias;
+    private final LRUMap m_entries;
+    /** Maps a table to the keys of the entries involving the table. */
+    private final Map m_tableIndex = new HashMap();
+    /** Maps a table to the stamp of its last invalidation. */
+    private final Map m_tableStamps = new HashMap();
+    private long m_stamp;
+    /** The stamp of the last clear. */
+    private long m_clearStamp;
+    private long m_hits;
+    private long m_misses;
+    private long m_invalidations;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param jcdAlias the jcd-alias of the database
+     * @param maxSize the maximal number of cached results
+     */
+    public QueryResultCache(String jcdAlias, int maxSize)
+    {
+        m_jcdAlias = jcdAlias;
+        m_entries = new LRUMap(maxSize)
+        {
+            private static final long serialVersionUID = -4868144919999163267L;
+
+            protected boolean removeLRU(LinkEntry entry)
+            {
+                unindex((Key) entry.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result of the query or <em>null</em> if not cached.
+     *
+     * @param key the key returned by {@link #buildKey}
+     */
+    public synchronized Object lookup(Key key)
+    {
+        Object result = m_entries.get(key);
+        if(result != null)
+        {
+            ++m_hits;
+        }
+        else
+        {
+            ++m_misses;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the current stamp, to be taken before the query is executed.
+     */
+    public synchronized long getStamp()
+    {
+        return m_stamp;
+    }
+
+    /**
+     * Caches the result of a query, unless one of the tables of the query
+     * was invalidated since the given stamp was taken.
+     *
+     * @param key the key returned by {@link #buildKey}
+     * @param stamp the stamp taken before the query was executed
+     * @param result the result of the query
+     * @return <em>true</em> if the result was cached
+     */
+    public synchronized boolean cache(Key key, long stamp, Object result)
+    {
+        if(m_clearStamp > stamp)
+        {
+            return false;
+        }
+        for(int i = 0; i < key.tables.length; i++)
+        {
+            Long invalidated = (Long) m_tableStamps.get(key.tables[i]);
+            if(invalidated != null && invalidated.longValue() > stamp)
+            {
+                return false;
+            }
+        }
+        m_entries.put(key, result);
+        for(int i = 0; i < key.tables.length; i++)
+        {
+            Set keys = (Set) m_tableIndex.get(key.tables[i]);
+            if(keys == null)
+            {
+                keys = new HashSet();
+                m_tableIndex.put(key.tables[i], keys);
+            }
+            keys.add(key);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the cached result of a query.
+     *
+     * @param key the key returned by {@link #buildKey}
+     */
+    public synchronized void remove(Key key)
+    {
+        if(m_entries.remove(key) != null)
+        {
+            unindex(key);
+        }
+    }
+
+    /**
+     * Removes the cached results of all queries involving one of the given tables.
+     *
+     * @param tables the names of the modified tables
+     */
+    public synchronized void invalidate(Collection tables)
+    {
+        ++m_stamp;
+        for(Iterator it = tables.iterator(); it.hasNext();)
+        {
+            String table = normalize((String) it.next());
+            m_tableStamps.put(table, new Long(m_stamp));
+            Set keys = (Set) m_tableIndex.remove(table);
+            if(keys != null)
+            {
+                for(Iterator keyIter = keys.iterator(); keyIter.hasNext();)
+                {
+                    Key key = (Key) keyIter.next();
+                    if(m_entries.remove(key) != null)
+                    {
+                        ++m_invalidations;
+                        unindex(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all cached results.
+     */
+    public synchronized void clear()
+    {
+        // no result read before can be cached now
+        m_clearStamp = ++m_stamp;
+        m_entries.clear();
+        m_tableIndex.clear();
+    }
+
+    private void unindex(Key key)
+    {
+        for(int i = 0; i < key.tables.length; i++)
+        {
+            Set keys = (Set) m_tableIndex.get(key.tables[i]);
+            if(keys != null)
+            {
+                keys.remove(key);
+                if(keys.isEmpty())
+                {
+                    m_tableIndex.remove(key.tables[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached results.
+     */
+    public synchronized int size()
+    {
+        return m_entries.size();
+    }
+
+    /**
+     * Returns the maximal number of cached results.
+     */
+    public int maxSize()
+    {
+        return m_entries.maxSize();
+    }
+
+    /**
+     * Returns the number of lookups answered by the cache.
+     */
+    public synchronized long getHits()
+    {
+        return m_hits;
+    }
+
+    /**
+     * Returns the number of lookups not answered by the cache.
+     */
+    public synchronized long getMisses()
+    {
+        return m_misses;
+    }
+
+    /**
+     * Returns the number of results removed because one of their tables was modified.
+     */
+    public synchronized long getInvalidations()
+    {
+        return m_invalidations;
+    }
+
+    public synchronized String toString()
+    {
+        return "QueryResultCache[jcdAlias=" + m_jcdAlias + ", size=" + m_entries.size()
+                + ", maxSize=" + m_entries.maxSize() + ", hits=" + m_hits + ", misses=" + m_misses
+                + ", invalidations=" + m_invalidations + "]";
+    }
+
+    static String normalize(String table)
+    {
+        return table != null ? table.toUpperCase() : null;
+    }
+
+    //===================================================================
+    // query key
+    //===================================================================
+
+    /**
+     * Builds the key of the result of the given query.
+     *
+     * @param type the type of the result, e.g. {@link #TYPE_OBJECTS}
+     * @param query the query
+     * @param cld the class descriptor of the searched class
+     * @return the key or <em>null</em> if the result of the query can't be cached
+     */
+    public static Key buildKey(String type, Query query, ClassDescriptor cld)
+    {
+        if(!(query instanceof QueryByCriteria) || query.usePaging())
+        {
+            return null;
+        }
+        QueryByCriteria q = (QueryByCriteria) query;
+        List parts = new ArrayList();
+        parts.add(type);
+        // the cache is shared, the key must not keep the metadata alive
+        parts.add(cld.getClassOfObject());
+        parts.add(q.getClass());
+        parts.add(q.getSearchClass());
+        parts.add(q.getBaseClass());
+        parts.add(q.isDistinct() ? Boolean.TRUE : Boolean.FALSE);
+        parts.add(q.getWithExtents() ? Boolean.TRUE : Boolean.FALSE);
+        parts.add(q.getObjectProjectionAttribute());
+        parts.add(copyPathClasses(q.getPathClasses()));
+        parts.add(q.getOuterJoinPaths() != null ? new ArrayList(q.getOuterJoinPaths()) : null);
+        parts.add(fieldNames(q.getOrderBy()));
+        parts.add(fieldNames(q.getGroupBy()));
+        if(q instanceof MtoNQuery)
+        {
+            parts.add(((MtoNQuery) q).getIndirectionTable());
+        }
+        if(q instanceof ReportQueryByCriteria)
+        {
+            ReportQueryByCriteria rq = (ReportQueryByCriteria) q;
+            parts.add(rq.getAttributes() != null ? new ArrayList(Arrays.asList(rq.getAttributes())) : null);
+            parts.add(rq.getJoinAttributes() != null ? new ArrayList(Arrays.asList(rq.getJoinAttributes())) : null);
+        }
+        Set paths = new HashSet();
+        if(!addCriteria(parts, paths, q.getCriteria()) || !addCriteria(parts, paths, q.getHavingCriteria()))
+        {
+            return null;
+        }
+        Set tables = getTables(q, cld, paths);
+        if(tables == null)
+        {
+            return null;
+        }
+        String[] tableArray = (String[]) tables.toArray(new String[tables.size()]);
+        Arrays.sort(tableArray);
+        // the class can be mapped to other tables, e.g. by per thread metadata changes
+        parts.add(Arrays.asList(tableArray));
+        return new Key(parts, tableArray);
+    }
+
+    /**
+     * Adds the structure and the values of the criteria to the key.
+     *
+     * @return <em>false</em> if the criteria can't be cached
+     */
+    private static boolean addCriteria(List parts, Set paths, Criteria crit)
+    {
+        if(crit == null)
+        {
+            parts.add(null);
+            return true;
+        }
+        parts.add("(");
+        parts.add(new Integer(crit.getType()));
+        parts.add(crit.isEmbraced() ? Boolean.TRUE : Boolean.FALSE);
+        parts.add(crit.isNegative() ? Boolean.TRUE : Boolean.FALSE);
+        parts.add(copyPathClasses(crit.getPathClasses()));
+        Enumeration e = crit.getElements();
+        while(e.hasMoreElements())
+        {
+            Object o = e.nextElement();
+            if(o instanceof Criteria)
+            {
+                if(!addCriteria(parts, paths, (Criteria) o))
+                {
+                    return false;
+                }
+            }
+            else if(!addSelectionCriteria(parts, paths, (SelectionCriteria) o))
+            {
+                return false;
+            }
+        }
+        parts.add(")");
+        return true;
+    }
+
+    /**
+     * Adds the operator, the attribute and the values of the selection criteria to the key.
+     *
+     * @return <em>false</em> if the criteria can't be cached
+     */
+    private static boolean addSelectionCriteria(List parts, Set paths, SelectionCriteria c)
+    {
+        // the tables of sql criteria are unknown
+        if(c instanceof SqlCriteria || c.getUserAlias() != null
+                || c.getAttribute() instanceof Query || c.getValue() instanceof Query)
+        {
+            return false;
+        }
+        parts.add(c.getClass());
+        parts.add(c.getAttribute());
+        parts.add(c.getClause());
+        parts.add(c.isTranslateAttribute() ? Boolean.TRUE : Boolean.FALSE);
+        parts.add(copyValue(c.getValue()));
+        paths.add(c.getAttribute());
+        if(c instanceof FieldCriteria)
+        {
+            FieldCriteria fc = (FieldCriteria) c;
+            parts.add(fc.isTranslateField() ? Boolean.TRUE : Boolean.FALSE);
+            paths.add(fc.getValue());
+        }
+        else if(c instanceof BetweenCriteria)
+        {
+            Object value2 = ((BetweenCriteria) c).getValue2();
+            if(value2 instanceof Query)
+            {
+                return false;
+            }
+            parts.add(copyValue(value2));
+        }
+        else if(c instanceof InCriteria && c.getValue() instanceof Collection)
+        {
+            for(Iterator it = ((Collection) c.getValue()).iterator(); it.hasNext();)
+            {
+                if(it.next() instanceof Query)
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a copy of the bind value for the key, so the key isn't changed by a later
+     * modification of the value held by the criteria. Collections are copied to immutable
+     * lists, dates are cloned, arrays are copied to lists of their elements to be compared
+     * by value.
+     */
+    private static Object copyValue(Object value)
+    {
+        if(value instanceof Collection)
+        {
+            List result = new ArrayList(((Collection) value).size());
+            for(Iterator it = ((Collection) value).iterator(); it.hasNext();)
+            {
+                result.add(copyValue(it.next()));
+            }
+            return Collections.unmodifiableList(result);
+        }
+        else if(value instanceof Date)
+        {
+            return ((Date) value).clone();
+        }
+        else if(value != null && value.getClass().isArray())
+        {
+            int length = Array.getLength(value);
+            List elements = new ArrayList(length);
+            for(int i = 0; i < length; i++)
+            {
+                elements.add(copyValue(Array.get(value, i)));
+            }
+            // keep the array type, an array never equals a collection of the same elements
+            return Arrays.asList(new Object[]{value.getClass(), Collections.unmodifiableList(elements)});
+        }
+        return value;
+    }
+
+    private static List fieldNames(List fieldHelpers)
+    {
+        if(fieldHelpers == null)
+        {
+            return null;
+        }
+        List result = new ArrayList(fieldHelpers.size());
+        for(int i = 0; i < fieldHelpers.size(); i++)
+        {
+            FieldHelper fh = (FieldHelper) fieldHelpers.get(i);
+            result.add(fh.isAscending ? fh.name : fh.name + " DESC");
+        }
+        return result;
+    }
+
+    private static Map copyPathClasses(Map pathClasses)
+    {
+        if(pathClasses == null || pathClasses.isEmpty())
+        {
+            return null;
+        }
+        Map result = new HashMap(pathClasses.size());
+        for(Iterator it = pathClasses.entrySet().iterator(); it.hasNext();)
+        {
+            Map.Entry entry = (Map.Entry) it.next();
+            Object classes = entry.getValue();
+            result.put(entry.getKey(), classes instanceof List ? new ArrayList((List) classes) : classes);
+        }
+        return result;
+    }
+
+    //===================================================================
+    // tables of a query
+    //===================================================================
+
+    /**
+     * Returns the tables involved in the query.
+     *
+     * @param paths the attribute paths used in the criteria of the query
+     * @return the names of the tables or <em>null</em> if a path can't be resolved
+     */
+    private static Set getTables(QueryByCriteria query, ClassDescriptor cld, Set paths)
+    {
+        Set result = new HashSet();
+        addTables(result, cld, query.getWithExtents());
+        if(query instanceof MtoNQuery)
+        {
+            result.add(normalize(((MtoNQuery) query).getIndirectionTable()));
+        }
+        addFieldNames(paths, query.getOrderBy());
+        addFieldNames(paths, query.getGroupBy());
+        paths.add(query.getObjectProjectionAttribute());
+        if(query instanceof ReportQueryByCriteria)
+        {
+            ReportQueryByCriteria rq = (ReportQueryByCriteria) query;
+            if(rq.getAttributes() != null)
+            {
+                paths.addAll(Arrays.asList(rq.getAttributes()));
+            }
+            if(rq.getJoinAttributes() != null)
+            {
+                paths.addAll(Arrays.asList(rq.getJoinAttributes()));
+            }
+        }
+        for(Iterator it = paths.iterator(); it.hasNext();)
+        {
+            Object path = it.next();
+            if(path instanceof String && !addPathTables(result, cld, SqlHelper.cleanPath((String) path)))
+            {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    private static void addFieldNames(Set paths, List fieldHelpers)
+    {
+        if(fieldHelpers != null)
+        {
+            for(int i = 0; i < fieldHelpers.size(); i++)
+            {
+                paths.add(((FieldHelper) fieldHelpers.get(i)).name);
+            }
+        }
+    }
+
+    /**
+     * Adds the tables joined by the relationships of the attribute path.
+     *
+     * @return <em>false</em> if a segment of the path isn't a relationship
+     */
+    private static boolean addPathTables(Set tables, ClassDescriptor cld, String path)
+    {
+        if(path == null || path.indexOf('.') < 0)
+        {
+            return true;
+        }
+        DescriptorRepository repository = cld.getRepository();
+        String[] segments = path.split("\\.");
+        ClassDescriptor current = cld;
+        // the last segment is the field
+        for(int i = 0; i < segments.length - 1; i++)
+        {
+            ObjectReferenceDescriptor ord = findReference(current, segments[i].trim());
+            if(ord == null)
+            {
+                return false;
+            }
+            if(ord instanceof CollectionDescriptor && ((CollectionDescriptor) ord).isMtoNRelation())
+            {
+                tables.add(normalize(((CollectionDescriptor) ord).getIndirectionTable()));
+            }
+            current = repository.getDescriptorFor(ord.getItemClass());
+            // path class hints may select any class of the extent
+            addTables(tables, current, true);
+        }
+        return true;
+    }
+
+    /**
+     * Looks up the reference or collection of the class, or of one
+     * of the classes of its extent.
+     */
+    private static ObjectReferenceDescriptor findReference(ClassDescriptor cld, String name)
+    {
+        ObjectReferenceDescriptor result = cld.getObjectReferenceDescriptorByName(name);
+        if(result == null)
+        {
+            result = cld.getCollectionDescriptorByName(name);
+        }
+        if(result == null && cld.isExtent())
+        {
+            Iterator extents = cld.getRepository().getAllConcreteSubclassDescriptors(cld).iterator();
+            while(result == null && extents.hasNext())
+            {
+                ClassDescriptor extCld = (ClassDescriptor) extents.next();
+                result = extCld.getObjectReferenceDescriptorByName(name);
+                if(result == null)
+                {
+                    result = extCld.getCollectionDescriptorByName(name);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the tables of the class and its super classes, and the tables of its extent.
+     */
+    private static void addTables(Set tables, ClassDescriptor cld, boolean withExtents)
+    {
+        addTables(tables, cld);
+        if(withExtents && cld.isExtent())
+        {
+            Iterator extents = cld.getRepository().getAllConcreteSubclassDescriptors(cld).iterator();
+            while(extents.hasNext())
+            {
+                addTables(tables, (ClassDescriptor) extents.next());
+            }
+        }
+    }
+
+    private static void addTables(Set tables, ClassDescriptor cld)
+    {
+        for(ClassDescriptor current = cld; current != null; current = current.getSuperClassDescriptor())
+        {
+            if(current.getFullTableName() != null)
+            {
+                tables.add(normalize(current.getFullTableName()));
+            }
+        }
+    }
+
+    /**
+     * Returns the names of the tables modified by a store or delete
+     * of an object of the given class.
+     */
+    public static Set getModifiedTables(ClassDescriptor cld)
+    {
+        Set result = new HashSet();
+        addTables(result, cld);
+        return result;
+    }
+
+    //===================================================================
+    // inner classes
+    //===================================================================
+
+    /**
+     * The key of a cached result: the type of the result, the searched class, the
+     * query including the bind values, and the tables involved in the query. The key
+     * doesn't reference the metadata of the class.
+     */
+    public static final class Key
+    {
+        private final List parts;
+        private final String[] tables;
+        private final int hashCode;
+
+        Key(List parts, String[] tables)
+        {
+            this.parts = parts;
+            this.tables = tables;
+            this.hashCode = parts.hashCode();
+        }
+
+        /**
+         * Returns the names of the tables involved in the query.
+         */
+        public String[] getTables()
+        {
+            return tables;
+        }
+
+        public boolean equals(Object obj)
+        {
+            if(this == obj)
+            {
+                return true;
+            }
+            if(!(obj instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode && parts.equals(other.parts);
+        }
+
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        public String toString()
+        {
+            return "Key" + parts + ", tables " + Arrays.asList(tables);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.ojb.broker.PersistenceBrokerFactory;
+import org.apache.ojb.broker.util.configuration.ConfigurationException;
+
+/**
+ * Creates the {@link QueryResultCache} of a database, all brokers
+ * of a database share the same cache. The size of the cache is set by the
+ * <em>QueryResultCacheSize</em> property in OJB.properties, a size of 0 disables
+ * the cache.
+ *
+ * @version $Id$
+ */
+public class QueryResultCacheFactory
+{
+    /** Maps the jcd-alias to the cache of the database */
+    private static final Map caches = new HashMap();
+
+    private QueryResultCacheFactory()
+    {
+    }
+
+    /**
+     * Returns the cache of the given database or <em>null</em> if disabled.
+     *
+     * @param jcdAlias the jcd-alias of the database
+     */
+    public static synchronized QueryResultCache getCache(String jcdAlias)
+    {
+        if(caches.containsKey(jcdAlias))
+        {
+            return (QueryResultCache) caches.get(jcdAlias);
+        }
+        QueryResultCache result = null;
+        PersistenceBrokerConfiguration config = getConfiguration();
+        if(config != null && config.getQueryResultCacheSize() > 0)
+        {
+            result = new QueryResultCache(jcdAlias, config.getQueryResultCacheSize());
+        }
+        caches.put(jcdAlias, result);
+        return result;
+    }
+
+    private static PersistenceBrokerConfiguration getConfiguration()
+    {
+        try
+        {
+            return (PersistenceBrokerConfiguration) PersistenceBrokerFactory
+                    .getConfigurator().getConfigurationFor(null);
+        }
+        catch(ConfigurationException e)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.apache.ojb.broker.core;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.ojb.broker.PBStateEvent;
+import org.apache.ojb.broker.PBStateListener;
+import org.apache.ojb.broker.PersistenceBrokerInternal;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.util.logging.Logger;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+
+/**
+ * Connects a broker to the shared {@link QueryResultCache}. The tables modified
+ * within a PB-transaction are collected and the cached results of these tables
+ * are invalidated after the transaction was committed. Modifications outside of
+ * a PB-transaction invalidate the results immediately.
+ * <p/>
+ * Until the transaction ends, the broker doesn't use the cache for queries
+ * involving one of the modified tables, thus it sees its own modifications.
+ *
+ * @version $Id$
+ */
+public class QueryResultCacheListener implements PBStateListener
+{
+    private Logger log = LoggerFactory.getLogger(QueryResultCacheListener.class);
+
+    private final PersistenceBrokerInternal broker;
+    private final QueryResultCache cache;
+    /** The tables modified within the current transaction. */
+    private final Set modifiedTables = new HashSet();
+
+    public QueryResultCacheListener(PersistenceBrokerInternal broker, QueryResultCache cache)
+    {
+        this.broker = broker;
+        this.cache = cache;
+        // we add this instance as a permanent PBStateListener
+        broker.addListener(this, true);
+    }
+
+    /**
+     * Returns the shared cache.
+     */
+    public QueryResultCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * Builds the key of the result of the given query, if the query is cacheable for
+     * the broker. The result of a query is cacheable if caching was enabled for the
+     * query or the searched class and the broker didn't modify one of the tables of
+     * the query within the current transaction.
+     *
+     * @param type the type of the result, e.g. {@link QueryResultCache#TYPE_OBJECTS}
+     * @param query the query
+     * @param cld the class descriptor of the searched class
+     * @return the key or <em>null</em> if the result can't be cached
+     */
+    public QueryResultCache.Key buildKey(String type, Query query, ClassDescriptor cld)
+    {
+        if(query == null || query.isStreaming() || !(query.isCacheable() || cld.isQueryCacheable()))
+        {
+            return null;
+        }
+        QueryResultCache.Key key = QueryResultCache.buildKey(type, query, cld);
+        if(key != null && !modifiedTables.isEmpty())
+        {
+            String[] tables = key.getTables();
+            for(int i = 0; i < tables.length; i++)
+            {
+                if(modifiedTables.contains(tables[i]))
+                {
+                    return null;
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Called when the broker modified the given tables.
+     */
+    public void tablesModified(Collection tables)
+    {
+        if(broker.isInTransaction())
+        {
+            for(Iterator it = tables.iterator(); it.hasNext();)
+            {
+                modifiedTables.add(QueryResultCache.normalize((String) it.next()));
+            }
+        }
+        else
+        {
+            cache.invalidate(tables);
+        }
+    }
+
+    //------------------------------------------------------------
+    // PBStateListener methods
+    //------------------------------------------------------------
+
+    /**
+     * After committing the transaction invalidate the cached results
+     * of the modified tables.
+     */
+    public void afterCommit(PBStateEvent event)
+    {
+        if(!modifiedTables.isEmpty())
+        {
+            if(log.isDebugEnabled()) log.debug("afterCommit() call, invalidate results of " + modifiedTables);
+            try
+            {
+                cache.invalidate(modifiedTables);
+            }
+            finally
+            {
+                modifiedTables.clear();
+            }
+        }
+    }
+
+    /**
+     * The modifications were not visible to other brokers, so the
+     * cached results are still valid.
+     */
+    public void afterRollback(PBStateEvent event)
+    {
+        modifiedTables.clear();
+    }
+
+    public void beforeClose(PBStateEvent event)
+    {
+        // see ObjectCacheTwoLevelImpl, in managed environments the handle
+        // is closed before the transaction is committed
+        if(!broker.isInTransaction())
+        {
+            modifiedTables.clear();
+        }
+    }
+
+    public void afterOpen(PBStateEvent event)
+    {
+    }
+
+    public void beforeBegin(PBStateEvent event)
+    {
+    }
+
+    public void afterBegin(PBStateEvent event)
+    {
+    }
+
+    public void beforeCommit(PBStateEvent event)
+    {
+    }
+
+    public void beforeRollback(PBStateEvent event)
+    {
+    }
+}
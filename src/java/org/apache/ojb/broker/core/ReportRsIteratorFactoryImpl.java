@@ -56,7 +56,15 @@ class ReportRsIteratorFactoryImpl implements RsIteratorFactory
 	 */
 	public RsIterator createRsIterator(Query query, ClassDescriptor cld, PersistenceBrokerImpl broker)
 	{
-		return new ReportQueryRsIterator(RsQueryObject.get(cld, query), broker);
+		return createRsIterator(RsQueryObject.get(cld, query), broker);
+	}
+
+	/**
+	 * @see org.apache.ojb.broker.core.RsIteratorFactory#createRsIterator(RsQueryObject, PersistenceBrokerImpl)
+	 */
+	public RsIterator createRsIterator(RsQueryObject queryObject, PersistenceBrokerImpl broker)
+	{
+		return new ReportQueryRsIterator(queryObject, broker);
 	}
 
 	/**
@@ -16,6 +16,7 @@ package org.apache.ojb.broker.core;
  */
 
 import org.apache.ojb.broker.accesslayer.RsIterator;
+import org.apache.ojb.broker.accesslayer.RsQueryObject;
 import org.apache.ojb.broker.metadata.ClassDescriptor;
 import org.apache.ojb.broker.query.Query;
 import org.apache.ojb.broker.query.QueryBySQL;
@@ -34,6 +35,11 @@ interface RsIteratorFactory
 	 */
 	RsIterator createRsIterator(Query query, ClassDescriptor cld, PersistenceBrokerImpl broker);
 
+	/**
+	 * Create a RsIterator based on a Query object, e.g. of an already executed Query
+	 */
+	RsIterator createRsIterator(RsQueryObject queryObject, PersistenceBrokerImpl broker);
+
 	/**
 	 * Create a RsIterator based on a SQL-Statement
 	 */
@@ -55,7 +55,15 @@ class RsIteratorFactoryImpl implements RsIteratorFactory
 	 */
 	public RsIterator createRsIterator(Query query, ClassDescriptor cld, PersistenceBrokerImpl broker)
 	{
-		return new RsIterator(RsQueryObject.get(cld, query), broker);
+		return createRsIterator(RsQueryObject.get(cld, query), broker);
+	}
+
+	/**
+	 * @see org.apache.ojb.broker.core.RsIteratorFactory#createRsIterator(RsQueryObject, PersistenceBrokerImpl)
+	 */
+	public RsIterator createRsIterator(RsQueryObject queryObject, PersistenceBrokerImpl broker)
+	{
+		return new RsIterator(queryObject, broker);
 	}
 
 	/**
@@ -379,7 +379,11 @@ public abstract class AbstractIndirectionHandler implements IndirectionHandler
 		if (_realSubject == null)
 		{
 			beforeMaterialization();
-			_realSubject = materializeSubject();
+			// a listener may provide the subject, e.g. loaded with other proxies in a batch
+			if (_realSubject == null)
+			{
+				_realSubject = materializeSubject();
+			}
 			afterMaterialization();
 		}
 		return _realSubject;
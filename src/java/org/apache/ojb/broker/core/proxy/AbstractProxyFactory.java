@@ -52,7 +52,7 @@ public abstract class AbstractProxyFactory implements ProxyFactory
     /** The indirection handler class */
     private Class _indirectionHandlerClass;
     /** The constructor used for creating indirection handler instances (shortcut) */
-    private transient Constructor _indirectionHandlerConstructor;
+    private transient volatile Constructor _indirectionHandlerConstructor;
     /** The constructor used for creating list proxies */
     private Constructor _listProxyConstructor;
     /** The constructor used for creating set proxies */
@@ -70,8 +70,9 @@ public abstract class AbstractProxyFactory implements ProxyFactory
      *
      * @return The constructor for indirection handlers
      */
-    private synchronized Constructor getIndirectionHandlerConstructor()
+    private Constructor getIndirectionHandlerConstructor()
     {
+        // no synchronization needed, the constructor is looked up again in the worst case
         if(_indirectionHandlerConstructor == null)
         {
             Class[] paramType = {PBKey.class, Identity.class};
@@ -14,7 +14,7 @@ package org.apache.ojb.broker.core.proxy;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.sf.cglib.proxy.Callback;
 import net.sf.cglib.proxy.Enhancer;
@@ -26,7 +26,10 @@ import net.sf.cglib.proxy.Factory;
  */
 public class ProxyFactoryCGLIBImpl extends AbstractProxyFactory {
 
-    HashMap proxyFactories = new HashMap();
+    /**
+     * Maps the proxied class to the prototype {@link Factory} creating its proxies.
+     */
+    private ConcurrentHashMap proxyFactories = new ConcurrentHashMap();
 
     public Class getDefaultIndirectionHandlerClass() {
         return IndirectionHandlerCGLIBImpl.class;
@@ -41,23 +44,31 @@ public class ProxyFactoryCGLIBImpl extends AbstractProxyFactory {
     }
 
     public OJBProxy createProxy(Class proxyClass, IndirectionHandler handler) throws Exception {
-
         Factory factory = (Factory)proxyFactories.get(proxyClass);
-        Object result = null;
         if (factory == null) {
-            Class[] interfaces;
-            if (proxyClass.isInterface()) {
-                interfaces = new Class[] { proxyClass, OJBProxy.class };
-            } else {
-                interfaces = new Class[] { OJBProxy.class };
-            }
+            factory = createFactory(proxyClass, handler);
+        }
+        return (OJBProxy)factory.newInstance((Callback)handler);
+    }
 
-            result = (Factory)Enhancer.create(proxyClass, interfaces, (Callback)handler);
-            proxyFactories.put(proxyClass, result);
+    /**
+     * Generates the proxy class for the given class once and returns a prototype
+     * instance of it, the proxies are created by {@link Factory#newInstance(Callback)}
+     * without a class lookup by the {@link Enhancer}.
+     */
+    private Factory createFactory(Class proxyClass, IndirectionHandler handler) {
+        Class[] interfaces;
+        if (proxyClass.isInterface()) {
+            interfaces = new Class[] { proxyClass, OJBProxy.class };
         } else {
-            result = factory.newInstance((Callback)handler);
+            interfaces = new Class[] { OJBProxy.class };
         }
-        return (OJBProxy)result;
+
+        Factory factory = (Factory)Enhancer.create(proxyClass, interfaces, (Callback)handler);
+        // the prototype is never used as proxy, don't keep the handler of the first proxy
+        factory.setCallback(0, null);
+        Factory existing = (Factory)proxyFactories.putIfAbsent(proxyClass, factory);
+        return existing != null ? existing : factory;
     }
 
     public boolean isNormalOjbProxy(Object proxyOrObject) {
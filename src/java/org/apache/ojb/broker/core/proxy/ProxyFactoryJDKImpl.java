@@ -20,6 +20,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 
@@ -30,9 +31,10 @@ import java.util.HashMap;
 public class ProxyFactoryJDKImpl extends AbstractProxyFactory {
 
     /**
-     * JMM: Cache information about the interfaces need for dynamic proxy.
+     * Maps the base class to the constructor of the dynamic proxy class
+     * implementing its interfaces.
      */
-    private HashMap foundInterfaces = new HashMap();
+    private ConcurrentHashMap proxyConstructors = new ConcurrentHashMap();
     
     
     public Class getDefaultIndirectionHandlerClass()
@@ -53,8 +55,12 @@ public class ProxyFactoryJDKImpl extends AbstractProxyFactory {
     
 
     public OJBProxy createProxy(Class baseClass, IndirectionHandler handler) throws Exception {
-        Class proxyClass = getDynamicProxyClass(baseClass);
-        Constructor constructor = proxyClass.getDeclaredConstructor(new Class[] { InvocationHandler.class });
+        Constructor constructor = (Constructor)proxyConstructors.get(baseClass);
+        if (constructor == null) {
+            Class proxyClass = getDynamicProxyClass(baseClass);
+            constructor = proxyClass.getDeclaredConstructor(new Class[] { InvocationHandler.class });
+            proxyConstructors.put(baseClass, constructor);
+        }
         return (OJBProxy)constructor.newInstance(new Object[] { handler });
     }
 
@@ -73,13 +79,7 @@ public class ProxyFactoryJDKImpl extends AbstractProxyFactory {
      * @return Class the dynamically created proxy class
      */
     private Class getDynamicProxyClass(Class baseClass) {
-        Class[] m_dynamicProxyClassInterfaces;
-        if (foundInterfaces.containsKey(baseClass)) {
-            m_dynamicProxyClassInterfaces = (Class[])foundInterfaces.get(baseClass);
-        } else {
-            m_dynamicProxyClassInterfaces = getInterfaces(baseClass);
-            foundInterfaces.put(baseClass, m_dynamicProxyClassInterfaces);
-        }
+        Class[] m_dynamicProxyClassInterfaces = getInterfaces(baseClass);
 
         // return dynymic Proxy Class implementing all interfaces
         Class proxyClazz = Proxy.getProxyClass(baseClass.getClassLoader(), m_dynamicProxyClassInterfaces);
@@ -16,42 +16,86 @@ package org.apache.ojb.broker.locking;
  */
 
 import java.io.Serializable;
-import java.util.Collection;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.ojb.broker.util.logging.Logger;
 import org.apache.ojb.broker.util.logging.LoggerFactory;
 import org.apache.commons.lang.SystemUtils;
 
 /**
- * This implementation of the {@link LockManager} interface supports a simple, fast, non-blocking
+ * This implementation of the {@link LockManager} interface supports a simple, fast
  * pessimistic locking for single JVM applications.
+ * <p>
+ * The lock table is a concurrent map, each locked resource is guarded by its own
+ * monitor, so transactions locking different objects never block each other. The
+ * locked resources of each lock owner are tracked too, thus {@link #releaseLocks(Object)}
+ * only visits the resources of the given owner.
+ * </p>
+ * <p>
+ * By default the implementation is non-blocking. If a block timeout greater than
+ * <em>0</em> was set, a lock request which can't be granted waits on the monitor of the
+ * requested resource until the lock was released by the current holder or the block
+ * timeout elapsed.
+ * </p>
+ * <p>
+ * Timed out locks are evicted by a background timer wheel, shared by all instances and
+ * driven by a single daemon thread, instead of scanning the lock table inline on lock
+ * requests. Only the timed out locks conflicting with a lock request are checked and
+ * evicted inline, thus an expired lock never blocks a request until the next tick.
+ * </p>
  *
  * @version $Id: LockManagerInMemoryImpl.java,v 1.1 2007-08-24 22:17:41 ewestfal Exp $
  */
 public class LockManagerInMemoryImpl implements LockManager
 {
     private Logger log = LoggerFactory.getLogger(LockManagerInMemoryImpl.class);
-    private static long CLEANUP_FREQUENCY = 1000; // 1000 milliseconds.
-    private static int MAX_LOCKS_TO_CLEAN = 300;
     /**
-     * MBAIRD: a LinkedHashMap returns objects in the order you put them in,
-     * while still maintaining an O(1) lookup like a normal hashmap. We can then
-     * use this to get the oldest entries very quickly, makes cleanup a breeze.
+     * The duration of a timer wheel tick in milliseconds.
      */
-    private HashMap locktable = new HashMap();
-    private LockIsolationManager lockStrategyManager = new LockIsolationManager();
-    private long m_lastCleanupAt = System.currentTimeMillis();
-    private long lockTimeout;
-    private long timeoutCounterRead;
-    private long timeoutCounterWrite;
+    private static final long TICK_DURATION = 100;
+    /**
+     * The number of timer wheel slots.
+     */
+    private static final int WHEEL_SIZE = 512;
+    /**
+     * The daemon timer driving the timer wheels of all instances.
+     */
+    private static Timer timer;
+
+    private static final int LOCK_DENIED = 0;
+    private static final int LOCK_GRANTED = 1;
+    private static final int LOCK_ADDED = 2;
+
+    /**
+     * Maps the resource id to the {@link ObjectLocks} of the resource.
+     */
+    private final ConcurrentHashMap locktable = new ConcurrentHashMap();
+    /**
+     * Maps the lock owner key to the {@link OwnerLocks} of the owner.
+     */
+    private final ConcurrentHashMap owners = new ConcurrentHashMap();
+    private final LockIsolationManager lockStrategyManager = new LockIsolationManager();
+    private final TimerWheel timerWheel = new TimerWheel();
+    private volatile long lockTimeout;
+    private volatile long blockTimeout;
+    private volatile long timeoutCounterRead;
+    private volatile long timeoutCounterWrite;
 
     public LockManagerInMemoryImpl()
     {
         this.lockTimeout = DEFAULT_LOCK_TIMEOUT;
+        this.blockTimeout = 0;
     }
 
     public long getLockTimeout()
@@ -65,19 +109,20 @@ public class LockManagerInMemoryImpl implements LockManager
     }
 
     /**
-     * NOOP
-     * @return Always '0'
+     * The maximal time to wait for a lock, by default <em>0</em> (non-blocking).
      */
     public long getBlockTimeout()
     {
-        return 0;
+        return blockTimeout;
     }
 
     /**
-     * NOOP
-     */ 
+     * Set the maximal time to wait for a lock. A value of <em>0</em> or less
+     * disables waiting (non-blocking mode).
+     */
     public void setBlockTimeout(long timeout)
     {
+        this.blockTimeout = timeout;
     }
 
     public String getLockInfo()
@@ -85,7 +130,9 @@ public class LockManagerInMemoryImpl implements LockManager
         String eol = SystemUtils.LINE_SEPARATOR;
         StringBuffer msg = new StringBuffer("Class: " + LockManagerInMemoryImpl.class.getName() + eol);
         msg.append("lock timeout: " + getLockTimeout() + " [ms]" + eol);
-        msg.append("concurrent lock owners: " + locktable.size() + eol);
+        msg.append("block timeout: " + getBlockTimeout() + " [ms]" + eol);
+        msg.append("locked objects: " + locktable.size() + eol);
+        msg.append("concurrent lock owners: " + owners.size() + eol);
         msg.append("timed out write locks: " + timeoutCounterWrite + eol);
         msg.append("timed out read locks: " + timeoutCounterRead + eol);
         return msg.toString();
@@ -94,119 +141,291 @@ public class LockManagerInMemoryImpl implements LockManager
     public boolean readLock(Object key, Object resourceId, int isolationLevel)
     {
         if(log.isDebugEnabled()) log.debug("LM.readLock(tx-" + key + ", " + resourceId + ")");
-        checkTimedOutLocks();
         LockEntry reader = new LockEntry(resourceId,
                 key,
                 System.currentTimeMillis(),
                 isolationLevel,
                 LockEntry.LOCK_READ);
-        LockIsolation ls = lockStrategyManager.getStrategyFor(isolationLevel);
-        return addReaderIfPossibleInternal(reader, ls.allowMultipleRead(), ls.allowReadWhenWrite());
+        return acquireLock(reader, lockStrategyManager.getStrategyFor(isolationLevel));
     }
 
-    private boolean addReaderIfPossibleInternal(LockEntry reader, boolean allowMultipleReader,
-                                                boolean allowReaderWhenWriteLock)
+    public boolean writeLock(Object key, Object resourceId, int isolationLevel)
     {
-        boolean result = false;
-        ObjectLocks objectLocks = null;
-        Object oid = reader.getResourceId();
-        /**
-         * MBAIRD: We need to synchronize the get/put so we don't have two threads
-         * competing to check if something is locked and double-locking it.
-         */
-        synchronized(locktable)
+        if(log.isDebugEnabled()) log.debug("LM.writeLock(tx-" + key + ", " + resourceId + ")");
+        LockEntry writer = new LockEntry(resourceId,
+                key,
+                System.currentTimeMillis(),
+                isolationLevel,
+                LockEntry.LOCK_WRITE);
+        return acquireLock(writer, lockStrategyManager.getStrategyFor(isolationLevel));
+    }
+
+    public boolean upgradeLock(Object key, Object resourceId, int isolationLevel)
+    {
+        if(log.isDebugEnabled()) log.debug("LM.upgradeLock(tx-" + key + ", " + resourceId + ")");
+        return writeLock(key, resourceId, isolationLevel);
+    }
+
+    /**
+     * Try to acquire the specified lock, if the lock can't be granted and a block timeout
+     * is set, wait on the resource monitor until the lock is released by the holder.
+     */
+    private boolean acquireLock(LockEntry entry, LockIsolation ls)
+    {
+        long waitUntil = 0;
+        while(true)
         {
-            objectLocks = (ObjectLocks) locktable.get(oid);
-            if(objectLocks == null)
+            ObjectLocks objectLocks = getObjectLocks(entry.getResourceId());
+            synchronized(objectLocks)
             {
-                // no write or read lock, go on
-                objectLocks = new ObjectLocks();
-                locktable.put(oid, objectLocks);
-                objectLocks.addReader(reader);
-                result = true;
+                // removed from the lock table in the meantime, lookup again
+                if(objectLocks.isRemoved()) continue;
+
+                int result;
+                if(entry.getLockType() == LockEntry.LOCK_READ)
+                {
+                    result = addReaderIfPossibleInternal(objectLocks, entry,
+                            ls.allowMultipleRead(), ls.allowReadWhenWrite());
+                }
+                else
+                {
+                    result = setWriterIfPossibleInternal(objectLocks, entry, ls.allowWriteWhenRead());
+                }
+                if(result != LOCK_DENIED)
+                {
+                    if(result == LOCK_ADDED)
+                    {
+                        if(waitUntil != 0) entry.setTimestamp(System.currentTimeMillis());
+                        lockAdded(entry);
+                    }
+                    return true;
+                }
+                // the conflicting locks may be timed out, but not yet evicted by the timer
+                if(removeTimedOutLocks(objectLocks)) continue;
+
+                long timeout = getBlockTimeout();
+                if(timeout <= 0) return false;
+                long now = System.currentTimeMillis();
+                if(waitUntil == 0) waitUntil = now + timeout;
+                if(now >= waitUntil) return false;
+                try
+                {
+                    objectLocks.wait(waitUntil - now);
+                }
+                catch(InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private ObjectLocks getObjectLocks(Object resourceId)
+    {
+        ObjectLocks objectLocks = (ObjectLocks) locktable.get(resourceId);
+        if(objectLocks == null)
+        {
+            ObjectLocks newLocks = new ObjectLocks();
+            objectLocks = (ObjectLocks) locktable.putIfAbsent(resourceId, newLocks);
+            if(objectLocks == null) objectLocks = newLocks;
+        }
+        return objectLocks;
+    }
+
+    /**
+     * Called with the monitor of the resource held.
+     */
+    private int addReaderIfPossibleInternal(ObjectLocks objectLocks, LockEntry reader,
+                                            boolean allowMultipleReader, boolean allowReaderWhenWriteLock)
+    {
+        int result = LOCK_DENIED;
+        // first check for a write lock
+        LockEntry writer = objectLocks.getWriter();
+        if(writer != null)
+        {
+            // if writer is owned by current entity, read lock is
+            // successful (we have an write lock)
+            if(writer.isOwnedBy(reader.getKey()))
+            {
+                result = LOCK_GRANTED;
             }
             else
             {
-                // ObjectLocks exist, first check for a write lock
-                LockEntry writer = objectLocks.getWriter();
-                if(writer != null)
+                // if read lock is allowed when different entity hold write lock
+                // go on if multiple reader allowed, else do nothing
+                if(allowReaderWhenWriteLock && allowMultipleReader)
                 {
-                    // if writer is owned by current entity, read lock is
-                    // successful (we have an write lock)
-                    if(writer.isOwnedBy(reader.getKey()))
+                    result = objectLocks.getReader(reader.getKey()) != null ? LOCK_GRANTED : LOCK_ADDED;
+                    if(result == LOCK_ADDED) objectLocks.addReader(reader);
+                }
+            }
+        }
+        else
+        {
+            // no write lock exist, check for existing read locks
+            if(objectLocks.getReaders().size() > 0)
+            {
+                // if we have already an read lock, do nothing
+                if(objectLocks.getReader(reader.getKey()) != null)
+                {
+                    result = LOCK_GRANTED;
+                }
+                else
+                {
+                    // we have read locks of other entities, add read lock
+                    // if allowed
+                    if(allowMultipleReader)
                     {
-                        result = true;
+                        objectLocks.addReader(reader);
+                        result = LOCK_ADDED;
                     }
-                    else
+                }
+            }
+            else
+            {
+                // no read locks exist, so go on
+                objectLocks.addReader(reader);
+                result = LOCK_ADDED;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Called with the monitor of the resource held.
+     */
+    private int setWriterIfPossibleInternal(ObjectLocks objectLocks, LockEntry writer, boolean allowReaders)
+    {
+        int result = LOCK_DENIED;
+        // check if there is already a write lock
+        LockEntry oldWriter = objectLocks.getWriter();
+        if(oldWriter != null)
+        {
+            // if already a write lock exists, check owner
+            if(oldWriter.isOwnedBy(writer.getKey()))
+            {
+                // if current entity has already a write lock
+                // signal success
+                result = LOCK_GRANTED;
+            }
+        }
+        else
+        {
+            // current ObjectLock has no write lock, so check for readers
+            int readerSize = objectLocks.getReaders().size();
+            if(readerSize > 0)
+            {
+                // does current entity have already an read lock
+                if(objectLocks.getReader(writer.getKey()) != null)
+                {
+                    // if only current entity has a read lock go on, else if
+                    // current entity and others have already a read lock
+                    // go on if aquire a write is allowed
+                    if(readerSize == 1 || allowReaders)
                     {
-                        // if read lock is allowed when different entity hold write lock
-                        // go on if multiple reader allowed, else do nothing
-                        if(allowReaderWhenWriteLock && allowMultipleReader)
-                        {
-                            objectLocks.addReader(reader);
-                            result = true;
-                        }
-                        else
-                        {
-                            result = false;
-                        }
+                        objectLocks.removeReader(writer.getKey());
+                        objectLocks.setWriter(writer);
+                        result = LOCK_ADDED;
                     }
                 }
                 else
                 {
-                    // no write lock exist, check for existing read locks
-                    if(objectLocks.getReaders().size() > 0)
-                    {
-                        // if we have already an read lock, do nothing
-                        if(objectLocks.getReader(reader.getKey()) != null)
-                        {
-                            result = true;
-                        }
-                        else
-                        {
-                            // we have read locks of other entities, add read lock
-                            // if allowed
-                            if(allowMultipleReader)
-                            {
-                                objectLocks.addReader(reader);
-                                result = true;
-                            }
-                        }
-                    }
-                    else
+                    // current entity has no read lock, but others
+                    // if aquire a write is allowed, go on
+                    if(allowReaders)
                     {
-                        // no read locks exist, so go on
-                        objectLocks.addReader(reader);
-                        result = true;
+                        objectLocks.setWriter(writer);
+                        result = LOCK_ADDED;
                     }
                 }
             }
+            else
+            {
+                // no readers and writers, so go on
+                objectLocks.setWriter(writer);
+                result = LOCK_ADDED;
+            }
         }
         return result;
     }
 
+    /**
+     * Register a new lock entry for its owner and schedule the lock timeout.
+     * Called with the monitor of the resource held.
+     */
+    private void lockAdded(LockEntry entry)
+    {
+        while(true)
+        {
+            OwnerLocks ownerLocks = (OwnerLocks) owners.get(entry.getKey());
+            if(ownerLocks == null)
+            {
+                OwnerLocks newLocks = new OwnerLocks();
+                ownerLocks = (OwnerLocks) owners.putIfAbsent(entry.getKey(), newLocks);
+                if(ownerLocks == null) ownerLocks = newLocks;
+            }
+            // if false the owner locks was removed in the meantime
+            if(ownerLocks.add(entry.getResourceId())) break;
+        }
+        if(getLockTimeout() >= 0)
+        {
+            timerWheel.schedule(entry, entry.getTimestamp() + getLockTimeout());
+        }
+    }
+
+    /**
+     * Called with the monitor of the resource held after a lock of the owner was removed.
+     * Unregisters the resource from the owner if the owner holds no further lock on it,
+     * removes the resource from the lock table if it isn't locked any longer and
+     * wakes up all threads waiting for a lock on the resource.
+     */
+    private void lockRemoved(Object key, Object resourceId, ObjectLocks objectLocks)
+    {
+        if(!objectLocks.isLockedBy(key))
+        {
+            OwnerLocks ownerLocks = (OwnerLocks) owners.get(key);
+            if(ownerLocks != null && ownerLocks.remove(resourceId))
+            {
+                owners.remove(key, ownerLocks);
+            }
+        }
+        removeIfUnused(resourceId, objectLocks);
+        objectLocks.notifyAll();
+    }
+
+    /**
+     * Called with the monitor of the resource held.
+     */
+    private void removeIfUnused(Object resourceId, ObjectLocks objectLocks)
+    {
+        /**
+         * MBAIRD, last one out, close the door and turn off the lights.
+         * if no locks (readers or writers) exist for this object, let's remove
+         * it from the locktable.
+         */
+        if(objectLocks.getWriter() == null && objectLocks.getReaders().size() == 0)
+        {
+            objectLocks.setRemoved();
+            locktable.remove(resourceId, objectLocks);
+        }
+    }
+
     /**
      * Remove an read lock.
      */
     public boolean removeReader(Object key, Object resourceId)
     {
         boolean result = false;
-        ObjectLocks objectLocks = null;
-        synchronized(locktable)
+        ObjectLocks objectLocks = (ObjectLocks) locktable.get(resourceId);
+        if(objectLocks != null)
         {
-            objectLocks = (ObjectLocks) locktable.get(resourceId);
-            if(objectLocks != null)
+            synchronized(objectLocks)
             {
-                /**
-                 * MBAIRD, last one out, close the door and turn off the lights.
-                 * if no locks (readers or writers) exist for this object, let's remove
-                 * it from the locktable.
-                 */
-                Map readers = objectLocks.getReaders();
-                result = readers.remove(key) != null;
-                if((objectLocks.getWriter() == null) && (readers.size() == 0))
+                result = objectLocks.removeReader(key) != null;
+                if(result)
                 {
-                    locktable.remove(resourceId);
+                    lockRemoved(key, resourceId, objectLocks);
                 }
             }
         }
@@ -219,28 +438,17 @@ public class LockManagerInMemoryImpl implements LockManager
     public boolean removeWriter(Object key, Object resourceId)
     {
         boolean result = false;
-        ObjectLocks objectLocks = null;
-        synchronized(locktable)
+        ObjectLocks objectLocks = (ObjectLocks) locktable.get(resourceId);
+        if(objectLocks != null)
         {
-            objectLocks = (ObjectLocks) locktable.get(resourceId);
-            if(objectLocks != null)
+            synchronized(objectLocks)
             {
-                /**
-                 * MBAIRD, last one out, close the door and turn off the lights.
-                 * if no locks (readers or writers) exist for this object, let's remove
-                 * it from the locktable.
-                 */
                 LockEntry entry = objectLocks.getWriter();
                 if(entry != null && entry.isOwnedBy(key))
                 {
                     objectLocks.setWriter(null);
                     result = true;
-
-                    // no need to check if writer is null, we just set it.
-                    if(objectLocks.getReaders().size() == 0)
-                    {
-                        locktable.remove(resourceId);
-                    }
+                    lockRemoved(key, resourceId, objectLocks);
                 }
             }
         }
@@ -265,130 +473,29 @@ public class LockManagerInMemoryImpl implements LockManager
     public void releaseLocks(Object key)
     {
         if(log.isDebugEnabled()) log.debug("LM.releaseLocks(tx-" + key + ")");
-        checkTimedOutLocks();
-        releaseLocksInternal(key);
-    }
-
-    private void releaseLocksInternal(Object key)
-    {
-        synchronized(locktable)
-        {
-            Collection values = locktable.values();
-            ObjectLocks entry;
-            for(Iterator iterator = values.iterator(); iterator.hasNext();)
-            {
-                entry = (ObjectLocks) iterator.next();
-                entry.removeReader(key);
-                if(entry.getWriter() != null && entry.getWriter().isOwnedBy(key))
-                {
-                    entry.setWriter(null);
-                }
-            }
-        }
-    }
-
-    public boolean writeLock(Object key, Object resourceId, int isolationLevel)
-    {
-        if(log.isDebugEnabled()) log.debug("LM.writeLock(tx-" + key + ", " + resourceId + ")");
-        checkTimedOutLocks();
-        LockEntry writer = new LockEntry(resourceId,
-                key,
-                System.currentTimeMillis(),
-                isolationLevel,
-                LockEntry.LOCK_WRITE);
-        LockIsolation ls = lockStrategyManager.getStrategyFor(isolationLevel);
-        return setWriterIfPossibleInternal(writer, ls.allowWriteWhenRead());
-    }
-
-    private boolean setWriterIfPossibleInternal(LockEntry writer, boolean allowReaders)
-    {
-        boolean result = false;
-        ObjectLocks objectLocks = null;
-        /**
-         * MBAIRD: We need to synchronize the get/put so we don't have two threads
-         * competing to check if something is locked and double-locking it.
-         */
-        synchronized(locktable)
+        OwnerLocks ownerLocks = (OwnerLocks) owners.remove(key);
+        if(ownerLocks != null)
         {
-            objectLocks = (ObjectLocks) locktable.get(writer.getResourceId());
-            // if we don't upgrade, go on
-            if(objectLocks == null)
-            {
-                // no locks for current entity exist, so go on
-                objectLocks = new ObjectLocks();
-                objectLocks.setWriter(writer);
-                locktable.put(writer.getResourceId(), objectLocks);
-                result = true;
-            }
-            else
+            Object[] resourceIds = ownerLocks.removeAll();
+            for(int i = 0; i < resourceIds.length; i++)
             {
-                // the ObjectLock exist, check if there is already a write lock
-                LockEntry oldWriter = objectLocks.getWriter();
-                if(oldWriter != null)
+                Object resourceId = resourceIds[i];
+                ObjectLocks objectLocks = (ObjectLocks) locktable.get(resourceId);
+                if(objectLocks != null)
                 {
-                    // if already a write lock exists, check owner
-                    if(oldWriter.isOwnedBy(writer.getKey()))
+                    synchronized(objectLocks)
                     {
-                        // if current entity has already a write lock
-                        // signal success
-                        result = true;
-                    }
-                }
-                else
-                {
-                    // current ObjectLock has no write lock, so check for readers
-                    int readerSize = objectLocks.getReaders().size();
-                    if(readerSize > 0)
-                    {
-                        // does current entity have already an read lock
-                        if(objectLocks.getReader(writer.getKey()) != null)
+                        objectLocks.removeReader(key);
+                        if(objectLocks.getWriter() != null && objectLocks.getWriter().isOwnedBy(key))
                         {
-                            if(readerSize == 1)
-                            {
-                                // only current entity has a read lock, so go on
-                                objectLocks.readers.remove(writer.getKey());
-                                objectLocks.setWriter(writer);
-                                result = true;
-                            }
-                            else
-                            {
-                                // current entity and others have already a read lock
-                                // if aquire a write is allowed, go on
-                                if(allowReaders)
-                                {
-                                    objectLocks.readers.remove(writer.getKey());
-                                    objectLocks.setWriter(writer);
-                                    result = true;
-                                }
-                            }
-                        }
-                        else
-                        {
-                            // current entity has no read lock, but others
-                            // if aquire a write is allowed, go on
-                            if(allowReaders)
-                            {
-                                objectLocks.setWriter(writer);
-                                result = true;
-                            }
+                            objectLocks.setWriter(null);
                         }
-                    }
-                    else
-                    {
-                        // no readers and writers, so go on if we don't upgrade
-                        objectLocks.setWriter(writer);
-                        result = true;
+                        removeIfUnused(resourceId, objectLocks);
+                        objectLocks.notifyAll();
                     }
                 }
             }
         }
-        return result;
-    }
-
-    public boolean upgradeLock(Object key, Object resourceId, int isolationLevel)
-    {
-        if(log.isDebugEnabled()) log.debug("LM.upgradeLock(tx-" + key + ", " + resourceId + ")");
-        return writeLock(key, resourceId, isolationLevel);
     }
 
     /**
@@ -397,18 +504,11 @@ public class LockManagerInMemoryImpl implements LockManager
     public boolean hasWrite(Object key, Object resourceId)
     {
         if(log.isDebugEnabled()) log.debug("LM.hasWrite(tx-" + key + ", " + resourceId + ")");
-        checkTimedOutLocks();
-        return hasWriteLockInternal(resourceId, key);
-    }
-
-    private boolean hasWriteLockInternal(Object resourceId, Object key)
-    {
         boolean result = false;
-        ObjectLocks objectLocks = null;
-        synchronized(locktable)
+        ObjectLocks objectLocks = (ObjectLocks) locktable.get(resourceId);
+        if(objectLocks != null)
         {
-            objectLocks = (ObjectLocks) locktable.get(resourceId);
-            if(objectLocks != null)
+            synchronized(objectLocks)
             {
                 LockEntry writer = objectLocks.getWriter();
                 if(writer != null)
@@ -432,106 +532,221 @@ public class LockManagerInMemoryImpl implements LockManager
     public boolean hasRead(Object key, Object resourceId)
     {
         if(log.isDebugEnabled()) log.debug("LM.hasRead(tx-" + key + ", " + resourceId + ')');
-        checkTimedOutLocks();
-        return hasReadLockInternal(resourceId, key);
-    }
-
-    private boolean hasReadLockInternal(Object resourceId, Object key)
-    {
         boolean result = false;
-        ObjectLocks objectLocks = null;
-        synchronized(locktable)
+        ObjectLocks objectLocks = (ObjectLocks) locktable.get(resourceId);
+        if(objectLocks != null)
         {
-            objectLocks = (ObjectLocks) locktable.get(resourceId);
-            if(objectLocks != null)
+            synchronized(objectLocks)
             {
-                LockEntry reader = objectLocks.getReader(key);
-                if(reader != null || (objectLocks.getWriter() != null && objectLocks.getWriter().isOwnedBy(key)))
-                {
-                    result = true;
-                }
+                result = objectLocks.isLockedBy(key);
             }
         }
         return result;
     }
 
     /**
-     *
+     * Returns the number of currently locked objects.
      */
     public int lockedObjects()
     {
         return locktable.size();
     }
 
-    private void checkTimedOutLocks()
+    /**
+     * Removes the specified lock entry if it's still held, called by the timer wheel
+     * when the lock timeout of the entry elapsed.
+     */
+    private void removeTimedOutLock(LockEntry entry)
+    {
+        ObjectLocks objectLocks = (ObjectLocks) locktable.get(entry.getResourceId());
+        if(objectLocks != null)
+        {
+            synchronized(objectLocks)
+            {
+                removeTimedOutLockInternal(objectLocks, entry);
+            }
+        }
+    }
+
+    /**
+     * Removes the timed out write and read locks of the resource. Returns <em>true</em>
+     * if a lock was removed.
+     * Called with the monitor of the resource held.
+     */
+    private boolean removeTimedOutLocks(ObjectLocks objectLocks)
+    {
+        long timeout = getLockTimeout();
+        if(timeout < 0) return false;
+        long now = System.currentTimeMillis();
+        List timedOut = new ArrayList();
+        LockEntry writer = objectLocks.getWriter();
+        if(writer != null && writer.isTimedOut(now, timeout)) timedOut.add(writer);
+        Iterator it = objectLocks.getReaders().values().iterator();
+        while(it.hasNext())
+        {
+            LockEntry reader = (LockEntry) it.next();
+            if(reader.isTimedOut(now, timeout)) timedOut.add(reader);
+        }
+        boolean removed = false;
+        for(int i = 0; i < timedOut.size(); i++)
+        {
+            removed |= removeTimedOutLockInternal(objectLocks, (LockEntry) timedOut.get(i));
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the specified timed out lock entry if it's still held. Returns <em>true</em>
+     * if the entry was removed.
+     * Called with the monitor of the resource held.
+     */
+    private boolean removeTimedOutLockInternal(ObjectLocks objectLocks, LockEntry entry)
     {
-        if(System.currentTimeMillis() - m_lastCleanupAt > CLEANUP_FREQUENCY)
+        // the lock entry may already be released or replaced (e.g. by a lock upgrade)
+        if(objectLocks.getWriter() == entry)
+        {
+            objectLocks.setWriter(null);
+            ++timeoutCounterWrite;
+        }
+        else if(objectLocks.getReader(entry.getKey()) == entry)
         {
-            removeTimedOutLocks(getLockTimeout());
-            m_lastCleanupAt = System.currentTimeMillis();
+            objectLocks.removeReader(entry.getKey());
+            ++timeoutCounterRead;
         }
+        else
+        {
+            return false;
+        }
+        Object resourceId = entry.getResourceId();
+        if(log.isDebugEnabled()) log.debug("LM: Lock timed out (tx-" + entry.getKey() + ", " + resourceId + ")");
+        lockRemoved(entry.getKey(), resourceId, objectLocks);
+        return true;
+    }
+
+    private static synchronized Timer getTimer()
+    {
+        if(timer == null)
+        {
+            timer = new Timer("OJB LockManager timeout", true);
+        }
+        return timer;
     }
 
+
+    //===============================================================
+    // inner class
+    //===============================================================
     /**
-     * removes all timed out lock entries from the persistent storage.
-     * The timeout value can be set in the OJB properties file.
+     * A hashed timer wheel holding the lock entries by the slot of their timeout.
+     * Lock entries are added lock-free to the slot queues, on each tick the background
+     * timer evicts the timed out entries of the elapsed slots.
      */
-    private void removeTimedOutLocks(long timeout)
-    {
-        int count = 0;
-        long maxAge = System.currentTimeMillis() - timeout;
-        boolean breakFromLoop = false;
-        ObjectLocks temp = null;
-        synchronized(locktable)
-        {
-            Iterator it = locktable.values().iterator();
-            /**
-             * run this loop while:
-             * - we have more in the iterator
-             * - the breakFromLoop flag hasn't been set
-             * - we haven't removed more than the limit for this cleaning iteration.
-             */
-            while(it.hasNext() && !breakFromLoop && (count <= MAX_LOCKS_TO_CLEAN))
+    final class TimerWheel
+    {
+        private final ConcurrentLinkedQueue[] slots = new ConcurrentLinkedQueue[WHEEL_SIZE];
+        private volatile long currentTick;
+        private volatile boolean started;
+
+        TimerWheel()
+        {
+            for(int i = 0; i < slots.length; i++)
             {
-                temp = (ObjectLocks) it.next();
-                if(temp.getWriter() != null)
+                slots[i] = new ConcurrentLinkedQueue();
+            }
+        }
+
+        void schedule(LockEntry entry, long deadline)
+        {
+            if(!started) start();
+            // never schedule in the current (maybe already processed) tick
+            long tick = Math.max(deadline / TICK_DURATION, currentTick + 1);
+            slots[(int) (tick % WHEEL_SIZE)].add(entry);
+        }
+
+        private synchronized void start()
+        {
+            if(!started)
+            {
+                currentTick = System.currentTimeMillis() / TICK_DURATION;
+                getTimer().schedule(new TickTask(this), TICK_DURATION, TICK_DURATION);
+                started = true;
+            }
+        }
+
+        /**
+         * Processes all slots elapsed since the last tick, at most one round.
+         */
+        void advance(long now)
+        {
+            long tick = now / TICK_DURATION;
+            long first = Math.max(currentTick + 1, tick - WHEEL_SIZE + 1);
+            for(long i = first; i <= tick; i++)
+            {
+                expire(slots[(int) (i % WHEEL_SIZE)], now);
+            }
+            currentTick = tick;
+        }
+
+        private void expire(ConcurrentLinkedQueue slot, long now)
+        {
+            List pending = null;
+            LockEntry entry;
+            while((entry = (LockEntry) slot.poll()) != null)
+            {
+                long timeout = getLockTimeout();
+                // a negative lock timeout was set in the meantime, locks never time out
+                if(timeout < 0) continue;
+                if(entry.isTimedOut(now, timeout))
                 {
-                    if(temp.getWriter().getTimestamp() < maxAge)
-                    {
-                        // writer has timed out, set it to null
-                        temp.setWriter(null);
-                        ++timeoutCounterWrite;
-                    }
+                    removeTimedOutLock(entry);
                 }
-                if(temp.getYoungestReader() < maxAge)
+                else
                 {
-                    // all readers are older than timeout.
-                    temp.getReaders().clear();
-                    ++timeoutCounterRead;
-                    if(temp.getWriter() == null)
-                    {
-                        // all readers and writer are older than timeout,
-                        // remove the objectLock from the iterator (which
-                        // is backed by the map, so it will be removed.
-                        it.remove();
-                    }
+                    // entry of a further round or the lock timeout was increased
+                    if(pending == null) pending = new ArrayList();
+                    pending.add(entry);
                 }
-                else
+            }
+            if(pending != null)
+            {
+                for(int i = 0; i < pending.size(); i++)
                 {
-                    // we need to walk each reader.
-                    Iterator readerIt = temp.getReaders().values().iterator();
-                    LockEntry readerLock = null;
-                    while(readerIt.hasNext())
-                    {
-                        readerLock = (LockEntry) readerIt.next();
-                        if(readerLock.getTimestamp() < maxAge)
-                        {
-                            // this read lock is old, remove it.
-                            readerIt.remove();
-                        }
-                    }
+                    entry = (LockEntry) pending.get(i);
+                    schedule(entry, entry.getTimestamp() + getLockTimeout());
                 }
-                count++;
+            }
+        }
+    }
+
+    /**
+     * Drives the timer wheel of a lock manager instance, the wheel is only weakly
+     * referenced so the task cancels itself when the lock manager is gone.
+     */
+    static final class TickTask extends TimerTask
+    {
+        private final WeakReference wheelRef;
+
+        TickTask(TimerWheel wheel)
+        {
+            this.wheelRef = new WeakReference(wheel);
+        }
+
+        public void run()
+        {
+            TimerWheel wheel = (TimerWheel) wheelRef.get();
+            if(wheel == null)
+            {
+                cancel();
+                return;
+            }
+            try
+            {
+                wheel.advance(System.currentTimeMillis());
+            }
+            catch(RuntimeException e)
+            {
+                // never kill the shared timer thread
+                LoggerFactory.getLogger(LockManagerInMemoryImpl.class).error("Eviction of timed out locks failed", e);
             }
         }
     }
@@ -540,11 +755,14 @@ public class LockManagerInMemoryImpl implements LockManager
     //===============================================================
     // inner class
     //===============================================================
+    /**
+     * The locks of a resource, guarded by the monitor of the instance.
+     */
     static final class ObjectLocks
     {
         private LockEntry writer;
-        private Hashtable readers;
-        private long m_youngestReader = 0;
+        private Map readers;
+        private boolean removed;
 
         ObjectLocks()
         {
@@ -554,7 +772,7 @@ public class LockManagerInMemoryImpl implements LockManager
         ObjectLocks(LockEntry writer)
         {
             this.writer = writer;
-            readers = new Hashtable();
+            readers = new HashMap();
         }
 
         LockEntry getWriter()
@@ -567,30 +785,16 @@ public class LockManagerInMemoryImpl implements LockManager
             this.writer = writer;
         }
 
-        Hashtable getReaders()
+        Map getReaders()
         {
             return readers;
         }
 
         void addReader(LockEntry reader)
         {
-            /**
-             * MBAIRD:
-             * we want to track the youngest reader so we can remove all readers at timeout
-             * if the youngestreader is older than the timeoutperiod.
-             */
-            if((reader.getTimestamp() < m_youngestReader) || (m_youngestReader == 0))
-            {
-                m_youngestReader = reader.getTimestamp();
-            }
             this.readers.put(reader.getKey(), reader);
         }
 
-        long getYoungestReader()
-        {
-            return m_youngestReader;
-        }
-
         LockEntry getReader(Object key)
         {
             return (LockEntry) this.readers.get(key);
@@ -600,6 +804,72 @@ public class LockManagerInMemoryImpl implements LockManager
         {
             return (LockEntry) this.readers.remove(key);
         }
+
+        /**
+         * Returns <em>true</em> if the specified owner holds a read or write lock.
+         */
+        boolean isLockedBy(Object key)
+        {
+            return readers.get(key) != null || (writer != null && writer.isOwnedBy(key));
+        }
+
+        /**
+         * Marks this instance as removed from the lock table.
+         */
+        void setRemoved()
+        {
+            removed = true;
+        }
+
+        boolean isRemoved()
+        {
+            return removed;
+        }
+    }
+
+
+    //===============================================================
+    // inner class
+    //===============================================================
+    /**
+     * The resources locked by a lock owner.
+     */
+    static final class OwnerLocks
+    {
+        private Set resourceIds = new HashSet();
+        private boolean removed;
+
+        /**
+         * Returns <em>false</em> if this instance was already removed from the owner table.
+         */
+        synchronized boolean add(Object resourceId)
+        {
+            if(!removed)
+            {
+                resourceIds.add(resourceId);
+            }
+            return !removed;
+        }
+
+        /**
+         * Removes the resource, returns <em>true</em> if no resource is left and
+         * the instance have to be removed from the owner table.
+         */
+        synchronized boolean remove(Object resourceId)
+        {
+            resourceIds.remove(resourceId);
+            if(resourceIds.isEmpty())
+            {
+                removed = true;
+            }
+            return removed;
+        }
+
+        synchronized Object[] removeAll()
+        {
+            removed = true;
+            return resourceIds.toArray();
+        }
     }
 
 
@@ -689,6 +959,15 @@ public class LockManagerInMemoryImpl implements LockManager
             return timestamp;
         }
 
+        /**
+         * Returns <em>true</em> if the specified lock timeout elapsed since the
+         * acquisition of the lock, a negative lock timeout never elapses.
+         */
+        public boolean isTimedOut(long now, long lockTimeout)
+        {
+            return lockTimeout >= 0 && timestamp + lockTimeout <= now;
+        }
+
         /**
          * returns the isolation level of this lock
          */
@@ -27,6 +27,8 @@ import java.net.MalformedURLException;
 import java.net.ProtocolException;
 import java.net.URL;
 
+import org.apache.ojb.broker.Identity;
+import org.apache.ojb.broker.core.IdentityCodec;
 import org.apache.ojb.broker.util.configuration.Configurable;
 import org.apache.ojb.broker.util.configuration.Configuration;
 import org.apache.ojb.broker.util.configuration.ConfigurationException;
@@ -388,10 +390,15 @@ public class LockManagerRemoteImpl implements LockManager, Configurable
         }
     }
 
+    /**
+     * The lock request sent to the lock servlet. {@link Identity} resource ids are
+     * written in the compact binary form of {@link IdentityCodec#DEFAULT}, all other
+     * resource ids with java serialization.
+     */
     public static final class LockInfo implements Serializable
     {
         public Object key;
-        public Object resourceId;
+        public transient Object resourceId;
         public int isolationLevel;
         public byte methodName;
         public long lockTimeout;
@@ -417,6 +424,34 @@ public class LockManagerRemoteImpl implements LockManager, Configurable
             this.methodName = methodName;
         }
 
+        private void writeObject(ObjectOutputStream out) throws IOException
+        {
+            out.defaultWriteObject();
+            if(resourceId instanceof Identity)
+            {
+                out.writeBoolean(true);
+                IdentityCodec.DEFAULT.write((Identity) resourceId, out);
+            }
+            else
+            {
+                out.writeBoolean(false);
+                out.writeObject(resourceId);
+            }
+        }
+
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+        {
+            in.defaultReadObject();
+            if(in.readBoolean())
+            {
+                resourceId = IdentityCodec.DEFAULT.read(in);
+            }
+            else
+            {
+                resourceId = in.readObject();
+            }
+        }
+
 //        public LockInfo(long timeout, byte methodName)
 //        {
 //            if(methodName == METHOD_LOCK_TIMEOUT_SET)
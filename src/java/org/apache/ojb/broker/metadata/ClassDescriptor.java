@@ -113,6 +113,10 @@ public final class ClassDescriptor extends DescriptorBase
      * the zero argument constructor for this class
      */
     private transient Constructor zeroArgumentConstructor = null;
+    /**
+     * creates the new instances of this class
+     */
+    private transient ObjectInstantiator objectInstantiator;
 
     /**
      * used to signal use of ojbConcreteClass field
@@ -196,6 +200,12 @@ TODO: this feature doesn't work, so remove/reuse this in future
      * false by default.
      */
     private boolean alwaysRefresh = false;
+    /**
+     * if true the results of the queries of this class
+     * are cached in the query result cache.
+     * false by default.
+     */
+    private boolean queryCacheable = false;
     private int m_ProxyPrefetchingLimit = 50;
     /**
      * optional, ObjectCacheDescriptor for representing class
@@ -1317,6 +1327,43 @@ TODO: this feature doesn't work, so remove this in future
         return zeroArgumentConstructor;
     }
 
+    /**
+     * Returns the {@link ObjectInstantiator} creating the new instances of the class
+     * represented by this class descriptor. The implementation is set by the
+     * <em>ObjectInstantiatorClass</em> property in OJB.properties.
+     */
+    public ObjectInstantiator getObjectInstantiator()
+    {
+        ObjectInstantiator result = objectInstantiator;
+        if (result == null)
+        {
+            Configurator configurator = OjbConfigurator.getInstance();
+            Configuration config = configurator.getConfigurationFor(null);
+            Class instantiatorClass = config.getClass("ObjectInstantiatorClass", ObjectInstantiatorDefaultImpl.class);
+            try
+            {
+                result = (ObjectInstantiator) ClassHelper.newInstance(
+                        instantiatorClass, ClassDescriptor.class, this);
+            }
+            catch (Exception e)
+            {
+                throw new MetadataException("Can't create ObjectInstantiator "
+                        + instantiatorClass.getName() + " for class " + getClassNameOfObject(), e);
+            }
+            objectInstantiator = result;
+        }
+        return result;
+    }
+
+    /**
+     * Optional! Set the {@link ObjectInstantiator} creating the new
+     * instances of the class represented by this class descriptor.
+     */
+    public void setObjectInstantiator(ObjectInstantiator objectInstantiator)
+    {
+        this.objectInstantiator = objectInstantiator;
+    }
+
     /*
      * @see XmlCapable#toXML()
      */
@@ -1451,6 +1498,14 @@ TODO: this feature doesn't work, so remove this in future
             result.append( eol );
         }
 
+        //query cache is optional, disabled by default
+        if (isQueryCacheable())
+        {
+            result.append( "    ");
+            result.append( tags.getAttribute(QUERY_CACHE, "true"));
+            result.append( eol );
+        }
+
         result.append( "  >");
         result.append( eol );
 
@@ -1855,6 +1910,25 @@ TODO: this feature doesn't work, so remove this in future
         this.alwaysRefresh = alwaysRefresh;
     }
 
+    /**
+     * if true the results of the queries of this class
+     * are cached in the query result cache.
+     * @return boolean
+     */
+    public boolean isQueryCacheable()
+    {
+        return queryCacheable;
+    }
+
+    /**
+     * Sets the queryCacheable parameter.
+     * @param queryCacheable The value to set
+     */
+    public void setQueryCacheable(boolean queryCacheable)
+    {
+        this.queryCacheable = queryCacheable;
+    }
+
     public int getProxyPrefetchingLimit()
     {
         return m_ProxyPrefetchingLimit;
@@ -200,6 +200,11 @@ public class ConnectionDescriptorXmlHandler
                         if (isDebug) logger.debug("     " + tags.getTagById(BATCH_MODE) + ": " + batchMode);
                         m_CurrentJCD.setBatchMode(Boolean.valueOf(batchMode).booleanValue());
 
+                        // set batch-size attribute
+                        String batchSize = atts.getValue(tags.getTagById(BATCH_SIZE));
+                        if (isDebug) logger.debug("     " + tags.getTagById(BATCH_SIZE) + ": " + batchSize);
+                        if (checkString(batchSize)) m_CurrentJCD.setBatchSize(Integer.parseInt(batchSize));
+
                         // set useAutoCommit attribute
                         String useAutoCommit = atts.getValue(tags.getTagById(USE_AUTOCOMMIT));
                         if (isDebug) logger.debug("     " + tags.getTagById(USE_AUTOCOMMIT) + ": " + useAutoCommit);
@@ -56,6 +56,8 @@ public class ConnectionPoolDescriptor extends PoolConfiguration implements Seria
 
     /** Configuration attribute name for JDBC fetchSize hint. */
     public static final String FETCH_SIZE = "fetchSize";
+    /** Configuration attribute name for the size of the statement cache of each connection. */
+    public static final String STATEMENT_CACHE_SIZE = "statementCacheSize";
 
     private Class connectionFactory;
 
@@ -74,6 +76,7 @@ public class ConnectionPoolDescriptor extends PoolConfiguration implements Seria
         jdbcProperties = new Properties();
         dbcpProperties = new Properties();
         setFetchSize(0);
+        setStatementCacheSize(0);
         this.setTestOnBorrow(true);
         this.setTestOnReturn(false);
         this.setTestWhileIdle(false);
@@ -111,6 +114,29 @@ public class ConnectionPoolDescriptor extends PoolConfiguration implements Seria
         setProperty(FETCH_SIZE, Integer.toString(fetchSize));
     }
 
+    /**
+     * Returns the maximum number of prepared statements cached for each
+     * pooled connection.
+     * @return size of the statement cache or 0 if statements are not cached
+     * @see org.apache.ojb.broker.accesslayer.StatementCache
+     */
+    public int getStatementCacheSize()
+    {
+        // We depend on init() to always set the statement cache size
+        return Integer.parseInt(getProperty(STATEMENT_CACHE_SIZE));
+    }
+
+    /**
+     * Sets the maximum number of prepared statements cached for each pooled
+     * connection. Only used by
+     * {@link org.apache.ojb.broker.accesslayer.ConnectionFactoryPooledImpl}.
+     * @param statementCacheSize size of the statement cache or 0 to disable caching
+     */
+    public void setStatementCacheSize(int statementCacheSize)
+    {
+        setProperty(STATEMENT_CACHE_SIZE, Integer.toString(statementCacheSize));
+    }
+
     /**
      * Returns the JDBC properties to be used by the ConnectionFactory
      * when creating connections from DriverManager.
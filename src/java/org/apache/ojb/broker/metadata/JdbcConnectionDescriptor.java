@@ -41,6 +41,10 @@ public class JdbcConnectionDescriptor extends DescriptorBase implements Serializ
     public static final int AUTO_COMMIT_IGNORE_STATE = 0;
     public static final int AUTO_COMMIT_SET_TRUE_AND_TEMPORARY_FALSE = 1;
     public static final int AUTO_COMMIT_SET_FALSE = 2;
+    /**
+     * The default number of pending statements of a batch, see {@link #getBatchSize()}.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
 
     private String m_jcdAlias;
     private String m_Dbms;
@@ -54,6 +58,7 @@ public class JdbcConnectionDescriptor extends DescriptorBase implements Serializ
     private double m_JdbcLevel = 2.0;
     private boolean m_eagerRelease = false;
     private boolean m_batchMode = false;
+    private int m_batchSize = DEFAULT_BATCH_SIZE;
     private boolean defaultConnection = false;
     private int useAutoCommit = AUTO_COMMIT_SET_TRUE_AND_TEMPORARY_FALSE;
     private boolean ignoreAutoCommitExceptions = false;
@@ -412,6 +417,24 @@ public class JdbcConnectionDescriptor extends DescriptorBase implements Serializ
     	m_batchMode = flag;
     }
 
+    /**
+     * Returns the maximal number of pending statements of a batch
+     * before it is executed (if batch mode is enabled).
+     */
+    public int getBatchSize()
+    {
+        return m_batchSize;
+    }
+
+    /**
+     * Sets the maximal number of pending statements of a batch, values
+     * less than 1 are replaced by {@link #DEFAULT_BATCH_SIZE}.
+     */
+    public void setBatchSize(int batchSize)
+    {
+        m_batchSize = batchSize > 0 ? batchSize : DEFAULT_BATCH_SIZE;
+    }
+
     /**
      * Returns a String representation of this class.
      */
@@ -432,6 +455,7 @@ public class JdbcConnectionDescriptor extends DescriptorBase implements Serializ
         append("eager-release", m_eagerRelease).
         append("ConnectionPoolDescriptor", cpd).
         append("batchMode", m_batchMode).
+        append("batchSize", m_batchSize).
         append("useAutoCommit", getUseAutoCommitAsString(useAutoCommit)).
         append("ignoreAutoCommitExceptions", ignoreAutoCommitExceptions).
         append("sequenceDescriptor", sequenceDescriptor);
@@ -520,6 +544,9 @@ public class JdbcConnectionDescriptor extends DescriptorBase implements Serializ
         strReturn.append( tags.getAttribute( BATCH_MODE, "" + this.getBatchMode() ) );
         strReturn.append( eol );
         strReturn.append( "    " );
+        strReturn.append( tags.getAttribute( BATCH_SIZE, "" + this.getBatchSize() ) );
+        strReturn.append( eol );
+        strReturn.append( "    " );
         strReturn.append( tags.getAttribute( USE_AUTOCOMMIT, "" + this.getUseAutoCommit() ) );
         strReturn.append( eol );
         strReturn.append( "    " );
@@ -56,6 +56,8 @@ public class JdbcMetadataUtils
     public static final String PLATFORM_MSACCESS    = "MsAccess";
     /** Identifier for the Microsoft SQL Server platform */
     public static final String PLATFORM_MSSQLSERVER = "MsSQLServer";
+    /** Identifier for the Microsoft SQL Server 2012 (and later) platform */
+    public static final String PLATFORM_MSSQLSERVER2012 = "MsSQLServer2012";
     /** Identifier for the MySQL platform */
     public static final String PLATFORM_MYSQL       = "MySQL";
     /** Identifier for the generic Oracle platform */
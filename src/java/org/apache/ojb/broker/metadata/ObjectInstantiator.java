@@ -0,0 +1,36 @@
+package org.apache.ojb.broker.metadata;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Creates the new instances of a persistent class when objects are materialized,
+ * see {@link ClassDescriptor#getObjectInstantiator()}. The implementation is set
+ * by the <em>ObjectInstantiatorClass</em> property in OJB.properties, implementations
+ * need a public constructor taking the {@link ClassDescriptor} of the persistent class.
+ *
+ * @version $Id$
+ */
+public interface ObjectInstantiator
+{
+    /**
+     * Returns a new instance of the persistent class created by the zero argument constructor.
+     *
+     * @throws InstantiationException if the class is abstract or an interface
+     * @throws ClassNotPersistenceCapableException if the class has no zero argument
+     * constructor or the constructor failed
+     */
+    public Object newInstance() throws InstantiationException;
+}
@@ -0,0 +1,159 @@
+package org.apache.ojb.broker.metadata;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+import net.sf.cglib.core.AbstractClassGenerator;
+import net.sf.cglib.core.ClassEmitter;
+import net.sf.cglib.core.CodeEmitter;
+import net.sf.cglib.core.Constants;
+import net.sf.cglib.core.EmitUtils;
+import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.core.Signature;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Type;
+
+/**
+ * An {@link ObjectInstantiator} calling the zero argument constructor of the persistent
+ * class without reflection. An instantiator class is generated with CGLIB in the package
+ * of the persistent class, thus public, protected and package private constructors
+ * can be called. Classes with a <em>private</em> constructor are instantiated by
+ * {@link ObjectInstantiatorDefaultImpl}.
+ *
+ * @version $Id$
+ */
+public class ObjectInstantiatorCGLibImpl implements ObjectInstantiator
+{
+    private final ClassDescriptor cld;
+    private final ObjectInstantiator instantiator;
+    private final boolean generated;
+
+    public ObjectInstantiatorCGLibImpl(ClassDescriptor cld)
+    {
+        this.cld = cld;
+        ObjectInstantiator result = null;
+        Class target = cld.getClassOfObject();
+        Constructor con = cld.getZeroArgumentConstructor();
+        if(con != null && !Modifier.isPrivate(con.getModifiers())
+                && !Modifier.isAbstract(target.getModifiers()) && target.getClassLoader() != null)
+        {
+            try
+            {
+                result = new Generator(target).create();
+            }
+            catch(Throwable e)
+            {
+                LoggerFactory.getDefaultLogger().warn("Can't generate instantiator for "
+                        + target.getName() + ", use reflection instead", e);
+            }
+        }
+        this.generated = result != null;
+        this.instantiator = result != null ? result : new ObjectInstantiatorDefaultImpl(cld);
+    }
+
+    public Object newInstance() throws InstantiationException
+    {
+        if(!generated)
+        {
+            return instantiator.newInstance();
+        }
+        try
+        {
+            return instantiator.newInstance();
+        }
+        catch(InstantiationException e)
+        {
+            throw e;
+        }
+        catch(Exception e)
+        {
+            // same as ConstructorHelper, the constructor is called directly
+            throw new ClassNotPersistenceCapableException("Can't instantiate class '"
+                    + cld.getClassNameOfObject() + "' with given constructor: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns <em>true</em> if the instances are created by a generated
+     * instantiator, <em>false</em> if reflection is used.
+     */
+    public boolean isGenerated()
+    {
+        return generated;
+    }
+
+    //====================================================
+    // inner class
+    //====================================================
+
+    /**
+     * Generates an {@link ObjectInstantiator} in the package of the persistent class.
+     */
+    private static final class Generator extends AbstractClassGenerator
+    {
+        private static final Source SOURCE = new Source(ObjectInstantiatorCGLibImpl.class.getName());
+        private static final Signature NEW_INSTANCE = new Signature("newInstance", Constants.TYPE_OBJECT, new Type[0]);
+
+        private final Class target;
+
+        Generator(Class target)
+        {
+            super(SOURCE);
+            this.target = target;
+            setNamePrefix(target.getName());
+        }
+
+        ObjectInstantiator create()
+        {
+            return (ObjectInstantiator) super.create(target.getName());
+        }
+
+        protected ClassLoader getDefaultClassLoader()
+        {
+            return target.getClassLoader();
+        }
+
+        public void generateClass(ClassVisitor v) throws Exception
+        {
+            Type type = Type.getType(target);
+            ClassEmitter ce = new ClassEmitter(v);
+            ce.begin_class(Constants.V1_2, Constants.ACC_PUBLIC, getClassName(), Constants.TYPE_OBJECT,
+                    new Type[]{Type.getType(ObjectInstantiator.class)}, Constants.SOURCE_FILE);
+            EmitUtils.null_constructor(ce);
+
+            CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, NEW_INSTANCE, null, null);
+            e.new_instance(type);
+            e.dup();
+            e.invoke_constructor(type);
+            e.return_value();
+            e.end_method();
+            ce.end_class();
+        }
+
+        protected Object firstInstance(Class type)
+        {
+            return ReflectUtils.newInstance(type);
+        }
+
+        protected Object nextInstance(Object instance)
+        {
+            return instance;
+        }
+    }
+}
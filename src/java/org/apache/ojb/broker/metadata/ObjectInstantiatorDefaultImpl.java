@@ -0,0 +1,47 @@
+package org.apache.ojb.broker.metadata;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Constructor;
+
+import org.apache.ojb.broker.util.ConstructorHelper;
+
+/**
+ * The default {@link ObjectInstantiator}, calls the zero argument
+ * constructor of the persistent class by reflection.
+ *
+ * @version $Id$
+ */
+public class ObjectInstantiatorDefaultImpl implements ObjectInstantiator
+{
+    private final ClassDescriptor cld;
+
+    public ObjectInstantiatorDefaultImpl(ClassDescriptor cld)
+    {
+        this.cld = cld;
+    }
+
+    public Object newInstance() throws InstantiationException
+    {
+        Constructor con = cld.getZeroArgumentConstructor();
+        if(con == null)
+        {
+            throw new ClassNotPersistenceCapableException(
+            "A zero argument constructor was not provided! Class was '" + cld.getClassNameOfObject() + "'");
+        }
+        return ConstructorHelper.instantiate(con);
+    }
+}
@@ -142,8 +142,12 @@ public interface RepositoryElements
 
     public static final int PROXY_PREFETCHING_LIMIT = 114;
 
+    public static final int BATCH_SIZE = 115;
+
+    public static final int QUERY_CACHE = 116;
+
     // maintain a next id to keep track where we are
-    static final int _NEXT = 115;
+    static final int _NEXT = 117;
 
     // String constants
     public static final String TAG_ACCESS = "access";
@@ -181,6 +181,10 @@ public class RepositoryTags implements RepositoryElements
 
         table.put("proxy-prefetching-limit", new Integer(PROXY_PREFETCHING_LIMIT));
 
+        table.put("batch-size", new Integer(BATCH_SIZE));
+
+        table.put("query-cache", new Integer(QUERY_CACHE));
+
         // add new tags here !
     }
 
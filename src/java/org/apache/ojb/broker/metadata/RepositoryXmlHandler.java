@@ -312,6 +312,12 @@ public class RepositoryXmlHandler
                         b = (Boolean.valueOf(refresh)).booleanValue();
                         m_CurrentCLD.setAlwaysRefresh(b);
 
+                        // set query-cache attribute
+                        String queryCache = atts.getValue(tags.getTagById(QUERY_CACHE));
+                        if (isDebug) logger.debug("     " + tags.getTagById(QUERY_CACHE) + ": " + queryCache);
+                        b = (Boolean.valueOf(queryCache)).booleanValue();
+                        m_CurrentCLD.setQueryCacheable(b);
+
                         // TODO: remove this or make offical feature
                         // persistent field
 						String pfClassName = atts.getValue("persistent-field-class");
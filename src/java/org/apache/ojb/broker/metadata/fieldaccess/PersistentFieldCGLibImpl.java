@@ -0,0 +1,326 @@
+package org.apache.ojb.broker.metadata.fieldaccess;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sf.cglib.core.AbstractClassGenerator;
+import net.sf.cglib.core.ClassEmitter;
+import net.sf.cglib.core.CodeEmitter;
+import net.sf.cglib.core.Constants;
+import net.sf.cglib.core.EmitUtils;
+import net.sf.cglib.core.ProcessSwitchCallback;
+import net.sf.cglib.core.ReflectUtils;
+import net.sf.cglib.core.Signature;
+import org.apache.commons.collections.map.ReferenceMap;
+import org.apache.ojb.broker.core.proxy.ProxyHelper;
+import org.apache.ojb.broker.metadata.MetadataException;
+import org.apache.ojb.broker.util.logging.LoggerFactory;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Type;
+
+/**
+ * This {@link org.apache.ojb.broker.metadata.fieldaccess.PersistentField} implementation
+ * accesses the fields directly like {@link PersistentFieldDirectImpl}, but without
+ * reflection. For each class declaring persistent fields an accessor class is generated
+ * with CGLIB, reading and writing the fields with <em>getfield</em> and <em>putfield</em>
+ * instructions. The accessor is defined in the package of the declaring class, thus
+ * public, protected and package private fields can be accessed. <em>private</em> and
+ * <em>final</em> fields are accessed by reflection.
+ *
+ * @version $Id$
+ */
+public class PersistentFieldCGLibImpl extends PersistentFieldDirectImpl
+{
+    private static final long serialVersionUID = -1474563180917311546L;
+
+    /**
+     * Maps the declaring class to the {@link ClassAccessor} of its fields. The generated
+     * accessor references the class loader of the declaring class, so the classes are
+     * referenced weakly and the accessors softly, otherwise an undeployed application
+     * couldn't be garbage collected.
+     */
+    private static final Map classAccessors = new ReferenceMap(ReferenceMap.WEAK, ReferenceMap.SOFT);
+
+    private transient FieldAccess lastAccess;
+
+    public PersistentFieldCGLibImpl()
+    {
+    }
+
+    public PersistentFieldCGLibImpl(Class type, String fieldname)
+    {
+        super(type, fieldname);
+    }
+
+    protected Object getValueFrom(Field field, Object target)
+    {
+        FieldAccess access = getFieldAccess(field);
+        if(access == null)
+        {
+            return super.getValueFrom(field, target);
+        }
+        try
+        {
+            return access.accessor.get(ProxyHelper.getRealObject(target), access.index);
+        }
+        catch(ClassCastException e)
+        {
+            throw new MetadataException(
+                    "IllegalArgument error reading field: " +
+                    buildErrorGetMsg(target, field), e);
+        }
+    }
+
+    protected void setValueFor(Field field, Object target, final Object value)
+    {
+        FieldAccess access = getFieldAccess(field);
+        if(access == null || target == null)
+        {
+            super.setValueFor(field, target, value);
+        }
+        else if((value != null) || !field.getType().isPrimitive())
+        {
+            try
+            {
+                access.accessor.set(ProxyHelper.getRealObject(target), access.index, value);
+            }
+            catch(ClassCastException e)
+            {
+                // let reflection convert the value or report the wrong type
+                super.setValueFor(field, target, value);
+            }
+        }
+    }
+
+    private FieldAccess getFieldAccess(Field field)
+    {
+        FieldAccess access = lastAccess;
+        if(access == null || access.field != field)
+        {
+            access = lookupFieldAccess(field);
+            lastAccess = access;
+        }
+        return access.accessor != null ? access : null;
+    }
+
+    private static FieldAccess lookupFieldAccess(Field field)
+    {
+        ClassAccessor classAccessor;
+        synchronized(classAccessors)
+        {
+            Class declaringClass = field.getDeclaringClass();
+            classAccessor = (ClassAccessor) classAccessors.get(declaringClass);
+            if(classAccessor == null)
+            {
+                classAccessor = new ClassAccessor(declaringClass);
+                classAccessors.put(declaringClass, classAccessor);
+            }
+        }
+        return classAccessor.getFieldAccess(field);
+    }
+
+    //====================================================
+    // inner classes
+    //====================================================
+
+    /**
+     * Base class of the generated accessors. The fields are identified
+     * by their index in the accessor.
+     */
+    public static abstract class Accessor
+    {
+        protected Accessor()
+        {
+        }
+
+        public abstract Object get(Object target, int index);
+
+        public abstract void set(Object target, int index, Object value);
+    }
+
+    /**
+     * The accessor and the index of a field.
+     */
+    private static final class FieldAccess
+    {
+        final Field field;
+        final Accessor accessor;
+        final int index;
+
+        FieldAccess(Field field, Accessor accessor, int index)
+        {
+            this.field = field;
+            this.accessor = accessor;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Generates the {@link Accessor} of the fields declared by a class.
+     */
+    private static final class ClassAccessor
+    {
+        private final Map indexes = new HashMap();
+        private Accessor accessor;
+
+        ClassAccessor(Class declaringClass)
+        {
+            List fields = new ArrayList();
+            Field[] declared = declaringClass.getDeclaredFields();
+            for(int i = 0; i < declared.length; i++)
+            {
+                int mod = declared[i].getModifiers();
+                if(!Modifier.isStatic(mod) && !Modifier.isPrivate(mod) && !Modifier.isFinal(mod))
+                {
+                    indexes.put(declared[i].getName(), new Integer(fields.size()));
+                    fields.add(declared[i]);
+                }
+            }
+            if(fields.size() > 0 && declaringClass.getClassLoader() != null)
+            {
+                try
+                {
+                    accessor = new Generator(declaringClass, (Field[]) fields.toArray(new Field[fields.size()])).create();
+                }
+                catch(Throwable e)
+                {
+                    LoggerFactory.getDefaultLogger().warn("Can't generate field accessor for "
+                            + declaringClass.getName() + ", use reflection instead", e);
+                }
+            }
+        }
+
+        FieldAccess getFieldAccess(Field field)
+        {
+            Integer index = (Integer) indexes.get(field.getName());
+            if(accessor == null || index == null)
+            {
+                return new FieldAccess(field, null, -1);
+            }
+            return new FieldAccess(field, accessor, index.intValue());
+        }
+    }
+
+    /**
+     * Generates an {@link Accessor} class in the package of the class declaring the fields.
+     */
+    private static final class Generator extends AbstractClassGenerator
+    {
+        private static final Source SOURCE = new Source(Accessor.class.getName());
+        private static final Signature GET = new Signature("get", Constants.TYPE_OBJECT,
+                new Type[]{Constants.TYPE_OBJECT, Type.INT_TYPE});
+        private static final Signature SET = new Signature("set", Type.VOID_TYPE,
+                new Type[]{Constants.TYPE_OBJECT, Type.INT_TYPE, Constants.TYPE_OBJECT});
+        private static final Type ILLEGAL_ARGUMENT_EXCEPTION = Type.getType(IllegalArgumentException.class);
+
+        private final Class declaringClass;
+        private final Field[] fields;
+
+        Generator(Class declaringClass, Field[] fields)
+        {
+            super(SOURCE);
+            this.declaringClass = declaringClass;
+            this.fields = fields;
+            setNamePrefix(declaringClass.getName());
+        }
+
+        Accessor create()
+        {
+            return (Accessor) super.create(declaringClass.getName());
+        }
+
+        protected ClassLoader getDefaultClassLoader()
+        {
+            return declaringClass.getClassLoader();
+        }
+
+        public void generateClass(ClassVisitor v) throws Exception
+        {
+            final Type owner = Type.getType(declaringClass);
+            int[] keys = new int[fields.length];
+            for(int i = 0; i < keys.length; i++)
+            {
+                keys[i] = i;
+            }
+
+            ClassEmitter ce = new ClassEmitter(v);
+            ce.begin_class(Constants.V1_2, Constants.ACC_PUBLIC, getClassName(),
+                    Type.getType(Accessor.class), null, Constants.SOURCE_FILE);
+            EmitUtils.null_constructor(ce);
+
+            final CodeEmitter get = ce.begin_method(Constants.ACC_PUBLIC, GET, null, null);
+            get.load_arg(1);
+            get.process_switch(keys, new ProcessSwitchCallback()
+            {
+                public void processCase(int key, Label end)
+                {
+                    Type type = Type.getType(fields[key].getType());
+                    get.load_arg(0);
+                    get.checkcast(owner);
+                    get.getfield(owner, fields[key].getName(), type);
+                    get.box(type);
+                    get.return_value();
+                }
+
+                public void processDefault()
+                {
+                    get.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "Unknown field index");
+                }
+            });
+            get.end_method();
+
+            final CodeEmitter set = ce.begin_method(Constants.ACC_PUBLIC, SET, null, null);
+            set.load_arg(1);
+            set.process_switch(keys, new ProcessSwitchCallback()
+            {
+                public void processCase(int key, Label end)
+                {
+                    Type type = Type.getType(fields[key].getType());
+                    set.load_arg(0);
+                    set.checkcast(owner);
+                    set.load_arg(2);
+                    set.unbox(type);
+                    set.putfield(owner, fields[key].getName(), type);
+                    set.return_value();
+                }
+
+                public void processDefault()
+                {
+                    set.throw_exception(ILLEGAL_ARGUMENT_EXCEPTION, "Unknown field index");
+                }
+            });
+            set.end_method();
+            ce.end_class();
+        }
+
+        protected Object firstInstance(Class type)
+        {
+            return ReflectUtils.newInstance(type);
+        }
+
+        protected Object nextInstance(Object instance)
+        {
+            return instance;
+        }
+    }
+}
@@ -195,30 +195,32 @@ public interface Platform
     String getLastInsertIdentityQuery(String tableName);
 
     /**
-     * Answer true if LIMIT or equivalent is supported
-     * <b> SQL-Paging is not yet supported </b>
+     * Answer true if LIMIT or equivalent is supported. If supported, the start and
+     * end index of queries (see {@link org.apache.ojb.broker.query.Query#setStartAtIndex(int)})
+     * are passed to the database, else the rows before the start index are skipped by
+     * iterating the result set.
      */
     boolean supportsPaging();
 
     /**
-     * Add the LIMIT or equivalent to the SQL 
-     * <b> SQL-Paging is not yet supported </b>
+     * Add the LIMIT or equivalent to the SQL. The resulting statement must return
+     * only the rows from the start index to the end index (both inclusive).
      */
     void addPagingSql(StringBuffer anSqlString);
 
     /**
      * Answer true if the LIMIT parameters are bound before the query parameters
-     * <b> SQL-Paging is not yet supported </b>
      */
     boolean bindPagingParametersFirst();
 
     /**
      * Bind the Paging Parameters
-     * <b> SQL-Paging is not yet supported </b>
      * @param ps
      * @param index parameter index
-     * @param startAt
-     * @param endAt
+     * @param startAt the first row to return, first row is 1
+     * @param endAt the last row to return (inclusive), <code>Integer.MAX_VALUE</code>
+     * if no end index was set
+     * @return the next parameter index
      */
     int bindPagingParameters(PreparedStatement ps, int index, int startAt, int endAt) throws SQLException;
 
@@ -265,4 +267,16 @@ public interface Platform
     void registerOutResultSet(CallableStatement stmt, int position)
             throws SQLException;
 
+    /**
+     * Called after the statement of a streaming query was created, see
+     * {@link org.apache.ojb.broker.query.Query#isStreaming()}. Implementations
+     * have to prepare the statement in a way that the JDBC driver doesn't buffer
+     * the whole result set on client side, e.g. by setting an adequate fetch size.
+     *
+     * @param stmt the (forward-only) statement of the streaming query
+     * @param fetchSizeHint the fetch size set for the query or the connection pool,
+     * <em>0</em> if not set
+     */
+    void prepareStreamingStatement(Statement stmt, int fetchSizeHint) throws PlatformException;
+
 }
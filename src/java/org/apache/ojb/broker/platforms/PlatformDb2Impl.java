@@ -258,4 +258,44 @@ public class PlatformDb2Impl extends PlatformDefaultImpl
         // transaction demarcation is mandatory
         return "values IDENTITY_VAL_LOCAL()";
     }
+
+    /**
+     * The query is wrapped and limited by the ROW_NUMBER() OLAP function.
+     * The row number is appended as last column, so the column indices of the
+     * original query are kept. DB2 doesn't number the rows in the order of the
+     * wrapped query, so an ordered query is numbered by <code>ORDER OF</code> the
+     * wrapped query, otherwise pages could overlap or skip rows. Selected columns
+     * of the same name get unique aliases, the columns of the wrapped query must
+     * be unique.
+     *
+     * @see org.apache.ojb.broker.platforms.Platform#addPagingSql(java.lang.StringBuffer)
+     */
+    public void addPagingSql(StringBuffer anSqlString)
+    {
+        addUniqueColumnAliases(anSqlString);
+        String over = hasOrderBy(anSqlString) ? "ORDER BY ORDER OF OJB_PAGED" : "";
+        anSqlString.insert(0, "SELECT * FROM (SELECT OJB_PAGED.*, ROW_NUMBER() OVER(" + over
+                + ") AS OJB_ROWNUM FROM (");
+        anSqlString.append(") AS OJB_PAGED) AS OJB_PAGE WHERE OJB_ROWNUM BETWEEN ? AND ? ORDER BY OJB_ROWNUM");
+    }
+
+    /**
+     * @see org.apache.ojb.broker.platforms.Platform#bindPagingParameters(java.sql.PreparedStatement, int, int, int)
+     */
+    public int bindPagingParameters(PreparedStatement ps, int index, int startAt, int endAt) throws SQLException
+    {
+        ps.setInt(index, startAt);                  // first row
+        index++;
+        ps.setInt(index, endAt);                    // last row
+        index++;
+        return index;
+    }
+
+    /**
+     * @see org.apache.ojb.broker.platforms.Platform#supportsPaging()
+     */
+    public boolean supportsPaging()
+    {
+        return true;
+    }
 }
@@ -24,7 +24,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.HashSet;
 import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.ojb.broker.PersistenceBrokerException;
 import org.apache.ojb.broker.accesslayer.JoinSyntaxTypes;
@@ -44,9 +48,19 @@ import org.apache.ojb.broker.util.logging.LoggerFactory;
  */
 public class PlatformDefaultImpl implements Platform, JoinSyntaxTypes
 {
+    /**
+     * The fetch size used for streaming queries if neither the query nor the
+     * connection pool specify a fetch size.
+     */
+    public static final int DEFAULT_STREAMING_FETCH_SIZE = 100;
+
     protected Logger log = LoggerFactory.getLogger(PlatformDefaultImpl.class);
     private static final String INITIALIZATION_CHECK_AUTOCOMMIT = "initializationCheck";
     private static final String FALSE_STR = "false";
+    /** Matches a select list column having an alias. */
+    private static final Pattern COLUMN_ALIAS = Pattern.compile("(?s).*\\sAS\\s+([\\w$#]+|\"[^\"]+\")\\s*");
+    /** Matches a select list column being a (qualified) column name. */
+    private static final Pattern COLUMN_NAME = Pattern.compile("[\\w$#\".]+");
 
     protected boolean m_batchUpdatesChecked = false;
     protected boolean m_supportsBatchUpdates = false;
@@ -353,6 +367,143 @@ public class PlatformDefaultImpl implements Platform, JoinSyntaxTypes
         // do nothing
     }
 
+    /**
+     * Answer true if the statement has an ORDER BY clause outside of sub queries.
+     */
+    protected boolean hasOrderBy(StringBuffer anSqlString)
+    {
+        String sql = anSqlString.toString();
+        int index = sql.toUpperCase().lastIndexOf(" ORDER BY ");
+        if (index < 0)
+        {
+            return false;
+        }
+        int depth = 0;
+        for (int i = index; i < sql.length(); i++)
+        {
+            char c = sql.charAt(i);
+            if (c == '(')
+            {
+                depth++;
+            }
+            else if (c == ')')
+            {
+                depth--;
+            }
+        }
+        return depth == 0;
+    }
+
+    /**
+     * Gives the columns of the select list of the statement unique names, so the
+     * statement can be wrapped by a paging select. A column having the name of a
+     * preceding column, e.g. the second column of <code>A0.ID,A1.ID</code> selected
+     * from joined tables, gets the alias <code>OJB_COL<i>n</i></code>, where <i>n</i>
+     * is the position of the column, the alias of an aliased column is replaced.
+     * The first column keeps its name, so the columns read by name are the same as
+     * for the unwrapped statement.
+     */
+    protected void addUniqueColumnAliases(StringBuffer anSqlString)
+    {
+        String sql = anSqlString.toString();
+        String upper = sql.toUpperCase();
+        int start = upper.indexOf("SELECT ");
+        if (start < 0)
+        {
+            return;
+        }
+        start += "SELECT ".length();
+        if (upper.startsWith("DISTINCT ", start))
+        {
+            start += "DISTINCT ".length();
+        }
+
+        StringBuffer result = null;
+        Set names = new HashSet();
+        int columnStart = start;
+        int position = 1;
+        int copied = 0;
+        int depth = 0;
+        char quote = 0;
+        for (int i = start; i < sql.length(); i++)
+        {
+            char c = sql.charAt(i);
+            if (quote != 0)
+            {
+                if (c == quote)
+                {
+                    quote = 0;
+                }
+            }
+            else if (c == '\'' || c == '"')
+            {
+                quote = c;
+            }
+            else if (c == '(')
+            {
+                depth++;
+            }
+            else if (c == ')')
+            {
+                depth--;
+            }
+            else if (depth == 0 && (c == ',' || upper.startsWith(" FROM ", i)))
+            {
+                String column = upper.substring(columnStart, i);
+                Matcher alias = COLUMN_ALIAS.matcher(column);
+                boolean hasAlias = alias.matches();
+                String name = hasAlias ? alias.group(1) : getColumnName(column.trim());
+                if (name != null && !names.add(name))
+                {
+                    if (result == null)
+                    {
+                        result = new StringBuffer(sql.length() + 32);
+                    }
+                    if (hasAlias)
+                    {
+                        result.append(sql.substring(copied, columnStart + alias.start(1)));
+                        copied = columnStart + alias.end(1);
+                    }
+                    else
+                    {
+                        result.append(sql.substring(copied, i)).append(" AS ");
+                        copied = i;
+                    }
+                    result.append("OJB_COL").append(position);
+                }
+                if (c != ',')
+                {
+                    break;
+                }
+                columnStart = i + 1;
+                position++;
+            }
+        }
+        if (result != null)
+        {
+            result.append(sql.substring(copied));
+            anSqlString.setLength(0);
+            anSqlString.append(result);
+        }
+    }
+
+    /**
+     * Answer the name of the given select list column without alias, the column name
+     * without table alias, or <em>null</em> for the columns of a table (<code>*</code>).
+     */
+    private String getColumnName(String column)
+    {
+        if (column.endsWith("*"))
+        {
+            return null;
+        }
+        if (COLUMN_NAME.matcher(column).matches())
+        {
+            return column.substring(column.lastIndexOf('.') + 1);
+        }
+        return column;
+    }
+
     /**
      * @see org.apache.ojb.broker.platforms.Platform#bindPagingParametersFirst()
      */
@@ -448,4 +599,23 @@ public class PlatformDefaultImpl implements Platform, JoinSyntaxTypes
     {
         stmt.registerOutParameter(position, Types.OTHER);
     }
+
+    /**
+     * Sets the given fetch size hint or {@link #DEFAULT_STREAMING_FETCH_SIZE}, because
+     * several drivers read the whole result set when no fetch size is set.
+     *
+     * @see org.apache.ojb.broker.platforms.Platform#prepareStreamingStatement(java.sql.Statement, int)
+     */
+    public void prepareStreamingStatement(Statement stmt, int fetchSizeHint) throws PlatformException
+    {
+        try
+        {
+            stmt.setFetchDirection(ResultSet.FETCH_FORWARD);
+            stmt.setFetchSize(fetchSizeHint > 0 ? fetchSizeHint : DEFAULT_STREAMING_FETCH_SIZE);
+        }
+        catch(SQLException e)
+        {
+            throw new PlatformException("Can't prepare statement for streaming", e);
+        }
+    }
 }
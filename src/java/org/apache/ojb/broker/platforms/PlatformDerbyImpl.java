@@ -76,4 +76,23 @@ public class PlatformDerbyImpl extends PlatformDefaultImpl
         // transaction demarcation is mandatory
         return "values IDENTITY_VAL_LOCAL()";
     }
+
+    /**
+     * Uses the SQL:2008 OFFSET/FETCH clause. Derby supports the clause since 10.5,
+     * the parameters bound for the offset and the number of rows since 10.6.
+     *
+     * @see org.apache.ojb.broker.platforms.Platform#addPagingSql(java.lang.StringBuffer)
+     */
+    public void addPagingSql(StringBuffer anSqlString)
+    {
+        anSqlString.append(" OFFSET ? ROWS FETCH NEXT ? ROWS ONLY");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean supportsPaging()
+    {
+        return true;
+    }
 }
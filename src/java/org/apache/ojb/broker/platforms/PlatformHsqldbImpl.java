@@ -15,6 +15,8 @@ package org.apache.ojb.broker.platforms;
  * limitations under the License.
  */
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 
 /**
  * This class extends <code>PlatformDefaultImpl</code> and defines specific
@@ -45,15 +47,20 @@ public class PlatformHsqldbImpl extends PlatformDefaultImpl
      */
     public void addPagingSql(StringBuffer anSqlString)
     {
-        anSqlString.insert(6, " LIMIT ? ? ");
+        // the trailing LIMIT clause limits UNION queries too
+        anSqlString.append(" LIMIT ? OFFSET ?");
     }
 
     /* (non-Javadoc)
-     * @see org.apache.ojb.broker.platforms.Platform#bindPagingParametersFirst()
+     * @see org.apache.ojb.broker.platforms.Platform#bindPagingParameters(java.sql.PreparedStatement, int, int, int)
      */
-    public boolean bindPagingParametersFirst()
+    public int bindPagingParameters(PreparedStatement ps, int index, int startAt, int endAt) throws SQLException
     {
-        return true;
+        ps.setInt(index, endAt - (startAt - 1));    // number of rows to fetch
+        index++;
+        ps.setInt(index, startAt - 1);              // zero based start
+        index++;
+        return index;
     }
 
     /* (non-Javadoc)
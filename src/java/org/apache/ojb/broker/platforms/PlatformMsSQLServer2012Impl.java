@@ -0,0 +1,50 @@
+package org.apache.ojb.broker.platforms;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * This class extends <code>PlatformMsSQLServerImpl</code> and defines specific behavior
+ * for Microsoft SQL Server 2012 and later: queries are paged by the database using the
+ * OFFSET/FETCH clause. Older versions don't know the clause and use the
+ * {@link PlatformMsSQLServerImpl} platform, which skips the rows of the result set.
+ *
+ * @version $Id$
+ */
+public class PlatformMsSQLServer2012Impl extends PlatformMsSQLServerImpl
+{
+    /**
+     * Uses the OFFSET/FETCH clause. The clause requires an ORDER BY,
+     * if the query isn't ordered it's ordered by the first column.
+     *
+     * @see org.apache.ojb.broker.platforms.Platform#addPagingSql(java.lang.StringBuffer)
+     */
+    public void addPagingSql(StringBuffer anSqlString)
+    {
+        if (!hasOrderBy(anSqlString))
+        {
+            anSqlString.append(" ORDER BY 1");
+        }
+        anSqlString.append(" OFFSET ? ROWS FETCH NEXT ? ROWS ONLY");
+    }
+
+    /**
+     * @see org.apache.ojb.broker.platforms.Platform#supportsPaging()
+     */
+    public boolean supportsPaging()
+    {
+        return true;
+    }
+}
@@ -24,6 +24,7 @@ import java.sql.SQLException;
 import java.sql.Types;
 import java.sql.CallableStatement;
 import java.sql.Connection;
+import java.sql.Statement;
 
 import org.apache.ojb.broker.query.LikeCriteria;
 
@@ -168,6 +169,26 @@ public class PlatformMySQLImpl extends PlatformDefaultImpl
         return true;
     }
 
+    /**
+     * MySQL Connector/J only streams the result set row by row when the fetch size
+     * is set to <code>Integer.MIN_VALUE</code> (unless server side cursors are enabled
+     * by the connection property <em>useCursorFetch</em>), every other fetch size reads
+     * the whole result set into memory.
+     *
+     * @see org.apache.ojb.broker.platforms.Platform#prepareStreamingStatement(java.sql.Statement, int)
+     */
+    public void prepareStreamingStatement(Statement stmt, int fetchSizeHint) throws PlatformException
+    {
+        try
+        {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+        }
+        catch(SQLException e)
+        {
+            throw new PlatformException("Can't prepare statement for streaming", e);
+        }
+    }
+
     /**
      * @see org.apache.ojb.broker.platforms.Platform#concatenate(java.lang.String[])
      */
@@ -394,6 +394,41 @@ public class PlatformOracleImpl extends PlatformDefaultImpl
         return "drop sequence " + sequenceName;
     }
 
+    /**
+     * Oracle has no LIMIT clause, the query is wrapped and limited by ROWNUM.
+     * The ROWNUM pseudo column is appended as last column, so the column
+     * indices of the original query are kept. Selected columns of the same name
+     * get unique aliases, otherwise the wrapping select is ambiguous (ORA-00918).
+     *
+     * @see org.apache.ojb.broker.platforms.Platform#addPagingSql(java.lang.StringBuffer)
+     */
+    public void addPagingSql(StringBuffer anSqlString)
+    {
+        addUniqueColumnAliases(anSqlString);
+        anSqlString.insert(0, "SELECT * FROM (SELECT OJB_PAGED.*, ROWNUM OJB_ROWNUM FROM (");
+        anSqlString.append(") OJB_PAGED WHERE ROWNUM <= ?) WHERE OJB_ROWNUM > ?");
+    }
+
+    /**
+     * @see org.apache.ojb.broker.platforms.Platform#bindPagingParameters(java.sql.PreparedStatement, int, int, int)
+     */
+    public int bindPagingParameters(PreparedStatement ps, int index, int startAt, int endAt) throws SQLException
+    {
+        ps.setInt(index, endAt);                    // last row
+        index++;
+        ps.setInt(index, startAt - 1);              // zero based start
+        index++;
+        return index;
+    }
+
+    /**
+     * @see org.apache.ojb.broker.platforms.Platform#supportsPaging()
+     */
+    public boolean supportsPaging()
+    {
+        return true;
+    }
+
     /**
      * @see org.apache.ojb.broker.platforms.Platform#registerOutResultSet(java.sql.CallableStatement, int)
      */
@@ -236,30 +236,14 @@ public class PlatformSapdbImpl extends PlatformDefaultImpl
         return "drop sequence " + sequenceName;
     }
 
-    /* (non-Javadoc)
-    * @see org.apache.ojb.broker.platforms.Platform#addPagingSql(java.lang.StringBuffer)
-    */
-    public void addPagingSql(StringBuffer anSqlString)
-    {
-        anSqlString.append(" ROWNO <= ? ");
-    }
-
-    /* (non-Javadoc)
-     * @see org.apache.ojb.broker.platforms.Platform#bindPagingParameters(java.sql.PreparedStatement, int, int, int)
+    /**
+     * ROWNO can only limit the number of rows but not skip the rows before the
+     * start index, so paging is done by iterating the result set.
+     *
+     * @see org.apache.ojb.broker.platforms.Platform#supportsPaging()
      */
-    public int bindPagingParameters(PreparedStatement ps, int index, int startAt, int endAt) throws SQLException
-    {
-
-        ps.setInt(index, endAt - 1);    // IGNORE startAt !!
-        index++;
-        return index;
-    }
-
-    /* (non-Javadoc)
-    * @see org.apache.ojb.broker.platforms.Platform#supportsPaging()
-    */
     public boolean supportsPaging()
     {
-        return true;
+        return false;
     }
 }
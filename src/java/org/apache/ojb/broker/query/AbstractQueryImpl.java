@@ -32,6 +32,8 @@ public abstract class AbstractQueryImpl implements Query, Serializable
     private int m_endAtIndex = Query.NO_END_AT_INDEX;
     private int m_fullSize = 0;
     private int fetchSize;
+    private boolean streaming;
+    private boolean cacheable;
     protected Class m_searchClass;
     protected Class m_baseClass;
     private boolean m_withExtents = true;
@@ -176,4 +178,24 @@ public abstract class AbstractQueryImpl implements Query, Serializable
         return fetchSize;
     }
 
+    public void setStreaming(boolean streaming)
+    {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming()
+    {
+        return streaming;
+    }
+
+    public void setCacheable(boolean cacheable)
+    {
+        this.cacheable = cacheable;
+    }
+
+    public boolean isCacheable()
+    {
+        return cacheable;
+    }
+
 }
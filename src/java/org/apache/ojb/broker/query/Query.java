@@ -164,4 +164,44 @@ public interface Query extends java.io.Serializable
      */
     int getFetchSize();
 
+    /**
+     * Set the streaming mode of this Query. A streaming query is executed with a
+     * forward-only result set and the platform specific settings to let the JDBC driver
+     * fetch the rows on demand instead of reading the whole result set into memory
+     * (see {@link org.apache.ojb.broker.platforms.Platform#prepareStreamingStatement}).
+     * Materialized objects are not pushed to the object cache, so iterating a large
+     * result set doesn't flood the cache.
+     * <br/>
+     * Streaming queries should be used with
+     * {@link org.apache.ojb.broker.PersistenceBroker#getIteratorByQuery} or
+     * {@link org.apache.ojb.broker.PersistenceBroker#getReportQueryIteratorByQuery},
+     * prefetched relationships are ignored and paging skips the rows by iteration.
+     * Some drivers (e.g. PostgreSQL) only stream the result set within a transaction
+     * (auto-commit disabled).
+     * @param streaming <em>true</em> to enable streaming mode
+     */
+    void setStreaming(boolean streaming);
+
+    /**
+     * Returns <em>true</em> if this Query is executed in streaming mode.
+     * @see #setStreaming(boolean)
+     */
+    boolean isStreaming();
+
+    /**
+     * Enables the caching of the result of this Query in the query result cache,
+     * see {@link org.apache.ojb.broker.core.QueryResultCache}. The cache is also used
+     * for all queries of a class if the <em>query-cache</em> attribute of the class-descriptor
+     * is set. The cached result is invalidated when one of the tables involved in the
+     * query is modified by a broker.
+     * @param cacheable <em>true</em> to cache the result
+     */
+    void setCacheable(boolean cacheable);
+
+    /**
+     * Returns <em>true</em> if the result of this Query is cached.
+     * @see #setCacheable(boolean)
+     */
+    boolean isCacheable();
+
 }
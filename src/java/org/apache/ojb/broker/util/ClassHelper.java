@@ -395,14 +395,8 @@ public class ClassHelper
         {
             try
             {
-                // 1. create an empty Object (persistent classes need a public default constructor)
-                Constructor con = cld.getZeroArgumentConstructor();
-                if(con == null)
-                {
-                    throw new ClassNotPersistenceCapableException(
-                    "A zero argument constructor was not provided! Class was '" + cld.getClassNameOfObject() + "'");
-                }
-                result = ConstructorHelper.instantiate(con);
+                // 1. create an empty Object (persistent classes need a default constructor)
+                result = cld.getObjectInstantiator().newInstance();
             }
             catch (InstantiationException e)
             {
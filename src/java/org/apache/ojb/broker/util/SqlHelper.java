@@ -19,6 +19,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
+import org.apache.ojb.broker.platforms.Platform;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryByCriteria;
 
 /**
  * Helper class for all SQL related stuff.
@@ -144,4 +149,41 @@ public class SqlHelper
         }
     }
 
+    /**
+     * Answer true if the paging of the query (start and end index) is done by the
+     * database using the paging SQL of the platform. Otherwise the rows before the start
+     * index are skipped by iterating the result set. The database can't page sql-queries
+     * and extent aware queries, the latter are executed with one statement per extent table.
+     *
+     * @param platform the Platform
+     * @param query the Query
+     * @param repository the DescriptorRepository used to lookup the search class
+     */
+    public static boolean isNativePaging(Platform platform, Query query, DescriptorRepository repository)
+    {
+        if (query == null || !query.usePaging() || !platform.supportsPaging()
+                || !(query instanceof QueryByCriteria))
+        {
+            return false;
+        }
+        ClassDescriptor cld = repository.getDescriptorFor(query.getSearchClass());
+        return !(cld.isExtent() && query.getWithExtents());
+    }
+
+    /**
+     * Returns the first row of the page, first row is 1.
+     */
+    public static int getPagingStartIndex(Query query)
+    {
+        return Math.max(query.getStartAtIndex(), 1);
+    }
+
+    /**
+     * Returns the last row of the page (inclusive) or <code>Integer.MAX_VALUE</code>
+     * if no end index is set.
+     */
+    public static int getPagingEndIndex(Query query)
+    {
+        return query.getEndAtIndex() > Query.NO_END_AT_INDEX ? query.getEndAtIndex() : Integer.MAX_VALUE;
+    }
 }
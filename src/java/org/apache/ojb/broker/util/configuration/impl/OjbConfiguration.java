@@ -19,6 +19,8 @@ import org.apache.ojb.broker.ManageableCollection;
 import org.apache.ojb.broker.PersistenceBroker;
 import org.apache.ojb.broker.cache.ObjectCache;
 import org.apache.ojb.broker.cache.ObjectCacheDefaultImpl;
+import org.apache.ojb.broker.core.ExtentClassIndex;
+import org.apache.ojb.broker.core.ExtentClassIndexDefaultImpl;
 import org.apache.ojb.broker.core.PBPoolConfiguration;
 import org.apache.ojb.broker.core.PersistenceBrokerConfiguration;
 import org.apache.ojb.broker.core.PersistenceBrokerImpl;
@@ -74,6 +76,17 @@ public class OjbConfiguration extends    ConfigurationAbstractImpl
     // limit for number of values in SQL IN Statement
     private int sqlInLimit;
 
+    // max number of cached select statements of criteria queries
+    private int sqlStatementCacheSize;
+
+    // number of threads executing the queries of extent classes concurrently
+    private int extentQueryThreads;
+
+    // index of the concrete classes of identities of extent classes
+    private Class extentClassIndexClass;
+    private int extentClassIndexSize;
+    private int queryResultCacheSize;
+
     // PB pooling configuration
     private int maxActive;
     private int maxIdle;
@@ -279,6 +292,20 @@ public class OjbConfiguration extends    ConfigurationAbstractImpl
         // set the limit for IN-sql , -1 for no limits
         sqlInLimit = getInteger("SqlInLimit", -1);
 
+        // set the size of the select statement cache, 0 disables the cache
+        sqlStatementCacheSize = getInteger("SqlStatementCacheSize", 500);
+
+        // set the number of threads for extent queries, 0 disables the concurrent execution
+        extentQueryThreads = getInteger("ExtentQueryThreads", 0);
+
+        // load ExtentClassIndex Class and the size of the index, 0 disables the index
+        extentClassIndexClass =
+                getClass("ExtentClassIndexClass", ExtentClassIndexDefaultImpl.class, ExtentClassIndex.class);
+        extentClassIndexSize = getInteger("ExtentClassIndexSize", 0);
+
+        // set the size of the query result cache, 0 disables the cache
+        queryResultCacheSize = getInteger("QueryResultCacheSize", 1000);
+
         //load configuration for PB pool
         maxActive = getInteger(PoolConfiguration.MAX_ACTIVE,
                 PoolConfiguration.DEFAULT_MAX_ACTIVE);
@@ -305,6 +332,53 @@ public class OjbConfiguration extends    ConfigurationAbstractImpl
         return sqlInLimit;
     }
 
+    /**
+     * Returns the maximal number of cached select statements.
+     * @return int
+     */
+    public int getSqlStatementCacheSize()
+    {
+        return sqlStatementCacheSize;
+    }
+
+    /**
+     * Returns the number of threads executing the queries of extent classes concurrently.
+     * @return int
+     */
+    public int getExtentQueryThreads()
+    {
+        return extentQueryThreads;
+    }
+
+    /**
+     * Returns the class of the index of the concrete classes of identities of extent classes.
+     * @return Class
+     */
+    public Class getExtentClassIndexClass()
+    {
+        return extentClassIndexClass;
+    }
+
+    /**
+     * Returns the maximal number of entries of the index of the concrete classes
+     * of identities of extent classes, 0 if the index is disabled.
+     * @return int
+     */
+    public int getExtentClassIndexSize()
+    {
+        return extentClassIndexSize;
+    }
+
+    /**
+     * Returns the maximal number of cached query results, 0 if the
+     * query result cache is disabled.
+     * @return int
+     */
+    public int getQueryResultCacheSize()
+    {
+        return queryResultCacheSize;
+    }
+
     /**
      * Sets the persistentFieldClass.
      * @param persistentFieldClass The persistentFieldClass to set
@@ -0,0 +1,144 @@
+package org.apache.ojb.broker.util.pooling;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of wait times, e.g. the time needed to borrow
+ * an object from a pool. The recorded times are counted in buckets of
+ * exponentially increasing width, the bucket <em>i</em> holds the times
+ * from <em>2^(i-1)</em> to <em>2^i - 1</em> microseconds. Thus percentiles
+ * are reported with the upper bound of the matching bucket.
+ *
+ * @version $Id$
+ */
+public class WaitTimeHistogram
+{
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records a wait time.
+     *
+     * @param nanos the wait time in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max = maxMicros.get();
+        while(micros > max && !maxMicros.compareAndSet(max, micros))
+        {
+            max = maxMicros.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded wait times.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean wait time in microseconds.
+     */
+    public long getMeanMicros()
+    {
+        long n = count.get();
+        return n > 0 ? totalMicros.get() / n : 0;
+    }
+
+    /**
+     * Returns the maximum wait time in microseconds.
+     */
+    public long getMaxMicros()
+    {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns the wait time in microseconds not exceeded by the given
+     * percentage of all recorded times.
+     *
+     * @param percentile the percentile, e.g. 99.9
+     * @return the upper bound of the bucket containing the percentile,
+     * 0 if no times are recorded
+     */
+    public long getPercentileMicros(double percentile)
+    {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            snapshot[i] = buckets.get(i);
+            n += snapshot[i];
+        }
+        if(n == 0)
+        {
+            return 0;
+        }
+        long rank = (long) Math.ceil(n * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            seen += snapshot[i];
+            if(seen >= rank && snapshot[i] > 0)
+            {
+                // the maximum is a better bound for the last bucket
+                return Math.min((1L << i) - 1, maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    /**
+     * Resets all recorded times.
+     */
+    public void reset()
+    {
+        for(int i = 0; i < BUCKETS; i++)
+        {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    public String toString()
+    {
+        return "count=" + getCount() + ", mean=" + getMeanMicros() + "us, p50=" + getPercentileMicros(50)
+                + "us, p99=" + getPercentileMicros(99) + "us, p99.9=" + getPercentileMicros(99.9)
+                + "us, max=" + getMaxMicros() + "us";
+    }
+
+    private static int bucketOf(long micros)
+    {
+        // number of significant bits, 0 for 0 micros
+        int bits = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bits, BUCKETS - 1);
+    }
+}
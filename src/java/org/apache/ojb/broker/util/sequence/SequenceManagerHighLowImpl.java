@@ -15,12 +15,18 @@ package org.apache.ojb.broker.util.sequence;
  * limitations under the License.
  */
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.SystemUtils;
 import org.apache.ojb.broker.Identity;
 import org.apache.ojb.broker.OptimisticLockException;
+import org.apache.ojb.broker.PBKey;
 import org.apache.ojb.broker.PersistenceBroker;
 import org.apache.ojb.broker.PersistenceBrokerFactory;
 import org.apache.ojb.broker.metadata.FieldDescriptor;
@@ -59,6 +65,14 @@ import org.apache.ojb.broker.util.logging.LoggerFactory;
  *    </td>
  * </tr>
  * <tr>
+ *     <td>prefetch</td>
+ *     <td>
+ *         If set 'true' the next block of IDs is fetched in a background thread
+ *         when half of the current block is used, thus the database access
+ *         doesn't block the thread requesting the ID. Default was 'true'.
+ *    </td>
+ * </tr>
+ * <tr>
  *     <td>autoNaming</td>
  *     <td>
  *          Default was 'true'. If set 'true' OJB try to build a
@@ -123,13 +137,18 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
     public static final String PROPERTY_GRAB_SIZE = "grabSize";
     public static final String PROPERTY_GLOBAL_SEQUENCE_ID = "globalSequenceId";
     public static final String PROPERTY_GLOBAL_SEQUENCE_START = "globalSequenceStart";
+    public static final String PROPERTY_PREFETCH = "prefetch";
 
-    protected static Map sequencesDBMap = new HashMap();
+    /**
+     * Maps the jcd-alias to a concurrent map of {@link SequenceHolder} per sequence name.
+     */
+    protected static Map sequencesDBMap = new ConcurrentHashMap();
+    private static Executor prefetchExecutor;
 
     protected boolean useGlobalSequenceIdentities;
     protected int grabSize;
     protected long sequenceStart;
-    protected int attempts;
+    protected boolean prefetch;
 
     public SequenceManagerHighLowImpl(PersistenceBroker broker)
     {
@@ -137,6 +156,7 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
         Long start = SequenceManagerHelper.getSeqStart(getConfigurationProperties());
         sequenceStart = start != null ? start.longValue() : 1;
         grabSize = Integer.parseInt(getConfigurationProperty(PROPERTY_GRAB_SIZE, "20"));
+        prefetch = Boolean.valueOf(getConfigurationProperty(PROPERTY_PREFETCH, "true")).booleanValue();
         useGlobalSequenceIdentities = Boolean.getBoolean(getConfigurationProperty(PROPERTY_GLOBAL_SEQUENCE_ID, "false"));
         // support for deprecated properties
         long globalSequenceStart = Long.parseLong(getConfigurationProperty(PROPERTY_GLOBAL_SEQUENCE_START, "1"));
@@ -148,81 +168,178 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
 
     protected long getUniqueLong(FieldDescriptor field) throws SequenceManagerException
     {
-        HighLowSequence seq;
         String sequenceName = buildSequenceName(field);
-        synchronized (SequenceManagerHighLowImpl.class)
+        SequenceHolder holder = getSequenceHolder(sequenceName);
+        while(true)
         {
-            // try to find sequence
-            seq = getSequence(sequenceName);
-
-            if (seq == null)
+            KeyBlock block = holder.current;
+            if(block != null)
             {
-                // not found, get sequence from database or create new
-                seq = getSequence(getBrokerForClass(), field, sequenceName);
-                addSequence(sequenceName, seq);
+                // fast path, no locking
+                long id = block.nextId();
+                if(id != 0)
+                {
+                    if(id == block.prefetchKey)
+                    {
+                        prefetch(holder, field, sequenceName);
+                    }
+                    return id;
+                }
             }
-
-            // now we have a sequence
-            long id = seq.getNextId();
-            // seq does not have reserved IDs => catch new block of keys
-            if (id == 0)
+            synchronized(holder)
             {
-                seq = getSequence(getBrokerForClass(), field, sequenceName);
-                // replace old sequence!!
-                addSequence(sequenceName, seq);
-                id = seq.getNextId();
-                if (id == 0)
+                // wait for a running prefetch, it releases the lock of the holder
+                awaitPrefetch(holder, sequenceName);
+                // only replace the exhausted block if no other thread did it before
+                if(holder.current == block)
                 {
-                    // something going wrong
-                    removeSequence(sequenceName);
-                    throw new SequenceManagerException("Sequence generation failed: " +
-                            SystemUtils.LINE_SEPARATOR + "Sequence: " + seq +
-                            ". Unable to build new ID, id was always 0." +
-                            SystemUtils.LINE_SEPARATOR + "Thread: " + Thread.currentThread() +
-                            SystemUtils.LINE_SEPARATOR + "PB: " + getBrokerForClass());
+                    holder.current = new KeyBlock(nextSequence(holder, field, sequenceName), prefetch);
                 }
             }
-            return id;
         }
     }
 
     /**
-     * Returns last used sequence object or <code>null</code> if no sequence
-     * was add for given sequence name.
-     *
-     * @param sequenceName Name of the sequence.
-     * @return Sequence object or <code>null</code>
+     * Waits until a prefetch in progress is done. Have to be called while
+     * holding the lock of the holder.
      */
-    private HighLowSequence getSequence(String sequenceName)
+    private void awaitPrefetch(SequenceHolder holder, String sequenceName) throws SequenceManagerException
     {
-        HighLowSequence result = null;
-        // now lookup the sequence map for calling DB
-        Map mapForDB = (Map) sequencesDBMap.get(getBrokerForClass()
-                .serviceConnectionManager().getConnectionDescriptor().getJcdAlias());
-        if(mapForDB != null)
+        while(holder.prefetching)
         {
-            result = (HighLowSequence) mapForDB.get(sequenceName);
+            try
+            {
+                holder.wait();
+            }
+            catch(InterruptedException e)
+            {
+                throw new SequenceManagerException("Interrupted while waiting for prefetched sequence "
+                        + sequenceName, e);
+            }
         }
-        return result;
     }
 
     /**
-     * Put new sequence object for given sequence name.
+     * Returns the next sequence block, the prefetched one if available. Have to be
+     * called while holding the lock of the holder and no prefetch is in progress.
+     */
+    private HighLowSequence nextSequence(SequenceHolder holder, FieldDescriptor field, String sequenceName)
+            throws SequenceManagerException
+    {
+        HighLowSequence seq = holder.next;
+        holder.next = null;
+        if(seq == null)
+        {
+            // not found, get sequence from database or create new
+            seq = getSequence(getBrokerForClass(), field, sequenceName);
+        }
+        if(seq.curVal >= seq.getMaxKey())
+        {
+            // something going wrong
+            removeSequence(sequenceName);
+            throw new SequenceManagerException("Sequence generation failed: " +
+                    SystemUtils.LINE_SEPARATOR + "Sequence: " + seq +
+                    ". Unable to build new ID, id was always 0." +
+                    SystemUtils.LINE_SEPARATOR + "Thread: " + Thread.currentThread() +
+                    SystemUtils.LINE_SEPARATOR + "PB: " + getBrokerForClass());
+        }
+        return seq;
+    }
+
+    /**
+     * Fetch the next sequence block in background.
+     */
+    private void prefetch(final SequenceHolder holder, final FieldDescriptor field, final String sequenceName)
+    {
+        synchronized(holder)
+        {
+            if(holder.prefetching || holder.next != null) return;
+            holder.prefetching = true;
+        }
+        final PBKey pbKey = getBrokerForClass().getPBKey();
+        Runnable task = new Runnable()
+        {
+            public void run()
+            {
+                HighLowSequence seq = null;
+                try
+                {
+                    seq = fetchSequence(pbKey, field, sequenceName, true);
+                }
+                catch(Exception e)
+                {
+                    // the next block will be fetched synchronously
+                    log.warn("Prefetch of sequence " + sequenceName + " failed", e);
+                }
+                finally
+                {
+                    synchronized(holder)
+                    {
+                        holder.next = seq;
+                        holder.prefetching = false;
+                        holder.notifyAll();
+                    }
+                }
+            }
+        };
+        try
+        {
+            getPrefetchExecutor().execute(task);
+        }
+        catch(RuntimeException e)
+        {
+            log.warn("Can't start prefetch of sequence " + sequenceName, e);
+            synchronized(holder)
+            {
+                holder.prefetching = false;
+                holder.notifyAll();
+            }
+        }
+    }
+
+    private static synchronized Executor getPrefetchExecutor()
+    {
+        if(prefetchExecutor == null)
+        {
+            prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+            {
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, "OJB HighLow sequence prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return prefetchExecutor;
+    }
+
+    /**
+     * Returns the holder of the given sequence name for the
+     * calling DB, creates a new one if not found.
+     *
      * @param sequenceName Name of the sequence.
-     * @param seq The sequence object to add.
      */
-    private void addSequence(String sequenceName, HighLowSequence seq)
+    private SequenceHolder getSequenceHolder(String sequenceName)
     {
         // lookup the sequence map for calling DB
         String jcdAlias = getBrokerForClass()
                 .serviceConnectionManager().getConnectionDescriptor().getJcdAlias();
-        Map mapForDB = (Map) sequencesDBMap.get(jcdAlias);
+        ConcurrentMap mapForDB = (ConcurrentMap) sequencesDBMap.get(jcdAlias);
         if(mapForDB == null)
         {
-            mapForDB = new HashMap();
+            ConcurrentMap newMap = new ConcurrentHashMap();
+            mapForDB = (ConcurrentMap) ((ConcurrentMap) sequencesDBMap).putIfAbsent(jcdAlias, newMap);
+            if(mapForDB == null) mapForDB = newMap;
+        }
+        SequenceHolder result = (SequenceHolder) mapForDB.get(sequenceName);
+        if(result == null)
+        {
+            SequenceHolder newHolder = new SequenceHolder();
+            result = (SequenceHolder) mapForDB.putIfAbsent(sequenceName, newHolder);
+            if(result == null) result = newHolder;
         }
-        mapForDB.put(sequenceName, seq);
-        sequencesDBMap.put(jcdAlias, mapForDB);
+        return result;
     }
 
     /**
@@ -237,16 +354,25 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
                 .serviceConnectionManager().getConnectionDescriptor().getJcdAlias());
         if(mapForDB != null)
         {
-            synchronized(SequenceManagerHighLowImpl.class)
-            {
-                mapForDB.remove(sequenceName);
-            }
+            mapForDB.remove(sequenceName);
         }
     }
 
     protected HighLowSequence getSequence(PersistenceBroker brokerForSequence,
                                         FieldDescriptor field,
                                         String sequenceName)  throws SequenceManagerException
+    {
+        return fetchSequence(brokerForSequence.getPBKey(), field, sequenceName, false);
+    }
+
+    /**
+     * Lookup and store the next sequence block.
+     *
+     * @param async If <em>true</em> the call is done by the prefetch thread,
+     * thus the current broker instance mustn't be used.
+     */
+    private HighLowSequence fetchSequence(PBKey pbKey, FieldDescriptor field,
+                                          String sequenceName, boolean async) throws SequenceManagerException
     {
         HighLowSequence newSequence = null;
         PersistenceBroker internBroker = null;
@@ -261,10 +387,11 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
             Thus we use a new internBroker instance (with new connection) to
             avoid this problem.
             */
-            internBroker = PersistenceBrokerFactory.createPersistenceBroker(brokerForSequence.getPBKey());
+            internBroker = PersistenceBrokerFactory.createPersistenceBroker(pbKey);
             internBroker.beginTransaction();
 
-            newSequence = lookupStoreSequence(internBroker, field, sequenceName);
+            newSequence = lookupStoreSequence(internBroker, field, sequenceName,
+                    async ? internBroker : getBrokerForClass(), 0);
 
             internBroker.commitTransaction();
 
@@ -280,13 +407,25 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
         }
         finally
         {
-            attempts = 0;
             if (internBroker != null) internBroker.close();
         }
         return newSequence;
     }
 
     protected HighLowSequence lookupStoreSequence(PersistenceBroker broker, FieldDescriptor field, String seqName)
+    {
+        return lookupStoreSequence(broker, field, seqName, getBrokerForClass(), 0);
+    }
+
+    /**
+     * Lookup the sequence object and store it with the next key block.
+     *
+     * @param broker The broker used to lookup/store the sequence.
+     * @param maxKeyBroker The broker used to lookup the max key of new sequences.
+     * @param attempts The number of failed attempts.
+     */
+    protected HighLowSequence lookupStoreSequence(PersistenceBroker broker, FieldDescriptor field, String seqName,
+                                                  PersistenceBroker maxKeyBroker, int attempts)
     {
         HighLowSequence newSequence;
         boolean needsInsert = false;
@@ -306,7 +445,7 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
             here we lookup the max key for the given field in system
             */
             // !!! here we use current broker instance to avoid deadlock !!!
-            long maxKey = getMaxKeyForSequence(getBrokerForClass(), field);
+            long maxKey = getMaxKeyForSequence(maxKeyBroker, field);
 
             newSequence = newSequenceObject(seqName, field);
             newSequence.setMaxKey(maxKey);
@@ -337,8 +476,7 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
             if(attempts < 5)
             {
                 log.info("OptimisticLockException was thrown, will try again to store sequence. Sequence was "+newSequence);
-                attempts++;
-                newSequence = lookupStoreSequence(broker, field, seqName);
+                newSequence = lookupStoreSequence(broker, field, seqName, maxKeyBroker, attempts + 1);
             }
             else throw e;
         }
@@ -387,4 +525,48 @@ public class SequenceManagerHighLowImpl extends AbstractSequenceManager
         }
         return seqName;
     }
+
+    //=======================================================
+    // inner classes
+    //=======================================================
+    /**
+     * The in-memory state of a sequence, the current key block and
+     * the prefetched next sequence block.
+     */
+    static final class SequenceHolder
+    {
+        /** the current key block, replaced while holding the lock of the holder */
+        volatile KeyBlock current;
+        /** the prefetched sequence, guarded by the holder */
+        HighLowSequence next;
+        /** true while the next sequence is fetched, guarded by the holder */
+        boolean prefetching;
+    }
+
+    /**
+     * A block of reserved keys, the keys are handed out without locking.
+     */
+    static final class KeyBlock
+    {
+        private final AtomicLong lastKey;
+        private final long maxKey;
+        /** the key which triggers the prefetch of the next block, 0 if prefetch is disabled */
+        final long prefetchKey;
+
+        KeyBlock(HighLowSequence seq, boolean prefetch)
+        {
+            lastKey = new AtomicLong(seq.curVal);
+            maxKey = seq.getMaxKey();
+            prefetchKey = prefetch ? seq.curVal + Math.max(1, (maxKey - seq.curVal) / 2) : 0;
+        }
+
+        /**
+         * Returns the next key or 0 if the block is exhausted.
+         */
+        long nextId()
+        {
+            long id = lastKey.incrementAndGet();
+            return id <= maxKey ? id : 0;
+        }
+    }
 }
@@ -18,8 +18,10 @@ package org.apache.ojb.broker.util.sequence;
 import org.apache.ojb.broker.PersistenceBroker;
 import org.apache.ojb.broker.metadata.FieldDescriptor;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
@@ -86,7 +88,11 @@ import java.util.Map;
  */
 public class SequenceManagerInMemoryImpl extends AbstractSequenceManager
 {
-    protected static Map sequencesDBMap = new HashMap();
+    /**
+     * Maps the jcd-alias to a concurrent map of the last used
+     * value (an {@link AtomicLong}) per sequence name.
+     */
+    protected static Map sequencesDBMap = new ConcurrentHashMap();
     private long sequenceStart;
 
     public SequenceManagerInMemoryImpl(PersistenceBroker broker)
@@ -99,62 +105,37 @@ public class SequenceManagerInMemoryImpl extends AbstractSequenceManager
     protected long getUniqueLong(FieldDescriptor field) throws SequenceManagerException
     {
         String seqName = calculateSequenceName(field);
-        // we have to be threadsafe
-        synchronized (SequenceManagerInMemoryImpl.class)
-        {
-            // get id for given seq name
-            Long currentId = getSequence(seqName);
-            // check - first time we search for sequence name
-            if (currentId == null)
-            {
-                long maxKey = SequenceManagerHelper.getMaxForExtent(getBrokerForClass(), field);
-                maxKey = sequenceStart > maxKey ? sequenceStart : maxKey;
-                currentId = new Long(maxKey);
-            }
-            currentId = new Long(currentId.longValue() + 1);
-            // put new id back to map
-            addSequence(seqName, currentId);
-            return currentId.intValue();
-        }
-    }
-
-    /**
-     * Returns last used sequence value or <code>null</code> if no sequence
-     * was add for given sequence name.
-     *
-     * @param sequenceName Name of the sequence.
-     * @return Last used sequence value or <code>null</code>
-     */
-    private Long getSequence(String sequenceName)
-    {
-        Long result = null;
-        // now lookup the sequence map for calling DB
-        Map mapForDB = (Map) sequencesDBMap.get(getBrokerForClass()
-                .serviceConnectionManager().getConnectionDescriptor().getJcdAlias());
-        if(mapForDB != null)
+        ConcurrentMap mapForDB = getMapForDB();
+        // get id for given seq name
+        AtomicLong currentId = (AtomicLong) mapForDB.get(seqName);
+        // check - first time we search for sequence name
+        if (currentId == null)
         {
-            result = (Long) mapForDB.get(sequenceName);
+            long maxKey = SequenceManagerHelper.getMaxForExtent(getBrokerForClass(), field);
+            maxKey = sequenceStart > maxKey ? sequenceStart : maxKey;
+            AtomicLong newId = new AtomicLong(maxKey);
+            // a concurrent thread may have added the sequence in the meantime
+            currentId = (AtomicLong) mapForDB.putIfAbsent(seqName, newId);
+            if(currentId == null) currentId = newId;
         }
-        return result;
+        return currentId.incrementAndGet();
     }
 
     /**
-     * Add new sequence value for sequence name.
-     * @param sequenceName Name of the sequence.
-     * @param seq The sequence value to add.
+     * Returns the sequence map of the calling DB.
      */
-    private void addSequence(String sequenceName, Long seq)
+    private ConcurrentMap getMapForDB()
     {
-        // lookup the sequence map for calling DB
         String jcdAlias = getBrokerForClass()
                 .serviceConnectionManager().getConnectionDescriptor().getJcdAlias();
-        Map mapForDB = (Map) sequencesDBMap.get(jcdAlias);
-        if(mapForDB == null)
+        ConcurrentMap result = (ConcurrentMap) sequencesDBMap.get(jcdAlias);
+        if(result == null)
         {
-            mapForDB = new HashMap();
+            ConcurrentMap newMap = new ConcurrentHashMap();
+            result = (ConcurrentMap) ((ConcurrentMap) sequencesDBMap).putIfAbsent(jcdAlias, newMap);
+            if(result == null) result = newMap;
         }
-        mapForDB.put(sequenceName, seq);
-        sequencesDBMap.put(jcdAlias, mapForDB);
+        return result;
     }
 
     /**
@@ -164,15 +145,6 @@ public class SequenceManagerInMemoryImpl extends AbstractSequenceManager
      */
     protected void removeSequence(String sequenceName)
     {
-        // lookup the sequence map for calling DB
-        Map mapForDB = (Map) sequencesDBMap.get(getBrokerForClass()
-                .serviceConnectionManager().getConnectionDescriptor().getJcdAlias());
-        if(mapForDB != null)
-        {
-            synchronized(SequenceManagerInMemoryImpl.class)
-            {
-                mapForDB.remove(sequenceName);
-            }
-        }
+        getMapForDB().remove(sequenceName);
     }
 }
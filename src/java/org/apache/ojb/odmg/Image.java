@@ -16,12 +16,15 @@ package org.apache.ojb.odmg;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang.ClassUtils;
 import org.apache.ojb.broker.Identity;
@@ -33,7 +36,6 @@ import org.apache.ojb.broker.core.proxy.CollectionProxyDefaultImpl;
 import org.apache.ojb.broker.core.proxy.CollectionProxyListener;
 import org.apache.ojb.broker.core.proxy.ProxyHelper;
 import org.apache.ojb.broker.metadata.CollectionDescriptor;
-import org.apache.ojb.broker.metadata.FieldType;
 import org.apache.ojb.broker.metadata.ObjectReferenceDescriptor;
 import org.apache.ojb.broker.util.BrokerHelper;
 import org.apache.ojb.broker.util.logging.Logger;
@@ -87,6 +89,8 @@ public abstract class Image
         private final CollectionDescriptor cod;
         private final Object collectionOrArray;
         private Map references;
+        /** The identities of the referenced objects if the image was compacted */
+        private Identity[] identities;
         private int status;
         private boolean hasTransientIdentity;
         private boolean isRefreshed;
@@ -138,6 +142,7 @@ public abstract class Image
         void handleReferencedObjects(Iterator it)
         {
             if(it == null) return;
+            identities = null;
             references = new HashMap();
             if(log.isDebugEnabled()) log.debug("Handle collection references");
             IdentityFactory idFac = listener.getBroker().serviceIdentity();
@@ -187,7 +192,18 @@ public abstract class Image
             if(!oldRefs.isRefreshed) oldRefs.refreshIdentities();
 
             // find deleted reference objects
-            if(oldRefs.references.size() > 0)
+            if(oldRefs.identities != null)
+            {
+                for(int i = 0; i < oldRefs.identities.length; i++)
+                {
+                    // the compacted image doesn't know the deleted object
+                    if(!isUnmaterializedProxy() && !containsReference(oldRefs.identities[i]))
+                    {
+                        listener.deletedXToN(cod, null, oldRefs.identities[i]);
+                    }
+                }
+            }
+            else if(oldRefs.references.size() > 0)
             {
                 Iterator oldIter = oldRefs.references.entrySet().iterator();
                 while(oldIter.hasNext())
@@ -208,6 +224,8 @@ public abstract class Image
             // find new reference objects
             if(references.size() > 0)
             {
+                Set oldOids = oldRefs.identities != null
+                        ? new HashSet(Arrays.asList(oldRefs.identities)) : oldRefs.references.keySet();
                 Iterator newIter = references.entrySet().iterator();
                 while(newIter.hasNext())
                 {
@@ -217,7 +235,7 @@ public abstract class Image
                     search for added objects: if in the old image an object
                     from the new image is not contained, we found a added object
                     */
-                    if(!oldRefs.containsReference(newOid))
+                    if(!oldOids.contains(newOid))
                     {
                         listener.addedXToN(cod, entry.getValue(), newOid);
                     }
@@ -272,6 +290,19 @@ public abstract class Image
             }
         }
 
+        /**
+         * Replaces the map of the referenced objects by the array of their identities.
+         * Only done if the referenced objects are known and no identity is transient.
+         */
+        void compact()
+        {
+            if(identities == null && !hasTransientIdentity && status != IS_UNMATERIALIZED_PROXY)
+            {
+                identities = (Identity[]) references.keySet().toArray(new Identity[references.size()]);
+                references = null;
+            }
+        }
+
         /**
          * Always return 'false', because changed 1:n or m:n references do not
          * affect the main object.
@@ -283,16 +314,14 @@ public abstract class Image
 
         boolean containsReference(Identity oid)
         {
+            if(identities != null)
+            {
+                return Arrays.asList(identities).contains(oid);
+            }
             if(!isRefreshed) refreshIdentities();
             return references.containsKey(oid);
         }
 
-        Map getIdentityReferenceObjectMap()
-        {
-            if(!isRefreshed) refreshIdentities();
-            return references;
-        }
-
         boolean isMaterializedProxy()
         {
             return status == IS_MATERIALIZED_PROXY;
@@ -324,7 +353,8 @@ public abstract class Image
         public String toString()
         {
             return ClassUtils.getShortClassName(this.getClass()) + "[references-size="
-                    + (references != null ? "" + references.size() : "undefined") + "]";
+                    + (references != null ? "" + references.size()
+                    : identities != null ? "" + identities.length : "undefined") + "]";
         }
     }
 
@@ -429,53 +459,6 @@ public abstract class Image
         }
     }
 
-    //===================================================================
-    // inner class
-    //===================================================================
-    public static class Field extends Image
-    {
-        private final FieldType type;
-        private final Object value;
-
-        public Field(FieldType type, Object value)
-        {
-            this.type = type;
-            this.value = value;
-        }
-
-        public void cleanup(boolean reuse)
-        {
-        }
-
-        void referenceProcessing(Image oldImage)
-        {
-            // nothing to do
-        }
-
-        /** If a field value has changed return 'true'. */
-        public boolean modified(Image other)
-        {
-            boolean result = false;
-            if(this == other)
-            {
-                result = true;
-            }
-            else
-            {
-                if(other instanceof Field)
-                {
-                    result = !type.equals(value, ((Field) other).value);
-                }
-            }
-            return result;
-        }
-
-        public String toString()
-        {
-            return ClassUtils.getShortClassName(this.getClass()) + "[type=" + type + ", value=" + value + "]";
-        }
-    }
-
     //===================================================================
     // inner interface
     //===================================================================
@@ -487,6 +470,10 @@ public abstract class Image
 
         public void addedXToN(CollectionDescriptor ord, Object refObjOrProxy, Identity oid);
 
+        /**
+         * Called for each object removed from a 1:n or m:n reference, the object
+         * is <em>null</em> if the before-image was compacted to identities.
+         */
         public void deletedXToN(CollectionDescriptor ord, Object refObjOrProxy, Identity oid);
 
         public PersistenceBrokerInternal getBroker();
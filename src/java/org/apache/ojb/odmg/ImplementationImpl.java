@@ -69,6 +69,8 @@ public class ImplementationImpl implements ImplementationExt
     private boolean implicitLocking;
     private boolean implicitLockingBackward;
     private boolean ordering;
+    private boolean indexedOrdering;
+    private int imageDigestThreshold;
 //    private boolean noteUserOrder;
 
     /**
@@ -85,6 +87,8 @@ public class ImplementationImpl implements ImplementationExt
         impliciteWriteLocks = (conf.getString("LockAssociations", "WRITE").equalsIgnoreCase("WRITE"));
         implicitLocking = conf.getBoolean("ImplicitLocking", true);
         ordering = conf.getBoolean("Ordering", true);
+        indexedOrdering = conf.getBoolean("IndexedOrdering", true);
+        imageDigestThreshold = conf.getInteger("ImageDigestThreshold", 0);
 //        noteUserOrder = conf.getBoolean("NoteUserOrder", true);
         implicitLockingBackward = conf.getBoolean("ImplicitLockingBackward", false);
         if(log.isEnabledFor(Logger.INFO))
@@ -419,6 +423,43 @@ public class ImplementationImpl implements ImplementationExt
         this.ordering = ordering;
     }
 
+    /**
+     * Returns <em>true</em> if new transactions use the indexed
+     * variant of the object ordering algorithm.
+     */
+    public boolean isIndexedOrdering()
+    {
+        return indexedOrdering;
+    }
+
+    /**
+     * Selects the variant of the object ordering algorithm used by new transactions,
+     * see {@link TransactionImpl#setIndexedOrdering(boolean)}.
+     */
+    public void setIndexedOrdering(boolean indexedOrdering)
+    {
+        this.indexedOrdering = indexedOrdering;
+    }
+
+    /**
+     * Returns the minimal length of <em>byte[]</em> and <em>String</em> field values
+     * kept as digest in the object images used for change detection, 0 if disabled.
+     */
+    public int getImageDigestThreshold()
+    {
+        return imageDigestThreshold;
+    }
+
+    /**
+     * Sets the minimal length of <em>byte[]</em> and <em>String</em> field values kept
+     * as digest in the object images used for change detection, 0 disables digests.
+     * Takes effect for new transactions.
+     */
+    public void setImageDigestThreshold(int imageDigestThreshold)
+    {
+        this.imageDigestThreshold = imageDigestThreshold;
+    }
+
 //    public boolean isNoteUserOrder()
 //    {
 //        return noteUserOrder;
@@ -447,6 +488,8 @@ public class ImplementationImpl implements ImplementationExt
                 .append("implicitLocking", isImplicitLocking())
                 .append("implicitWriteLocks", isImpliciteWriteLocks())
                 .append("ordering", isOrdering())
+                .append("indexedOrdering", isIndexedOrdering())
+                .append("imageDigestThreshold", getImageDigestThreshold())
                 .append("oqlCollectionClass", getOqlCollectionClass())
                 .append("txManager", getTxManager())
                 .append("lockManager", getLockManager())
@@ -21,9 +21,6 @@ package org.apache.ojb.odmg;
  *
  */
 
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -80,13 +77,13 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
     private Object myObj;
 
     /**
-     * beforeImage holds a mapping between field
-     * names and values at the start of the transaction.
-     * currentImage holds the mapping at the
+     * beforeImage holds the field values and references
+     * at the start of the transaction.
+     * currentImage holds the state at the
      * end of the transaction.
      */
-    private Map beforeImage;
-    private Map currentImage;
+    private ObjectImage beforeImage;
+    private ObjectImage currentImage;
     private ObjectEnvelopeTable buffer;
     // list of all LinkEntry's
     private List linkEntryList;
@@ -107,7 +104,7 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
         objects should support "persistence by reachability" too
         (detection of new/persistent reference objects after maon object lock)
         */
-        beforeImage = buildObjectImage(getBroker());
+        beforeImage = buildBeforeImage();
     }
 
     public PersistenceBrokerInternal getBroker()
@@ -125,16 +122,16 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
         return buffer;
     }
 
-    public Map getBeforeImage()
+    public ObjectImage getBeforeImage()
     {
         if(beforeImage == null)
         {
-            beforeImage = buildObjectImage(getBroker());
+            beforeImage = buildBeforeImage();
         }
         return beforeImage;
     }
 
-    public Map getCurrentImage()
+    public ObjectImage getCurrentImage()
     {
         if(currentImage == null)
         {
@@ -152,12 +149,12 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
     {
         if(currentImage != null)
         {
-            performImageCleanup(currentImage, reuse);
+            currentImage.cleanup(reuse);
         }
         if(beforeImage != null)
         {
             // we always free all resources of the old image
-            performImageCleanup(beforeImage, false);
+            beforeImage.cleanup(false);
         }
         if(reuse)
         {
@@ -169,16 +166,6 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
         }
     }
 
-    private void performImageCleanup(Map imageMap, boolean reuse)
-    {
-        Iterator iterator = imageMap.values().iterator();
-        while(iterator.hasNext())
-        {
-            Image base =  (Image) iterator.next();
-            if(base != null) base.cleanup(reuse);
-        }
-    }
-
     private void refreshObjectImage(boolean wasInsert)
     {
         try
@@ -194,12 +181,13 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
             if(currentImage != null)
             {
                 beforeImage = currentImage;
+                beforeImage.compact();
             }
             else
             {
                 if(beforeImage == null)
                 {
-                    beforeImage = buildObjectImage(getBroker());
+                    beforeImage = buildBeforeImage();
                 }
             }
             currentImage = null;
@@ -231,8 +219,7 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
         FieldDescriptor[] flds = getClassDescriptor().getPkFields();
         for(int i = 0; i < flds.length; i++)
         {
-            FieldDescriptor fld = flds[i];
-            addFieldImage(beforeImage, fld);
+            refreshFieldImage(flds[i]);
         }
     }
 
@@ -243,8 +230,7 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
             FieldDescriptor[] flds = getClassDescriptor().getLockingFields();
             for(int i = 0; i < flds.length; i++)
             {
-                FieldDescriptor fld = flds[i];
-                addFieldImage(beforeImage, fld);
+                refreshFieldImage(flds[i]);
             }
         }
     }
@@ -353,31 +339,41 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
         }
     }
 
+    /**
+     * Returns the image of the object used as before-image.
+     */
+    private ObjectImage buildBeforeImage()
+    {
+        ObjectImage image = buildObjectImage(getBroker());
+        image.compact();
+        return image;
+    }
+
     /**
      * buildObjectImage() will return the image of the Object.
      */
-    private Map buildObjectImage(PersistenceBroker broker) throws PersistenceBrokerException
+    private ObjectImage buildObjectImage(PersistenceBroker broker) throws PersistenceBrokerException
     {
-        Map imageMap = new HashMap();
         ClassDescriptor cld = broker.getClassDescriptor(getObject().getClass());
         //System.out.println("++++ build image: " + getObject());
         // register 1:1 references in image
-        buildImageForSingleReferences(imageMap, cld);
-        // put object values to image map
-        buildImageForFields(imageMap, cld);
+        Image.SingleRef[] singleRefs = buildImageForSingleReferences(cld);
+        // put object values to image
+        Object[] fieldValues = buildImageForFields(cld);
         // register 1:n and m:n references in image
-        buildImageForCollectionReferences(imageMap, cld);
-        return imageMap;
+        Image.MultipleRef[] collectionRefs = buildImageForCollectionReferences(cld);
+        return new ObjectImage(cld, fieldValues, singleRefs, collectionRefs);
     }
 
-    private void buildImageForSingleReferences(Map imageMap, ClassDescriptor cld)
+    private Image.SingleRef[] buildImageForSingleReferences(ClassDescriptor cld)
     {
         // register all 1:1 references
-        Iterator iter = cld.getObjectReferenceDescriptors(true).iterator();
+        List refs = cld.getObjectReferenceDescriptors(true);
+        List images = new ArrayList(refs.size());
         ObjectReferenceDescriptor rds;
-        while(iter.hasNext())
+        for(int i = 0; i < refs.size(); i++)
         {
-            rds = (ObjectReferenceDescriptor) iter.next();
+            rds = (ObjectReferenceDescriptor) refs.get(i);
             /*
             arminw:
             if a "super-reference" is matched (a 1:1 reference used to represent a super class)
@@ -399,47 +395,57 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
                 {
                     getBroker().serviceBrokerHelper().link(myObj, rds, false);
                 }
-                Image.SingleRef singleRef = new Image.SingleRef(this, rds, referenceObject);
-                imageMap.put(rds, singleRef);
+                images.add(new Image.SingleRef(this, rds, referenceObject));
             }
         }
+        return (Image.SingleRef[]) images.toArray(new Image.SingleRef[images.size()]);
     }
 
-    private void buildImageForFields(Map imageMap, ClassDescriptor cld)
+    private Object[] buildImageForFields(ClassDescriptor cld)
     {
         // register all non reference fields of object (with inherited fields)
         FieldDescriptor[] fieldDescs = cld.getFieldDescriptor(true);
+        Object[] fieldValues = new Object[fieldDescs.length];
+        int digestThreshold = getTx().getImageDigestThreshold();
         for(int i = 0; i < fieldDescs.length; i++)
         {
-            addFieldImage(imageMap, fieldDescs[i]);
+            fieldValues[i] = getFieldImage(fieldDescs[i], digestThreshold);
         }
+        return fieldValues;
     }
 
-    private void addFieldImage(Map imageMap, FieldDescriptor fld)
+    private Object getFieldImage(FieldDescriptor fld, int digestThreshold)
     {
         // register copies of all field values
         Object value = fld.getPersistentField().get(myObj);
         // get the real sql type value
         value = fld.getFieldConversion().javaToSql(value);
-        // make copy of the sql type value
-        value = fld.getJdbcType().getFieldType().copy(value);
-        // buffer in image the field name and the sql type value
-        // wrapped by a helper class
-        imageMap.put(fld.getPersistentField().getName(), new Image.Field(fld.getJdbcType().getFieldType(), value));
+        // make copy (or digest) of the sql type value
+        return ObjectImage.snapshot(fld, value, digestThreshold);
+    }
+
+    private void refreshFieldImage(FieldDescriptor fld)
+    {
+        int index = beforeImage.indexOf(fld);
+        if(index >= 0)
+        {
+            beforeImage.setFieldValue(index, getFieldImage(fld, getTx().getImageDigestThreshold()));
+        }
     }
 
-    private void buildImageForCollectionReferences(Map imageMap, ClassDescriptor cld)
+    private Image.MultipleRef[] buildImageForCollectionReferences(ClassDescriptor cld)
     {
         // register the 1:n and m:n references
-        Iterator collections = cld.getCollectionDescriptors(true).iterator();
+        List collections = cld.getCollectionDescriptors(true);
+        Image.MultipleRef[] images = new Image.MultipleRef[collections.size()];
         CollectionDescriptor cds;
-        while(collections.hasNext())
+        for(int i = 0; i < images.length; i++)
         {
-            cds = (CollectionDescriptor) collections.next();
+            cds = (CollectionDescriptor) collections.get(i);
             Object collectionOrArray = cds.getPersistentField().get(myObj);
-            Image.MultipleRef colRef = new Image.MultipleRef(this, cds, collectionOrArray);
-            imageMap.put(cds, colRef);
+            images[i] = new Image.MultipleRef(this, cds, collectionOrArray);
         }
+        return images;
     }
 
     /**
@@ -565,7 +571,7 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
     {
         if(hasChanged == null)
         {
-            Map current = null;
+            ObjectImage current = null;
             try
             {
                 current = getCurrentImage();
@@ -576,19 +582,7 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
             }
             if(beforeImage != null && current != null)
             {
-                Iterator it = beforeImage.entrySet().iterator();
-                hasChanged = Boolean.FALSE;
-                while(it.hasNext())
-                {
-                    Map.Entry entry =  (Map.Entry) it.next();
-                    Image imageBefore = (Image) entry.getValue();
-                    Image imageCurrent = (Image) current.get(entry.getKey());
-                    if(imageBefore.modified(imageCurrent))
-                    {
-                        hasChanged = Boolean.TRUE;
-                        break;
-                    }
-                }
+                hasChanged = beforeImage.modified(current) ? Boolean.TRUE : Boolean.FALSE;
             }
             else
             {
@@ -612,22 +606,10 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
         // these cases will be handled by ObjectEnvelopeTable#cascadingDependents()
         // if(getModificationState().needsInsert() || getModificationState().needsDelete()) return;
 
-        Map oldImage = getBeforeImage();
-        Map newImage = getCurrentImage();
-
-        Iterator iter = newImage.entrySet().iterator();
-        while (iter.hasNext())
-        {
-            Map.Entry entry = (Map.Entry) iter.next();
-            Object key = entry.getKey();
-            // we only interested in references
-            if(key instanceof ObjectReferenceDescriptor)
-            {
-                Image oldRefImage = (Image) oldImage.get(key);
-                Image newRefImage = (Image) entry.getValue();
-                newRefImage.performReferenceDetection(oldRefImage);
-            }
-        }
+        ObjectImage oldImage = getBeforeImage();
+        ObjectImage newImage = getCurrentImage();
+        // we only interested in references
+        newImage.performReferenceDetection(oldImage);
     }
 
     public void doUpdate()
@@ -799,7 +781,8 @@ public class ObjectEnvelope implements ObjectModification, Image.ImageListener
                 }
                 if(cod.isMtoNRelation())
                 {
-                    buffer.addM2NUnlinkEntry(cod, getObject(), refObjOrProxy);
+                    // the object isn't known if the before-image was compacted
+                    buffer.addM2NUnlinkEntry(cod, getObject(), refObjOrProxy != null ? refObjOrProxy : mod.getObject());
                 }
                 else
                 {
@@ -16,9 +16,17 @@ package org.apache.ojb.odmg;
  */
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
@@ -71,6 +79,13 @@ import org.apache.ojb.odmg.states.ModificationState;
  *      we are done.
  * </ol>
  *
+ * <p>The <em>indexed</em> variant of the algorithm (see
+ * {@link TransactionImpl#setIndexedOrdering(boolean)}) produces the same ordering, but
+ * doesn't compare each pair of vertices. The vertices are indexed by object and class,
+ * thus only the edges really needed are built, and the vertices are kept in buckets
+ * by the weight of their incoming edges. The weights are updated when a vertex is
+ * processed, instead of being recalculated in each iteration.</p>
+ *
  * @author  Gerhard Grosse
  * @version $Id: ObjectEnvelopeOrdering.java,v 1.1 2007-08-24 22:17:37 ewestfal Exp $
  * @since   Nov 15, 2004
@@ -82,15 +97,30 @@ class ObjectEnvelopeOrdering
     private static final int POTENTIAL_EDGE_WEIGHT = 1;
     private static final int POTENTIAL_EDGE_WEIGHT_WITH_FK = 2;
     private static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
+    private static final Vertex[] EMPTY_VERTEX_ARRAY = new Vertex[0];
+    private static final Comparator VERTEX_ORDER = new Comparator()
+    {
+        public int compare(Object o1, Object o2)
+        {
+            return ((Vertex) o1).getIndex() - ((Vertex) o2).getIndex();
+        }
+    };
 
     private static Logger log = LoggerFactory.getLogger(ObjectEnvelopeOrdering.class);
 
     private List originalOrder;
     private Map envelopes;
+    private boolean indexed;
 
     private Vertex[] vertices;
     private List edgeList;
 
+    // indexes used by the indexed ordering
+    private Map edgeMap;
+    private Map vertexByObject;
+    private Map deletedInstances;
+    private Map updatedOrDeletedInstances;
+
     private Identity[] newOrder;
 
     /**
@@ -101,9 +131,23 @@ class ObjectEnvelopeOrdering
      *      Identity-s as key
      */
     public ObjectEnvelopeOrdering(List originalOrder, Map envelopes)
+    {
+        this(originalOrder, envelopes, false);
+    }
+
+    /**
+     * Creates an object envelope ordering based on an original ordering
+     * of Identity objects and an Identity-&gt;ObjectEnvelope map
+     * @param originalOrder a list of Identity objects
+     * @param envelopes a map with ObjectEnvelope-s with their respective
+     *      Identity-s as key
+     * @param indexed if <em>true</em> the indexed variant of the algorithm is used
+     */
+    public ObjectEnvelopeOrdering(List originalOrder, Map envelopes, boolean indexed)
     {
         this.originalOrder = originalOrder;
         this.envelopes = envelopes;
+        this.indexed = indexed;
     }
 
     /**
@@ -131,7 +175,7 @@ class ObjectEnvelopeOrdering
             ObjectEnvelope envelope = (ObjectEnvelope) envelopes.get(it.next());
             if (envelope.needsUpdate() || envelope.needsInsert() || envelope.needsDelete())
             {
-                Vertex vertex = new Vertex(envelope);
+                Vertex vertex = new Vertex(envelope, vertexList.size());
                 vertexList.add(vertex);
                 if (log.isDebugEnabled())
                 {
@@ -150,6 +194,12 @@ class ObjectEnvelopeOrdering
         }
         vertices = (Vertex[]) vertexList.toArray(new Vertex[vertexList.size()]);
 
+        if (indexed)
+        {
+            reorderIndexed(newOrderIndex, t1);
+            return;
+        }
+
         // set up the edges
         edgeList = new ArrayList(2 * vertices.length);
         for (int i = 0; i < vertices.length; i++)
@@ -239,6 +289,116 @@ class ObjectEnvelopeOrdering
 
     }
 
+    /**
+     * The indexed variant of {@link #reorder()}, orders the vertices
+     * in O((V+E)*log(V)) instead of O(V*V + V*E).
+     * @param newOrderIndex the number of unmodified objects already added to the new order
+     * @param t1 start time of the reordering if debug is enabled
+     */
+    private void reorderIndexed(int newOrderIndex, long t1)
+    {
+        long t2 = 0, t3;
+
+        // set up the indexes and the edges
+        edgeMap = new HashMap(2 * vertices.length);
+        vertexByObject = new IdentityHashMap(vertices.length);
+        deletedInstances = new HashMap();
+        updatedOrDeletedInstances = new HashMap();
+        for (int i = 0; i < vertices.length; i++)
+        {
+            vertexByObject.put(vertices[i].getEnvelope().getRealObject(), vertices[i]);
+        }
+        for (int i = 0; i < vertices.length; i++)
+        {
+            addIndexedEdgesForVertex(vertices[i]);
+        }
+
+        if (log.isDebugEnabled())
+        {
+            t2 = System.currentTimeMillis();
+            log.debug("Building indexed object envelope graph took " + (t2 - t1) + " ms");
+            log.debug("Object envelope graph contains " + vertices.length + " vertices" + " and " + edgeMap.size()
+                    + " edges");
+        }
+
+        // the vertices grouped by the weight of their incoming edges, ordered by the original order
+        SortedMap buckets = new TreeMap();
+        for (int i = 0; i < vertices.length; i++)
+        {
+            addToBucket(buckets, vertices[i]);
+        }
+
+        int iterationCount = 0;
+        while (!buckets.isEmpty())
+        {
+            iterationCount++;
+            // process all vertices having minimum incoming edge weight
+            Integer minIncomingEdgeWeight = (Integer) buckets.firstKey();
+            Set processed = (Set) buckets.remove(minIncomingEdgeWeight);
+            for (Iterator it = processed.iterator(); it.hasNext();)
+            {
+                Vertex vertex = (Vertex) it.next();
+                newOrder[newOrderIndex++] = vertex.getEnvelope().getIdentity();
+                vertex.markProcessed();
+            }
+            // remove the outgoing edges of the processed vertices
+            for (Iterator it = processed.iterator(); it.hasNext();)
+            {
+                List outgoing = ((Vertex) it.next()).getOutgoingEdges();
+                for (int i = 0; i < outgoing.size(); i++)
+                {
+                    Edge edge = (Edge) outgoing.get(i);
+                    Vertex terminal = edge.getTerminalVertex();
+                    if (!terminal.isProcessed())
+                    {
+                        removeFromBucket(buckets, terminal);
+                        terminal.incrementIncomingEdgeWeight(-edge.getWeight());
+                        addToBucket(buckets, terminal);
+                    }
+                }
+            }
+            if (log.isDebugEnabled())
+            {
+                log.debug("Processed " + processed.size() + " vertices with minimum edge weight "
+                        + minIncomingEdgeWeight + " in iteration #" + iterationCount);
+            }
+        }
+
+        if (log.isDebugEnabled())
+        {
+            t3 = System.currentTimeMillis();
+            log.debug("New ordering: " + ArrayUtils.toString(newOrder));
+            log.debug("Processing indexed object envelope graph took " + (t3 - t2) + " ms");
+        }
+        edgeMap = null;
+        vertexByObject = null;
+        deletedInstances = null;
+        updatedOrDeletedInstances = null;
+    }
+
+    private static void addToBucket(SortedMap buckets, Vertex vertex)
+    {
+        Integer weight = new Integer(vertex.getIncomingEdgeWeight());
+        Set bucket = (Set) buckets.get(weight);
+        if (bucket == null)
+        {
+            bucket = new TreeSet(VERTEX_ORDER);
+            buckets.put(weight, bucket);
+        }
+        bucket.add(vertex);
+    }
+
+    private static void removeFromBucket(SortedMap buckets, Vertex vertex)
+    {
+        Integer weight = new Integer(vertex.getIncomingEdgeWeight());
+        Set bucket = (Set) buckets.get(weight);
+        bucket.remove(vertex);
+        if (bucket.isEmpty())
+        {
+            buckets.remove(weight);
+        }
+    }
+
     /**
      * Gets the reordered sequence of object envelopes
      * @return an array of Identity objects representing the opimized sequence
@@ -379,6 +539,143 @@ class ObjectEnvelopeOrdering
         }
     }
 
+    /**
+     * Adds all edges for a given object envelope vertex using the indexes of
+     * the vertices, see {@link #addEdgesForVertex(Vertex)}.
+     * @param vertex the Vertex object to find edges for
+     */
+    private void addIndexedEdgesForVertex(Vertex vertex)
+    {
+        ClassDescriptor cld = vertex.getEnvelope().getClassDescriptor();
+        ModificationState state = vertex.getEnvelope().getModificationState();
+        Iterator rdsIter = cld.getObjectReferenceDescriptors(true).iterator();
+        while (rdsIter.hasNext())
+        {
+            ObjectReferenceDescriptor rds = (ObjectReferenceDescriptor) rdsIter.next();
+            Object refObject = rds.getPersistentField().get(vertex.getEnvelope().getRealObject());
+            Vertex refVertex = (Vertex) vertexByObject.get(refObject);
+            if (refVertex != null)
+            {
+                addIndexedEdge(buildConcrete11Edge(vertex, refVertex, rds.hasConstraint()));
+            }
+            // potential edges only exist to deleted objects
+            if (state.needsUpdate() || state.needsDelete())
+            {
+                Vertex[] candidates = getInstances(deletedInstances, rds.getItemClass());
+                for (int i = 0; i < candidates.length; i++)
+                {
+                    if (candidates[i] != refVertex)
+                    {
+                        addIndexedEdge(buildPotential11Edge(vertex, candidates[i], rds.hasConstraint()));
+                    }
+                }
+            }
+        }
+        Iterator cdsIter = cld.getCollectionDescriptors(true).iterator();
+        while (cdsIter.hasNext())
+        {
+            CollectionDescriptor cds = (CollectionDescriptor) cdsIter.next();
+            addIndexedCollectionEdges(vertex, state, cds);
+        }
+    }
+
+    /**
+     * Adds the edges of a collection reference using the indexes of the
+     * vertices, see {@link #addCollectionEdges(Vertex, CollectionDescriptor)}.
+     */
+    private void addIndexedCollectionEdges(Vertex vertex, ModificationState state, CollectionDescriptor cds)
+    {
+        Object col = cds.getPersistentField().get(vertex.getEnvelope().getRealObject());
+        Object[] refObjects;
+        if (col == null || (ProxyHelper.isCollectionProxy(col) && !ProxyHelper.getCollectionProxy(col).isLoaded()))
+        {
+            refObjects = EMPTY_OBJECT_ARRAY;
+        }
+        else
+        {
+            refObjects = BrokerHelper.getCollectionArray(col);
+        }
+        Class refClass = cds.getItemClass();
+        boolean mToN = cds.isMtoNRelation();
+
+        Vertex[] candidates = EMPTY_VERTEX_ARRAY;
+        if (mToN && (state.needsUpdate() || state.needsDelete()))
+        {
+            candidates = getInstances(deletedInstances, refClass);
+        }
+        else if (!mToN && state.needsDelete())
+        {
+            candidates = getInstances(updatedOrDeletedInstances, refClass);
+        }
+
+        // concrete edges to the objects in the collection
+        Map concrete = candidates.length > 0 ? new IdentityHashMap() : null;
+        for (int i = 0; i < refObjects.length; i++)
+        {
+            Vertex refVertex = (Vertex) vertexByObject.get(refObjects[i]);
+            if (refVertex != null && refClass.isInstance(refVertex.getEnvelope().getRealObject()))
+            {
+                addIndexedEdge(mToN ? buildConcreteMNEdge(vertex, refVertex) : buildConcrete1NEdge(vertex, refVertex));
+                if (concrete != null)
+                {
+                    concrete.put(refVertex, refVertex);
+                }
+            }
+        }
+        // potential edges to the other objects of the item class
+        for (int i = 0; i < candidates.length; i++)
+        {
+            if (!concrete.containsKey(candidates[i]))
+            {
+                addIndexedEdge(mToN ? buildPotentialMNEdge(vertex, candidates[i])
+                        : buildPotential1NEdge(vertex, candidates[i]));
+            }
+        }
+    }
+
+    /**
+     * Adds an edge to the graph of the indexed ordering. Like in {@link #reorder()}
+     * the first edge between two vertices is kept.
+     * @param edge the edge to add or <em>null</em>
+     */
+    private void addIndexedEdge(Edge edge)
+    {
+        if (edge != null && !edgeMap.containsKey(edge))
+        {
+            edgeMap.put(edge, edge);
+            edge.getInitialVertex().addOutgoingEdge(edge);
+            edge.getTerminalVertex().incrementIncomingEdgeWeight(edge.getWeight());
+        }
+    }
+
+    /**
+     * Returns the vertices of instances of the given class, which are deleted or,
+     * for the <em>updatedOrDeletedInstances</em> index, updated or deleted.
+     * @param index the <em>deletedInstances</em> or <em>updatedOrDeletedInstances</em> index
+     * @param refClass the class of the instances
+     */
+    private Vertex[] getInstances(Map index, Class refClass)
+    {
+        Vertex[] result = (Vertex[]) index.get(refClass);
+        if (result == null)
+        {
+            List instances = new ArrayList();
+            for (int i = 0; i < vertices.length; i++)
+            {
+                ObjectEnvelope envelope = vertices[i].getEnvelope();
+                ModificationState state = envelope.getModificationState();
+                if ((state.needsDelete() || (index == updatedOrDeletedInstances && state.needsUpdate()))
+                        && refClass.isInstance(envelope.getRealObject()))
+                {
+                    instances.add(vertices[i]);
+                }
+            }
+            result = (Vertex[]) instances.toArray(new Vertex[instances.size()]);
+            index.put(refClass, result);
+        }
+        return result;
+    }
+
     /**
      * Helper method that searches an object array for the occurence of a
      * specific object based on reference equality
@@ -770,12 +1067,15 @@ class ObjectEnvelopeOrdering
     private static class Vertex
     {
         private ObjectEnvelope envelope;
+        private int index;
         private boolean processed;
         private int incomingEdgeWeight;
+        private List outgoingEdges;
 
-        public Vertex(ObjectEnvelope envelope)
+        public Vertex(ObjectEnvelope envelope, int index)
         {
             this.envelope = envelope;
+            this.index = index;
             this.incomingEdgeWeight = 0;
             this.processed = false;
         }
@@ -785,6 +1085,31 @@ class ObjectEnvelopeOrdering
             return envelope;
         }
 
+        /**
+         * Returns the position of the vertex in the original order.
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        public void addOutgoingEdge(Edge edge)
+        {
+            if (outgoingEdges == null)
+            {
+                outgoingEdges = new ArrayList(2);
+            }
+            outgoingEdges.add(edge);
+        }
+
+        /**
+         * Returns the edges starting at this vertex, only used by the indexed ordering.
+         */
+        public List getOutgoingEdges()
+        {
+            return outgoingEdges != null ? outgoingEdges : Collections.EMPTY_LIST;
+        }
+
         public void markProcessed()
         {
             processed = true;
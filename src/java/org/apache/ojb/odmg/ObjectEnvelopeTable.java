@@ -465,7 +465,8 @@ public class ObjectEnvelopeTable
     {
         if(getTransaction().isOrdering() && needsCommit && mhtObjectEnvelopes.size() > 1)
         {
-            ObjectEnvelopeOrdering ordering = new ObjectEnvelopeOrdering(mvOrderOfIds, mhtObjectEnvelopes);
+            ObjectEnvelopeOrdering ordering = new ObjectEnvelopeOrdering(mvOrderOfIds, mhtObjectEnvelopes,
+                    getTransaction().isIndexedOrdering());
             ordering.reorder();
             Identity[] newOrder = ordering.getOrdering();
 
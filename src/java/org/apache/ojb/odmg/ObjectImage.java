@@ -0,0 +1,273 @@
+package org.apache.ojb.odmg;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import org.apache.commons.lang.ClassUtils;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.FieldDescriptor;
+
+/**
+ * The state snapshot of a persistence capable object used by {@link ObjectEnvelope}
+ * to detect changed fields and references. The field values are kept in a flat array
+ * indexed by the position of the {@link FieldDescriptor} in
+ * {@link ClassDescriptor#getFieldDescriptor(boolean) getFieldDescriptor(true)}, the
+ * references in arrays ordered like the reference and collection descriptors of the class.
+ * <br/>
+ * Values of large fields (e.g. LOB's) can be replaced by a digest of the value, see
+ * {@link TransactionImpl#setImageDigestThreshold(int)}.
+ *
+ * @version $Id$
+ */
+public final class ObjectImage
+{
+    private final ClassDescriptor cld;
+    private final Object[] fieldValues;
+    private final Image.SingleRef[] singleRefs;
+    private final Image.MultipleRef[] collectionRefs;
+
+    ObjectImage(ClassDescriptor cld, Object[] fieldValues,
+                Image.SingleRef[] singleRefs, Image.MultipleRef[] collectionRefs)
+    {
+        this.cld = cld;
+        this.fieldValues = fieldValues;
+        this.singleRefs = singleRefs;
+        this.collectionRefs = collectionRefs;
+    }
+
+    /**
+     * Returns the value to keep in the image for the given sql type value of a field, a
+     * copy of the value or a {@link ValueDigest} if the value exceeds the digest threshold.
+     *
+     * @param fld The field descriptor
+     * @param sqlValue The sql type value of the field
+     * @param digestThreshold The minimal length of values replaced by a digest, 0 to always copy
+     */
+    static Object snapshot(FieldDescriptor fld, Object sqlValue, int digestThreshold)
+    {
+        if(digestThreshold > 0)
+        {
+            ValueDigest digest = ValueDigest.create(sqlValue, digestThreshold);
+            if(digest != null)
+            {
+                return digest;
+            }
+        }
+        return fld.getJdbcType().getFieldType().copy(sqlValue);
+    }
+
+    /**
+     * Returns the position of the specified field in the image or -1.
+     */
+    int indexOf(FieldDescriptor fld)
+    {
+        FieldDescriptor[] fields = cld.getFieldDescriptor(true);
+        for(int i = 0; i < fields.length; i++)
+        {
+            if(fields[i] == fld)
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces the image value of the field at the given position.
+     */
+    void setFieldValue(int index, Object value)
+    {
+        fieldValues[index] = value;
+    }
+
+    /**
+     * Returns the image value of the field at the given position, a copy of
+     * the sql type value or a {@link ValueDigest}.
+     */
+    public Object getFieldValue(int index)
+    {
+        return fieldValues[index];
+    }
+
+    /**
+     * Returns the image of the 1:n and m:n reference at the given position.
+     */
+    Image.MultipleRef getCollectionImage(int index)
+    {
+        return collectionRefs[index];
+    }
+
+    /**
+     * Returns <em>true</em> if a field value or a 1:1 reference differs from the
+     * specified image. Changed 1:n or m:n references do not affect the main object.
+     */
+    public boolean modified(ObjectImage other)
+    {
+        FieldDescriptor[] fields = cld.getFieldDescriptor(true);
+        for(int i = 0; i < fieldValues.length; i++)
+        {
+            Object value = fieldValues[i];
+            Object otherValue = other.fieldValues[i];
+            if(value instanceof ValueDigest || otherValue instanceof ValueDigest)
+            {
+                if(value == null || !value.equals(otherValue))
+                {
+                    return true;
+                }
+            }
+            else if(!fields[i].getJdbcType().getFieldType().equals(value, otherValue))
+            {
+                return true;
+            }
+        }
+        for(int i = 0; i < singleRefs.length; i++)
+        {
+            if(singleRefs[i].modified(other.singleRefs[i]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Detects new and deleted references by comparison with the specified older image.
+     */
+    void performReferenceDetection(ObjectImage oldImage)
+    {
+        for(int i = 0; i < singleRefs.length; i++)
+        {
+            singleRefs[i].performReferenceDetection(oldImage.singleRefs[i]);
+        }
+        for(int i = 0; i < collectionRefs.length; i++)
+        {
+            collectionRefs[i].performReferenceDetection(oldImage.collectionRefs[i]);
+        }
+    }
+
+    /**
+     * Called when the image becomes the before-image of an object, the
+     * collection images only keep the identities of the referenced objects.
+     */
+    void compact()
+    {
+        for(int i = 0; i < collectionRefs.length; i++)
+        {
+            collectionRefs[i].compact();
+        }
+    }
+
+    void cleanup(boolean reuse)
+    {
+        for(int i = 0; i < singleRefs.length; i++)
+        {
+            singleRefs[i].cleanup(reuse);
+        }
+        for(int i = 0; i < collectionRefs.length; i++)
+        {
+            collectionRefs[i].cleanup(reuse);
+        }
+    }
+
+    public String toString()
+    {
+        return ClassUtils.getShortClassName(this.getClass()) + "[class=" + cld.getClassNameOfObject()
+                + ", fields=" + Arrays.asList(fieldValues) + ", references=" + Arrays.asList(singleRefs)
+                + ", collections=" + Arrays.asList(collectionRefs) + "]";
+    }
+
+    //===================================================================
+    // inner class
+    //===================================================================
+    /**
+     * Replaces the copy of a large <em>byte[]</em> or <em>String</em> value
+     * in the image by the length and the MD5 digest of the value.
+     */
+    public static final class ValueDigest
+    {
+        private final int length;
+        private final byte[] digest;
+
+        private ValueDigest(int length, byte[] digest)
+        {
+            this.length = length;
+            this.digest = digest;
+        }
+
+        /**
+         * Returns the digest of the specified value or <em>null</em> if the value
+         * is not a <em>byte[]</em> or <em>String</em> of at least the given length.
+         */
+        static ValueDigest create(Object value, int threshold)
+        {
+            byte[] bytes;
+            int length;
+            if(value instanceof byte[])
+            {
+                bytes = (byte[]) value;
+                length = bytes.length;
+            }
+            else if(value instanceof String)
+            {
+                length = ((String) value).length();
+                if(length < threshold) return null;
+                try
+                {
+                    bytes = ((String) value).getBytes("UTF-8");
+                }
+                catch(UnsupportedEncodingException e)
+                {
+                    throw new Image.ImageException("Can't encode field value", e);
+                }
+            }
+            else
+            {
+                return null;
+            }
+            if(length < threshold) return null;
+            try
+            {
+                return new ValueDigest(length, MessageDigest.getInstance("MD5").digest(bytes));
+            }
+            catch(NoSuchAlgorithmException e)
+            {
+                throw new Image.ImageException("Can't create digest of field value", e);
+            }
+        }
+
+        public boolean equals(Object obj)
+        {
+            if(this == obj) return true;
+            if(!(obj instanceof ValueDigest)) return false;
+            ValueDigest other = (ValueDigest) obj;
+            return length == other.length && Arrays.equals(digest, other.digest);
+        }
+
+        public int hashCode()
+        {
+            return length ^ (digest[0] << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8 | (digest[3] & 0xff));
+        }
+
+        public String toString()
+        {
+            return ClassUtils.getShortClassName(this.getClass()) + "[length=" + length + "]";
+        }
+    }
+}
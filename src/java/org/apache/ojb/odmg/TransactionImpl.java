@@ -73,6 +73,8 @@ public class TransactionImpl
     private boolean impliciteWriteLocks;
     private boolean implicitLocking;
     private boolean ordering;
+    private boolean indexedOrdering;
+    private int imageDigestThreshold;
 
     private String txGUID;
     protected PersistenceBrokerInternal broker = null;
@@ -126,6 +128,8 @@ public class TransactionImpl
         this.impliciteWriteLocks = implementation.isImpliciteWriteLocks();
         this.implicitLocking = implementation.isImplicitLocking();
         this.ordering = implementation.isOrdering();
+        this.indexedOrdering = implementation.isIndexedOrdering();
+        this.imageDigestThreshold = implementation.getImageDigestThreshold();
         //this.noteUserOrdering = implementation.isNoteUserOrder();
 
         // assign a globally uniqe id to this tx
@@ -1502,6 +1506,54 @@ public class TransactionImpl
         this.ordering = ordering;
     }
 
+    /**
+     * Return <em>true</em> if the indexed variant of the ordering algorithm is used.
+     * @see #setIndexedOrdering(boolean)
+     */
+    public boolean isIndexedOrdering()
+    {
+        return indexedOrdering;
+    }
+
+    /**
+     * Selects the variant of the object ordering algorithm used if ordering is enabled.
+     * If <em>true</em> the objects are ordered by an indexed variant, which only builds
+     * the required dependencies between the objects and is much faster for transactions
+     * with many objects. The resulting order is the same.
+     *
+     * @param indexedOrdering Set <em>true</em> to use the indexed ordering.
+     * @see #setOrdering(boolean)
+     */
+    public void setIndexedOrdering(boolean indexedOrdering)
+    {
+        this.indexedOrdering = indexedOrdering;
+    }
+
+    /**
+     * Returns the minimal length of <em>byte[]</em> and <em>String</em> field values
+     * kept as digest in the object images, 0 if disabled.
+     * @see #setImageDigestThreshold(int)
+     */
+    public int getImageDigestThreshold()
+    {
+        return imageDigestThreshold;
+    }
+
+    /**
+     * To detect changed objects OJB keeps a copy of the field values of all
+     * objects locked by the transaction. If set to a value greater than 0, OJB
+     * keeps a MD5 digest instead of a copy of <em>byte[]</em> and <em>String</em>
+     * values (e.g. LOB fields) of at least the given length. This saves memory
+     * for large values, but each image of the object has to compute the digest.
+     * Affects objects locked after the call.
+     *
+     * @param imageDigestThreshold The minimal length of digested values, 0 disables digests.
+     */
+    public void setImageDigestThreshold(int imageDigestThreshold)
+    {
+        this.imageDigestThreshold = imageDigestThreshold;
+    }
+
 
     //============================================================
     // inner class
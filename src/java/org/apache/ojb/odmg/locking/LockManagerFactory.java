@@ -77,10 +77,17 @@ public class LockManagerFactory
     {
         long timeout = conf.getInteger("LockTimeout", 60000);
         log.info("LockTimeout=" + timeout);
+        // optional, if not set the default of the lock manager implementation is used
+        long blockTimeout = conf.getInteger("LockBlockTimeout", -1);
         try
         {
             LockManager lm = (LockManager) ClassHelper.newInstance(lockManagerClass);
             lm.setLockTimeout(timeout);
+            if(blockTimeout >= 0)
+            {
+                log.info("LockBlockTimeout=" + blockTimeout);
+                lm.setBlockTimeout(blockTimeout);
+            }
             lockManager = new LockManagerOdmgImpl(lm);
         }
         catch(Exception e)
@@ -21,7 +21,7 @@ import org.apache.ojb.otm.copy.*;
 import org.apache.ojb.otm.lock.map.InMemoryLockMap;
 import org.apache.ojb.otm.lock.map.LockMap;
 import org.apache.ojb.otm.lock.wait.LockWaitStrategy;
-import org.apache.ojb.otm.lock.wait.TimeoutStrategy;
+import org.apache.ojb.otm.lock.wait.DeadlockDetectionStrategy;
 import org.apache.ojb.otm.swizzle.CopySwizzling;
 import org.apache.ojb.otm.swizzle.Swizzling;
 import org.apache.ojb.otm.transaction.LocalTransactionFactory;
@@ -57,7 +57,7 @@ public class SimpleKit extends OTMKit
         super();
         _txFactory = new LocalTransactionFactory();
         _swizzlingStrategy = new CopySwizzling();
-        _lockWaitStrategy = new TimeoutStrategy();
+        _lockWaitStrategy = new DeadlockDetectionStrategy();
         _lockMap = new InMemoryLockMap();
         _noOpCopyStrategy = new NoOpObjectCopyStrategy();
         //_defaultCopyStrategy = new ReflectiveObjectCopyStrategy();
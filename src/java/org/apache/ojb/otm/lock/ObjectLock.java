@@ -41,7 +41,7 @@ public class ObjectLock
     //////////////////////////////////
 
     private Identity _oid;
-    private LockEntry _writer;
+    private volatile LockEntry _writer;
     private HashMap _readers = new HashMap();
 
 
@@ -124,6 +124,28 @@ public class ObjectLock
         waitStrategy.waitForLock(this, tx);
     }
 
+    /**
+     *
+     * Blocks until the writer released the lock or the given time elapsed. The waiting
+     * thread is notified when a lock entry of this object is released.
+     *
+     * @param millis    maximal time to wait in milliseconds
+     * @return          <code>true</code> if the lock has no writer
+     *
+     */
+    public synchronized boolean waitForWriterRelease(long millis)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + millis;
+        long remaining = millis;
+        while (_writer != null && remaining > 0)
+        {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return _writer == null;
+    }
+
     public boolean isFree()
     {
         return ((_writer == null) && _readers.isEmpty());
@@ -224,6 +246,8 @@ public class ObjectLock
                 {
                     _writer = null;
                 }
+                // wake up transactions waiting for this lock
+                ObjectLock.this.notifyAll();
             }
 
             _readers.remove(_tx);
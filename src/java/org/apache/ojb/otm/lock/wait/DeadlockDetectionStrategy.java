@@ -0,0 +1,241 @@
+package org.apache.ojb.otm.lock.wait;
+
+/* Copyright 2003-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.ojb.otm.core.Transaction;
+import org.apache.ojb.otm.lock.LockingException;
+import org.apache.ojb.otm.lock.ObjectLock;
+
+/**
+ *
+ * Waits for a lock until the writer releases it or the timeout elapsed. In contrast
+ * to the {@link TimeoutStrategy} the waiting transaction does not poll, it is blocked
+ * on the {@link ObjectLock} and notified as soon as the lock is released.
+ * <p>
+ * Deadlocks are detected on the wait-for graph of the transactions waiting on this
+ * strategy. A waiting transaction waits for exactly one lock, thus for the current
+ * writer of this lock. A deadlock is a cycle in the graph, which is checked before
+ * a transaction blocks and periodically while it is blocked, because the writer of
+ * the lock may change. The transaction which detects the cycle is the victim, a
+ * {@link DeadlockException} is thrown immediately and its edge is removed from the
+ * graph, thus the other transactions of the cycle go on waiting.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class DeadlockDetectionStrategy implements LockWaitStrategy
+{
+    private static final long DEFAULT_TIMEOUT = 30000;
+    private static final long DEFAULT_DETECTION_INTERVAL = 500;
+
+    /**
+     * Maps tx to the lock that tx waits for, the edges of the wait-for graph.
+     * Guarded by itself.
+     */
+    private final Map _waitsFor = new HashMap();
+
+    private final long _timeout;
+    private final long _detectionInterval;
+
+    private final AtomicLong _waitCount = new AtomicLong();
+    private final AtomicLong _waitTime = new AtomicLong();
+    private final AtomicLong _deadlockCount = new AtomicLong();
+    private final AtomicLong _timeoutCount = new AtomicLong();
+
+    /**
+     * @param timeout the number of milliseconds to wait before throwing exception
+     * @param detectionInterval the number of milliseconds between the deadlock checks
+     * of a waiting transaction
+     */
+    public DeadlockDetectionStrategy(long timeout, long detectionInterval)
+    {
+        if (timeout <= 0)
+        {
+            throw new IllegalArgumentException("Illegal timeout value: " + timeout);
+        }
+        if (detectionInterval <= 0)
+        {
+            throw new IllegalArgumentException("Illegal detection interval: " + detectionInterval);
+        }
+        _timeout = timeout;
+        _detectionInterval = detectionInterval;
+    }
+
+    /**
+     * @param timeout the number of milliseconds to wait before throwing exception
+     */
+    public DeadlockDetectionStrategy(long timeout)
+    {
+        this(timeout, DEFAULT_DETECTION_INTERVAL);
+    }
+
+    /**
+     * The default timeout is 30 seconds
+     */
+    public DeadlockDetectionStrategy()
+    {
+        this(DEFAULT_TIMEOUT);
+    }
+
+    /**
+    * @see org.apache.ojb.otm.lock.wait.LockWaitStrategy#waitForLock(ObjectLock, Transaction)
+    */
+    public void waitForLock(ObjectLock lock, Transaction tx)
+        throws LockingException
+    {
+        synchronized (_waitsFor)
+        {
+            checkDeadlock(lock, tx);
+            _waitsFor.put(tx, lock);
+        }
+        _waitCount.incrementAndGet();
+        long start = System.currentTimeMillis();
+        long deadline = start + _timeout;
+        try
+        {
+            long remaining = _timeout;
+            while (remaining > 0)
+            {
+                if (lock.waitForWriterRelease(Math.min(remaining, _detectionInterval)))
+                {
+                    return;
+                }
+                // the lock may be taken over by another transaction meanwhile
+                synchronized (_waitsFor)
+                {
+                    _waitsFor.remove(tx);
+                    checkDeadlock(lock, tx);
+                    _waitsFor.put(tx, lock);
+                }
+                remaining = deadline - System.currentTimeMillis();
+            }
+
+            Transaction writerTx = lock.getWriter();
+            if (writerTx != null)
+            {
+                _timeoutCount.incrementAndGet();
+                throw new ConcurrentModificationException(
+                        "Object [id: " + lock.getTargetIdentity()
+                        + "] locked by Transaction " + writerTx);
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new LockingException("Interrupted while waiting for lock on object [id: "
+                    + lock.getTargetIdentity() + "]", ex);
+        }
+        finally
+        {
+            synchronized (_waitsFor)
+            {
+                _waitsFor.remove(tx);
+            }
+            _waitTime.addAndGet(System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Follows the wait-for graph starting at the writer of the given lock,
+     * the caller has to hold the monitor of the graph.
+     *
+     * @throws DeadlockException if the path leads back to the given transaction
+     */
+    private void checkDeadlock(ObjectLock lock, Transaction tx)
+        throws DeadlockException
+    {
+        ObjectLock current = lock;
+        Transaction writerTx = lock.getWriter();
+        // each transaction has at most one outgoing edge, so the path is
+        // not longer than the number of waiting transactions
+        for (int i = 0; writerTx != null && i <= _waitsFor.size(); i++)
+        {
+            if (writerTx == tx)
+            {
+                _deadlockCount.incrementAndGet();
+                throw new DeadlockException(describeCycle(lock, tx));
+            }
+            current = (ObjectLock) _waitsFor.get(writerTx);
+            if (current == null)
+            {
+                return;
+            }
+            writerTx = current.getWriter();
+        }
+    }
+
+    private String describeCycle(ObjectLock lock, Transaction tx)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(lock.getTargetIdentity());
+        Transaction writerTx = lock.getWriter();
+        for (int i = 0; writerTx != null && writerTx != tx && i < _waitsFor.size(); i++)
+        {
+            ObjectLock waitsForLock = (ObjectLock) _waitsFor.get(writerTx);
+            if (waitsForLock == null)
+            {
+                break;
+            }
+            sb.append(" -> ");
+            sb.append(waitsForLock.getTargetIdentity());
+            writerTx = waitsForLock.getWriter();
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the number of transactions blocked by this strategy.
+     */
+    public long getWaitCount()
+    {
+        return _waitCount.get();
+    }
+
+    /**
+     * Returns the total time in milliseconds transactions were blocked by this strategy.
+     */
+    public long getWaitTime()
+    {
+        return _waitTime.get();
+    }
+
+    /**
+     * Returns the number of detected deadlocks.
+     */
+    public long getDeadlockCount()
+    {
+        return _deadlockCount.get();
+    }
+
+    /**
+     * Returns the number of transactions failed because the timeout elapsed.
+     */
+    public long getTimeoutCount()
+    {
+        return _timeoutCount.get();
+    }
+
+    public String toString()
+    {
+        return "DeadlockDetectionStrategy[timeout=" + _timeout + ", waits=" + getWaitCount()
+                + ", waitTime=" + getWaitTime() + ", deadlocks=" + getDeadlockCount()
+                + ", timeouts=" + getTimeoutCount() + "]";
+    }
+}
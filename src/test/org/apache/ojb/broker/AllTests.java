@@ -4,6 +4,7 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 import org.apache.ojb.broker.cache.LocalCacheTest;
 import org.apache.ojb.broker.cache.ObjectCacheTest;
+import org.apache.ojb.broker.cache.ObjectCacheStripedTest;
 import org.apache.ojb.broker.locking.LockTestCommitedReads;
 import org.apache.ojb.broker.locking.LockTestRepeatableReads;
 import org.apache.ojb.broker.locking.LockTestSerializable;
@@ -12,9 +13,11 @@ import org.apache.ojb.broker.locking.CommonsLockTestSerializable;
 import org.apache.ojb.broker.locking.CommonsLockTestRepeatableReads;
 import org.apache.ojb.broker.locking.CommonsLockTestCommittedReads;
 import org.apache.ojb.broker.locking.CommonsLockTestUncommittedReads;
+import org.apache.ojb.broker.locking.LockManagerInMemoryTest;
 import org.apache.ojb.broker.metadata.CustomAttributesTest;
 import org.apache.ojb.broker.metadata.MetadataMultithreadedTest;
 import org.apache.ojb.broker.metadata.MetadataTest;
+import org.apache.ojb.broker.metadata.ObjectInstantiatorTest;
 import org.apache.ojb.broker.metadata.PersistentFieldTest;
 import org.apache.ojb.broker.metadata.ReadonlyTest;
 import org.apache.ojb.broker.metadata.RepositoryElementsTest;
@@ -50,7 +53,10 @@ public class AllTests extends junit.framework.TestSuite
         suite.addTestSuite(PersistenceBrokerTest.class);
         suite.addTestSuite(BrokerExamples.class);
         suite.addTestSuite(ProxyExamples.class);
+        suite.addTestSuite(ProxyBatchMaterializationTest.class);
         suite.addTestSuite(PolymorphicExtents.class);
+        suite.addTestSuite(ParallelExtentQueryTest.class);
+        suite.addTestSuite(ExtentClassIndexTest.class);
         suite.addTestSuite(TreeTest.class);
         suite.addTestSuite(TypedCollectionsTest.class);
         suite.addTestSuite(AutomaticForeignKeys.class);
@@ -83,9 +89,17 @@ public class AllTests extends junit.framework.TestSuite
         suite.addTestSuite(FieldConversionTest_2.class);
         suite.addTestSuite(FieldConversionTest_3.class);
         suite.addTestSuite(FieldTypeTest.class);
+        suite.addTestSuite(RowBufferTest.class);
+        suite.addTestSuite(NumericIdentityTest.class);
+        suite.addTestSuite(IdentityCodecTest.class);
+        suite.addTestSuite(BatchManagerTest.class);
+        suite.addTestSuite(NativePagingTest.class);
+        suite.addTestSuite(SelectStatementCacheTest.class);
+        suite.addTestSuite(QueryResultCacheTest.class);
         suite.addTestSuite(BatchModeTest.class);
         suite.addTestSuite(ObjectCacheTest.class);
         suite.addTestSuite(LocalCacheTest.class);
+        suite.addTestSuite(ObjectCacheStripedTest.class);
         suite.addTestSuite(ReferenceTest.class);
         suite.addTestSuite(ComplexReferenceTest.class);
         suite.addTestSuite(ExtentAwarePathExpressionsTest.class);
@@ -107,6 +121,7 @@ public class AllTests extends junit.framework.TestSuite
         suite.addTestSuite(PathTest.class);
         suite.addTestSuite(PrimaryKeyForeignKeyTest.class);
         suite.addTestSuite(PersistentFieldTest.class);
+        suite.addTestSuite(ObjectInstantiatorTest.class);
         suite.addTestSuite(InheritanceMultipleTableTest.class);
         suite.addTestSuite(M2NGraphTest.class);
         suite.addTestSuite(MtoNMapping.class);
@@ -120,6 +135,7 @@ public class AllTests extends junit.framework.TestSuite
         suite.addTestSuite(CommonsLockTestRepeatableReads.class);
         suite.addTestSuite(CommonsLockTestCommittedReads.class);
         suite.addTestSuite(CommonsLockTestUncommittedReads.class);
+        suite.addTestSuite(LockManagerInMemoryTest.class);
         suite.addTestSuite(OptimisticLockingMultithreadedTest.class);
 
         // BRJ: ensure shutdown of hsqldb
@@ -0,0 +1,208 @@
+package org.apache.ojb.broker;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.ojb.broker.accesslayer.BatchManager;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
+import org.apache.ojb.broker.metadata.MetadataManager;
+import org.apache.ojb.broker.platforms.PlatformDefaultImpl;
+import org.apache.ojb.junit.OJBTestCase;
+
+/**
+ * Tests the statement grouping and ordering of the {@link BatchManager}
+ * using a connection stub which records the executed batches.
+ *
+ * @version $Id$
+ */
+public class BatchManagerTest extends OJBTestCase
+{
+    private DescriptorRepository repository;
+    private List executed;
+    private int updateCount;
+
+    public BatchManagerTest(String name)
+    {
+        super(name);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] arr = {BatchManagerTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        repository = MetadataManager.getInstance().getRepository();
+        executed = new ArrayList();
+        updateCount = 1;
+    }
+
+    public void testForeignKeyOrder() throws Exception
+    {
+        BatchManager batch = newBatchManager(100);
+        ClassDescriptor article = repository.getDescriptorFor(Article.class);
+        ClassDescriptor group = repository.getDescriptorFor(ProductGroup.class);
+
+        // the referencing row first
+        add(batch, article, BatchManager.INSERT, "INSERT INTO Artikel");
+        add(batch, group, BatchManager.INSERT, "INSERT INTO Kategorien");
+        add(batch, article, BatchManager.INSERT, "INSERT INTO Artikel");
+        assertEquals(3, batch.size());
+        batch.executeBatch();
+        assertEquals(0, batch.size());
+        assertEquals("INSERT INTO Kategorien:1", executed.get(0));
+        assertEquals("INSERT INTO Artikel:2", executed.get(1));
+
+        executed.clear();
+        // the referenced row first
+        add(batch, group, BatchManager.DELETE, "DELETE FROM Kategorien");
+        add(batch, article, BatchManager.DELETE, "DELETE FROM Artikel");
+        batch.executeBatch();
+        assertEquals("DELETE FROM Artikel:1", executed.get(0));
+        assertEquals("DELETE FROM Kategorien:1", executed.get(1));
+    }
+
+    public void testSameTableOrder() throws Exception
+    {
+        BatchManager batch = newBatchManager(100);
+        ClassDescriptor article = repository.getDescriptorFor(Article.class);
+        add(batch, article, BatchManager.DELETE, "DELETE FROM Artikel");
+        add(batch, article, BatchManager.DELETE, "DELETE FROM Artikel");
+        assertTrue(executed.isEmpty());
+        // an insert into the same table must not overtake the deletes
+        add(batch, article, BatchManager.INSERT, "INSERT INTO Artikel");
+        assertEquals(1, executed.size());
+        assertEquals("DELETE FROM Artikel:2", executed.get(0));
+        batch.executeBatch();
+        assertEquals("INSERT INTO Artikel:1", executed.get(1));
+    }
+
+    public void testBatchSize() throws Exception
+    {
+        BatchManager batch = newBatchManager(2);
+        ClassDescriptor group = repository.getDescriptorFor(ProductGroup.class);
+        add(batch, group, BatchManager.INSERT, "INSERT INTO Kategorien");
+        batch.executeBatchIfNecessary();
+        assertTrue(executed.isEmpty());
+        add(batch, group, BatchManager.INSERT, "INSERT INTO Kategorien");
+        batch.executeBatchIfNecessary();
+        assertEquals(1, executed.size());
+
+        add(batch, group, BatchManager.INSERT, "INSERT INTO Kategorien");
+        batch.clearBatch();
+        batch.executeBatch();
+        assertEquals(1, executed.size());
+    }
+
+    public void testOptimisticLocking() throws Exception
+    {
+        BatchManager batch = newBatchManager(100);
+        ClassDescriptor cld = repository.getDescriptorFor(LockedByVersion.class);
+        assertTrue(cld.isLocking());
+        Object obj = new LockedByVersion();
+        batch.addBatch(batch.getStatement(cld, BatchManager.UPDATE, "UPDATE LOCKED_BY_VERSION"), obj);
+        updateCount = 0;
+        try
+        {
+            batch.executeBatch();
+            fail("Optimistic locking failure not detected");
+        }
+        catch(OptimisticLockException e)
+        {
+            assertSame(obj, e.getSourceObject());
+        }
+        // a failing toString of the object doesn't hide the locking failure
+        obj = new LockedByVersion()
+        {
+            public String toString()
+            {
+                throw new IllegalStateException("toString failed");
+            }
+        };
+        batch.addBatch(batch.getStatement(cld, BatchManager.UPDATE, "UPDATE LOCKED_BY_VERSION"), obj);
+        try
+        {
+            batch.executeBatch();
+            fail("Optimistic locking failure not detected");
+        }
+        catch(OptimisticLockException e)
+        {
+            assertSame(obj, e.getSourceObject());
+        }
+        // not checked for classes without locking
+        add(batch, repository.getDescriptorFor(Article.class), BatchManager.UPDATE, "UPDATE Artikel");
+        batch.executeBatch();
+    }
+
+    public void testIsBatchable()
+    {
+        BatchManager batch = newBatchManager(100);
+        ClassDescriptor article = repository.getDescriptorFor(Article.class);
+        assertTrue(batch.isBatchable(article, BatchManager.INSERT));
+        assertTrue(batch.isBatchable(article, BatchManager.UPDATE));
+        assertTrue(batch.isBatchable(article, BatchManager.DELETE));
+    }
+
+    private void add(BatchManager batch, ClassDescriptor cld, int operation, String sql) throws Exception
+    {
+        batch.addBatch(batch.getStatement(cld, operation, sql), null);
+    }
+
+    private BatchManager newBatchManager(int batchSize)
+    {
+        Connection con = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{Connection.class}, new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        if(method.getName().equals("prepareStatement"))
+                        {
+                            return newStatement((String) args[0]);
+                        }
+                        return null;
+                    }
+                });
+        return new BatchManager(con, new PlatformDefaultImpl(), batchSize, repository);
+    }
+
+    private PreparedStatement newStatement(final String sql)
+    {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{PreparedStatement.class}, new InvocationHandler()
+                {
+                    int rows;
+
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        String name = method.getName();
+                        if(name.equals("addBatch"))
+                        {
+                            ++rows;
+                        }
+                        else if(name.equals("clearBatch"))
+                        {
+                            rows = 0;
+                        }
+                        else if(name.equals("executeBatch"))
+                        {
+                            executed.add(sql + ":" + rows);
+                            int[] result = new int[rows];
+                            Arrays.fill(result, updateCount);
+                            rows = 0;
+                            return result;
+                        }
+                        return null;
+                    }
+                });
+    }
+}
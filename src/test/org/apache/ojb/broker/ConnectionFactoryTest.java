@@ -2,15 +2,22 @@ package org.apache.ojb.broker;
 
 import junit.framework.TestCase;
 import org.apache.commons.lang.SerializationUtils;
+import org.apache.ojb.broker.accesslayer.ConcurrentConnectionPool;
 import org.apache.ojb.broker.accesslayer.ConnectionFactory;
+import org.apache.ojb.broker.accesslayer.ConnectionFactoryConcurrentImpl;
 import org.apache.ojb.broker.accesslayer.ConnectionFactoryDBCPImpl;
 import org.apache.ojb.broker.accesslayer.ConnectionFactoryFactory;
 import org.apache.ojb.broker.accesslayer.ConnectionFactoryPooledImpl;
 import org.apache.ojb.broker.accesslayer.LookupException;
+import org.apache.ojb.broker.accesslayer.StatementCache;
+import org.apache.ojb.broker.accesslayer.StatementsForClassImpl;
+import org.apache.commons.pool.impl.GenericObjectPool;
 import org.apache.ojb.broker.metadata.JdbcConnectionDescriptor;
 import org.apache.ojb.broker.metadata.MetadataManager;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 
 /**
  * ConnectionFactory implementation related tests.
@@ -55,6 +62,15 @@ public class ConnectionFactoryTest extends TestCase
         checkFactory(ConnectionFactoryDBCPImpl.class);
     }
 
+    /**
+     * Simple test to check base functionality of the
+     * ConnectionFactory implementation
+     */
+    public void testConnectionFactoryConcurrentImpl() throws Exception
+    {
+        checkFactory(ConnectionFactoryConcurrentImpl.class);
+    }
+
     private void checkFactory(Class factory) throws Exception
     {
         Class oldFac = null;
@@ -111,6 +127,11 @@ public class ConnectionFactoryTest extends TestCase
         checkFactoryPoolExhausted(ConnectionFactoryDBCPImpl.class);
     }
 
+    public void testExhaustedPoolConFacConcurrentImpl() throws Exception
+    {
+        checkFactoryPoolExhausted(ConnectionFactoryConcurrentImpl.class);
+    }
+
     private void checkFactoryPoolExhausted(Class factory) throws Exception
     {
         Class oldFac = null;
@@ -167,6 +188,389 @@ public class ConnectionFactoryTest extends TestCase
         }
     }
 
+    /**
+     * Test reuse, validation and statistics of the ConcurrentConnectionPool.
+     */
+    public void testConcurrentConnectionPool() throws Exception
+    {
+        ConnectionFactoryConcurrentImpl conFac = new ConnectionFactoryConcurrentImpl();
+        JdbcConnectionDescriptor jcd = createDescriptor("test_concurrentPool");
+        jcd.getConnectionPoolDescriptor().setMaxActive(2);
+        jcd.getConnectionPoolDescriptor().setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+        jcd.getConnectionPoolDescriptor().setMaxWait(200);
+        try
+        {
+            ConcurrentConnectionPool pool = conFac.getConnectionPool(jcd);
+            Connection con = conFac.lookupConnection(jcd);
+            conFac.releaseConnection(jcd, con);
+            // the thread gets back its connection
+            assertSame(con, conFac.lookupConnection(jcd));
+            Connection con2 = conFac.lookupConnection(jcd);
+            assertNotSame(con, con2);
+            assertEquals(2, pool.getActiveCount());
+            assertEquals(0, pool.getIdleCount());
+
+            // exhausted pool blocks for maxWait
+            long start = System.currentTimeMillis();
+            try
+            {
+                conFac.lookupConnection(jcd);
+                fail("We expect an exception indicating that the pool is exhausted");
+            }
+            catch (LookupException expected)
+            {
+            }
+            assertTrue(System.currentTimeMillis() - start >= 190);
+            assertEquals(1, pool.getExhaustedCount());
+
+            // a waiting thread gets a returned connection
+            final Connection returned = con2;
+            final ConnectionFactoryConcurrentImpl fac = conFac;
+            final JdbcConnectionDescriptor descriptor = jcd;
+            Thread releaser = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        Thread.sleep(50);
+                    }
+                    catch (InterruptedException ignore)
+                    {
+                    }
+                    fac.releaseConnection(descriptor, returned);
+                }
+            };
+            releaser.start();
+            assertSame(con2, conFac.lookupConnection(jcd));
+            releaser.join();
+
+            // closed connections are discarded by the validation
+            conFac.releaseConnection(jcd, con2);
+            con2.close();
+            pool.runHouseKeeping();
+            assertEquals(1, pool.getTotalCount());
+            assertEquals(1, pool.getValidationFailedCount());
+            conFac.releaseConnection(jcd, con);
+
+            assertEquals(4, pool.getBorrowCount());
+            assertEquals(4, pool.getWaitTimes().getCount());
+            assertTrue(pool.getWaitTimes().getPercentileMicros(99) <= pool.getWaitTimes().getMaxMicros());
+            assertTrue(pool.getWaitTimes().getPercentileMicros(50) <= pool.getWaitTimes().getPercentileMicros(99));
+            assertEquals(0, pool.getActiveCount());
+
+            conFac.releaseAllResources();
+            assertTrue(con.isClosed());
+        }
+        finally
+        {
+            conFac.releaseAllResources();
+        }
+    }
+
+    /**
+     * Test the leak detection of the ConcurrentConnectionPool.
+     */
+    public void testConcurrentConnectionPoolLeakDetection() throws Exception
+    {
+        ConnectionFactoryConcurrentImpl conFac = new ConnectionFactoryConcurrentImpl();
+        JdbcConnectionDescriptor jcd = createDescriptor("test_concurrentPoolLeak");
+        jcd.getConnectionPoolDescriptor().setRemoveAbandoned(true);
+        jcd.getConnectionPoolDescriptor().setRemoveAbandonedTimeout(1);
+        try
+        {
+            ConcurrentConnectionPool pool = conFac.getConnectionPool(jcd);
+            Connection con = conFac.lookupConnection(jcd);
+            pool.runHouseKeeping();
+            assertEquals(0, pool.getLeakCount());
+            Thread.sleep(1100);
+            pool.runHouseKeeping();
+            assertEquals(1, pool.getLeakCount());
+            // the leaked connection was removed from pool
+            assertTrue(con.isClosed());
+            assertEquals(0, pool.getTotalCount());
+            assertEquals(0, pool.getActiveCount());
+            conFac.releaseConnection(jcd, con);
+            assertEquals(0, pool.getTotalCount());
+        }
+        finally
+        {
+            conFac.releaseAllResources();
+        }
+    }
+
+    /**
+     * Idle connections are evicted although the housekeeping validates them.
+     */
+    public void testConcurrentConnectionPoolIdleEviction() throws Exception
+    {
+        ConnectionFactoryConcurrentImpl conFac = new ConnectionFactoryConcurrentImpl();
+        JdbcConnectionDescriptor jcd = createDescriptor("test_concurrentPoolIdleEviction");
+        jcd.getConnectionPoolDescriptor().setMaxIdle(-1);
+        jcd.getConnectionPoolDescriptor().setMinIdle(0);
+        jcd.getConnectionPoolDescriptor().setMinEvictableIdleTimeMillis(300);
+        jcd.getConnectionPoolDescriptor().setValidationQuery("select count(*) from OJB_HL_SEQ");
+        try
+        {
+            ConcurrentConnectionPool pool = conFac.getConnectionPool(jcd);
+            Connection con = conFac.lookupConnection(jcd);
+            conFac.releaseConnection(jcd, con);
+            Thread.sleep(200);
+            pool.runHouseKeeping();
+            assertEquals(1, pool.getIdleCount());
+            // the validation of the last run doesn't reset the idle time
+            Thread.sleep(200);
+            pool.runHouseKeeping();
+            assertEquals(0, pool.getTotalCount());
+            assertTrue(con.isClosed());
+        }
+        finally
+        {
+            conFac.releaseAllResources();
+        }
+    }
+
+    /**
+     * Return connections while the housekeeping removes them as abandoned connections.
+     */
+    public void testConcurrentConnectionPoolReturnWhileAbandoned() throws Exception
+    {
+        final ConnectionFactoryConcurrentImpl conFac = new ConnectionFactoryConcurrentImpl();
+        final JdbcConnectionDescriptor jcd = createDescriptor("test_concurrentPoolReturnAbandoned");
+        jcd.getConnectionPoolDescriptor().setMaxActive(0);
+        jcd.getConnectionPoolDescriptor().setMaxIdle(-1);
+        jcd.getConnectionPoolDescriptor().setRemoveAbandoned(true);
+        jcd.getConnectionPoolDescriptor().setRemoveAbandonedTimeout(1);
+        // the validation widens the gap between the check of the state and the return
+        jcd.getConnectionPoolDescriptor().setTestOnReturn(true);
+        jcd.getConnectionPoolDescriptor().setValidationQuery("select count(*) from OJB_HL_SEQ");
+        final int count = 50;
+        try
+        {
+            ConcurrentConnectionPool pool = conFac.getConnectionPool(jcd);
+            // the race is not deterministic, repeat it
+            for (int round = 0; round < 3; round++)
+            {
+                final Connection[] cons = new Connection[count];
+                for (int i = 0; i < count; i++)
+                {
+                    cons[i] = conFac.lookupConnection(jcd);
+                }
+                long destroyed = pool.getDestroyedCount();
+                Thread.sleep(1100);
+                Thread returner = new Thread()
+                {
+                    public void run()
+                    {
+                        for (int i = 0; i < count; i++)
+                        {
+                            conFac.releaseConnection(jcd, cons[i]);
+                        }
+                    }
+                };
+                returner.start();
+                pool.runHouseKeeping();
+                returner.join();
+
+                // each connection was either returned or removed, never both
+                assertEquals(0, pool.getActiveCount());
+                assertEquals(count, pool.getTotalCount() + pool.getDestroyedCount() - destroyed);
+                int idle = pool.getTotalCount();
+                for (int i = 0; i < idle; i++)
+                {
+                    cons[i] = conFac.lookupConnection(jcd);
+                    assertFalse("closed connection was borrowed", cons[i].isClosed());
+                }
+                assertEquals(idle, pool.getTotalCount());
+                for (int i = 0; i < idle; i++)
+                {
+                    conFac.releaseConnection(jcd, cons[i]);
+                }
+                assertEquals(0, pool.getActiveCount());
+            }
+        }
+        finally
+        {
+            conFac.releaseAllResources();
+        }
+    }
+
+    /**
+     * Borrow and return connections concurrently.
+     */
+    public void testConcurrentConnectionPoolMultithreaded() throws Exception
+    {
+        final ConnectionFactoryConcurrentImpl conFac = new ConnectionFactoryConcurrentImpl();
+        final JdbcConnectionDescriptor jcd = createDescriptor("test_concurrentPoolThreads");
+        jcd.getConnectionPoolDescriptor().setMaxActive(3);
+        jcd.getConnectionPoolDescriptor().setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+        jcd.getConnectionPoolDescriptor().setMaxWait(10000);
+        final int loops = 200;
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[8];
+        try
+        {
+            for (int i = 0; i < threads.length; i++)
+            {
+                threads[i] = new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            for (int k = 0; k < loops; k++)
+                            {
+                                Connection con = conFac.lookupConnection(jcd);
+                                assertFalse(con.isClosed());
+                                conFac.releaseConnection(jcd, con);
+                            }
+                        }
+                        catch (Throwable e)
+                        {
+                            failure[0] = e;
+                        }
+                    }
+                };
+                threads[i].start();
+            }
+            for (int i = 0; i < threads.length; i++)
+            {
+                threads[i].join();
+            }
+            if (failure[0] != null)
+            {
+                throw new RuntimeException("Borrow of connection failed", failure[0]);
+            }
+            ConcurrentConnectionPool pool = conFac.getConnectionPool(jcd);
+            assertEquals(threads.length * loops, pool.getBorrowCount());
+            assertEquals(0, pool.getActiveCount());
+            assertTrue(pool.getTotalCount() <= 3);
+        }
+        finally
+        {
+            conFac.releaseAllResources();
+        }
+    }
+
+    private JdbcConnectionDescriptor createDescriptor(String alias)
+    {
+        JdbcConnectionDescriptor jcd = (JdbcConnectionDescriptor) SerializationUtils.clone(
+                broker.serviceConnectionManager().getConnectionDescriptor());
+        jcd.setJcdAlias(alias);
+        MetadataManager.getInstance().connectionRepository().addDescriptor(jcd);
+        return jcd;
+    }
+
+    /**
+     * Test the per connection statement cache of the ConnectionFactoryPooledImpl.
+     */
+    public void testStatementCache() throws Exception
+    {
+        ConnectionFactoryPooledImpl conFac = new ConnectionFactoryPooledImpl();
+        JdbcConnectionDescriptor jcd = (JdbcConnectionDescriptor) SerializationUtils.clone(
+                broker.serviceConnectionManager().getConnectionDescriptor());
+        jcd.setJcdAlias("test_statementCache");
+        jcd.getConnectionPoolDescriptor().setStatementCacheSize(2);
+        jcd.getConnectionPoolDescriptor().setMaxActive(1);
+        MetadataManager.getInstance().connectionRepository().addDescriptor(jcd);
+        try
+        {
+            Connection con = conFac.lookupConnection(jcd);
+            StatementCache cache = conFac.getStatementCache(con);
+            assertNotNull(cache);
+            assertEquals(2, cache.getMaxSize());
+
+            String sql = "select count(*) from Artikel";
+            PreparedStatement stmt = checkOut(cache, con, sql, ResultSet.TYPE_FORWARD_ONLY);
+            // a statement in use is never handed out twice
+            PreparedStatement stmt2 = checkOut(cache, con, sql, ResultSet.TYPE_FORWARD_ONLY);
+            assertNotSame(stmt, stmt2);
+            assertTrue(cache.checkIn(stmt));
+            assertTrue(cache.checkIn(stmt2));
+            assertEquals(1, cache.size());
+            assertEquals(0, cache.getHitCount());
+            assertEquals(2, cache.getMissCount());
+
+            assertSame(stmt, checkOut(cache, con, sql, ResultSet.TYPE_FORWARD_ONLY));
+            assertEquals(1, cache.getHitCount());
+            // different result set type, different key
+            PreparedStatement scrollable = checkOut(cache, con, sql, ResultSet.TYPE_SCROLL_INSENSITIVE);
+            assertNotSame(stmt, scrollable);
+            assertTrue(cache.checkIn(stmt));
+            assertTrue(cache.checkIn(scrollable));
+            assertEquals(2, cache.size());
+            assertFalse("Statement not managed by the cache", cache.checkIn(con.prepareStatement(sql)));
+
+            // least recently used statement is evicted
+            PreparedStatement other = checkOut(cache, con, sql + " where 1=1", ResultSet.TYPE_FORWARD_ONLY);
+            assertTrue(cache.checkIn(other));
+            assertEquals(2, cache.size());
+            assertSame(scrollable, checkOut(cache, con, sql, ResultSet.TYPE_SCROLL_INSENSITIVE));
+            assertSame(other, checkOut(cache, con, sql + " where 1=1", ResultSet.TYPE_FORWARD_ONLY));
+            assertNotSame(stmt, checkOut(cache, con, sql, ResultSet.TYPE_FORWARD_ONLY));
+
+            // statements not returned before the connection is released are discarded
+            conFac.releaseConnection(jcd, con);
+            Connection con2 = conFac.lookupConnection(jcd);
+            assertSame(con, con2);
+            assertSame(cache, conFac.getStatementCache(con2));
+            assertNull(cache.checkOut(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY));
+            assertFalse(cache.checkIn(scrollable));
+            conFac.releaseConnection(jcd, con2);
+
+            // destroyed connections close all cached statements
+            conFac.releaseAllResources();
+            assertEquals(0, cache.size());
+            assertNull(conFac.getStatementCache(con));
+        }
+        finally
+        {
+            conFac.releaseAllResources();
+        }
+    }
+
+    /**
+     * Statements created by the JDBC 1.0 fallback are forward only, even if
+     * a scrollable statement was requested.
+     */
+    public void testStatementCacheJdbc1() throws Exception
+    {
+        JdbcConnectionDescriptor jcd = (JdbcConnectionDescriptor) SerializationUtils.clone(
+                broker.serviceConnectionManager().getConnectionDescriptor());
+        jcd.setJdbcLevel("1.0");
+        final StatementCache cache = new StatementCache(2);
+        StatementsForClassImpl statements = new StatementsForClassImpl(jcd, broker.getClassDescriptor(Article.class))
+        {
+            protected StatementCache getStatementCache(Connection con)
+            {
+                return cache;
+            }
+        };
+        Connection con = broker.serviceConnectionManager().getConnection();
+        String sql = "select count(*) from Artikel";
+        PreparedStatement stmt = statements.getPreparedStmt(con, sql, true, 0, false);
+        assertTrue(cache.checkIn(stmt));
+        assertNull(cache.checkOut(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY));
+        assertSame(stmt, statements.getPreparedStmt(con, sql, false, 0, false));
+        cache.clear();
+    }
+
+    private PreparedStatement checkOut(StatementCache cache, Connection con, String sql, int type)
+            throws Exception
+    {
+        PreparedStatement stmt = cache.checkOut(sql, type, ResultSet.CONCUR_READ_ONLY);
+        if (stmt == null)
+        {
+            stmt = con.prepareStatement(sql, type, ResultSet.CONCUR_READ_ONLY);
+            cache.register(stmt, sql, type, ResultSet.CONCUR_READ_ONLY);
+        }
+        // the statement has to be usable
+        ResultSet rs = stmt.executeQuery();
+        assertTrue(rs.next());
+        rs.close();
+        return stmt;
+    }
+
     /**
      * Insert the method's description here.
      * Creation date: (06.12.2000 21:58:53)
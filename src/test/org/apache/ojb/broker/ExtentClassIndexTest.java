@@ -0,0 +1,120 @@
+package org.apache.ojb.broker;
+
+import org.apache.ojb.broker.core.ExtentClassIndex;
+import org.apache.ojb.broker.core.ExtentClassIndexDefaultImpl;
+import org.apache.ojb.broker.core.ExtentClassIndexFactory;
+import org.apache.ojb.junit.PBTestCase;
+
+/**
+ * Tests the lookup of objects of extent classes using the {@link ExtentClassIndex}.
+ *
+ * @version $Id$
+ */
+public class ExtentClassIndexTest extends PBTestCase
+{
+    public static void main(String[] args)
+    {
+        String[] arr = {ExtentClassIndexTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public ExtentClassIndexTest(String name)
+    {
+        super(name);
+    }
+
+    public void testLookupByIndex()
+    {
+        ExtentClassIndex index = getIndex();
+        CdArticle cd = storeCd("testLookupByIndex_" + System.currentTimeMillis());
+        Identity oid = broker.serviceIdentity().buildIdentity(cd);
+        assertEquals(CdArticle.class, index.lookup(oid));
+
+        long savedProbes = index.getSavedProbes();
+        broker.clearCache();
+        Object result = broker.getObjectByIdentity(interfaceIdentity(cd));
+        assertTrue(result instanceof CdArticle);
+        assertEquals(cd.getArticleName(), ((CdArticle) result).getArticleName());
+        // the tables of Article and BookArticle are not probed
+        assertTrue(index.getSavedProbes() > savedProbes);
+    }
+
+    public void testRegisterOnMaterialization()
+    {
+        ExtentClassIndex index = getIndex();
+        CdArticle cd = storeCd("testRegisterOnMaterialization_" + System.currentTimeMillis());
+        Identity oid = broker.serviceIdentity().buildIdentity(cd);
+        index.remove(oid);
+
+        broker.clearCache();
+        assertTrue(broker.getObjectByIdentity(interfaceIdentity(cd)) instanceof CdArticle);
+        assertEquals(CdArticle.class, index.lookup(oid));
+    }
+
+    public void testOutdatedEntry()
+    {
+        ExtentClassIndex index = getIndex();
+        CdArticle cd = storeCd("testOutdatedEntry_" + System.currentTimeMillis());
+        Identity oid = broker.serviceIdentity().buildIdentity(cd);
+        index.register(oid, BookArticle.class);
+
+        broker.clearCache();
+        assertTrue(broker.getObjectByIdentity(interfaceIdentity(cd)) instanceof CdArticle);
+        assertEquals(CdArticle.class, index.lookup(oid));
+    }
+
+    public void testDelete()
+    {
+        ExtentClassIndex index = getIndex();
+        CdArticle cd = storeCd("testDelete_" + System.currentTimeMillis());
+        Identity oid = broker.serviceIdentity().buildIdentity(cd);
+        assertNotNull(index.lookup(oid));
+
+        broker.beginTransaction();
+        broker.delete(cd);
+        broker.commitTransaction();
+        assertNull(index.lookup(oid));
+        assertNull(broker.getObjectByIdentity(interfaceIdentity(cd)));
+    }
+
+    public void testBounded()
+    {
+        ExtentClassIndexDefaultImpl index = new ExtentClassIndexDefaultImpl("test", 2);
+        Identity[] oids = new Identity[3];
+        for (int i = 0; i < oids.length; i++)
+        {
+            oids[i] = broker.serviceIdentity().buildIdentity(CdArticle.class, new Integer(i + 1));
+            index.register(oids[i], CdArticle.class);
+        }
+        assertEquals(2, index.size());
+        assertNull(index.lookup(oids[0]));
+        assertEquals(CdArticle.class, index.lookup(oids[2]));
+        assertEquals(1, index.getHits());
+        assertEquals(1, index.getMisses());
+    }
+
+    private ExtentClassIndex getIndex()
+    {
+        ExtentClassIndex index = ExtentClassIndexFactory.getIndex(broker.getPBKey().getAlias());
+        assertNotNull("ExtentClassIndexSize isn't set in OJB.properties", index);
+        return index;
+    }
+
+    /**
+     * Returns the identity of the given article without the concrete class.
+     */
+    private Identity interfaceIdentity(CdArticle cd)
+    {
+        return broker.serviceIdentity().buildIdentity(InterfaceArticle.class, cd.getArticleId());
+    }
+
+    private CdArticle storeCd(String name)
+    {
+        CdArticle cd = new CdArticle();
+        cd.setArticleName(name);
+        broker.beginTransaction();
+        broker.store(cd);
+        broker.commitTransaction();
+        return cd;
+    }
+}
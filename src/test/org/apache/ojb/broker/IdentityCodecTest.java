@@ -0,0 +1,147 @@
+package org.apache.ojb.broker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.ojb.broker.core.IdentityCodec;
+import org.apache.ojb.broker.locking.LockManagerRemoteImpl;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
+import org.apache.ojb.broker.metadata.MetadataManager;
+import org.apache.ojb.junit.OJBTestCase;
+
+/**
+ * Tests the compact binary {@link IdentityCodec} and compares it with
+ * the former GZIP compressed java serialization of {@link Identity}.
+ *
+ * @version $Id$
+ */
+public class IdentityCodecTest extends OJBTestCase
+{
+    public IdentityCodecTest(String name)
+    {
+        super(name);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] arr = {IdentityCodecTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public void testRoundTrip()
+    {
+        DescriptorRepository repository = MetadataManager.getInstance().getRepository();
+        IdentityCodec[] codecs = new IdentityCodec[]{IdentityCodec.DEFAULT, new IdentityCodec(repository)};
+        Identity[] oids = new Identity[]{
+            new Identity(Article.class, InterfaceArticle.class, new Object[]{new Integer(42)}),
+            new Identity(Article.class, InterfaceArticle.class, new Object[]{new Long(-5000000000L)}, true),
+            new Identity(null, Article.class, new Object[]{new Integer(1)}),
+            new Identity(Article.class, Article.class, new Object[]{"key_\u00e4\u00f6\u00fc", new BigDecimal("-12.340"),
+                    new Timestamp(123456789L), null, Boolean.TRUE, new Double(1.5), new byte[]{1, 2, 3}}),
+            new Identity(IdentityCodecTest.class, IdentityCodecTest.class, new Object[]{new Short((short) 3), java.util.Locale.GERMANY})
+        };
+        for(int i = 0; i < codecs.length; i++)
+        {
+            for(int k = 0; k < oids.length; k++)
+            {
+                Identity result = codecs[i].decode(codecs[i].encode(oids[k]));
+                assertEquals(oids[k], result);
+                assertEquals(oids[k].hashCode(), result.hashCode());
+                assertEquals(oids[k].getObjectsRealClass(), result.getObjectsRealClass());
+                assertEquals(oids[k].isTransient(), result.isTransient());
+            }
+        }
+        Object[] values = oids[3].getPrimaryKeyValues();
+        Object[] decoded = IdentityCodec.DEFAULT.decode(IdentityCodec.DEFAULT.encode(oids[3])).getPrimaryKeyValues();
+        assertEquals(values[1], decoded[1]);
+        assertEquals(values[2], decoded[2]);
+    }
+
+    public void testRegistry()
+    {
+        IdentityCodec codec = new IdentityCodec(MetadataManager.getInstance().getRepository());
+        Identity oid = new Identity(Article.class, InterfaceArticle.class, new Object[]{new Integer(42)});
+        byte[] bytes = codec.encode(oid);
+        assertTrue("class ids should be shorter than class names",
+                bytes.length < IdentityCodec.DEFAULT.encode(oid).length);
+        try
+        {
+            IdentityCodec.DEFAULT.decode(bytes);
+            fail("Registry mismatch not detected");
+        }
+        catch(PersistenceBrokerException expected)
+        {
+            // expected
+        }
+        // class name based form can be read by every codec
+        assertEquals(oid, codec.decode(IdentityCodec.DEFAULT.encode(oid)));
+    }
+
+    public void testDeprecatedSerialization() throws Exception
+    {
+        Identity oid = new Identity(Article.class, InterfaceArticle.class, new Object[]{new Integer(42)});
+        assertEquals(oid, Identity.fromByteArray(oid.serialize()));
+        // the former GZIP form can still be read
+        assertEquals(oid, Identity.fromByteArray(gzipSerialize(oid)));
+    }
+
+    public void testLockInfo()
+    {
+        Identity oid = new Identity(Article.class, InterfaceArticle.class, new Object[]{new Integer(42)});
+        LockManagerRemoteImpl.LockInfo info = new LockManagerRemoteImpl.LockInfo("tx", oid, 2, LockManagerRemoteImpl.METHOD_READ_LOCK);
+        LockManagerRemoteImpl.LockInfo result = (LockManagerRemoteImpl.LockInfo)
+                SerializationUtils.deserialize(SerializationUtils.serialize(info));
+        assertEquals(oid, result.resourceId);
+        assertEquals("tx", result.key);
+        assertEquals(2, result.isolationLevel);
+
+        info = new LockManagerRemoteImpl.LockInfo("tx", "resource", LockManagerRemoteImpl.METHOD_READ_LOCK);
+        result = (LockManagerRemoteImpl.LockInfo) SerializationUtils.deserialize(SerializationUtils.serialize(info));
+        assertEquals("resource", result.resourceId);
+    }
+
+    /**
+     * The codec is more compact than the former GZIP compressed java serialization,
+     * the speed of both is compared by the IdentityCodecRoundTrip and IdentityGzipRoundTrip
+     * benchmarks of {@link org.apache.ojb.compare.OJBBenchmarks}.
+     */
+    public void testCodecSize() throws Exception
+    {
+        IdentityCodec codec = new IdentityCodec(MetadataManager.getInstance().getRepository());
+        Identity oid = new Identity(Article.class, InterfaceArticle.class,
+                new Object[]{new Integer(4711), new Long(1234567L)});
+        byte[] bytes = codec.encode(oid);
+        byte[] gzipBytes = gzipSerialize(oid);
+        assertTrue(bytes.length < gzipBytes.length);
+        assertEquals(oid, codec.decode(bytes));
+        assertEquals(oid, gzipDeserialize(gzipBytes));
+    }
+
+    /**
+     * The former implementation of {@link Identity#serialize()}.
+     */
+    private byte[] gzipSerialize(Identity oid) throws Exception
+    {
+        ByteArrayOutputStream bao = new ByteArrayOutputStream();
+        GZIPOutputStream gos = new GZIPOutputStream(bao);
+        ObjectOutputStream oos = new ObjectOutputStream(gos);
+        oos.writeObject(oid);
+        oos.close();
+        return bao.toByteArray();
+    }
+
+    private Identity gzipDeserialize(byte[] bytes) throws Exception
+    {
+        ObjectInputStream ois = new ObjectInputStream(new GZIPInputStream(new ByteArrayInputStream(bytes)));
+        Identity result = (Identity) ois.readObject();
+        ois.close();
+        return result;
+    }
+}
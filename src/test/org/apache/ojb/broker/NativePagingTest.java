@@ -0,0 +1,310 @@
+package org.apache.ojb.broker;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.ojb.broker.accesslayer.OJBIterator;
+import org.apache.ojb.broker.accesslayer.PagingIterator;
+import org.apache.ojb.broker.accesslayer.sql.SqlSelectStatement;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
+import org.apache.ojb.broker.metadata.MetadataManager;
+import org.apache.ojb.broker.platforms.Platform;
+import org.apache.ojb.broker.platforms.PlatformDb2Impl;
+import org.apache.ojb.broker.platforms.PlatformDefaultImpl;
+import org.apache.ojb.broker.platforms.PlatformDerbyImpl;
+import org.apache.ojb.broker.platforms.PlatformHsqldbImpl;
+import org.apache.ojb.broker.platforms.PlatformMsSQLServer2012Impl;
+import org.apache.ojb.broker.platforms.PlatformMsSQLServerImpl;
+import org.apache.ojb.broker.platforms.PlatformMySQLImpl;
+import org.apache.ojb.broker.platforms.PlatformOracle9iImpl;
+import org.apache.ojb.broker.platforms.PlatformPostgreSQLImpl;
+import org.apache.ojb.broker.query.Criteria;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryByCriteria;
+import org.apache.ojb.broker.query.QueryFactory;
+import org.apache.ojb.broker.query.ReportQueryByCriteria;
+import org.apache.ojb.broker.util.SqlHelper;
+import org.apache.ojb.junit.PBTestCase;
+
+/**
+ * Tests the paging SQL of the platforms and the {@link PagingIterator}
+ * for queries paged by the database.
+ *
+ * @version $Id$
+ */
+public class NativePagingTest extends PBTestCase
+{
+    private DescriptorRepository repository;
+    private List bound;
+
+    public NativePagingTest(String name)
+    {
+        super(name);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] arr = {NativePagingTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        repository = MetadataManager.getInstance().getRepository();
+        bound = new ArrayList();
+    }
+
+    public void testIsNativePaging()
+    {
+        Platform platform = new PlatformHsqldbImpl();
+        QueryByCriteria query = newQuery(ProductGroup.class);
+        assertFalse(SqlHelper.isNativePaging(platform, query, repository));
+        query.setEndAtIndex(10);
+        assertTrue(SqlHelper.isNativePaging(platform, query, repository));
+        assertFalse(SqlHelper.isNativePaging(new PlatformDefaultImpl(), query, repository));
+
+        // extents spanning multiple tables are skipped by iteration
+        query = newQuery(Article.class);
+        query.setStartAtIndex(5);
+        assertFalse(SqlHelper.isNativePaging(platform, query, repository));
+        query.setWithExtents(false);
+        assertTrue(SqlHelper.isNativePaging(platform, query, repository));
+    }
+
+    public void testPagingSql()
+    {
+        String sql = getSql(new PlatformDefaultImpl(), 0, 0);
+        assertEquals(sql, getSql(new PlatformDefaultImpl(), 11, 20));
+        assertEquals(sql, getSql(new PlatformHsqldbImpl(), 0, 0));
+        // SQL Server supports OFFSET/FETCH since 2012
+        assertEquals(sql, getSql(new PlatformMsSQLServerImpl(), 11, 20));
+
+        assertEquals(sql + " LIMIT ?,?", getSql(new PlatformMySQLImpl(), 11, 20));
+        assertEquals(sql + " LIMIT ? OFFSET ?", getSql(new PlatformPostgreSQLImpl(), 11, 20));
+        assertEquals(sql + " LIMIT ? OFFSET ?", getSql(new PlatformHsqldbImpl(), 11, 20));
+        assertEquals(sql + " OFFSET ? ROWS FETCH NEXT ? ROWS ONLY", getSql(new PlatformDerbyImpl(), 11, 20));
+        assertEquals(sql + " ORDER BY 1 OFFSET ? ROWS FETCH NEXT ? ROWS ONLY",
+                getSql(new PlatformMsSQLServer2012Impl(), 11, 20));
+        assertEquals("SELECT * FROM (SELECT OJB_PAGED.*, ROWNUM OJB_ROWNUM FROM (" + sql
+                + ") OJB_PAGED WHERE ROWNUM <= ?) WHERE OJB_ROWNUM > ?", getSql(new PlatformOracle9iImpl(), 11, 20));
+        assertTrue(getSql(new PlatformDb2Impl(), 11, 20).endsWith(
+                " FROM (" + sql + ") AS OJB_PAGED) AS OJB_PAGE WHERE OJB_ROWNUM BETWEEN ? AND ? ORDER BY OJB_ROWNUM"));
+    }
+
+    public void testOrderedPagingSql()
+    {
+        QueryByCriteria query = newQuery(ProductGroup.class);
+        query.addOrderByAscending("groupName");
+        query.setEndAtIndex(10);
+        String sql = new SqlSelectStatement(new PlatformMsSQLServer2012Impl(),
+                repository.getDescriptorFor(ProductGroup.class), query, null).getStatement();
+        assertTrue(sql, sql.endsWith(" ORDER BY 2 OFFSET ? ROWS FETCH NEXT ? ROWS ONLY"));
+
+        // the row numbers follow the order of the query
+        sql = new SqlSelectStatement(new PlatformDb2Impl(),
+                repository.getDescriptorFor(ProductGroup.class), query, null).getStatement();
+        assertTrue(sql, sql.startsWith(
+                "SELECT * FROM (SELECT OJB_PAGED.*, ROW_NUMBER() OVER(ORDER BY ORDER OF OJB_PAGED) AS OJB_ROWNUM"));
+        assertTrue(sql, sql.endsWith(" ORDER BY 2) AS OJB_PAGED) AS OJB_PAGE"
+                + " WHERE OJB_ROWNUM BETWEEN ? AND ? ORDER BY OJB_ROWNUM"));
+    }
+
+    public void testPagingSqlSameColumnNames()
+    {
+        ReportQueryByCriteria query = newReportQuery();
+        query.setStartAtIndex(2);
+        query.setEndAtIndex(4);
+        ClassDescriptor cld = repository.getDescriptorFor(Person.class);
+        String columns = "SELECT A0.ID,A0.LASTNAME,A2.ID,A2.TITLE FROM ";
+        String sql = new SqlSelectStatement(new PlatformHsqldbImpl(), cld, query, null).getStatement();
+        assertTrue(sql, sql.startsWith(columns));
+
+        // the statement is wrapped, so the columns of the same name get unique aliases
+        String aliased = "SELECT A0.ID,A0.LASTNAME,A2.ID AS OJB_COL3,A2.TITLE FROM ";
+        sql = new SqlSelectStatement(new PlatformOracle9iImpl(), cld, query, null).getStatement();
+        assertTrue(sql, sql.startsWith("SELECT * FROM (SELECT OJB_PAGED.*, ROWNUM OJB_ROWNUM FROM (" + aliased));
+        sql = new SqlSelectStatement(new PlatformDb2Impl(), cld, query, null).getStatement();
+        assertTrue(sql, sql.indexOf(" FROM (" + aliased) > 0);
+    }
+
+    public void testPagedReportQuerySameColumnNames()
+    {
+        ReportQueryByCriteria query = newReportQuery();
+        List all = new ArrayList();
+        Iterator it = broker.getReportQueryIteratorByQuery(query);
+        while (it.hasNext())
+        {
+            all.add(it.next());
+        }
+        assertTrue(all.size() > 4);
+
+        query = newReportQuery();
+        query.setStartAtIndex(2);
+        query.setEndAtIndex(4);
+        it = broker.getReportQueryIteratorByQuery(query);
+        int count = 0;
+        while (it.hasNext())
+        {
+            Object[] row = (Object[]) it.next();
+            Object[] expected = (Object[]) all.get(count + 1);
+            for (int i = 0; i < expected.length; i++)
+            {
+                assertEquals(expected[i], row[i]);
+            }
+            count++;
+        }
+        assertEquals(3, count);
+    }
+
+    public void testBindPagingParameters() throws Exception
+    {
+        assertBinding(new PlatformMySQLImpl(), 11, 20, "10,10");
+        assertBinding(new PlatformPostgreSQLImpl(), 11, 20, "10,10");
+        assertBinding(new PlatformHsqldbImpl(), 1, 5, "5,0");
+        assertBinding(new PlatformDerbyImpl(), 11, 20, "10,10");
+        assertBinding(new PlatformMsSQLServer2012Impl(), 11, 20, "10,10");
+        assertBinding(new PlatformOracle9iImpl(), 11, 20, "20,10");
+        assertBinding(new PlatformDb2Impl(), 11, 20, "11,20");
+        // no end index
+        assertBinding(new PlatformOracle9iImpl(), 11, Integer.MAX_VALUE, Integer.MAX_VALUE + ",10");
+    }
+
+    public void testPagingIterator()
+    {
+        // the wrapped iterator contains the rows 11 - 15 of 15 rows
+        PagingIterator it = new PagingIterator(new PageIterator(11, 15, 15), 11, 20, true);
+        assertEquals(15, it.fullSize());
+        assertEquals(5, it.size());
+        int count = 0;
+        while (it.hasNext())
+        {
+            assertEquals(new Integer(11 + count), it.next());
+            count++;
+        }
+        assertEquals(5, count);
+
+        // start index after the last row
+        it = new PagingIterator(new PageIterator(1, 0, 15), 21, Query.NO_END_AT_INDEX, true);
+        assertEquals(0, it.size());
+        assertFalse(it.hasNext());
+    }
+
+    private QueryByCriteria newQuery(Class clazz)
+    {
+        Criteria crit = new Criteria();
+        crit.addGreaterThan("groupId", new Integer(0));
+        return QueryFactory.newQuery(clazz, crit);
+    }
+
+    /**
+     * Report query selecting the column ID of the joined tables of person and project.
+     */
+    private ReportQueryByCriteria newReportQuery()
+    {
+        Criteria crit = new Criteria();
+        crit.addGreaterThan("projects.id", new Integer(0));
+        ReportQueryByCriteria query = QueryFactory.newReportQuery(Person.class, crit);
+        query.setAttributes(new String[]{"id", "lastname", "projects.id", "projects.title"});
+        query.addOrderByAscending("id");
+        query.addOrderByAscending("projects.id");
+        return query;
+    }
+
+    private String getSql(Platform platform, int startAt, int endAt)
+    {
+        QueryByCriteria query = newQuery(ProductGroup.class);
+        query.setStartAtIndex(startAt);
+        query.setEndAtIndex(endAt);
+        ClassDescriptor cld = repository.getDescriptorFor(ProductGroup.class);
+        return new SqlSelectStatement(platform, cld, query, null).getStatement();
+    }
+
+    private void assertBinding(Platform platform, int startAt, int endAt, String expected) throws Exception
+    {
+        bound.clear();
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{PreparedStatement.class}, new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        if (method.getName().equals("setInt"))
+                        {
+                            bound.add(args[1]);
+                        }
+                        return null;
+                    }
+                });
+        assertEquals(5, platform.bindPagingParameters(ps, 3, startAt, endAt));
+        assertEquals(expected, bound.get(0) + "," + bound.get(1));
+    }
+
+    /**
+     * Iterator over the rows of a page, the rows are represented by their row number.
+     */
+    static class PageIterator implements OJBIterator
+    {
+        private final Iterator rows;
+        private final int fullSize;
+
+        PageIterator(int first, int last, int fullSize)
+        {
+            List list = new ArrayList();
+            for (int i = first; i <= last; i++)
+            {
+                list.add(new Integer(i));
+            }
+            this.rows = list.iterator();
+            this.fullSize = fullSize;
+        }
+
+        public boolean hasNext()
+        {
+            return rows.hasNext();
+        }
+
+        public Object next()
+        {
+            return rows.next();
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        public int size()
+        {
+            throw new UnsupportedOperationException("size of the page is calculated by the PagingIterator");
+        }
+
+        public int fullSize()
+        {
+            return fullSize;
+        }
+
+        public boolean absolute(int row)
+        {
+            return false;
+        }
+
+        public boolean relative(int row)
+        {
+            return false;
+        }
+
+        public void releaseDbResources()
+        {
+        }
+
+        public void disableLifeCycleEvents()
+        {
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.apache.ojb.broker;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.SerializationUtils;
+import org.apache.ojb.broker.core.NumericIdentity;
+import org.apache.ojb.junit.OJBTestCase;
+
+/**
+ * Tests the compact {@link NumericIdentity} against the common {@link Identity}.
+ *
+ * @version $Id$
+ */
+public class NumericIdentityTest extends OJBTestCase
+{
+    public NumericIdentityTest(String name)
+    {
+        super(name);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] arr = {NumericIdentityTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public void testCreation()
+    {
+        assertTrue(build(new Integer(1), false) instanceof NumericIdentity);
+        assertTrue(build(new Long(1), false) instanceof NumericIdentity);
+        assertTrue(build(new Short((short) 1), true) instanceof NumericIdentity);
+        assertFalse(build("1", false) instanceof NumericIdentity);
+        assertFalse(NumericIdentity.newIdentity(Article.class, InterfaceArticle.class,
+                new Object[]{new Integer(1), new Integer(2)}, false) instanceof NumericIdentity);
+    }
+
+    public void testPrimaryKeyValues()
+    {
+        NumericIdentity oid = (NumericIdentity) build(new Short((short) 3), false);
+        Object[] values = oid.getPrimaryKeyValues();
+        assertEquals(1, values.length);
+        assertEquals(new Short((short) 3), values[0]);
+        assertEquals(values[0], oid.getPrimaryKeyValue());
+        // the identity doesn't keep the array, it's created on each call
+        assertNotSame(values, oid.getPrimaryKeyValues());
+    }
+
+    public void testInterchangeability()
+    {
+        Object[] values = new Object[]{new Integer(42), new Integer(-7), new Long(42), new Long(Long.MAX_VALUE),
+                new Long(-3000000000L), new Short((short) 42), new Byte((byte) 42)};
+        for(int i = 0; i < values.length; i++)
+        {
+            for(int k = 0; k < 2; k++)
+            {
+                boolean isTransient = k == 1;
+                Identity compact = build(values[i], isTransient);
+                Identity common = new Identity(Article.class, InterfaceArticle.class, new Object[]{values[i]}, isTransient);
+                assertEquals(common, compact);
+                assertEquals(compact, common);
+                assertEquals(common.hashCode(), compact.hashCode());
+                assertEquals(common.toString(), compact.toString());
+                assertEquals(values[i], compact.getPrimaryKeyValues()[0]);
+
+                Map map = new HashMap();
+                map.put(common, "value");
+                assertEquals("value", map.get(compact));
+            }
+        }
+        // the type of the values matters as for common identities
+        assertFalse(build(new Integer(42), false).equals(build(new Long(42), false)));
+        assertFalse(build(new Integer(42), false).equals(build(new Integer(42), true)));
+        assertFalse(build(new Integer(42), false).equals(build(new Integer(43), false)));
+        assertFalse(build(new Integer(42), false).equals(
+                new Identity(Article.class, InterfaceArticle.class, new Object[]{new Long(42)})));
+    }
+
+    public void testSerialization()
+    {
+        Identity compact = build(new Long(4711), false);
+        Identity result = (Identity) SerializationUtils.deserialize(SerializationUtils.serialize(compact));
+        assertEquals(Identity.class, result.getClass());
+        assertEquals(compact, result);
+        assertEquals(compact.hashCode(), result.hashCode());
+        assertEquals(Article.class, result.getObjectsRealClass());
+
+        result = Identity.fromByteArray(compact.serialize());
+        assertEquals(compact, result);
+    }
+
+    public void testFactory()
+    {
+        PersistenceBroker broker = PersistenceBrokerFactory.defaultPersistenceBroker();
+        try
+        {
+            Identity oid = broker.serviceIdentity().buildIdentity(Article.class, new Integer(12));
+            assertTrue(oid instanceof NumericIdentity);
+            assertEquals(new Identity(Article.class, broker.getTopLevelClass(Article.class),
+                    new Object[]{new Integer(12)}), oid);
+        }
+        finally
+        {
+            broker.close();
+        }
+    }
+
+    private Identity build(Object pk, boolean isTransient)
+    {
+        return NumericIdentity.newIdentity(Article.class, InterfaceArticle.class, new Object[]{pk}, isTransient);
+    }
+}
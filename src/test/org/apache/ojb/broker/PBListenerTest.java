@@ -2,6 +2,7 @@ package org.apache.ojb.broker;
 
 import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.ojb.junit.PBTestCase;
+import org.apache.ojb.broker.core.DelegatingPersistenceBroker;
 import org.apache.ojb.broker.query.Criteria;
 import org.apache.ojb.broker.query.QueryByCriteria;
 import org.apache.ojb.broker.query.QueryFactory;
@@ -205,6 +206,64 @@ public class PBListenerTest extends PBTestCase
         broker.commitTransaction();
     }
 
+    public void testAddRemoveLifeCycleListener()
+    {
+        PBAwareObject obj = new PBAwareObject();
+        obj.setName("testAddRemoveLifeCycleListener");
+        PBLifeCycleListenerObject listener = new PBLifeCycleListenerObject();
+        // the same listener is only notified once
+        broker.addListener(listener);
+        broker.addListener(listener);
+
+        broker.beginTransaction();
+        broker.store(obj);
+        assertEquals("insert listener call failed", 6, listener.evaluateTest());
+        // DelegatingPersistenceBroker ignores the removal of listeners
+        ((DelegatingPersistenceBroker) broker).getInnermostDelegate().removeListener(listener);
+        broker.delete(obj);
+        broker.commitTransaction();
+        assertEquals("removed listener was called", 6, listener.evaluateTest());
+    }
+
+    public void testRemoveListenerWhileNotified()
+    {
+        final String name = "testRemoveListenerWhileNotified_" + System.currentTimeMillis();
+        broker.beginTransaction();
+        for (int i = 0; i < 3; i++)
+        {
+            PBAwareObject obj = new PBAwareObject();
+            obj.setName(name);
+            broker.store(obj);
+        }
+        broker.commitTransaction();
+        broker.clearCache();
+
+        final List notified = new ArrayList();
+        PBLifeCycleListenerObject listener = new PBLifeCycleListenerObject()
+        {
+            public void afterLookup(PBLifeCycleEvent event) throws PersistenceBrokerException
+            {
+                notified.add(event.getTarget());
+                // the listener is removed while the event is fired
+                event.getTriggeringBroker().removeListener(this);
+            }
+        };
+        PBLifeCycleListenerObject listener_2 = new PBLifeCycleListenerObject();
+        broker.addListener(listener_2);
+        broker.addListener(listener);
+
+        Criteria crit = new Criteria();
+        crit.addEqualTo("name", name);
+        Collection result = broker.getCollectionByQuery(QueryFactory.newQuery(PBAwareObject.class, crit));
+        assertEquals(3, result.size());
+        assertEquals(1, notified.size());
+        assertEquals(125, listener_2.evaluateTest());
+        for (Iterator it = result.iterator(); it.hasNext();)
+        {
+            assertTrue(((PBAwareObject) it.next()).getCalledAfterLookup());
+        }
+    }
+
     public void testPBStateListener()
     {
         // This test need its own broker instance
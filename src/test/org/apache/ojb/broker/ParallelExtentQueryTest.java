@@ -0,0 +1,129 @@
+package org.apache.ojb.broker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.ojb.broker.accesslayer.OJBIterator;
+import org.apache.ojb.broker.accesslayer.ParallelExtentQueryExecutor;
+import org.apache.ojb.broker.core.DelegatingPersistenceBroker;
+import org.apache.ojb.broker.core.PersistenceBrokerConfiguration;
+import org.apache.ojb.broker.core.PersistenceBrokerImpl;
+import org.apache.ojb.broker.query.Criteria;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryBySQL;
+import org.apache.ojb.broker.query.QueryFactory;
+import org.apache.ojb.junit.PBTestCase;
+
+/**
+ * Tests the concurrent execution of the queries of extent classes. The
+ * queries are executed concurrently if <em>ExtentQueryThreads</em> is set
+ * in OJB.properties, otherwise the same results are read one after the other.
+ *
+ * @version $Id$
+ */
+public class ParallelExtentQueryTest extends PBTestCase
+{
+    public static void main(String[] args)
+    {
+        String[] arr = {ParallelExtentQueryTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public ParallelExtentQueryTest(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * ProductGroup 5 contains items from table Artikel, BOOKS and CDS.
+     */
+    public void testExtentResults()
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            Collection result = broker.getCollectionByQuery(groupQuery());
+            assertEquals(12, result.size());
+            Set classes = new HashSet();
+            for (Iterator it = result.iterator(); it.hasNext();)
+            {
+                classes.add(it.next().getClass());
+            }
+            assertEquals(3, classes.size());
+        }
+    }
+
+    public void testReleaseUnreadResults()
+    {
+        for (int i = 0; i < 20; i++)
+        {
+            Iterator it = broker.getIteratorByQuery(groupQuery());
+            assertTrue(it.hasNext());
+            assertNotNull(it.next());
+            ((OJBIterator) it).releaseDbResources();
+        }
+        assertEquals(12, broker.getCollectionByQuery(groupQuery()).size());
+    }
+
+    public void testResultsInTransaction()
+    {
+        String name = "testResultsInTransaction_" + System.currentTimeMillis();
+        broker.beginTransaction();
+        Article article = new Article();
+        article.setArticleName(name);
+        broker.store(article);
+        CdArticle cd = new CdArticle();
+        cd.setArticleName(name);
+        broker.store(cd);
+
+        // the uncommitted objects are found using the connection of the broker
+        Criteria crit = new Criteria();
+        crit.addEqualTo("articleName", name);
+        Query query = QueryFactory.newQuery(InterfaceArticle.class, crit);
+        assertFalse(getExecutor().isExecutable(query, getArticleClasses()));
+        assertEquals(2, broker.getCollectionByQuery(query).size());
+        broker.abortTransaction();
+
+        assertEquals(0, broker.getCollectionByQuery(query).size());
+    }
+
+    public void testExecutable() throws Exception
+    {
+        PersistenceBrokerConfiguration config = (PersistenceBrokerConfiguration) PersistenceBrokerFactory
+                .getConfigurator().getConfigurationFor(null);
+        ParallelExtentQueryExecutor executor = getExecutor();
+        boolean enabled = config.getExtentQueryThreads() > 0
+                && !broker.serviceConnectionManager().getConnectionDescriptor().getEagerRelease();
+
+        assertEquals(enabled, executor.isExecutable(groupQuery(), getArticleClasses()));
+        assertFalse(executor.isExecutable(groupQuery(), getArticleClasses().subList(0, 1)));
+
+        Query sqlQuery = new QueryBySQL(Article.class, "select * from Artikel");
+        assertFalse(executor.isExecutable(sqlQuery, getArticleClasses()));
+    }
+
+    private Query groupQuery()
+    {
+        Criteria crit = new Criteria();
+        crit.addEqualTo("productGroupId", new Integer(5));
+        return QueryFactory.newQuery(InterfaceArticle.class, crit);
+    }
+
+    private List getArticleClasses()
+    {
+        List result = new ArrayList();
+        result.add(broker.getClassDescriptor(Article.class));
+        result.add(broker.getClassDescriptor(BookArticle.class));
+        result.add(broker.getClassDescriptor(CdArticle.class));
+        return result;
+    }
+
+    private ParallelExtentQueryExecutor getExecutor()
+    {
+        PersistenceBrokerImpl pb = (PersistenceBrokerImpl) ((DelegatingPersistenceBroker) broker).getInnermostDelegate();
+        return new ParallelExtentQueryExecutor(pb);
+    }
+}
@@ -0,0 +1,167 @@
+package org.apache.ojb.broker;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.ojb.broker.core.proxy.IndirectionHandler;
+import org.apache.ojb.broker.core.proxy.ProxyHelper;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.junit.PBTestCase;
+
+/**
+ * Tests the materialization of the proxies created by a broker in batches.
+ *
+ * @version $Id$
+ */
+public class ProxyBatchMaterializationTest extends PBTestCase
+{
+    public static void main(String[] args)
+    {
+        String[] arr = {ProxyBatchMaterializationTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public ProxyBatchMaterializationTest(String name)
+    {
+        super(name);
+    }
+
+    public void testBatchMaterialization()
+    {
+        String name = "testBatchMaterialization_" + System.currentTimeMillis();
+        List articles = prepareArticles(name, 10);
+
+        ArticleWithReferenceProxy first = (ArticleWithReferenceProxy) articles.get(0);
+        IndirectionHandler handler = ProxyHelper.getIndirectionHandler(first.getProductGroup());
+        assertNotNull(handler);
+        assertFalse(handler.alreadyMaterialized());
+        assertEquals(name, first.getProductGroup().getName());
+
+        // the other groups are loaded, but materialized when used
+        for (int i = 1; i < articles.size(); i++)
+        {
+            ArticleWithReferenceProxy a = (ArticleWithReferenceProxy) articles.get(i);
+            handler = ProxyHelper.getIndirectionHandler(a.getProductGroup());
+            assertFalse(handler.alreadyMaterialized());
+            assertNotNull(broker.serviceObjectCache().lookup(handler.getIdentity()));
+            assertEquals(name, a.getProductGroup().getName());
+            assertTrue(handler.alreadyMaterialized());
+        }
+    }
+
+    /**
+     * The loaded objects are handed to the proxies, they are neither
+     * looked up in the cache nor read again.
+     */
+    public void testBatchMaterializationWithoutCache() throws Exception
+    {
+        String name = "testBatchMaterializationWithoutCache_" + System.currentTimeMillis();
+        List articles = prepareArticles(name, 5);
+
+        ArticleWithReferenceProxy first = (ArticleWithReferenceProxy) articles.get(0);
+        assertEquals(name, first.getProductGroup().getName());
+        for (int i = 1; i < articles.size(); i++)
+        {
+            ArticleWithReferenceProxy a = (ArticleWithReferenceProxy) articles.get(i);
+            broker.serviceObjectCache().remove(ProxyHelper.getIndirectionHandler(a.getProductGroup()).getIdentity());
+        }
+        // change the groups behind the back of the broker
+        broker.beginTransaction();
+        Statement stmt = broker.serviceConnectionManager().getConnection().createStatement();
+        stmt.executeUpdate("UPDATE Kategorien SET KategorieName='changed' WHERE KategorieName='" + name + "'");
+        stmt.close();
+        broker.commitTransaction();
+
+        for (int i = 1; i < articles.size(); i++)
+        {
+            ArticleWithReferenceProxy a = (ArticleWithReferenceProxy) articles.get(i);
+            assertEquals(name, a.getProductGroup().getName());
+        }
+    }
+
+    public void testBatchLimit()
+    {
+        String name = "testBatchLimit_" + System.currentTimeMillis();
+        ClassDescriptor cld = broker.getClassDescriptor(broker.getTopLevelClass(ProductGroup.class));
+        int oldLimit = cld.getProxyPrefetchingLimit();
+        try
+        {
+            cld.setProxyPrefetchingLimit(3);
+            List articles = prepareArticles(name, 6);
+
+            ArticleWithReferenceProxy first = (ArticleWithReferenceProxy) articles.get(0);
+            assertEquals(name, first.getProductGroup().getName());
+            for (int i = 1; i < articles.size(); i++)
+            {
+                ArticleWithReferenceProxy a = (ArticleWithReferenceProxy) articles.get(i);
+                Identity oid = ProxyHelper.getIndirectionHandler(a.getProductGroup()).getIdentity();
+                Object cached = broker.serviceObjectCache().lookup(oid);
+                if (i <= 3)
+                {
+                    assertNotNull(cached);
+                }
+                else
+                {
+                    assertNull(cached);
+                }
+            }
+        }
+        finally
+        {
+            cld.setProxyPrefetchingLimit(oldLimit);
+        }
+    }
+
+    public void testDisabled()
+    {
+        String name = "testDisabled_" + System.currentTimeMillis();
+        ClassDescriptor cld = broker.getClassDescriptor(broker.getTopLevelClass(ProductGroup.class));
+        int oldLimit = cld.getProxyPrefetchingLimit();
+        try
+        {
+            cld.setProxyPrefetchingLimit(0);
+            List articles = prepareArticles(name, 3);
+
+            ArticleWithReferenceProxy first = (ArticleWithReferenceProxy) articles.get(0);
+            assertEquals(name, first.getProductGroup().getName());
+            ArticleWithReferenceProxy second = (ArticleWithReferenceProxy) articles.get(1);
+            Identity oid = ProxyHelper.getIndirectionHandler(second.getProductGroup()).getIdentity();
+            assertNull(broker.serviceObjectCache().lookup(oid));
+        }
+        finally
+        {
+            cld.setProxyPrefetchingLimit(oldLimit);
+        }
+    }
+
+    /**
+     * Stores the articles each referencing its own product group and
+     * reads them with an empty cache. Each article is read by its own
+     * query, the proxies of the groups are not prefetched by reference.
+     */
+    private List prepareArticles(String name, int count)
+    {
+        List oids = new ArrayList();
+        broker.beginTransaction();
+        for (int i = 0; i < count; i++)
+        {
+            ProductGroup pg = new ProductGroup();
+            pg.setGroupName(name);
+            ArticleWithReferenceProxy a = new ArticleWithReferenceProxy();
+            a.setArticleName(name);
+            a.setProductGroup(pg);
+            broker.store(a);
+            oids.add(broker.serviceIdentity().buildIdentity(a));
+        }
+        broker.commitTransaction();
+        broker.clearCache();
+
+        List result = new ArrayList();
+        for (int i = 0; i < oids.size(); i++)
+        {
+            result.add(broker.getObjectByIdentity((Identity) oids.get(i)));
+        }
+        return result;
+    }
+}
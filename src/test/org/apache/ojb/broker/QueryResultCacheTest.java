@@ -0,0 +1,318 @@
+package org.apache.ojb.broker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.ojb.broker.core.QueryResultCache;
+import org.apache.ojb.broker.core.QueryResultCacheFactory;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.MetadataManager;
+import org.apache.ojb.broker.query.Criteria;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryByCriteria;
+import org.apache.ojb.broker.query.QueryFactory;
+import org.apache.ojb.broker.query.ReportQueryByCriteria;
+import org.apache.ojb.junit.PBTestCase;
+
+/**
+ * Tests the {@link QueryResultCache}.
+ *
+ * @version $Id$
+ */
+public class QueryResultCacheTest extends PBTestCase
+{
+    public static void main(String[] args)
+    {
+        String[] arr = {QueryResultCacheTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public QueryResultCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public void testCollectionQuery()
+    {
+        QueryResultCache cache = getCache();
+        String name = "testCollectionQuery_" + System.currentTimeMillis();
+        storeArticles(name, 2, null);
+
+        long hits = cache.getHits();
+        assertEquals(2, broker.getCollectionByQuery(newQuery(name)).size());
+        assertEquals(hits, cache.getHits());
+        broker.clearCache();
+        // clearing the caches must not hide new results
+        assertEquals(2, broker.getCollectionByQuery(newQuery(name)).size());
+        Collection result = broker.getCollectionByQuery(newQuery(name));
+        assertEquals(hits + 1, cache.getHits());
+        assertEquals(2, result.size());
+        for (Iterator it = result.iterator(); it.hasNext();)
+        {
+            InterfaceArticle article = (InterfaceArticle) it.next();
+            assertTrue(article.getArticleName().startsWith(name));
+        }
+
+        // the insert invalidates the result
+        storeArticles(name, 1, null);
+        assertEquals(3, broker.getCollectionByQuery(newQuery(name)).size());
+        assertEquals(hits + 1, cache.getHits());
+    }
+
+    public void testModificationWithinTransaction()
+    {
+        String name = "testModificationWithinTransaction_" + System.currentTimeMillis();
+        storeArticles(name, 2, null);
+        assertEquals(2, broker.getCollectionByQuery(newQuery(name)).size());
+
+        broker.beginTransaction();
+        Article article = Article.createInstance();
+        article.setArticleName(name + "_x");
+        broker.store(article);
+        // the cache isn't used for the modified table, the new article is found
+        assertEquals(3, broker.getCollectionByQuery(newQuery(name)).size());
+        broker.abortTransaction();
+
+        broker.clearCache();
+        assertEquals(2, broker.getCollectionByQuery(newQuery(name)).size());
+    }
+
+    public void testCountAndReportQuery()
+    {
+        QueryResultCache cache = getCache();
+        String name = "testCountAndReportQuery_" + System.currentTimeMillis();
+        storeArticles(name, 3, null);
+
+        assertEquals(3, broker.getCount(newQuery(name)));
+        long hits = cache.getHits();
+        assertEquals(3, broker.getCount(newQuery(name)));
+        assertEquals(hits + 1, cache.getHits());
+
+        ReportQueryByCriteria reportQuery = QueryFactory.newReportQuery(Article.class, newCriteria(name));
+        reportQuery.setAttributes(new String[]{"articleName"});
+        reportQuery.addOrderByAscending("articleName");
+        reportQuery.setCacheable(true);
+        assertEquals(3, countRows(broker.getReportQueryIteratorByQuery(reportQuery)));
+        Iterator rows = broker.getReportQueryIteratorByQuery(reportQuery);
+        assertEquals(hits + 2, cache.getHits());
+        Object[] row = (Object[]) rows.next();
+        assertEquals(name + "_0", row[0]);
+        row[0] = null;
+        row = (Object[]) broker.getReportQueryIteratorByQuery(reportQuery).next();
+        assertEquals("cached row was modified", name + "_0", row[0]);
+
+        broker.beginTransaction();
+        broker.deleteByQuery(QueryFactory.newQuery(Article.class, newCriteria(name)));
+        broker.commitTransaction();
+        assertEquals(0, broker.getCount(newQuery(name)));
+        assertEquals(0, countRows(broker.getReportQueryIteratorByQuery(reportQuery)));
+    }
+
+    public void testInvalidationByPath()
+    {
+        String name = "testInvalidationByPath_" + System.currentTimeMillis();
+        ProductGroup group = new ProductGroup(null, name, "a group");
+        broker.beginTransaction();
+        broker.store(group);
+        broker.commitTransaction();
+        storeArticles(name, 2, group.getGroupId());
+
+        Criteria crit = new Criteria();
+        crit.addEqualTo("productGroup.groupName", name);
+        QueryByCriteria query = QueryFactory.newQuery(Article.class, crit);
+        query.setCacheable(true);
+        QueryResultCache.Key key = QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS,
+                query, broker.getClassDescriptor(Article.class));
+        assertTrue(java.util.Arrays.asList(key.getTables()).contains("KATEGORIEN"));
+        assertEquals(2, broker.getCollectionByQuery(query).size());
+
+        group.setGroupName(name + "_renamed");
+        broker.beginTransaction();
+        broker.store(group);
+        broker.commitTransaction();
+        assertEquals(0, broker.getCollectionByQuery(query).size());
+    }
+
+    public void testQueryCacheableClass()
+    {
+        QueryResultCache cache = getCache();
+        String name = "testQueryCacheableClass_" + System.currentTimeMillis();
+        storeArticles(name, 1, null);
+        ClassDescriptor cld = broker.getClassDescriptor(Article.class);
+        Query query = QueryFactory.newQuery(Article.class, newCriteria(name));
+        broker.getCollectionByQuery(query);
+        long misses = cache.getMisses();
+        broker.getCollectionByQuery(query);
+        assertEquals("query is not cacheable", misses, cache.getMisses());
+        try
+        {
+            cld.setQueryCacheable(true);
+            assertEquals(1, broker.getCollectionByQuery(query).size());
+            long hits = cache.getHits();
+            assertEquals(1, broker.getCollectionByQuery(query).size());
+            assertEquals(hits + 1, cache.getHits());
+        }
+        finally
+        {
+            cld.setQueryCacheable(false);
+        }
+    }
+
+    public void testNotCacheable()
+    {
+        ClassDescriptor cld = broker.getClassDescriptor(Article.class);
+        Query sqlQuery = QueryFactory.newQuery(Article.class, "select * from Artikel");
+        assertNull(QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, sqlQuery, cld));
+
+        QueryByCriteria pagedQuery = newQuery("testNotCacheable");
+        pagedQuery.setStartAtIndex(1);
+        pagedQuery.setEndAtIndex(5);
+        assertNull(QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, pagedQuery, cld));
+
+        Criteria crit = newCriteria("testNotCacheable");
+        crit.addSql("Artikel_Nr > 0");
+        assertNull(QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS,
+                QueryFactory.newQuery(Article.class, crit), cld));
+    }
+
+    public void testKeyIncludesValues()
+    {
+        ClassDescriptor cld = broker.getClassDescriptor(Article.class);
+        Object key1 = QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, newQuery("a"), cld);
+        Object key2 = QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, newQuery("a"), cld);
+        Object key3 = QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, newQuery("b"), cld);
+        Object key4 = QueryResultCache.buildKey(QueryResultCache.TYPE_COUNT, newQuery("a"), cld);
+        assertEquals(key1, key2);
+        assertEquals(key1.hashCode(), key2.hashCode());
+        assertFalse(key1.equals(key3));
+        assertFalse(key1.equals(key4));
+    }
+
+    public void testKeyCopiesValues()
+    {
+        ClassDescriptor cld = broker.getClassDescriptor(Article.class);
+        java.util.Date date = new java.util.Date(1000);
+        List names = new ArrayList();
+        byte[] bytes = new byte[]{1, 2};
+        Criteria crit = new Criteria();
+        crit.addGreaterThan("articleName", date);
+        crit.addIn("articleName", names);
+        crit.addEqualTo("articleName", bytes);
+        QueryByCriteria query = QueryFactory.newQuery(Article.class, crit);
+        query.setCacheable(true);
+        Object key = QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, query, cld);
+        // arrays are compared by value
+        assertEquals(key, QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, query, cld));
+
+        // the values of the criteria are modified after the query, the key must not change
+        date.setTime(2000);
+        assertFalse(key.equals(QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, query, cld)));
+        date.setTime(1000);
+        names.add("a");
+        assertFalse(key.equals(QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, query, cld)));
+        names.clear();
+        bytes[0] = 3;
+        assertFalse(key.equals(QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, query, cld)));
+        bytes[0] = 1;
+        assertEquals(key, QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, query, cld));
+    }
+
+    public void testKeyIndependentOfMetadata()
+    {
+        ClassDescriptor cld = broker.getClassDescriptor(Article.class);
+        ClassDescriptor copy = MetadataManager.getInstance().copyOfGlobalRepository()
+                .getDescriptorFor(Article.class);
+        Object key = QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, newQuery("a"), cld);
+        // a copy of the metadata mapping the class to the same tables shares the results
+        assertEquals(key, QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, newQuery("a"), copy));
+        copy.setTableName("ARTIKEL_COPY");
+        assertFalse(key.equals(QueryResultCache.buildKey(QueryResultCache.TYPE_OBJECTS, newQuery("a"), copy)));
+    }
+
+    public void testStaleResultNotCached()
+    {
+        QueryResultCache cache = new QueryResultCache("test", 2);
+        ClassDescriptor cld = broker.getClassDescriptor(Article.class);
+        QueryResultCache.Key key = QueryResultCache.buildKey(QueryResultCache.TYPE_COUNT, newQuery("a"), cld);
+        long stamp = cache.getStamp();
+        cache.invalidate(java.util.Collections.singleton("artikel"));
+        assertFalse(cache.cache(key, stamp, new Integer(1)));
+        assertNull(cache.lookup(key));
+
+        stamp = cache.getStamp();
+        // other tables don't matter
+        cache.invalidate(java.util.Collections.singleton("Kategorien"));
+        assertTrue(cache.cache(key, stamp, new Integer(1)));
+        assertEquals(new Integer(1), cache.lookup(key));
+
+        cache.invalidate(java.util.Collections.singleton("Artikel"));
+        assertNull(cache.lookup(key));
+        assertEquals(1, cache.getInvalidations());
+        assertEquals(0, cache.size());
+    }
+
+    public void testBounded()
+    {
+        QueryResultCache cache = new QueryResultCache("test", 2);
+        ClassDescriptor cld = broker.getClassDescriptor(Article.class);
+        QueryResultCache.Key[] keys = new QueryResultCache.Key[3];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = QueryResultCache.buildKey(QueryResultCache.TYPE_COUNT, newQuery("a" + i), cld);
+            cache.cache(keys[i], cache.getStamp(), new Integer(i));
+        }
+        assertEquals(2, cache.size());
+        assertNull(cache.lookup(keys[0]));
+        assertEquals(new Integer(2), cache.lookup(keys[2]));
+        cache.invalidate(java.util.Collections.singleton("ARTIKEL"));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getInvalidations());
+    }
+
+    private QueryResultCache getCache()
+    {
+        QueryResultCache cache = QueryResultCacheFactory.getCache(broker.getPBKey().getAlias());
+        assertNotNull("QueryResultCacheSize isn't set in OJB.properties", cache);
+        return cache;
+    }
+
+    private Criteria newCriteria(String name)
+    {
+        Criteria crit = new Criteria();
+        crit.addLike("articleName", name + "%");
+        return crit;
+    }
+
+    private QueryByCriteria newQuery(String name)
+    {
+        QueryByCriteria query = QueryFactory.newQuery(Article.class, newCriteria(name));
+        query.setCacheable(true);
+        return query;
+    }
+
+    private int countRows(Iterator rows)
+    {
+        int result = 0;
+        while (rows.hasNext())
+        {
+            rows.next();
+            ++result;
+        }
+        return result;
+    }
+
+    private void storeArticles(String name, int count, Integer groupId)
+    {
+        broker.beginTransaction();
+        for (int i = 0; i < count; i++)
+        {
+            Article article = Article.createInstance();
+            article.setArticleName(name + "_" + i);
+            article.setProductGroupId(groupId);
+            broker.store(article);
+        }
+        broker.commitTransaction();
+    }
+}
@@ -0,0 +1,86 @@
+package org.apache.ojb.broker;
+
+import java.util.Map;
+
+import org.apache.ojb.broker.accesslayer.IndexedRowReader;
+import org.apache.ojb.broker.accesslayer.RowBuffer;
+import org.apache.ojb.broker.accesslayer.RowLayout;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.FieldDescriptor;
+import org.apache.ojb.broker.metadata.MetadataManager;
+import org.apache.ojb.junit.OJBTestCase;
+
+/**
+ * Tests the array based {@link RowBuffer} and its use by the default
+ * {@link org.apache.ojb.broker.accesslayer.RowReader}.
+ *
+ * @version $Id$
+ */
+public class RowBufferTest extends OJBTestCase
+{
+    public RowBufferTest(String name)
+    {
+        super(name);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] arr = {RowBufferTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public void testMapCompatibility()
+    {
+        RowLayout layout = new RowLayout(new String[]{"A", "B", "A"});
+        assertEquals(2, layout.size());
+        RowBuffer row = new RowBuffer(layout);
+        assertFalse(row.containsKey("A"));
+        row.put("A", "a");
+        row.put("X", "x");
+        assertEquals("a", row.get("A"));
+        assertEquals("x", row.get("X"));
+        assertTrue(row.containsKey("A"));
+        assertFalse(row.containsKey("B"));
+        assertEquals(2, row.size());
+        assertEquals(2, row.entrySet().size());
+
+        row.clear();
+        assertNull(row.get("A"));
+        assertNull(row.get("X"));
+        assertFalse(row.containsKey("A"));
+        assertTrue(row.isEmpty());
+
+        row.setValue(layout.indexOf("B"), null);
+        assertTrue("null values are assigned values", row.containsKey("B"));
+    }
+
+    public void testReadObjectFromBuffer()
+    {
+        ClassDescriptor cld = MetadataManager.getInstance().getRepository().getDescriptorFor(Article.class);
+        assertTrue(cld.getRowReader() instanceof IndexedRowReader);
+        Map row = RowBuffer.newRow(cld.getRowReader());
+        assertTrue(row instanceof RowBuffer);
+        RowBuffer buffer = (RowBuffer) row;
+
+        FieldDescriptor[] fields = cld.getFieldDescriptor(true);
+        int[] slots = buffer.getLayout().getSlots(fields);
+        assertSame("slots should be cached", slots, buffer.getLayout().getSlots(fields));
+        for(int i = 0; i < slots.length; i++)
+        {
+            assertTrue("column not in layout: " + fields[i].getColumnName(), slots[i] >= 0);
+        }
+
+        row.put("Artikel_Nr", new Integer(17));
+        row.put("Artikelname", "RowBufferTest");
+        Article article = (Article) cld.getRowReader().readObjectFrom(row);
+        assertEquals(17, article.getArticleId().intValue());
+        assertEquals("RowBufferTest", article.getArticleName());
+
+        // reuse the buffer for the next row
+        row.clear();
+        row.put("Artikel_Nr", new Integer(18));
+        article = (Article) cld.getRowReader().readObjectFrom(row);
+        assertEquals(18, article.getArticleId().intValue());
+        assertNull(article.getArticleName());
+    }
+}
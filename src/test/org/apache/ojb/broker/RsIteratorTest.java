@@ -59,6 +59,31 @@ public class RsIteratorTest extends TestCase
         assertEquals("Wrong number of items found", 2, k);
     }
 
+    public void testRsIteratorStreaming() throws Exception
+    {
+        String name = "testRsIteratorStreaming_" + System.currentTimeMillis();
+        prepareTest(name);
+
+        Criteria criteria = new Criteria();
+        criteria.addLike("name", name+"*");
+        Query query = new QueryByCriteria(ObjectRepository.Component.class, criteria);
+        query.setStreaming(true);
+        query.setFetchSize(1);
+
+        broker.clearCache();
+        Iterator it = broker.getIteratorByQuery(query);
+        int k = 0;
+        while(it.hasNext())
+        {
+            ObjectRepository.Component c = (ObjectRepository.Component) it.next();
+            assertNotNull(c);
+            // objects of streaming queries are not pushed to the cache
+            assertNull(broker.serviceObjectCache().lookup(broker.serviceIdentity().buildIdentity(c)));
+            k++;
+        }
+        assertEquals("Wrong number of items found", 2, k);
+    }
+
     /**
      * Test RsIterator cleanup on PB.commitTransaction()
      */
@@ -0,0 +1,216 @@
+package org.apache.ojb.broker;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.apache.ojb.broker.accesslayer.sql.SelectStatement;
+import org.apache.ojb.broker.accesslayer.sql.SelectStatementCache;
+import org.apache.ojb.broker.accesslayer.sql.SqlGeneratorDefaultImpl;
+import org.apache.ojb.broker.accesslayer.sql.SqlSelectStatement;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.metadata.DescriptorRepository;
+import org.apache.ojb.broker.metadata.FieldDescriptor;
+import org.apache.ojb.broker.metadata.MetadataManager;
+import org.apache.ojb.broker.platforms.PlatformHsqldbImpl;
+import org.apache.ojb.broker.query.Criteria;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryByCriteria;
+import org.apache.ojb.broker.query.QueryFactory;
+import org.apache.ojb.broker.query.ReportQueryByCriteria;
+import org.apache.ojb.broker.query.SelectionCriteria;
+import org.apache.ojb.junit.OJBTestCase;
+
+/**
+ * Tests the caching of select statements by the shape of the query.
+ *
+ * @version $Id$
+ */
+public class SelectStatementCacheTest extends OJBTestCase
+{
+    private DescriptorRepository repository;
+    private SqlGeneratorDefaultImpl generator;
+
+    public SelectStatementCacheTest(String name)
+    {
+        super(name);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] arr = {SelectStatementCacheTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        repository = MetadataManager.getInstance().getRepository();
+        generator = new SqlGeneratorDefaultImpl(new PlatformHsqldbImpl());
+    }
+
+    public void testSameShape()
+    {
+        SelectStatementCache cache = generator.getSelectStatementCache();
+        assertNotNull(cache);
+
+        SelectStatement first = getStatement(groupQuery(new Integer(1), "A%"));
+        SelectStatement second = getStatement(groupQuery(new Integer(2), "B%"));
+        assertEquals(first.getStatement(), second.getStatement());
+        assertTrue(second != first);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+
+        SelectStatement third = getStatement(groupQuery(new Integer(3), "C%"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2.0 / 3, cache.getHitRatio(), 0.001);
+        assertEquals(first.getStatement(), third.getStatement());
+
+        ClassDescriptor cld = repository.getDescriptorFor(ProductGroup.class);
+        FieldDescriptor[] fields = cld.getFieldDescriptions();
+        for (int i = 0; i < fields.length; i++)
+        {
+            assertEquals(first.getColumnIndex(fields[i]), third.getColumnIndex(fields[i]));
+        }
+    }
+
+    public void testDifferentShape()
+    {
+        SelectStatementCache cache = generator.getSelectStatementCache();
+        String sql = getStatement(groupQuery(new Integer(1), "A%")).getStatement();
+
+        // other operator
+        Criteria crit = new Criteria();
+        crit.addLessThan("groupId", new Integer(1));
+        crit.addLike("groupName", "A%");
+        assertFalse(sql.equals(getStatement(QueryFactory.newQuery(ProductGroup.class, crit)).getStatement()));
+
+        // order by
+        QueryByCriteria query = groupQuery(new Integer(1), "A%");
+        query.addOrderByDescending("groupName");
+        assertFalse(sql.equals(getStatement(query).getStatement()));
+
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.size());
+    }
+
+    public void testInArity()
+    {
+        SelectStatementCache cache = generator.getSelectStatementCache();
+        String sql2 = getStatement(inQuery(2)).getStatement();
+        String sql3 = getStatement(inQuery(3)).getStatement();
+        assertFalse(sql2.equals(sql3));
+        assertEquals(sql3, getStatement(inQuery(3)).getStatement());
+        assertEquals(1, cache.getHits());
+    }
+
+    public void testNotCached()
+    {
+        SelectStatementCache cache = generator.getSelectStatementCache();
+        Criteria subCrit = new Criteria();
+        subCrit.addLike("articleName", "A%");
+        ReportQueryByCriteria subQuery = QueryFactory.newReportQuery(Article.class, subCrit);
+        subQuery.setAttributes(new String[]{"productGroupId"});
+        Criteria crit = new Criteria();
+        crit.addIn("groupId", subQuery);
+        Query query = QueryFactory.newQuery(ProductGroup.class, crit);
+        assertNull(cache.buildKey(query, repository.getDescriptorFor(ProductGroup.class)));
+
+        SelectStatement sql = getStatement(query);
+        assertTrue(sql instanceof SqlSelectStatement);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMisses());
+    }
+
+    public void testExtentsToBind()
+    {
+        Query query = articleNameQuery("A%");
+        String sql = getStatement(query).getStatement();
+        int extents = getSelectionCriteria(query.getCriteria()).getNumberOfExtentsToBind();
+        assertTrue(extents > 0);
+
+        query = articleNameQuery("B%");
+        assertEquals(0, getSelectionCriteria(query.getCriteria()).getNumberOfExtentsToBind());
+        assertEquals(sql, getStatement(query).getStatement());
+        assertEquals(1, generator.getSelectStatementCache().getHits());
+        assertEquals(extents, getSelectionCriteria(query.getCriteria()).getNumberOfExtentsToBind());
+    }
+
+    public void testReportQuery()
+    {
+        ReportQueryByCriteria query = reportQuery(new Integer(1));
+        String sql = getStatement(query).getStatement();
+        assertNotNull(query.getAttributeFieldDescriptors());
+
+        ReportQueryByCriteria other = reportQuery(new Integer(2));
+        assertNull(other.getAttributeFieldDescriptors());
+        assertEquals(sql, getStatement(other).getStatement());
+        assertEquals(1, generator.getSelectStatementCache().getHits());
+        assertEquals(query.getAttributeFieldDescriptors(), other.getAttributeFieldDescriptors());
+    }
+
+    public void testPerClassDescriptor()
+    {
+        SelectStatementCache cache = generator.getSelectStatementCache();
+        QueryByCriteria query = groupQuery(new Integer(1), "A%");
+        getStatement(query);
+
+        // a copy of the metadata, e.g. used for per thread changes, doesn't share the statements
+        DescriptorRepository copy = MetadataManager.getInstance().copyOfGlobalRepository();
+        ClassDescriptor cld = copy.getDescriptorFor(ProductGroup.class);
+        generator.getPreparedSelectStatement(groupQuery(new Integer(2), "B%"), cld);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.size());
+        SelectStatement sql = generator.getPreparedSelectStatement(groupQuery(new Integer(3), "C%"), cld);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, sql.getColumnIndex(cld.getFieldDescriptions()[0]));
+    }
+
+    private SelectStatement getStatement(Query query)
+    {
+        return generator.getPreparedSelectStatement(query, repository.getDescriptorFor(query.getSearchClass()));
+    }
+
+    private QueryByCriteria groupQuery(Integer id, String name)
+    {
+        Criteria crit = new Criteria();
+        crit.addGreaterThan("groupId", id);
+        crit.addLike("groupName", name);
+        return QueryFactory.newQuery(ProductGroup.class, crit);
+    }
+
+    private Query inQuery(int size)
+    {
+        List ids = new ArrayList();
+        for (int i = 0; i < size; i++)
+        {
+            ids.add(new Integer(i));
+        }
+        Criteria crit = new Criteria();
+        crit.addIn("groupId", ids);
+        return QueryFactory.newQuery(ProductGroup.class, crit);
+    }
+
+    private Query articleNameQuery(String name)
+    {
+        Criteria crit = new Criteria();
+        crit.addLike("allArticlesInGroup.articleName", name);
+        return QueryFactory.newQuery(ProductGroup.class, crit);
+    }
+
+    private ReportQueryByCriteria reportQuery(Integer id)
+    {
+        Criteria crit = new Criteria();
+        crit.addGreaterThan("groupId", id);
+        ReportQueryByCriteria query = QueryFactory.newReportQuery(ProductGroup.class, crit);
+        query.setAttributes(new String[]{"groupId", "groupName"});
+        return query;
+    }
+
+    private SelectionCriteria getSelectionCriteria(Criteria crit)
+    {
+        Enumeration e = crit.getElements();
+        return (SelectionCriteria) e.nextElement();
+    }
+}
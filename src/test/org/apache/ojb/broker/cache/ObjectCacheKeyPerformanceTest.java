@@ -0,0 +1,112 @@
+package org.apache.ojb.broker.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.ojb.broker.Identity;
+import org.apache.ojb.broker.PersistenceBroker;
+import org.apache.ojb.broker.PersistenceBrokerFactory;
+import org.apache.ojb.junit.OJBTestCase;
+
+/**
+ * Compares the lookup performance of {@link ObjectCacheDefaultImpl} using the partitioned
+ * cache for <code>cachingKeyType</code> 3 against a cache keyed by a composite
+ * {@link ObjectCacheDefaultImpl.OrderedTuple} per lookup (the former implementation).
+ *
+ * @version $Id$
+ */
+public class ObjectCacheKeyPerformanceTest extends OJBTestCase
+{
+    private static final int OBJECTS = 1000;
+    private static final int ITERATIONS = 2000;
+
+    public ObjectCacheKeyPerformanceTest(String s)
+    {
+        super(s);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] arr = {ObjectCacheKeyPerformanceTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public void testLookupPerformance()
+    {
+        PersistenceBroker broker = PersistenceBrokerFactory.defaultPersistenceBroker();
+        try
+        {
+            Identity[] oids = new Identity[OBJECTS];
+            for(int i = 0; i < OBJECTS; i++)
+            {
+                oids[i] = new Identity(CacheObject.class, CacheObject.class, new Object[]{new Integer(i)});
+            }
+
+            Properties prop = new Properties();
+            prop.setProperty(ObjectCacheDefaultImpl.CACHING_KEY_TYPE_PROP, "3");
+            prop.setProperty(ObjectCacheDefaultImpl.TIMEOUT_PROP, "-1");
+            prop.setProperty(ObjectCacheDefaultImpl.SOFT_REFERENCES_PROP, "false");
+            ObjectCacheDefaultImpl cache = new ObjectCacheDefaultImpl(broker, prop);
+            Map tupleCache = new HashMap();
+            for(int i = 0; i < OBJECTS; i++)
+            {
+                cache.cache(oids[i], oids[i]);
+                tupleCache.put(buildTupleKey(broker, oids[i]), oids[i]);
+            }
+
+            // warm up
+            long tuplePeriod = lookupTuples(broker, tupleCache, oids);
+            long partitionPeriod = lookupPartitioned(cache, oids);
+            tuplePeriod = lookupTuples(broker, tupleCache, oids);
+            partitionPeriod = lookupPartitioned(cache, oids);
+
+            int lookups = OBJECTS * ITERATIONS;
+            System.out.println("total time for " + lookups + " lookups using OrderedTuple keys: "
+                    + tuplePeriod + " ms.");
+            System.out.println("total time for " + lookups + " lookups using cache partitions: "
+                    + partitionPeriod + " ms.");
+            cache.clear();
+        }
+        finally
+        {
+            if(broker != null) broker.close();
+        }
+    }
+
+    private Object buildTupleKey(PersistenceBroker broker, Identity oid)
+    {
+        return new ObjectCacheDefaultImpl.OrderedTuple(oid, broker.getPBKey().getAlias(),
+                new Integer(broker.getDescriptorRepository().hashCode()));
+    }
+
+    private long lookupTuples(PersistenceBroker broker, Map tupleCache, Identity[] oids)
+    {
+        long start = System.currentTimeMillis();
+        for(int k = 0; k < ITERATIONS; k++)
+        {
+            for(int i = 0; i < oids.length; i++)
+            {
+                assertNotNull(tupleCache.get(buildTupleKey(broker, oids[i])));
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private long lookupPartitioned(ObjectCache cache, Identity[] oids)
+    {
+        long start = System.currentTimeMillis();
+        for(int k = 0; k < ITERATIONS; k++)
+        {
+            for(int i = 0; i < oids.length; i++)
+            {
+                assertNotNull(cache.lookup(oids[i]));
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    public static class CacheObject
+    {
+    }
+}
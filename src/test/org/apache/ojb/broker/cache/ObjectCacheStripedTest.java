@@ -0,0 +1,146 @@
+package org.apache.ojb.broker.cache;
+
+import java.util.Properties;
+
+import org.apache.ojb.broker.Identity;
+import org.apache.ojb.junit.OJBTestCase;
+
+/**
+ * Tests the bounded {@link ObjectCacheStripedImpl} and its eviction policies.
+ *
+ * @version $Id$
+ */
+public class ObjectCacheStripedTest extends OJBTestCase
+{
+    public ObjectCacheStripedTest(String s)
+    {
+        super(s);
+    }
+
+    public static void main(String[] args)
+    {
+        String[] arr = {ObjectCacheStripedTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    private ObjectCacheStripedImpl createCache(int maxEntry, String policy, int timeout)
+    {
+        Properties prop = new Properties();
+        prop.setProperty(ObjectCacheStripedImpl.MAX_ENTRY_PROP, "" + maxEntry);
+        // use a single segment to get predictable eviction
+        prop.setProperty(ObjectCacheStripedImpl.CONCURRENCY_LEVEL_PROP, "1");
+        prop.setProperty(ObjectCacheStripedImpl.EVICTION_POLICY_PROP, policy);
+        prop.setProperty(ObjectCacheStripedImpl.TIMEOUT_PROP, "" + timeout);
+        ObjectCacheStripedImpl cache = new ObjectCacheStripedImpl(null, prop);
+        cache.clear();
+        return cache;
+    }
+
+    private Identity oid(int id)
+    {
+        return new Identity(String.class, String.class, new Object[]{new Integer(id)});
+    }
+
+    public void testCacheLookupRemove()
+    {
+        ObjectCacheStripedImpl cache = createCache(100, ObjectCacheStripedImpl.POLICY_LRU, -1);
+        cache.cache(oid(1), "one");
+        assertEquals("one", cache.lookup(oid(1)));
+        assertNull(cache.lookup(oid(2)));
+        assertFalse(cache.cacheIfNew(oid(1), "other"));
+        assertEquals("one", cache.lookup(oid(1)));
+        assertTrue(cache.cacheIfNew(oid(2), "two"));
+        cache.remove(oid(1));
+        assertNull(cache.lookup(oid(1)));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void testTimeout() throws Exception
+    {
+        ObjectCacheStripedImpl cache = createCache(101, ObjectCacheStripedImpl.POLICY_LRU, 0);
+        cache.cache(oid(1), "one");
+        Thread.sleep(20);
+        assertNull(cache.lookup(oid(1)));
+        assertEquals(0, cache.size());
+    }
+
+    public void testLRUEviction()
+    {
+        ObjectCacheStripedImpl cache = createCache(3, ObjectCacheStripedImpl.POLICY_LRU, -1);
+        cache.cache(oid(1), "one");
+        cache.cache(oid(2), "two");
+        cache.cache(oid(3), "three");
+        // touch 1, so 2 is the least recently used
+        assertNotNull(cache.lookup(oid(1)));
+        cache.cache(oid(4), "four");
+        assertEquals(3, cache.size());
+        assertNull(cache.lookup(oid(2)));
+        assertNotNull(cache.lookup(oid(1)));
+        assertNotNull(cache.lookup(oid(4)));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    public void testLFUEviction()
+    {
+        ObjectCacheStripedImpl cache = createCache(3, ObjectCacheStripedImpl.POLICY_LFU, -1);
+        cache.cache(oid(1), "one");
+        cache.cache(oid(2), "two");
+        cache.cache(oid(3), "three");
+        for(int i = 0; i < 5; i++)
+        {
+            cache.lookup(oid(1));
+            cache.lookup(oid(3));
+        }
+        cache.cache(oid(4), "four");
+        assertEquals(3, cache.size());
+        assertNull(cache.lookup(oid(2)));
+        assertNotNull(cache.lookup(oid(1)));
+        assertNotNull(cache.lookup(oid(3)));
+        assertNotNull(cache.lookup(oid(4)));
+    }
+
+    public void testTinyLFUKeepsFrequentObjects()
+    {
+        ObjectCacheStripedImpl cache = createCache(200, ObjectCacheStripedImpl.POLICY_TINY_LFU, -1);
+        for(int i = 0; i < 100; i++)
+        {
+            cache.cache(oid(i), "hot_" + i);
+        }
+        for(int k = 0; k < 5; k++)
+        {
+            for(int i = 0; i < 100; i++)
+            {
+                cache.lookup(oid(i));
+            }
+        }
+        // a scan of objects accessed only once should not flush the hot objects
+        for(int i = 1000; i < 3000; i++)
+        {
+            cache.cache(oid(i), "cold_" + i);
+        }
+        assertTrue(cache.size() <= 200);
+        int found = 0;
+        for(int i = 0; i < 100; i++)
+        {
+            if(cache.lookup(oid(i)) != null) ++found;
+        }
+        assertTrue("Expected most hot objects in cache, found " + found, found > 90);
+    }
+
+    public void testBoundedWithManySegments()
+    {
+        Properties prop = new Properties();
+        prop.setProperty(ObjectCacheStripedImpl.MAX_ENTRY_PROP, "64");
+        prop.setProperty(ObjectCacheStripedImpl.CONCURRENCY_LEVEL_PROP, "8");
+        ObjectCacheStripedImpl cache = new ObjectCacheStripedImpl(null, prop);
+        cache.clear();
+        for(int i = 0; i < 1000; i++)
+        {
+            cache.cache(oid(i), "obj_" + i);
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+    }
+}
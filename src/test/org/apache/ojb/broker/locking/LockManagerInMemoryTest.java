@@ -0,0 +1,150 @@
+package org.apache.ojb.broker.locking;
+
+import org.apache.ojb.junit.OJBTestCase;
+
+/**
+ * Tests the blocking mode, the release of all locks of an owner and the
+ * background and inline eviction of timed out locks of {@link LockManagerInMemoryImpl}.
+ *
+ * @version $Id$
+ */
+public class LockManagerInMemoryTest extends OJBTestCase
+{
+    final int testIsoLevel = LockManager.IL_REPEATABLE_READ;
+
+    LockManagerInMemoryImpl lockManager;
+    Object tx1;
+    Object tx2;
+
+    public static void main(String[] args)
+    {
+        String[] arr = {LockManagerInMemoryTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public LockManagerInMemoryTest(String name)
+    {
+        super(name);
+    }
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        lockManager = new LockManagerInMemoryImpl();
+        tx1 = new Object();
+        tx2 = new Object();
+    }
+
+    public void testNonBlocking()
+    {
+        assertEquals(0, lockManager.getBlockTimeout());
+        assertTrue(lockManager.writeLock(tx1, "a", testIsoLevel));
+        long start = System.currentTimeMillis();
+        assertFalse(lockManager.writeLock(tx2, "a", testIsoLevel));
+        assertTrue(System.currentTimeMillis() - start < 500);
+    }
+
+    public void testBlockTimeout()
+    {
+        lockManager.setBlockTimeout(200);
+        assertTrue(lockManager.writeLock(tx1, "a", testIsoLevel));
+        long start = System.currentTimeMillis();
+        assertFalse(lockManager.readLock(tx2, "a", testIsoLevel));
+        assertTrue(System.currentTimeMillis() - start >= 190);
+        assertFalse(lockManager.hasRead(tx2, "a"));
+    }
+
+    public void testWaitForRelease() throws Exception
+    {
+        lockManager.setBlockTimeout(10000);
+        assertTrue(lockManager.writeLock(tx1, "a", testIsoLevel));
+        Thread releaser = new Thread()
+        {
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(200);
+                }
+                catch(InterruptedException ignore)
+                {
+                }
+                lockManager.releaseLocks(tx1);
+            }
+        };
+        long start = System.currentTimeMillis();
+        releaser.start();
+        assertTrue(lockManager.writeLock(tx2, "a", testIsoLevel));
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertTrue(lockManager.hasWrite(tx2, "a"));
+        assertFalse(lockManager.hasRead(tx1, "a"));
+        releaser.join();
+    }
+
+    public void testReleaseLocks()
+    {
+        assertTrue(lockManager.readLock(tx1, "a", testIsoLevel));
+        assertTrue(lockManager.writeLock(tx1, "b", testIsoLevel));
+        assertTrue(lockManager.readLock(tx2, "a", testIsoLevel));
+        assertEquals(2, lockManager.lockedObjects());
+
+        lockManager.releaseLocks(tx1);
+        assertFalse(lockManager.hasRead(tx1, "a"));
+        assertFalse(lockManager.hasWrite(tx1, "b"));
+        assertTrue(lockManager.hasRead(tx2, "a"));
+        assertEquals(1, lockManager.lockedObjects());
+
+        assertTrue(lockManager.releaseLock(tx2, "a"));
+        assertEquals(0, lockManager.lockedObjects());
+        // releasing again is a noop
+        lockManager.releaseLocks(tx1);
+        assertFalse(lockManager.releaseLock(tx2, "a"));
+    }
+
+    public void testLockTimeout() throws Exception
+    {
+        lockManager.setLockTimeout(200);
+        assertTrue(lockManager.writeLock(tx1, "a", testIsoLevel));
+        assertTrue(lockManager.readLock(tx1, "b", testIsoLevel));
+        assertFalse(lockManager.writeLock(tx2, "a", testIsoLevel));
+
+        // evicted by the background timer without further lock manager calls
+        long start = System.currentTimeMillis();
+        while(lockManager.lockedObjects() > 0 && System.currentTimeMillis() - start < 5000)
+        {
+            Thread.sleep(50);
+        }
+        assertEquals(0, lockManager.lockedObjects());
+        assertFalse(lockManager.hasWrite(tx1, "a"));
+        assertTrue(lockManager.writeLock(tx2, "a", testIsoLevel));
+        assertTrue(lockManager.getLockInfo().indexOf("timed out write locks: 1") > 0);
+    }
+
+    public void testConflictingLockTimeout() throws Exception
+    {
+        lockManager.setLockTimeout(1000);
+        assertTrue(lockManager.writeLock(tx1, "a", testIsoLevel));
+        assertTrue(lockManager.readLock(tx1, "b", testIsoLevel));
+        assertFalse(lockManager.writeLock(tx2, "a", testIsoLevel));
+        assertFalse(lockManager.writeLock(tx2, "b", testIsoLevel));
+
+        // shorten the lock timeout, the locks are timed out now but the
+        // timer wheel will check them only in about a second
+        lockManager.setLockTimeout(1);
+        Thread.sleep(10);
+        assertTrue(lockManager.writeLock(tx2, "a", testIsoLevel));
+        assertTrue(lockManager.writeLock(tx2, "b", testIsoLevel));
+        assertFalse(lockManager.hasWrite(tx1, "a"));
+        assertFalse(lockManager.hasRead(tx1, "b"));
+        assertTrue(lockManager.getLockInfo().indexOf("timed out write locks: 1") > 0);
+        assertTrue(lockManager.getLockInfo().indexOf("timed out read locks: 1") > 0);
+    }
+
+    public void testNoLockTimeout() throws Exception
+    {
+        lockManager.setLockTimeout(-1);
+        assertTrue(lockManager.writeLock(tx1, "a", testIsoLevel));
+        Thread.sleep(300);
+        assertTrue(lockManager.hasWrite(tx1, "a"));
+    }
+}
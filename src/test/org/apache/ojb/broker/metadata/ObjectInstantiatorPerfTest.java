@@ -0,0 +1,141 @@
+package org.apache.ojb.broker.metadata;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.ClassUtils;
+import org.apache.ojb.broker.Article;
+import org.apache.ojb.broker.accesslayer.RowReader;
+import org.apache.ojb.broker.accesslayer.RowReaderDefaultImpl;
+import org.apache.ojb.junit.OJBTestCase;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * This is a developer test and NOT part of the test suite.
+ * This test help to test the performance of the different
+ * {@link ObjectInstantiator} implementations, by materializing
+ * objects from rows with the {@link RowReaderDefaultImpl}.
+ *
+ * @version $Id$
+ */
+public class ObjectInstantiatorPerfTest extends OJBTestCase
+{
+    int numberOfRows = 1000000;
+    int repeat = 3;
+
+    Class[] instantiatorClasses = new Class[]{
+        ObjectInstantiatorDefaultImpl.class
+        , ObjectInstantiatorCGLibImpl.class};
+
+    public static void main(String[] args)
+    {
+        String[] arr = {ObjectInstantiatorPerfTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public void testInstantiationPerformance() throws Exception
+    {
+        ClassDescriptor cld = MetadataManager.getInstance().copyOfGlobalRepository().getDescriptorFor(Article.class);
+        System.out.println();
+        System.out.println("=========================================");
+        System.out.println("Instantiation performance, create " + numberOfRows + " objects");
+        System.out.println("----------------------------------------");
+        for (int r = 0; r < 2; r++)
+        {
+            for (int i = 0; i < instantiatorClasses.length; i++)
+            {
+                ObjectInstantiator instantiator = newInstance(instantiatorClasses[i], cld);
+                long period = 0;
+                for (int k = 0; k < repeat; k++)
+                {
+                    System.gc();
+                    Thread.sleep(100);
+                    long start = System.currentTimeMillis();
+                    for (int n = 0; n < numberOfRows; n++)
+                    {
+                        instantiator.newInstance();
+                    }
+                    period += System.currentTimeMillis() - start;
+                }
+                System.out.println(ClassUtils.getShortClassName(instantiator.getClass()) + ": " + period);
+            }
+            System.out.println("----------------------------------------");
+        }
+    }
+
+    public void testMaterializationPerformance() throws Exception
+    {
+        ClassDescriptor cld = MetadataManager.getInstance().copyOfGlobalRepository().getDescriptorFor(Article.class);
+        Map row = buildRow(cld);
+        System.out.println();
+        System.out.println("=========================================");
+        System.out.println("Materialization performance, read " + numberOfRows + " rows");
+        System.out.println("----------------------------------------");
+        for (int r = 0; r < 2; r++)
+        {
+            for (int i = 0; i < instantiatorClasses.length; i++)
+            {
+                cld.setObjectInstantiator(newInstance(instantiatorClasses[i], cld));
+                RowReader rowReader = new RowReaderDefaultImpl(cld);
+                // validate
+                Article article = (Article) rowReader.readObjectFrom(row);
+                assertEquals("ObjectInstantiatorPerfTest", article.getArticleName());
+
+                long period = 0;
+                for (int k = 0; k < repeat; k++)
+                {
+                    System.gc();
+                    Thread.sleep(100);
+                    long start = System.currentTimeMillis();
+                    for (int n = 0; n < numberOfRows; n++)
+                    {
+                        rowReader.readObjectFrom(row);
+                    }
+                    period += System.currentTimeMillis() - start;
+                }
+                System.out.println(ClassUtils.getShortClassName(instantiatorClasses[i]) + ": " + period);
+            }
+            System.out.println("----------------------------------------");
+        }
+    }
+
+    private ObjectInstantiator newInstance(Class instantiatorClass, ClassDescriptor cld) throws Exception
+    {
+        return (ObjectInstantiator) instantiatorClass.getConstructor(new Class[]{ClassDescriptor.class})
+                .newInstance(new Object[]{cld});
+    }
+
+    /**
+     * Returns a row with the values of an article.
+     */
+    private Map buildRow(ClassDescriptor cld)
+    {
+        Article article = Article.createInstance();
+        article.setArticleId(new Integer(42));
+        article.setArticleName("ObjectInstantiatorPerfTest");
+        article.setUnit("bottle");
+        article.setPrice(1.5);
+        article.setStock(100);
+        Map row = new HashMap();
+        FieldDescriptor[] fields = cld.getFieldDescriptor(true);
+        for (int i = 0; i < fields.length; i++)
+        {
+            row.put(fields[i].getColumnName(), fields[i].getPersistentField().get(article));
+        }
+        return row;
+    }
+}
@@ -0,0 +1,163 @@
+package org.apache.ojb.broker.metadata;
+
+import org.apache.ojb.junit.OJBTestCase;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Test the {@link ObjectInstantiator} implementations.
+ *
+ * @version $Id$
+ */
+public class ObjectInstantiatorTest extends OJBTestCase
+{
+    public static void main(String[] args)
+    {
+        String[] arr = {ObjectInstantiatorTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public ObjectInstantiatorTest(String name)
+    {
+        super(name);
+    }
+
+    public void testDefault() throws Exception
+    {
+        runInstantiatorTests(ObjectInstantiatorDefaultImpl.class);
+    }
+
+    public void testCGLib() throws Exception
+    {
+        runInstantiatorTests(ObjectInstantiatorCGLibImpl.class);
+
+        assertTrue(((ObjectInstantiatorCGLibImpl) newInstantiator(
+                ObjectInstantiatorCGLibImpl.class, PublicConstructor.class)).isGenerated());
+        assertTrue(((ObjectInstantiatorCGLibImpl) newInstantiator(
+                ObjectInstantiatorCGLibImpl.class, PackageConstructor.class)).isGenerated());
+        assertFalse(((ObjectInstantiatorCGLibImpl) newInstantiator(
+                ObjectInstantiatorCGLibImpl.class, PrivateConstructor.class)).isGenerated());
+    }
+
+    public void testConfiguredInstantiator() throws Exception
+    {
+        ClassDescriptor cld = newClassDescriptor(PublicConstructor.class);
+        assertNotNull(cld.getObjectInstantiator());
+        assertSame(cld.getObjectInstantiator(), cld.getObjectInstantiator());
+        ObjectInstantiator instantiator = new ObjectInstantiatorCGLibImpl(cld);
+        cld.setObjectInstantiator(instantiator);
+        assertSame(instantiator, cld.getObjectInstantiator());
+    }
+
+    private void runInstantiatorTests(Class instantiatorClass) throws Exception
+    {
+        assertTrue(newInstantiator(instantiatorClass, PublicConstructor.class).newInstance()
+                instanceof PublicConstructor);
+        assertTrue(newInstantiator(instantiatorClass, PackageConstructor.class).newInstance()
+                instanceof PackageConstructor);
+        assertTrue(newInstantiator(instantiatorClass, PrivateConstructor.class).newInstance()
+                instanceof PrivateConstructor);
+
+        // each call creates a new instance
+        ObjectInstantiator instantiator = newInstantiator(instantiatorClass, PublicConstructor.class);
+        assertNotSame(instantiator.newInstance(), instantiator.newInstance());
+
+        try
+        {
+            newInstantiator(instantiatorClass, NoZeroArgumentConstructor.class).newInstance();
+            fail("Expected exception for class without zero argument constructor");
+        }
+        catch(ClassNotPersistenceCapableException expected)
+        {
+        }
+        try
+        {
+            newInstantiator(instantiatorClass, FailingConstructor.class).newInstance();
+            fail("Expected exception for failing constructor");
+        }
+        catch(ClassNotPersistenceCapableException expected)
+        {
+        }
+        try
+        {
+            newInstantiator(instantiatorClass, AbstractClass.class).newInstance();
+            fail("Expected exception for abstract class");
+        }
+        catch(InstantiationException expected)
+        {
+        }
+    }
+
+    private ObjectInstantiator newInstantiator(Class instantiatorClass, Class target) throws Exception
+    {
+        return (ObjectInstantiator) instantiatorClass.getConstructor(new Class[]{ClassDescriptor.class})
+                .newInstance(new Object[]{newClassDescriptor(target)});
+    }
+
+    private ClassDescriptor newClassDescriptor(Class target)
+    {
+        ClassDescriptor cld = new ClassDescriptor(new DescriptorRepository());
+        cld.setClassOfObject(target);
+        return cld;
+    }
+
+    //************************************************************************
+    // inner classes - used test classes
+    //************************************************************************
+
+    public static class PublicConstructor
+    {
+        public PublicConstructor()
+        {
+        }
+    }
+
+    public static class PackageConstructor
+    {
+        PackageConstructor()
+        {
+        }
+    }
+
+    public static class PrivateConstructor
+    {
+        private PrivateConstructor()
+        {
+        }
+    }
+
+    public static class NoZeroArgumentConstructor
+    {
+        public NoZeroArgumentConstructor(String name)
+        {
+        }
+    }
+
+    public static class FailingConstructor
+    {
+        public FailingConstructor()
+        {
+            throw new IllegalStateException("FailingConstructor");
+        }
+    }
+
+    public static abstract class AbstractClass
+    {
+        public AbstractClass()
+        {
+        }
+    }
+}
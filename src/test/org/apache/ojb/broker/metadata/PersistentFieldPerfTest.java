@@ -5,6 +5,7 @@ import org.apache.commons.lang.SystemUtils;
 import org.apache.ojb.broker.NestedFieldsTest;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentField;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldAutoProxyImpl;
+import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldCGLibImpl;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldDirectImpl;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldIntrospectorImpl;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldPrivilegedImpl;
@@ -54,7 +55,8 @@ public class PersistentFieldPerfTest extends OJBTestCase
         PersistentFieldDirectImpl.class
         , PersistentFieldIntrospectorImpl.class
         , PersistentFieldPrivilegedImpl.class
-        , PersistentFieldAutoProxyImpl.class};
+        , PersistentFieldAutoProxyImpl.class
+        , PersistentFieldCGLibImpl.class};
 
 
     private PersistentField newInstance(Class pfClass, Class testClass, String fieldName) throws Exception
@@ -86,6 +88,42 @@ public class PersistentFieldPerfTest extends OJBTestCase
         System.out.println("----------------------------------------");
     }
 
+    /**
+     * Same as {@link #testFieldPerformance()}, but the field isn't private and can
+     * be accessed without reflection by {@link PersistentFieldCGLibImpl}.
+     */
+    public void testNonPrivateFieldPerformance() throws Exception
+    {
+        System.out.println();
+        System.out.println("=========================================");
+        System.out.println("Non-private field performance, set/get " + numberOfOperations + " times a field");
+        System.out.println("----------------------------------------");
+        for (int r = 0; r < 2; r++)
+        {
+            for (int i = 0; i < persistentFieldClasses.length; i++)
+            {
+                Class persistentFieldClass = persistentFieldClasses[i];
+                PersistentField p = newInstance(persistentFieldClass, NonPrivateField.class, fieldName);
+                long getter = 0;
+                long setter = 0;
+                for (int k = 0; k < repeat; k++)
+                {
+                    System.gc();
+                    Thread.sleep(100);
+                    getter += nonPrivatePerformanceFor(p, false);
+                }
+                for (int k = 0; k < repeat; k++)
+                {
+                    System.gc();
+                    Thread.sleep(100);
+                    setter += nonPrivatePerformanceFor(p, true);
+                }
+                printResult(p, getter, setter, false);
+            }
+            System.out.println("----------------------------------------");
+        }
+    }
+
     public void testNestedFieldPerformance() throws Exception
     {
         System.out.println();
@@ -166,6 +204,30 @@ public class PersistentFieldPerfTest extends OJBTestCase
         return System.currentTimeMillis() - period;
     }
 
+    private long nonPrivatePerformanceFor(PersistentField pf, boolean setter)
+    {
+        String testString = "a test name";
+        NonPrivateField testObject = new NonPrivateField();
+        // validate
+        pf.set(testObject, testString);
+        assertEquals(testString, testObject.name);
+        assertEquals(testString, pf.get(testObject));
+
+        long period = System.currentTimeMillis();
+        for (int i = 0; i < numberOfOperations; i++)
+        {
+            if (setter)
+            {
+                pf.set(testObject, testString);
+            }
+            else
+            {
+                pf.get(testObject);
+            }
+        }
+        return System.currentTimeMillis() - period;
+    }
+
     private long getterPerformanceNestedFor(PersistentField pf)
     {
         String testString = "a test name";
@@ -203,4 +265,19 @@ public class PersistentFieldPerfTest extends OJBTestCase
         }
         return System.currentTimeMillis() - period;
     }
+
+    public static class NonPrivateField
+    {
+        String name;
+
+        public String getName()
+        {
+            return name;
+        }
+
+        public void setName(String name)
+        {
+            this.name = name;
+        }
+    }
 }
@@ -11,6 +11,7 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentField;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldAutoProxyImpl;
+import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldCGLibImpl;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldDirectImpl;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldDynaBeanImpl;
 import org.apache.ojb.broker.metadata.fieldaccess.PersistentFieldIntrospectorImpl;
@@ -51,7 +52,8 @@ public class PersistentFieldTest extends OJBTestCase
         , PersistentFieldIntrospectorImpl.class
         , PersistentFieldPrivilegedImpl.class
         , PersistentFieldAutoProxyImpl.class
-        , PersistentFieldDynaBeanImpl.class};
+        , PersistentFieldDynaBeanImpl.class
+        , PersistentFieldCGLibImpl.class};
 
     public static void main(String[] args)
     {
@@ -225,6 +227,56 @@ public class PersistentFieldTest extends OJBTestCase
         checkBoundaryConditions(PersistentFieldAutoProxyImpl.class);
     }
 
+    public void testCGLib() throws Exception
+    {
+        runFieldTestsFor(PersistentFieldCGLibImpl.class, false);
+        checkBoundaryConditions(PersistentFieldCGLibImpl.class);
+    }
+
+    public void testCGLibFieldAccess() throws Exception
+    {
+        PersistentField pfName = newInstance(PersistentFieldCGLibImpl.class, FieldAccessObject.class, "name");
+        PersistentField pfCount = newInstance(PersistentFieldCGLibImpl.class, FieldAccessObject.class, "count");
+        PersistentField pfAmount = newInstance(PersistentFieldCGLibImpl.class, FieldAccessObject.class, "amount");
+        PersistentField pfId = newInstance(PersistentFieldCGLibImpl.class, FieldAccessObject.class, "objId");
+
+        FieldAccessObject obj = new FieldAccessObject();
+        pfName.set(obj, "fieldAccess");
+        pfCount.set(obj, new Integer(7));
+        pfAmount.set(obj, new Double(1.5));
+        pfId.set(obj, new Long(11));
+        assertEquals("fieldAccess", obj.name);
+        assertEquals(7, obj.count);
+        assertEquals(1.5, obj.amount, 0);
+        assertEquals(new Long(11), obj.getObjId());
+        assertEquals("fieldAccess", pfName.get(obj));
+        assertEquals(new Integer(7), pfCount.get(obj));
+        assertEquals(new Double(1.5), pfAmount.get(obj));
+        assertEquals(new Long(11), pfId.get(obj));
+
+        // null values don't change primitive fields
+        pfCount.set(obj, null);
+        assertEquals(7, obj.count);
+        pfName.set(obj, null);
+        assertNull(pfName.get(obj));
+
+        // values of the wrong type are converted or rejected like by reflection
+        pfAmount.set(obj, new Float(2.5));
+        assertEquals(2.5, obj.amount, 0);
+        try
+        {
+            pfCount.set(obj, "7");
+            fail("Expected exception when setting a String to an int field");
+        }
+        catch(MetadataException expected)
+        {
+        }
+
+        pfName = (PersistentField) SerializationUtils.deserialize(SerializationUtils.serialize(pfName));
+        pfName.set(obj, "serialized");
+        assertEquals("serialized", pfName.get(obj));
+    }
+
     public void testDynaBean() throws Exception
     {
         checkBoundaryConditions(PersistentFieldDynaBeanImpl.class, false);
@@ -323,6 +375,19 @@ public class PersistentFieldTest extends OJBTestCase
     static String NESTED_ENTRY_NAME_VALUE = "nestedEntryName_value";
 
 
+    public static class FieldAccessObject
+    {
+        private Long objId;
+        String name;
+        int count;
+        protected double amount;
+
+        public Long getObjId()
+        {
+            return objId;
+        }
+    }
+
     public static class NestedMain
     {
         private Long objId;
@@ -0,0 +1,461 @@
+package org.apache.ojb.compare;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.PreparedStatement;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.ojb.broker.Article;
+import org.apache.ojb.broker.Identity;
+import org.apache.ojb.broker.InterfaceArticle;
+import org.apache.ojb.broker.PersistenceBroker;
+import org.apache.ojb.broker.PersistenceBrokerFactory;
+import org.apache.ojb.broker.TestHelper;
+import org.apache.ojb.broker.accesslayer.RowBuffer;
+import org.apache.ojb.broker.accesslayer.StatementManagerIF;
+import org.apache.ojb.broker.cache.ObjectCacheDefaultImpl;
+import org.apache.ojb.broker.core.IdentityCodec;
+import org.apache.ojb.broker.core.proxy.IndirectionHandlerCGLIBImpl;
+import org.apache.ojb.broker.core.proxy.IndirectionHandlerJDKImpl;
+import org.apache.ojb.broker.core.proxy.ProxyFactory;
+import org.apache.ojb.broker.core.proxy.ProxyFactoryCGLIBImpl;
+import org.apache.ojb.broker.core.proxy.ProxyFactoryJDKImpl;
+import org.apache.ojb.broker.metadata.ClassDescriptor;
+import org.apache.ojb.broker.query.Criteria;
+import org.apache.ojb.broker.query.Query;
+import org.apache.ojb.broker.query.QueryByCriteria;
+import org.apache.ojb.broker.query.QueryFactory;
+import org.apache.ojb.odmg.OJB;
+import org.apache.ojb.otm.OTMConnection;
+import org.apache.ojb.otm.OTMKit;
+import org.apache.ojb.otm.kit.SimpleKit;
+import org.apache.ojb.otm.lock.LockType;
+import org.apache.ojb.performance.Benchmark;
+import org.apache.ojb.performance.PerfArticle;
+import org.apache.ojb.performance.PerfArticleImpl;
+import org.odmg.Database;
+import org.odmg.Implementation;
+import org.odmg.Transaction;
+
+/**
+ * Micro benchmarks of the broker hot paths, run by
+ * {@link org.apache.ojb.performance.BenchmarkRunner} (see target
+ * <em>benchmark</em> of the build script) against the embedded test database
+ * using the junit test mappings.
+ *
+ * @version $Id$
+ */
+public class OJBBenchmarks
+{
+    /**
+     * The number of objects used by the benchmarks.
+     */
+    static final int OBJECT_COUNT = 1000;
+
+    // =====================================================================================
+    // Base class of the benchmarks using a PersistenceBroker
+    // =====================================================================================
+    public static abstract class BrokerBenchmark extends Benchmark
+    {
+        protected PersistenceBroker broker;
+
+        public String name()
+        {
+            String name = getClass().getName();
+            return name.substring(name.lastIndexOf('$') + 1);
+        }
+
+        public void setUp() throws Exception
+        {
+            broker = PersistenceBrokerFactory.defaultPersistenceBroker();
+        }
+
+        public void tearDown() throws Exception
+        {
+            if(broker != null)
+            {
+                broker.close();
+                broker = null;
+            }
+        }
+
+        protected Article[] newArticles(int count)
+        {
+            Article[] result = new Article[count];
+            for(int i = 0; i < count; i++)
+            {
+                result[i] = Article.createInstance();
+                result[i].setArticleId(new Integer(i + 1));
+                result[i].setArticleName("benchmark_" + i);
+            }
+            return result;
+        }
+    }
+
+    // =====================================================================================
+    // Object cache lookup
+    // =====================================================================================
+    public static class CacheLookup extends BrokerBenchmark
+    {
+        private ObjectCacheDefaultImpl cache;
+        private Identity[] oids;
+        private int index;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            cache = new ObjectCacheDefaultImpl(broker, null);
+            Article[] articles = newArticles(OBJECT_COUNT);
+            oids = new Identity[articles.length];
+            for(int i = 0; i < articles.length; i++)
+            {
+                oids[i] = broker.serviceIdentity().buildIdentity(articles[i]);
+                cache.cache(oids[i], articles[i]);
+            }
+        }
+
+        public Object invoke() throws Exception
+        {
+            index = (index + 1) % oids.length;
+            return cache.lookup(oids[index]);
+        }
+    }
+
+    // =====================================================================================
+    // Identity creation from persistent objects
+    // =====================================================================================
+    public static class IdentityCreation extends BrokerBenchmark
+    {
+        private Article[] articles;
+        private int index;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            articles = newArticles(OBJECT_COUNT);
+        }
+
+        public Object invoke() throws Exception
+        {
+            index = (index + 1) % articles.length;
+            return broker.serviceIdentity().buildIdentity(articles[index]);
+        }
+    }
+
+    // =====================================================================================
+    // Encoding and decoding of an identity, binary codec versus the former
+    // GZIP compressed java serialization
+    // =====================================================================================
+    public static class IdentityCodecRoundTrip extends BrokerBenchmark
+    {
+        private IdentityCodec codec;
+        private Identity oid;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            codec = new IdentityCodec(broker.getDescriptorRepository());
+            oid = new Identity(Article.class, InterfaceArticle.class,
+                    new Object[]{new Integer(4711), new Long(1234567L)});
+        }
+
+        public Object invoke() throws Exception
+        {
+            return codec.decode(codec.encode(oid));
+        }
+    }
+
+    public static class IdentityGzipRoundTrip extends BrokerBenchmark
+    {
+        private Identity oid;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            oid = new Identity(Article.class, InterfaceArticle.class,
+                    new Object[]{new Integer(4711), new Long(1234567L)});
+        }
+
+        public Object invoke() throws Exception
+        {
+            ByteArrayOutputStream bao = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(new GZIPOutputStream(bao));
+            oos.writeObject(oid);
+            oos.close();
+            ObjectInputStream ois = new ObjectInputStream(
+                    new GZIPInputStream(new ByteArrayInputStream(bao.toByteArray())));
+            Object result = ois.readObject();
+            ois.close();
+            return result;
+        }
+    }
+
+    // =====================================================================================
+    // Object materialization from result set rows
+    // =====================================================================================
+    public static class RowMaterialization extends BrokerBenchmark
+    {
+        private ClassDescriptor cld;
+        private Map row;
+        private int index;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            cld = broker.getClassDescriptor(Article.class);
+            row = RowBuffer.newRow(cld.getRowReader());
+        }
+
+        public Object invoke() throws Exception
+        {
+            index = (index + 1) % OBJECT_COUNT;
+            row.clear();
+            row.put("Artikel_Nr", new Integer(index));
+            row.put("Artikelname", "benchmark");
+            row.put("Kategorie_Nr", new Integer(1));
+            row.put("Einzelpreis", new Double(9.99));
+            row.put("Lagerbestand", new Integer(10));
+            return cld.getRowReader().readObjectFrom(row);
+        }
+    }
+
+    // =====================================================================================
+    // SQL generation of criteria queries
+    // =====================================================================================
+    public static class SqlGeneration extends BrokerBenchmark
+    {
+        private ClassDescriptor cld;
+        private int index;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            cld = broker.getClassDescriptor(Article.class);
+        }
+
+        public Object invoke() throws Exception
+        {
+            Criteria crit = new Criteria();
+            crit.addGreaterThan("articleId", new Integer(++index));
+            crit.addLike("articleName", "bench%");
+            Query query = QueryFactory.newQuery(Article.class, crit);
+            return broker.serviceSqlGenerator().getPreparedSelectStatement(query, cld).getStatement();
+        }
+    }
+
+    // =====================================================================================
+    // Binding of query values to a prepared statement
+    // =====================================================================================
+    public static class StatementBinding extends BrokerBenchmark
+    {
+        private ClassDescriptor cld;
+        private StatementManagerIF sm;
+        private PreparedStatement stmt;
+        private Criteria crit;
+        private Query query;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            cld = broker.getClassDescriptor(Article.class);
+            sm = broker.serviceStatementManager();
+            crit = new Criteria();
+            crit.addGreaterThan("articleId", new Integer(1));
+            crit.addLike("articleName", "bench%");
+            crit.addLessThan("price", new Double(100));
+            query = QueryFactory.newQuery(Article.class, crit);
+            String sql = broker.serviceSqlGenerator().getPreparedSelectStatement(query, cld).getStatement();
+            stmt = sm.getPreparedStatement(cld, sql, Query.NOT_SCROLLABLE,
+                    StatementManagerIF.FETCH_SIZE_NOT_APPLICABLE, false);
+        }
+
+        public void tearDown() throws Exception
+        {
+            if(sm != null) sm.closeResources(stmt, null);
+            super.tearDown();
+        }
+
+        public Object invoke() throws Exception
+        {
+            sm.bindStatement(stmt, query, cld, 1);
+            return stmt;
+        }
+    }
+
+    // =====================================================================================
+    // Query with prefetched references
+    // =====================================================================================
+    public static class Prefetching extends BrokerBenchmark
+    {
+        public Object invoke() throws Exception
+        {
+            broker.clearCache();
+            Criteria crit = new Criteria();
+            crit.addLessThan("articleId", new Integer(50));
+            QueryByCriteria query = QueryFactory.newQuery(Article.class, crit);
+            query.addPrefetchedRelationship("productGroup");
+            return broker.getCollectionByQuery(query);
+        }
+    }
+
+    // =====================================================================================
+    // Proxy creation, the indirection handlers are created in advance
+    // =====================================================================================
+    public static abstract class ProxyCreation extends BrokerBenchmark
+    {
+        protected ProxyFactory factory;
+        private Identity[] oids;
+        private int index;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            factory = newProxyFactory();
+            Article[] articles = newArticles(OBJECT_COUNT);
+            oids = new Identity[articles.length];
+            for(int i = 0; i < articles.length; i++)
+            {
+                oids[i] = broker.serviceIdentity().buildIdentity(articles[i]);
+            }
+        }
+
+        public Object invoke() throws Exception
+        {
+            index = (index + 1) % oids.length;
+            return factory.createProxy(proxyClass(), factory.createIndirectionHandler(broker.getPBKey(), oids[index]));
+        }
+
+        protected abstract ProxyFactory newProxyFactory();
+
+        protected abstract Class proxyClass();
+    }
+
+    public static class ProxyCreationJDK extends ProxyCreation
+    {
+        protected ProxyFactory newProxyFactory()
+        {
+            ProxyFactory result = new ProxyFactoryJDKImpl();
+            result.setIndirectionHandlerClass(IndirectionHandlerJDKImpl.class);
+            return result;
+        }
+
+        protected Class proxyClass()
+        {
+            return Article.class;
+        }
+    }
+
+    public static class ProxyCreationCGLIB extends ProxyCreation
+    {
+        protected ProxyFactory newProxyFactory()
+        {
+            ProxyFactory result = new ProxyFactoryCGLIBImpl();
+            result.setIndirectionHandlerClass(IndirectionHandlerCGLIBImpl.class);
+            return result;
+        }
+
+        protected Class proxyClass()
+        {
+            return Article.class;
+        }
+    }
+
+    // =====================================================================================
+    // Commit of an updated object using the ODMG-api
+    // =====================================================================================
+    public static class ODMGCommit extends BrokerBenchmark
+    {
+        private Implementation odmg;
+        private Database db;
+        private PerfArticle article;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            article = newPerfArticle();
+            broker.beginTransaction();
+            broker.store(article);
+            broker.commitTransaction();
+
+            odmg = OJB.getInstance();
+            db = odmg.newDatabase();
+            db.open(TestHelper.DEF_DATABASE_NAME, Database.OPEN_READ_WRITE);
+        }
+
+        public void tearDown() throws Exception
+        {
+            if(article != null)
+            {
+                broker.beginTransaction();
+                broker.delete(article);
+                broker.commitTransaction();
+            }
+            db.close();
+            super.tearDown();
+        }
+
+        public Object invoke() throws Exception
+        {
+            Transaction tx = odmg.newTransaction();
+            tx.begin();
+            tx.lock(article, Transaction.WRITE);
+            article.setPrice(article.getPrice() + 1);
+            tx.commit();
+            return tx;
+        }
+    }
+
+    // =====================================================================================
+    // Commit of an updated object using the OTM-api
+    // =====================================================================================
+    public static class OTMCommit extends BrokerBenchmark
+    {
+        private OTMKit kit;
+        private OTMConnection conn;
+        private PerfArticle article;
+
+        public void setUp() throws Exception
+        {
+            super.setUp();
+            article = newPerfArticle();
+            broker.beginTransaction();
+            broker.store(article);
+            broker.commitTransaction();
+
+            kit = SimpleKit.getInstance();
+            conn = kit.acquireConnection(PersistenceBrokerFactory.getDefaultKey());
+        }
+
+        public void tearDown() throws Exception
+        {
+            if(conn != null) conn.close();
+            if(article != null)
+            {
+                broker.beginTransaction();
+                broker.delete(article);
+                broker.commitTransaction();
+            }
+            super.tearDown();
+        }
+
+        public Object invoke() throws Exception
+        {
+            org.apache.ojb.otm.core.Transaction tx = kit.getTransaction(conn);
+            tx.begin();
+            Identity oid = conn.getIdentity(article);
+            PerfArticle a = (PerfArticle) conn.getObjectByIdentity(oid, LockType.WRITE_LOCK);
+            a.setPrice(a.getPrice() + 1);
+            tx.commit();
+            return a;
+        }
+    }
+
+    static PerfArticle newPerfArticle()
+    {
+        return new PerfArticleImpl(OJBPerfTest.JdbcPerfTest.nextKey(), "benchmark", 10, 9.99, "piece", 100, 1, 1);
+    }
+}
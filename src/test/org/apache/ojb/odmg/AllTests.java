@@ -50,6 +50,7 @@ public class AllTests extends junit.framework.TestSuite
         suite.addTestSuite(PersonWithArrayTest.class);
         suite.addTestSuite(M2NTest.class);
         suite.addTestSuite(ObjectImageTest.class);
+        suite.addTestSuite(ObjectEnvelopeOrderingTest.class);
         suite.addTestSuite(InheritanceMultipleTableTest.class);
         suite.addTestSuite(CircularTest.class);
 
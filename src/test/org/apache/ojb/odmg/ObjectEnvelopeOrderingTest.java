@@ -0,0 +1,190 @@
+package org.apache.ojb.odmg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.ojb.broker.Article;
+import org.apache.ojb.broker.Identity;
+import org.apache.ojb.broker.ProductGroup;
+import org.apache.ojb.junit.ODMGTestCase;
+import org.apache.ojb.odmg.states.ModificationState;
+import org.apache.ojb.odmg.states.StateNewDirty;
+import org.apache.ojb.odmg.states.StateOldClean;
+import org.apache.ojb.odmg.states.StateOldDelete;
+import org.apache.ojb.odmg.states.StateOldDirty;
+
+/**
+ * Compares the indexed and the original variant of the {@link ObjectEnvelopeOrdering}.
+ *
+ * @version $Id$
+ */
+public class ObjectEnvelopeOrderingTest extends ODMGTestCase
+{
+    private static final ModificationState[] STATES = {
+        StateNewDirty.getInstance(), StateOldDirty.getInstance(),
+        StateOldDelete.getInstance(), StateOldClean.getInstance()};
+
+    private TransactionImpl tx;
+    private List order;
+    private Map envelopes;
+
+    public static void main(String[] args)
+    {
+        String[] arr = {ObjectEnvelopeOrderingTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public ObjectEnvelopeOrderingTest(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        tx = (TransactionImpl) odmg.newTransaction();
+        tx.begin();
+        order = new ArrayList();
+        envelopes = new HashMap();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        if(tx.isOpen()) tx.abort();
+        super.tearDown();
+    }
+
+    public void testInsertOrder()
+    {
+        ProductGroup group = new ProductGroup(new Integer(1), "testInsertOrder", null);
+        Article a1 = newArticle(1, group);
+        Article a2 = newArticle(2, group);
+        // articles registered before their group
+        addEnvelope(a1, StateNewDirty.getInstance());
+        addEnvelope(a2, StateNewDirty.getInstance());
+        addEnvelope(group, StateNewDirty.getInstance());
+
+        Identity[] result = compareOrderings();
+        assertEquals(identity(group), result[0]);
+    }
+
+    public void testDeleteOrder()
+    {
+        ProductGroup group = new ProductGroup(new Integer(1), "testDeleteOrder", null);
+        Article a1 = newArticle(1, group);
+        Article a2 = newArticle(2, group);
+        // group registered before its articles
+        addEnvelope(group, StateOldDelete.getInstance());
+        addEnvelope(a1, StateOldDelete.getInstance());
+        addEnvelope(a2, StateOldDirty.getInstance());
+
+        Identity[] result = compareOrderings();
+        assertEquals(identity(group), result[2]);
+    }
+
+    public void testCircularReference()
+    {
+        ProductGroup group = new ProductGroup(new Integer(1), "testCircularReference", null);
+        Article a1 = newArticle(1, group);
+        Article a2 = newArticle(2, group);
+        a2.setProductGroup(null);
+        addEnvelope(a1, StateNewDirty.getInstance());
+        addEnvelope(group, StateNewDirty.getInstance());
+        addEnvelope(a2, StateNewDirty.getInstance());
+
+        Identity[] result = compareOrderings();
+        assertEquals(3, result.length);
+    }
+
+    public void testRandomGraphs()
+    {
+        Random random = new Random(4711);
+        for(int run = 0; run < 20; run++)
+        {
+            order.clear();
+            envelopes.clear();
+            int articleId = 1;
+            int groups = 1 + random.nextInt(10);
+            for(int i = 0; i < groups; i++)
+            {
+                ProductGroup group = new ProductGroup(new Integer(i + 1), "testRandomGraphs", null);
+                addEnvelope(group, STATES[random.nextInt(STATES.length)]);
+                int articles = random.nextInt(5);
+                for(int k = 0; k < articles; k++)
+                {
+                    Article article = newArticle(articleId++, group);
+                    if(random.nextInt(4) == 0)
+                    {
+                        article.setProductGroup(null);
+                    }
+                    addEnvelope(article, STATES[random.nextInt(STATES.length)]);
+                }
+            }
+            compareOrderings();
+        }
+    }
+
+    public void testLargeTransaction()
+    {
+        int groups = 40;
+        int articleId = 1;
+        for(int i = 0; i < groups; i++)
+        {
+            ProductGroup group = new ProductGroup(new Integer(i + 1), "testLargeTransaction", null);
+            for(int k = 0; k < 4; k++)
+            {
+                addEnvelope(newArticle(articleId++, group), StateNewDirty.getInstance());
+            }
+            addEnvelope(group, StateNewDirty.getInstance());
+        }
+
+        Identity[] result = compareOrderings();
+        assertEquals(200, result.length);
+        // each group is inserted before its articles
+        List ordered = Arrays.asList(result);
+        for(int i = 0; i < order.size(); i += 5)
+        {
+            int groupIndex = ordered.indexOf(order.get(i + 4));
+            for(int k = 0; k < 4; k++)
+            {
+                assertTrue(groupIndex < ordered.indexOf(order.get(i + k)));
+            }
+        }
+    }
+
+    private Identity[] compareOrderings()
+    {
+        Identity[] original = new ObjectEnvelopeOrdering(order, envelopes, false).getOrdering();
+        Identity[] indexed = new ObjectEnvelopeOrdering(order, envelopes, true).getOrdering();
+        assertEquals(Arrays.asList(original), Arrays.asList(indexed));
+        return indexed;
+    }
+
+    private Article newArticle(int id, ProductGroup group)
+    {
+        Article article = Article.createInstance();
+        article.setArticleId(new Integer(id));
+        article.setArticleName("ObjectEnvelopeOrderingTest");
+        article.setProductGroup(group);
+        group.add(article);
+        return article;
+    }
+
+    private void addEnvelope(Object obj, ModificationState state)
+    {
+        Identity oid = identity(obj);
+        ObjectEnvelope envelope = new ObjectEnvelope(tx.objectEnvelopeTable, oid, obj, state == STATES[0]);
+        envelope.setModificationState(state);
+        order.add(oid);
+        envelopes.put(oid, envelope);
+    }
+
+    private Identity identity(Object obj)
+    {
+        return tx.getBroker().serviceIdentity().buildIdentity(obj);
+    }
+}
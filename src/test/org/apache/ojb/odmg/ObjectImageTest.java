@@ -490,6 +490,57 @@ public class ObjectImageTest extends ODMGTestCase
         assertEquals(version, book.getVersion());
     }
 
+    /**
+     * modify fields of main object kept as digest in the object image
+     */
+    public void testChangeMainFieldsDigest() throws Exception
+    {
+        String name = "testChangeMainFieldsDigest_" + System.currentTimeMillis();
+        Date date = new Date();
+        byte[] cover = new byte[]{2,3,4,5,6,7,8,9};
+        Book book = new Book(name, date, cover);
+
+        TransactionImpl tx = (TransactionImpl) odmg.newTransaction();
+        tx.setImageDigestThreshold(4);
+        tx.begin();
+        database.makePersistent(book);
+        tx.commit();
+
+        Integer version = book.getVersion();
+
+        tx.begin();
+        tx.lock(book, Transaction.WRITE);
+        book.setCover(new byte[]{2,3,4,5,6,7,8,9});
+        tx.commit();
+        // same content, no reason to update
+        assertEquals(version, book.getVersion());
+
+        tx.begin();
+        tx.lock(book, Transaction.WRITE);
+        // modify the array itself
+        book.getCover()[7] = 8;
+        tx.commit();
+        assertFalse(version.equals(book.getVersion()));
+
+        version = book.getVersion();
+        tx.begin();
+        tx.lock(book, Transaction.WRITE);
+        book.setTitle(name + "_updated");
+        tx.commit();
+        assertFalse(version.equals(book.getVersion()));
+
+        tx.begin();
+        tx.getBroker().clearCache();
+        OQLQuery query = odmg.newOQLQuery();
+        query.create("select books from " + Book.class.getName() + " where title like $1");
+        query.bind(name + "_updated");
+        Collection result = (Collection) query.execute();
+        assertEquals(1, result.size());
+        Book b = (Book) result.iterator().next();
+        assertEquals(8, b.getCover()[7]);
+        tx.commit();
+    }
+
     /**
      * Double lock object with reference
      */
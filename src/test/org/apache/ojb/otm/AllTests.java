@@ -35,6 +35,7 @@ public class AllTests extends junit.framework.TestSuite
         suite.addTest(new TestSuite(LockTestCommittedReads.class));
         suite.addTest(new TestSuite(LockTestRepeatableReads.class));
         suite.addTest(new TestSuite(LockTestSerializable.class));
+        suite.addTest(new TestSuite(DeadlockDetectionStrategyTest.class));
         suite.addTest(new TestSuite(SwizzleTests.class));
         suite.addTest(new TestSuite(CopyTest.class));
         suite.addTest(new TestSuite(DependentTests.class));
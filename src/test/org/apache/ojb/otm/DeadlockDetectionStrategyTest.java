@@ -0,0 +1,194 @@
+package org.apache.ojb.otm;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import junit.framework.TestCase;
+import org.apache.ojb.broker.Article;
+import org.apache.ojb.broker.PersistenceBrokerFactory;
+import org.apache.ojb.otm.core.Transaction;
+import org.apache.ojb.otm.lock.LockingException;
+import org.apache.ojb.otm.lock.ObjectLock;
+import org.apache.ojb.otm.lock.wait.ConcurrentModificationException;
+import org.apache.ojb.otm.lock.wait.DeadlockDetectionStrategy;
+import org.apache.ojb.otm.lock.wait.DeadlockException;
+import org.apache.ojb.otm.lock.wait.TimeoutStrategy;
+
+/**
+ * Tests the {@link DeadlockDetectionStrategy}.
+ *
+ * @version $Id$
+ */
+public class DeadlockDetectionStrategyTest extends TestCase
+{
+    private TestKit _kit;
+    private OTMConnection[] _conns = new OTMConnection[3];
+    private Transaction[] _txs = new Transaction[3];
+    private ObjectLock[] _locks = new ObjectLock[3];
+
+    public static void main(String[] args)
+    {
+        String[] arr = {DeadlockDetectionStrategyTest.class.getName()};
+        junit.textui.TestRunner.main(arr);
+    }
+
+    public DeadlockDetectionStrategyTest(String name)
+    {
+        super(name);
+    }
+
+    public void setUp() throws Exception
+    {
+        _kit = TestKit.getTestInstance();
+        for (int i = 0; i < _conns.length; i++)
+        {
+            _conns[i] = _kit.acquireConnection(PersistenceBrokerFactory.getDefaultKey());
+            _txs[i] = _kit.getTransaction(_conns[i]);
+            _txs[i].begin();
+            Article obj = Article.createInstance();
+            obj.setArticleId(new Integer(i + 1));
+            _locks[i] = new ObjectLock(_conns[i].getIdentity(obj));
+        }
+    }
+
+    public void tearDown()
+    {
+        for (int i = 0; i < _conns.length; i++)
+        {
+            try
+            {
+                _txs[i].rollback();
+                _conns[i].close();
+            }
+            catch (Throwable t)
+            {
+            }
+        }
+        _kit.setLockWaitStrategy(new TimeoutStrategy());
+    }
+
+    public void testWakeUpOnRelease() throws Exception
+    {
+        DeadlockDetectionStrategy strategy = new DeadlockDetectionStrategy(10000, 5000);
+        _kit.setLockWaitStrategy(strategy);
+        _locks[0].writeLock(_txs[0]);
+
+        LockThread waiter = new LockThread(_locks[0], _txs[1]);
+        waiter.start();
+        Thread.sleep(200);
+        assertTrue("Transaction should wait for the lock", waiter.isAlive());
+
+        long start = System.currentTimeMillis();
+        _locks[0].releaseLock(_txs[0]);
+        waiter.join(5000);
+        // the waiter is notified, it does not wait for the next check
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertNull(waiter.failure);
+        assertSame(_txs[1], _locks[0].getWriter());
+        assertEquals(1, strategy.getWaitCount());
+        assertEquals(0, strategy.getDeadlockCount());
+        assertTrue(strategy.getWaitTime() >= 100);
+    }
+
+    public void testTimeout() throws Exception
+    {
+        DeadlockDetectionStrategy strategy = new DeadlockDetectionStrategy(200, 50);
+        _kit.setLockWaitStrategy(strategy);
+        _locks[0].writeLock(_txs[0]);
+        try
+        {
+            _locks[0].writeLock(_txs[1]);
+            fail("ConcurrentModificationException was not thrown");
+        }
+        catch (ConcurrentModificationException ex)
+        {
+            // ok, lock was not released
+        }
+        assertEquals(1, strategy.getTimeoutCount());
+        assertSame(_txs[0], _locks[0].getWriter());
+    }
+
+    /**
+     * tx1 waits for tx2, tx2 waits for tx3, tx3 requests the lock of tx1.
+     */
+    public void testMultiPartyDeadlock() throws Exception
+    {
+        DeadlockDetectionStrategy strategy = new DeadlockDetectionStrategy(10000);
+        _kit.setLockWaitStrategy(strategy);
+        for (int i = 0; i < _locks.length; i++)
+        {
+            _locks[i].writeLock(_txs[i]);
+        }
+        LockThread waiter1 = new LockThread(_locks[1], _txs[0]);
+        waiter1.start();
+        LockThread waiter2 = new LockThread(_locks[2], _txs[1]);
+        waiter2.start();
+        Thread.sleep(200);
+
+        long start = System.currentTimeMillis();
+        try
+        {
+            _locks[0].writeLock(_txs[2]);
+            fail("DeadlockException was not thrown");
+        }
+        catch (DeadlockException ex)
+        {
+            // ok, deadlock was detected
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(1, strategy.getDeadlockCount());
+
+        // the victim releases its locks, the other transactions go on
+        _locks[2].releaseLock(_txs[2]);
+        waiter2.join(5000);
+        assertNull(waiter2.failure);
+        _locks[1].releaseLock(_txs[1]);
+        _locks[2].releaseLock(_txs[1]);
+        waiter1.join(5000);
+        assertNull(waiter1.failure);
+        assertSame(_txs[0], _locks[1].getWriter());
+        assertEquals(1, strategy.getDeadlockCount());
+    }
+
+    //************************************************************************
+    // inner classes
+    //************************************************************************
+
+    static class LockThread extends Thread
+    {
+        private final ObjectLock lock;
+        private final Transaction tx;
+        volatile LockingException failure;
+
+        LockThread(ObjectLock lock, Transaction tx)
+        {
+            this.lock = lock;
+            this.tx = tx;
+            setDaemon(true);
+        }
+
+        public void run()
+        {
+            try
+            {
+                lock.writeLock(tx);
+            }
+            catch (LockingException ex)
+            {
+                failure = ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.apache.ojb.performance;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Derivate this class to implement a single-threaded micro benchmark
+ * run by {@link BenchmarkRunner}. The runner calls {@link #setUp()} once,
+ * then {@link #invoke()} repeatedly for a number of timed warm up and
+ * measurement iterations and finally {@link #tearDown()}.
+ * <br/>
+ * Implementations need a public no-argument constructor.
+ *
+ * @version $Id$
+ */
+public abstract class Benchmark
+{
+    /**
+     * The name of the benchmark used in the result report,
+     * by default the class name.
+     */
+    public String name()
+    {
+        return getClass().getName();
+    }
+
+    /**
+     * Prepare the benchmark, not measured.
+     */
+    public void setUp() throws Exception
+    {
+    }
+
+    /**
+     * Cleanup the benchmark, not measured.
+     */
+    public void tearDown() throws Exception
+    {
+    }
+
+    /**
+     * Performs the measured operation. The returned object is consumed by the
+     * runner to prevent the JIT from eliminating the measured code.
+     */
+    public abstract Object invoke() throws Exception;
+
+    /**
+     * The number of operations done by one {@link #invoke()} call, default is 1.
+     */
+    public int operationsPerInvocation()
+    {
+        return 1;
+    }
+}
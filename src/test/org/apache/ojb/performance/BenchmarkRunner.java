@@ -0,0 +1,389 @@
+package org.apache.ojb.performance;
+
+/* Copyright 2002-2005 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.StringTokenizer;
+
+import org.apache.commons.lang.SystemUtils;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.apache.commons.lang.math.NumberUtils;
+
+/**
+ * A simple micro benchmark runner for {@link Benchmark} implementations.
+ * Each benchmark is run single-threaded with a number of timed warm up iterations
+ * followed by timed measurement iterations, the throughput of each measurement
+ * iteration is recorded. The results are printed and written as JSON file
+ * (one object per benchmark, similar to the JMH JSON format) to allow the
+ * comparison of the results of different releases.
+ *
+ * <p>
+ * Usage:
+ * <br/>
+ * <code>
+ * java -classpath CLASSPATH org.apache.ojb.performance.BenchmarkRunner
+ * </code>
+ * <br/>
+ * <code>
+ * [comma separated list of Benchmark implementation classes or of classes declaring
+ * public static Benchmark classes, no blanks!]
+ * </code>
+ * <br/>
+ * <code>
+ * [number of warm up iterations, default '5']
+ * </code>
+ * <br/>
+ * <code>
+ * [number of measurement iterations, default '10']
+ * </code>
+ * <br/>
+ * <code>
+ * [time per iteration in milliseconds, default '1000']
+ * </code>
+ * <br/>
+ * <code>
+ * [the JSON result file, default 'benchmark-result.json']
+ * </code>
+ * </p>
+ *
+ * @version $Id$
+ */
+public class BenchmarkRunner
+{
+    protected static final String EOL = SystemUtils.LINE_SEPARATOR;
+    /**
+     * The quantile of the normal distribution used for the 99.9% confidence interval.
+     */
+    private static final double CONFIDENCE_QUANTILE = 3.2905;
+
+    private int warmupIterations = 5;
+    private int measurementIterations = 10;
+    private long iterationTime = 1000;
+    private String resultFile = "benchmark-result.json";
+
+    private List results = new ArrayList();
+    /**
+     * Consumes the results of the benchmarks.
+     */
+    private volatile int sink;
+
+    public static void main(String[] args)
+    {
+        if(args.length == 0)
+        {
+            System.err.println("No benchmark classes specified");
+            System.exit(1);
+        }
+        BenchmarkRunner runner = new BenchmarkRunner();
+        if(args.length > 1) runner.warmupIterations = NumberUtils.stringToInt(args[1], runner.warmupIterations);
+        if(args.length > 2) runner.measurementIterations = NumberUtils.stringToInt(args[2], runner.measurementIterations);
+        if(args.length > 3) runner.iterationTime = NumberUtils.stringToInt(args[3], (int) runner.iterationTime);
+        if(args.length > 4) runner.resultFile = args[4];
+        try
+        {
+            runner.run(createBenchmarks(args[0]));
+            runner.writeResults();
+        }
+        catch(Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        System.exit(runner.hasFailures() ? 1 : 0);
+    }
+
+    /**
+     * Creates the benchmarks, for classes not extending {@link Benchmark} all
+     * public static inner classes extending {@link Benchmark} are used.
+     */
+    static List createBenchmarks(String classNames) throws Exception
+    {
+        List result = new ArrayList();
+        StringTokenizer tok = new StringTokenizer(classNames, ", \t\r\n");
+        while(tok.hasMoreTokens())
+        {
+            Class clazz = Class.forName(tok.nextToken());
+            if(Benchmark.class.isAssignableFrom(clazz))
+            {
+                result.add(clazz.newInstance());
+            }
+            else
+            {
+                Class[] inner = clazz.getDeclaredClasses();
+                for(int i = 0; i < inner.length; i++)
+                {
+                    int mod = inner[i].getModifiers();
+                    if(Benchmark.class.isAssignableFrom(inner[i]) && Modifier.isPublic(mod)
+                            && Modifier.isStatic(mod) && !Modifier.isAbstract(mod))
+                    {
+                        result.add(inner[i].newInstance());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public void run(List benchmarks)
+    {
+        for(int i = 0; i < benchmarks.size(); i++)
+        {
+            Benchmark benchmark = (Benchmark) benchmarks.get(i);
+            Result result = run(benchmark);
+            results.add(result);
+            System.out.println(result.toString());
+        }
+    }
+
+    Result run(Benchmark benchmark)
+    {
+        Result result = new Result(benchmark.name());
+        try
+        {
+            benchmark.setUp();
+            try
+            {
+                for(int i = 0; i < warmupIterations; i++)
+                {
+                    runIteration(benchmark);
+                }
+                result.scores = new double[measurementIterations];
+                for(int i = 0; i < measurementIterations; i++)
+                {
+                    result.scores[i] = runIteration(benchmark);
+                }
+            }
+            finally
+            {
+                benchmark.tearDown();
+            }
+        }
+        catch(Throwable e)
+        {
+            result.scores = null;
+            result.failure = ExceptionUtils.getFullStackTrace(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the throughput of one timed iteration in operations per millisecond.
+     */
+    private double runIteration(Benchmark benchmark) throws Exception
+    {
+        long operations = 0;
+        int consumed = 0;
+        final long start = System.nanoTime();
+        final long end = start + iterationTime * 1000000L;
+        long now;
+        do
+        {
+            Object obj = benchmark.invoke();
+            consumed ^= System.identityHashCode(obj);
+            operations += benchmark.operationsPerInvocation();
+            now = System.nanoTime();
+        }
+        while(now < end);
+        sink ^= consumed;
+        return operations / ((now - start) / 1000000.0);
+    }
+
+    public boolean hasFailures()
+    {
+        for(int i = 0; i < results.size(); i++)
+        {
+            if(((Result) results.get(i)).failure != null) return true;
+        }
+        return false;
+    }
+
+    public void writeResults() throws IOException
+    {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(resultFile), "UTF-8"));
+        try
+        {
+            out.print(toJSON());
+        }
+        finally
+        {
+            out.close();
+        }
+        System.out.println("Benchmark results written to " + resultFile);
+    }
+
+    String toJSON()
+    {
+        StringBuffer buf = new StringBuffer();
+        buf.append("[").append(EOL);
+        for(int i = 0; i < results.size(); i++)
+        {
+            Result result = (Result) results.get(i);
+            buf.append("    {").append(EOL);
+            property(buf, "benchmark", quote(result.name), true);
+            property(buf, "mode", quote("thrpt"), true);
+            property(buf, "threads", "1", true);
+            property(buf, "warmupIterations", "" + warmupIterations, true);
+            property(buf, "measurementIterations", "" + measurementIterations, true);
+            property(buf, "iterationTime", quote(iterationTime + " ms"), true);
+            property(buf, "jdkVersion", quote(System.getProperty("java.version")), true);
+            property(buf, "vmName", quote(System.getProperty("java.vm.name")), true);
+            property(buf, "date", quote(new Date().toString()), true);
+            if(result.failure != null)
+            {
+                property(buf, "failure", quote(result.failure), false);
+            }
+            else
+            {
+                StringBuffer raw = new StringBuffer("[[");
+                for(int k = 0; k < result.scores.length; k++)
+                {
+                    if(k > 0) raw.append(", ");
+                    raw.append(result.scores[k]);
+                }
+                raw.append("]]");
+                buf.append("        \"primaryMetric\" : {").append(EOL);
+                buf.append("    ");
+                property(buf, "score", number(result.getScore()), true);
+                buf.append("    ");
+                property(buf, "scoreError", number(result.getScoreError()), true);
+                buf.append("    ");
+                property(buf, "scoreConfidence", "[" + number(result.getScore() - result.getScoreError())
+                        + ", " + number(result.getScore() + result.getScoreError()) + "]", true);
+                buf.append("    ");
+                property(buf, "scoreUnit", quote("ops/ms"), true);
+                buf.append("    ");
+                property(buf, "rawData", raw.toString(), false);
+                buf.append("        }").append(EOL);
+            }
+            buf.append("    }").append(i < results.size() - 1 ? "," : "").append(EOL);
+        }
+        buf.append("]").append(EOL);
+        return buf.toString();
+    }
+
+    private static void property(StringBuffer buf, String name, String value, boolean more)
+    {
+        buf.append("        \"").append(name).append("\" : ").append(value);
+        buf.append(more ? "," : "").append(EOL);
+    }
+
+    /**
+     * JSON has no representation of NaN and infinity, these are written as strings.
+     */
+    private static String number(double value)
+    {
+        return Double.isNaN(value) || Double.isInfinite(value) ? quote("" + value) : "" + value;
+    }
+
+    private static String quote(String str)
+    {
+        StringBuffer buf = new StringBuffer(str.length() + 2);
+        buf.append('"');
+        for(int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            switch(c)
+            {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    if(c < 0x20)
+                    {
+                        String hex = Integer.toHexString(c);
+                        buf.append("\\u0000".substring(0, 6 - hex.length())).append(hex);
+                    }
+                    else
+                    {
+                        buf.append(c);
+                    }
+            }
+        }
+        return buf.append('"').toString();
+    }
+
+    //=======================================================
+    // inner class
+    //=======================================================
+    static class Result
+    {
+        final String name;
+        double[] scores;
+        String failure;
+
+        Result(String name)
+        {
+            this.name = name;
+        }
+
+        /**
+         * Returns the mean throughput.
+         */
+        double getScore()
+        {
+            double sum = 0;
+            for(int i = 0; i < scores.length; i++)
+            {
+                sum += scores[i];
+            }
+            return scores.length > 0 ? sum / scores.length : Double.NaN;
+        }
+
+        /**
+         * Returns the half width of the 99.9% confidence interval of the mean.
+         */
+        double getScoreError()
+        {
+            if(scores.length < 2) return Double.NaN;
+            double mean = getScore();
+            double sum = 0;
+            for(int i = 0; i < scores.length; i++)
+            {
+                sum += (scores[i] - mean) * (scores[i] - mean);
+            }
+            double stdDev = Math.sqrt(sum / (scores.length - 1));
+            return CONFIDENCE_QUANTILE * stdDev / Math.sqrt(scores.length);
+        }
+
+        public String toString()
+        {
+            if(failure != null)
+            {
+                return name + ": FAILED" + EOL + failure;
+            }
+            return name + ": " + (float) getScore() + " +/- " + (float) getScoreError() + " ops/ms";
+        }
+    }
+}